@@ -40,4 +40,26 @@ public class BrlObj implements java.io.Serializable {
    public void setTime(double time) {
       this.time = time;
    }
+
+   /**
+    * Compares this barrel with another one, so the Gateway only sends the barrels to the clients when they changed.
+    * @param o the object to compare with
+    * @return true if the other object is a barrel with the same ID and time
+    */
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (!(o instanceof BrlObj)) {
+         return false;
+      }
+      BrlObj other = (BrlObj) o;
+      return id == other.id && Double.compare(time, other.time) == 0;
+   }
+
+   @Override
+   public int hashCode() {
+      return 31 * id + Double.hashCode(time);
+   }
 }
@@ -0,0 +1,60 @@
+package com.googol.googolfe.objects;
+
+/**
+ * The CollectionStats class represents the statistics BM25 weighs the terms of a query with: the number of pages,
+ * their total length and the number of pages containing each term.
+ * A barrel sends the statistics of its own pages, and the Gateway sends back the statistics of the whole index,
+ * so the barrels holding different pages score them the same way.
+ */
+public class CollectionStats implements java.io.Serializable {
+  private int documentCount;
+  private long totalLength;
+  private String[] terms;
+  private int[] documentFrequencies;
+
+  /**
+   * Constructs a CollectionStats with the statistics of some pages.
+   * @param documentCount the number of pages
+   * @param totalLength the sum of the lengths of the pages
+   * @param terms the terms of the query
+   * @param documentFrequencies the number of pages containing each term, in the same order as the terms
+   */
+  public CollectionStats(int documentCount, long totalLength, String[] terms, int[] documentFrequencies) {
+    this.documentCount = documentCount;
+    this.totalLength = totalLength;
+    this.terms = terms;
+    this.documentFrequencies = documentFrequencies;
+  }
+
+  /**
+   * Retrieves the number of pages.
+   * @return the number of pages
+   */
+  public int getDocumentCount() {
+    return documentCount;
+  }
+
+  /**
+   * Retrieves the sum of the lengths of the pages.
+   * @return the total length
+   */
+  public long getTotalLength() {
+    return totalLength;
+  }
+
+  /**
+   * Retrieves the terms of the query.
+   * @return the terms
+   */
+  public String[] getTerms() {
+    return terms;
+  }
+
+  /**
+   * Retrieves the number of pages containing each term.
+   * @return the document frequencies, in the same order as the terms
+   */
+  public int[] getDocumentFrequencies() {
+    return documentFrequencies;
+  }
+}
@@ -0,0 +1,145 @@
+package com.googol.googolfe.objects;
+
+/**
+ * The IngestStats class represents the counters and queue depths of the ingest pipeline of a barrel.
+ * The queues are the ones between the stages: received messages waiting to be decoded, decoded messages
+ * waiting to be applied, and applied messages waiting to be logged. A message can hold several pages.
+ */
+public class IngestStats implements java.io.Serializable {
+  private long received;
+  private long fragments;
+  private long incomplete;
+  private long malformed;
+  private long applied;
+  private long persisted;
+  private long batches;
+  private long stalls;
+  private int decodeQueue;
+  private int applyQueue;
+  private int persistQueue;
+
+  /**
+   * Constructs an IngestStats with the values read from the pipeline.
+   * @param received the number of messages received, counting each message split in fragments once
+   * @param fragments the number of fragments received
+   * @param incomplete the number of messages dropped before all their fragments arrived
+   * @param malformed the number of messages dropped because they could not be decoded
+   * @param applied the number of pages applied to the barrel
+   * @param persisted the number of messages written to the write-ahead log
+   * @param batches the number of batches applied
+   * @param stalls the number of times the receiver waited for a full decode queue
+   * @param decodeQueue the number of messages waiting to be decoded
+   * @param applyQueue the number of decoded messages waiting to be applied
+   * @param persistQueue the number of applied messages waiting to be logged
+   */
+  public IngestStats(long received, long fragments, long incomplete, long malformed, long applied, long persisted, long batches, long stalls,
+      int decodeQueue, int applyQueue, int persistQueue) {
+    this.received = received;
+    this.fragments = fragments;
+    this.incomplete = incomplete;
+    this.malformed = malformed;
+    this.applied = applied;
+    this.persisted = persisted;
+    this.batches = batches;
+    this.stalls = stalls;
+    this.decodeQueue = decodeQueue;
+    this.applyQueue = applyQueue;
+    this.persistQueue = persistQueue;
+  }
+
+  /**
+   * Retrieves the number of messages received.
+   * @return the number of messages received
+   */
+  public long getReceived() {
+    return received;
+  }
+
+  /**
+   * Retrieves the number of fragments received.
+   * @return the number of fragments received
+   */
+  public long getFragments() {
+    return fragments;
+  }
+
+  /**
+   * Retrieves the number of messages dropped before all their fragments arrived.
+   * @return the number of incomplete messages
+   */
+  public long getIncomplete() {
+    return incomplete;
+  }
+
+  /**
+   * Retrieves the number of messages dropped because they could not be decoded.
+   * @return the number of malformed messages
+   */
+  public long getMalformed() {
+    return malformed;
+  }
+
+  /**
+   * Retrieves the number of pages applied to the barrel.
+   * @return the number of pages applied
+   */
+  public long getApplied() {
+    return applied;
+  }
+
+  /**
+   * Retrieves the number of messages written to the write-ahead log.
+   * @return the number of messages persisted
+   */
+  public long getPersisted() {
+    return persisted;
+  }
+
+  /**
+   * Retrieves the number of batches applied.
+   * @return the number of batches
+   */
+  public long getBatches() {
+    return batches;
+  }
+
+  /**
+   * Retrieves the number of times the receiver waited because the decode queue was full.
+   * @return the number of stalls
+   */
+  public long getStalls() {
+    return stalls;
+  }
+
+  /**
+   * Retrieves the number of messages waiting to be decoded.
+   * @return the depth of the decode queue
+   */
+  public int getDecodeQueue() {
+    return decodeQueue;
+  }
+
+  /**
+   * Retrieves the number of decoded messages waiting to be applied.
+   * @return the depth of the apply queue
+   */
+  public int getApplyQueue() {
+    return applyQueue;
+  }
+
+  /**
+   * Retrieves the number of applied messages waiting to be logged.
+   * @return the depth of the persist queue
+   */
+  public int getPersistQueue() {
+    return persistQueue;
+  }
+
+  @Override
+  public String toString() {
+    return "received " + received + ", fragments " + fragments + ", incomplete " + incomplete
+        + ", malformed " + malformed + ", applied " + applied + " in " + batches
+        + " batches, persisted " + persisted + ", stalls " + stalls + ", queues decode " + decodeQueue
+        + " / apply " + applyQueue + " / persist " + persistQueue;
+  }
+}
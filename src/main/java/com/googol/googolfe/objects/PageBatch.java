@@ -0,0 +1,46 @@
+package com.googol.googolfe.objects;
+
+/**
+ * The PageBatch class represents pages sent by a barrel to a barrel that became one of their owners.
+ * The pages are rebuilt from the index of the sending barrel and encoded in a single frame, in the same
+ * format as the pages sent by the Downloaders, so the receiving barrel applies and logs them the same way.
+ * The pages are read by increasing doc ID, and each batch tells where the next one starts.
+ */
+public class PageBatch implements java.io.Serializable {
+  private byte[] frame;
+  private int nextDoc;
+
+  /**
+   * Constructs a PageBatch with the frame of the pages and the position of the next batch.
+   * @param frame the frame holding the pages
+   * @param nextDoc the doc ID the next batch starts at, or -1 if there are no more pages
+   */
+  public PageBatch(byte[] frame, int nextDoc) {
+    this.frame = frame;
+    this.nextDoc = nextDoc;
+  }
+
+  /**
+   * Retrieves the frame holding the pages.
+   * @return the encoded pages
+   */
+  public byte[] getFrame() {
+    return frame;
+  }
+
+  /**
+   * Retrieves the doc ID the next batch starts at.
+   * @return the doc ID, or -1 if there are no more pages
+   */
+  public int getNextDoc() {
+    return nextDoc;
+  }
+
+  /**
+   * Retrieves whether there are more pages to read.
+   * @return true if this is the last batch, false otherwise
+   */
+  public boolean isLast() {
+    return nextDoc < 0;
+  }
+}
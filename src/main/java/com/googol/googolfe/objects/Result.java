@@ -3,7 +3,7 @@ package com.googol.googolfe.objects;
 /**
  * The Result class represents a search result with a title, citation, and URL.
  */
-public class Result {
+public class Result implements java.io.Serializable {
   private String title;
   private String url;
   private String citation;
@@ -0,0 +1,82 @@
+package com.googol.googolfe.objects;
+
+import java.util.ArrayList;
+
+/**
+ * The SearchPage class represents a page of search results, with the number of pages matching the query.
+ * A page is partial when some shards of the index did not answer in time, so results may be missing.
+ */
+public class SearchPage implements java.io.Serializable {
+  private ArrayList<Result> results;
+  private int totalHits;
+  private int offset;
+  private int limit;
+  private boolean partial;
+
+  /**
+   * Constructs a SearchPage with the results of a window of the ranking.
+   * @param results the results of the page, best ranked first
+   * @param totalHits the number of pages matching the query
+   * @param offset the position of the first result of the page in the ranking
+   * @param limit the maximum number of results of the page
+   */
+  public SearchPage(ArrayList<Result> results, int totalHits, int offset, int limit) {
+    this(results, totalHits, offset, limit, false);
+  }
+
+  /**
+   * Constructs a SearchPage with the results of a window of the ranking, gathered from the shards of the index.
+   * @param results the results of the page, best ranked first
+   * @param totalHits the number of pages matching the query
+   * @param offset the position of the first result of the page in the ranking
+   * @param limit the maximum number of results of the page
+   * @param partial whether some shards did not answer, so results may be missing
+   */
+  public SearchPage(ArrayList<Result> results, int totalHits, int offset, int limit, boolean partial) {
+    this.results = results;
+    this.totalHits = totalHits;
+    this.offset = offset;
+    this.limit = limit;
+    this.partial = partial;
+  }
+
+  /**
+   * Retrieves the results of the page.
+   * @return the results, best ranked first
+   */
+  public ArrayList<Result> getResults() {
+    return results;
+  }
+
+  /**
+   * Retrieves the number of pages matching the query, including the ones outside this page.
+   * @return the total number of hits
+   */
+  public int getTotalHits() {
+    return totalHits;
+  }
+
+  /**
+   * Retrieves the position of the first result of the page in the ranking.
+   * @return the offset
+   */
+  public int getOffset() {
+    return offset;
+  }
+
+  /**
+   * Retrieves the maximum number of results of the page.
+   * @return the limit
+   */
+  public int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Retrieves whether some shards of the index did not answer.
+   * @return true if results may be missing, false otherwise
+   */
+  public boolean isPartial() {
+    return partial;
+  }
+}
@@ -0,0 +1,68 @@
+package com.googol.googolfe.objects;
+
+/**
+ * The ShardMatches class represents the pages of a shard of the index matching all the query terms it owns.
+ * The pages are identified by their url, since each barrel numbers its pages on its own, and come with the
+ * BM25 score of the terms of the shard and their PageRank, which the Gateway adds once.
+ * Only the best scored matches are sent, so the list is truncated when there are more than the limit asked.
+ */
+public class ShardMatches implements java.io.Serializable {
+  private String[] urls;
+  private double[] scores;
+  private double[] priors;
+  private int totalHits;
+
+  /**
+   * Constructs a ShardMatches with the best scored matches of a shard.
+   * @param urls the urls of the matching pages, best scored first
+   * @param scores the BM25 score of the terms of the shard in each page
+   * @param priors the PageRank of each page
+   * @param totalHits the number of pages of the shard matching the terms, sent or not
+   */
+  public ShardMatches(String[] urls, double[] scores, double[] priors, int totalHits) {
+    this.urls = urls;
+    this.scores = scores;
+    this.priors = priors;
+    this.totalHits = totalHits;
+  }
+
+  /**
+   * Retrieves the urls of the matching pages.
+   * @return the urls, best scored first
+   */
+  public String[] getUrls() {
+    return urls;
+  }
+
+  /**
+   * Retrieves the BM25 score of the terms of the shard in each page.
+   * @return the scores, in the same order as the urls
+   */
+  public double[] getScores() {
+    return scores;
+  }
+
+  /**
+   * Retrieves the PageRank of each page.
+   * @return the static scores, in the same order as the urls
+   */
+  public double[] getPriors() {
+    return priors;
+  }
+
+  /**
+   * Retrieves the number of pages of the shard matching the terms.
+   * @return the total number of hits
+   */
+  public int getTotalHits() {
+    return totalHits;
+  }
+
+  /**
+   * Retrieves whether only some of the matches were sent.
+   * @return true if there are more matches than urls, false otherwise
+   */
+  public boolean isTruncated() {
+    return totalHits > urls.length;
+  }
+}
@@ -1,17 +1,25 @@
 package com.googol.googolfe.objects;
 
 /**
- * The Top10Obj class represents an object containing the name (search) and count (nr of times searched) of a top 10 item.
+ * The Top10Obj class represents an object containing the name (search) and count (nr of times searched) of a top 10 item,
+ * and the time window the searches were counted in (null for all-time counts).
  */
 public class Top10Obj implements java.io.Serializable {
    private String name;
    private int count;
+   private String window;
 
    public Top10Obj(String name, int count) {
       this.name = name;
       this.count = count;
    }
 
+   public Top10Obj(String name, int count, String window) {
+      this.name = name;
+      this.count = count;
+      this.window = window;
+   }
+
    public String getName() {
       return name;
    }
@@ -27,4 +35,35 @@ public class Top10Obj implements java.io.Serializable {
    public void setCount(int count) {
       this.count = count;
    }
+
+   public String getWindow() {
+      return window;
+   }
+
+   public void setWindow(String window) {
+      this.window = window;
+   }
+
+   /**
+    * Compares this item with another one, so the Gateway only sends the top 10 to the clients when it changed.
+    * @param o the object to compare with
+    * @return true if the other object is an item with the same name, count and window
+    */
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) {
+         return true;
+      }
+      if (!(o instanceof Top10Obj)) {
+         return false;
+      }
+      Top10Obj other = (Top10Obj) o;
+      return count == other.count && java.util.Objects.equals(name, other.name)
+            && java.util.Objects.equals(window, other.window);
+   }
+
+   @Override
+   public int hashCode() {
+      return java.util.Objects.hash(name, count, window);
+   }
 }
@@ -0,0 +1,80 @@
+package com.googol.googolfe.objects;
+
+/**
+ * The TransferInfo class represents a state transfer opened by a barrel for a joining barrel.
+ * The state has parts read in chunks: the serialized snapshot of the barrel and each of its index segments.
+ * Each part comes with its length and CRC32, so the joining barrel can check what it received.
+ */
+public class TransferInfo implements java.io.Serializable {
+  private long session;
+  private long snapshotLength;
+  private long snapshotCrc;
+  private long[] indexLengths;
+  private long[] indexCrcs;
+
+  /**
+   * Constructs a TransferInfo with the session and the size and checksum of each part.
+   * @param session the ID of the transfer, used to read its parts
+   * @param snapshotLength the number of bytes of the snapshot
+   * @param snapshotCrc the CRC32 of the snapshot
+   * @param indexLengths the number of bytes of each index segment
+   * @param indexCrcs the CRC32 of each index segment
+   */
+  public TransferInfo(long session, long snapshotLength, long snapshotCrc, long[] indexLengths, long[] indexCrcs) {
+    this.session = session;
+    this.snapshotLength = snapshotLength;
+    this.snapshotCrc = snapshotCrc;
+    this.indexLengths = indexLengths;
+    this.indexCrcs = indexCrcs;
+  }
+
+  /**
+   * Retrieves the ID of the transfer.
+   * @return the session ID
+   */
+  public long getSession() {
+    return session;
+  }
+
+  /**
+   * Retrieves the number of bytes of the snapshot.
+   * @return the length of the snapshot
+   */
+  public long getSnapshotLength() {
+    return snapshotLength;
+  }
+
+  /**
+   * Retrieves the CRC32 of the snapshot.
+   * @return the checksum of the snapshot
+   */
+  public long getSnapshotCrc() {
+    return snapshotCrc;
+  }
+
+  /**
+   * Retrieves the number of bytes of each index segment.
+   * @return the lengths of the index segments, in the order to install them
+   */
+  public long[] getIndexLengths() {
+    return indexLengths;
+  }
+
+  /**
+   * Retrieves the CRC32 of each index segment.
+   * @return the checksums of the index segments
+   */
+  public long[] getIndexCrcs() {
+    return indexCrcs;
+  }
+
+  @Override
+  public String toString() {
+    long indexLength = 0;
+    for (long length : indexLengths) {
+      indexLength += length;
+    }
+    return "session " + session + ", snapshot " + snapshotLength + " bytes, index " + indexLength + " bytes in "
+        + indexLengths.length + " segments";
+  }
+}
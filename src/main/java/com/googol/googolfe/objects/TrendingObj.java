@@ -0,0 +1,32 @@
+package com.googol.googolfe.objects;
+
+import java.util.ArrayList;
+
+/**
+ * The TrendingObj class represents the top 10 searches of a time window, with the label of the window.
+ */
+public class TrendingObj implements java.io.Serializable {
+   private String window;
+   private ArrayList<Top10Obj> searches;
+
+   public TrendingObj(String window, ArrayList<Top10Obj> searches) {
+      this.window = window;
+      this.searches = searches;
+   }
+
+   public String getWindow() {
+      return window;
+   }
+
+   public void setWindow(String window) {
+      this.window = window;
+   }
+
+   public ArrayList<Top10Obj> getSearches() {
+      return searches;
+   }
+
+   public void setSearches(ArrayList<Top10Obj> searches) {
+      this.searches = searches;
+   }
+}
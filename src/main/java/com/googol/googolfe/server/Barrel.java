@@ -3,18 +3,19 @@ package com.googol.googolfe.server;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
-import java.net.MulticastSocket;
 import java.net.NetworkInterface;
-import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.file.Path;
 import java.rmi.Naming;
 import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
@@ -22,16 +23,54 @@ import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.text.Normalizer;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
 
+import com.googol.googolfe.objects.CollectionStats;
+import com.googol.googolfe.objects.IngestStats;
+import com.googol.googolfe.objects.PageBatch;
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
+import com.googol.googolfe.objects.ShardMatches;
+import com.googol.googolfe.objects.TransferInfo;
+import com.googol.googolfe.server.index.Bm25;
+import com.googol.googolfe.server.index.DocDictionary;
+import com.googol.googolfe.server.index.IndexView;
+import com.googol.googolfe.server.index.InvertedIndex;
+import com.googol.googolfe.server.index.PageRank;
+import com.googol.googolfe.server.index.QueryNode;
+import com.googol.googolfe.server.index.QueryParser;
+import com.googol.googolfe.server.index.SegmentedIndex;
+import com.googol.googolfe.server.index.TopDocs;
+import com.googol.googolfe.server.index.TopKSearcher;
+import com.googol.googolfe.server.ingest.IngestPipeline;
 import com.googol.googolfe.server.interfaces.IBarrel;
+import com.googol.googolfe.server.net.FragmentAssembler;
+import com.googol.googolfe.server.net.HashRing;
+import com.googol.googolfe.server.net.PageCodec;
+import com.googol.googolfe.server.net.PageMessage;
+import com.googol.googolfe.server.net.TermPartitioner;
+import com.googol.googolfe.server.storage.BarrelSnapshot;
+import com.googol.googolfe.server.storage.PageExports;
+import com.googol.googolfe.server.storage.Snapshots;
+import com.googol.googolfe.server.storage.StateTransfer;
+import com.googol.googolfe.server.storage.WriteAheadLog;
 import com.googol.googolfe.server.interfaces.IGatewayBrl;
 
 import java.time.Duration;
@@ -48,13 +87,17 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
      */
     private int id;
     /**
-     * The total searches time of the barrel
+     * The shard of the terms held by the barrel
      */
-    private long totalTime;
+    private int shard;
     /**
-     * The count of searches of the barrel
+     * The total searches time of the barrel, added to by the searches running concurrently
      */
-    private int count;
+    private final LongAdder totalTime;
+    /**
+     * The count of searches of the barrel, added to by the searches running concurrently
+     */
+    private final LongAdder count;
     /**
     * The remote gateway interface used for communication with the gateway.
     */
@@ -64,29 +107,115 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
      */
     private Set<String> stopWords;
     /**
-     * The hashmap used to store the inverted index.
+     * The parser used to compile the search queries into operator trees.
+     */
+    private QueryParser queryParser;
+    /**
+     * The dictionary used to map the urls to the doc IDs used by the other data structures.
      */
-    private HashMap<String, HashSet<String>> invertedIndex;
+    private DocDictionary docs;
+    /**
+     * The inverted index, with the compressed postings of each term, opened when the barrel recovers.
+     */
+    private volatile SegmentedIndex invertedIndex;
     /**
      * The boolean used to check if the barrel is running.
      */
     private boolean running;
     /**
-     * The hashmap used to store the links of each page.
+     * The hashmap used to store the links of each page, as sorted doc IDs.
+     */
+    private HashMap<Integer, int[]> pageLinks;
+    /**
+     * The map used to store the linked pages of each page, as sorted doc IDs, read by the searches while the
+     * ingest updates it. The arrays are replaced instead of modified, so a search always reads a whole one.
+     */
+    private ConcurrentHashMap<Integer, int[]> linkedPage;
+    /**
+     * The PageRank of the pages, used as their query-independent score.
+     */
+    private PageRank pageRank;
+    /**
+     * The boolean used to check if links were ingested since the last PageRank computation.
+     */
+    private volatile boolean linksChanged;
+    /**
+     * The scheduler of the background PageRank computations and checkpoints.
+     */
+    private ScheduledExecutorService backgroundScheduler;
+    /**
+     * The scheduler of the reports of the ingest epoch, apart from the background work so a long PageRank
+     * computation, checkpoint or copy of pages does not delay the invalidation of the cached searches.
+     */
+    private ScheduledExecutorService epochScheduler;
+    /**
+     * The write-ahead log of the documents applied since the last checkpoint.
+     */
+    private WriteAheadLog wal;
+    /**
+     * The lock held while a document is applied, so a checkpoint sees the data between two documents.
+     */
+    private final Object ingestLock = new Object();
+    /**
+     * The number of documents applied since the last checkpoint.
+     */
+    private int documentsSinceCheckpoint;
+
+    /**
+     * The pipeline decoding, applying and logging the messages received.
+     */
+    private IngestPipeline pipeline;
+    /**
+     * The transfers of the state of the barrel to the barrels joining.
      */
-    private HashMap<String, HashSet<String>> pageLinks;
+    private StateTransfer transfers;
     /**
-     * The hashmap used to store the linked pages of each page.
+     * The copies of the pages of some arcs to the barrels that became their owners.
      */
-    private HashMap<String, HashSet<String>> linkedPage;
+    private final PageExports exports;
     /**
-     * The hashmap used to store the title and citation of each page.
+     * The map used to store the title and citation of each page. The sets are replaced, never modified,
+     * so the searches can read them while the ingest runs.
      */
-    private HashMap<String, LinkedHashSet<String>> title_citation;
+    private ConcurrentHashMap<Integer, LinkedHashSet<String>> title_citation;
     /**
-     * The multicast socket used for communication.
+     * The channel receiving the multicast messages of the Downloaders.
      */
-    private MulticastSocket multicastSocket;
+    private DatagramChannel multicastChannel;
+    /**
+     * The number of batches of new pages applied, reported to the Gateway so it drops the results it cached.
+     */
+    private volatile long ingestEpoch;
+    /**
+     * The last ingest epoch reported to the Gateway.
+     */
+    private long reportedEpoch;
+    /**
+     * The ring assigning the pages to the barrels when they are split among them, or null if the barrel
+     * holds every page.
+     */
+    private volatile HashRing ring;
+    /**
+     * The active barrels of the ring, by ID, used to copy the pages the barrel becomes an owner of.
+     */
+    private volatile HashMap<Integer, IBarrel> members;
+    /**
+     * The version of the newest active barrels received from the Gateway.
+     */
+    private final AtomicLong membersVersion = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * The last ring whose arcs the barrel holds all the pages of, or null before the barrel is loaded.
+     * It differs from the ring while the pages of the arcs gained are copied, or after a copy failed.
+     */
+    private volatile HashRing copiedRing;
+
+    /**
+     * The urls of the pages applied from the multicast since the ring changed, while the pages of the arcs
+     * gained are copied, or null when no copy is running. Guarded by the ingest lock.
+     */
+    private Set<String> freshUrls;
+
     /**
     * The IP address of the gateway RMI server.
     */
@@ -107,26 +236,163 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
      */
     private static int MULTICAST_PORT;
 
+    /**
+     * The name of the network interface joining the multicast group, or null to use the first one able to.
+     */
+    private static String MULTICAST_INTERFACE;
+
+    /**
+     * The size in bytes requested for the receive buffer of the multicast channel.
+     */
+    private static int MULTICAST_RECEIVE_BUFFER;
+
+    /**
+     * The maximum number of bytes of fragments kept while waiting for the rest of their messages.
+     */
+    private static long FRAGMENT_BUFFER;
+
+    /**
+     * The number of milliseconds a message split in fragments has to arrive whole.
+     */
+    private static long FRAGMENT_TIMEOUT;
+
+    /**
+     * The number of shards the terms of the index are split in, each listening on its own multicast port.
+     */
+    private static int TERM_SHARDS;
+
+    /**
+     * The number of barrels holding each page when the pages are split among them, or 0 if every barrel
+     * holds every page.
+     */
+    private static int REPLICATION_FACTOR;
+
+    /**
+     * The number of positions of each barrel on the ring assigning the pages.
+     */
+    private static int VIRTUAL_NODES;
+
+    /**
+     * The number of milliseconds between the checks for a new ingest epoch to report to the Gateway.
+     */
+    private static int EPOCH_INTERVAL;
+
+    /**
+     * The maximum number of pages copied in one call when the pages move between barrels.
+     */
+    private static final int REBALANCE_BATCH = 500;
+
+    /**
+     * The maximum number of pages whose terms are rebuilt in one pass when the pages move between barrels.
+     */
+    private static final int REBALANCE_CHUNK = 32 * REBALANCE_BATCH;
+
+    /**
+     * Whether a barrel with no snapshot copies the state of an active barrel before joining.
+     */
+    private static boolean STATE_TRANSFER;
+
+    /**
+     * The number of milliseconds a state transfer is kept open without being read.
+     */
+    private static long TRANSFER_TIMEOUT;
+
+    /**
+     * The maximum size of a UDP packet.
+     */
+    private static final int MAX_PACKET_SIZE = 65507;
+
+    /**
+     * The maximum number of results ranked by a search.
+     */
+    private static int MAX_RESULTS;
+
+    /**
+     * The number of seconds between PageRank computations, skipped when no links were ingested.
+     */
+    private static int PAGERANK_INTERVAL;
+
+    /**
+     * The number of milliseconds between group commits of the write-ahead log.
+     */
+    private static int WAL_SYNC_INTERVAL;
+
+    /**
+     * The number of seconds between checkpoints, skipped when no documents were applied.
+     */
+    private static int CHECKPOINT_INTERVAL;
+
+    /**
+     * The number of index segments of the same size merged together.
+     */
+    private static int MERGE_FACTOR;
+
+    /**
+     * The number of threads decoding the messages received.
+     */
+    private static int INGEST_DECODERS;
+
+    /**
+     * The capacity of the queues between the stages of the ingest pipeline.
+     */
+    private static int INGEST_QUEUE_CAPACITY;
+
+    /**
+     * The maximum number of documents applied in one batch.
+     */
+    private static int INGEST_BATCH_SIZE;
+
+    /**
+     * The weight of the PageRank of a page in its score.
+     */
+    private static final double LINK_WEIGHT = 1.0;
+
+    /**
+     * The links of a page that has none.
+     */
+    private static final int[] NO_LINKS = new int[0];
+
     /**
      * The Barrel constructor is used to create a new barrel.
      * @throws RemoteException if there is an error creating the barrel
      */
     public Barrel() throws RemoteException {
-        invertedIndex = new HashMap<>();
+        docs = new DocDictionary();
         running = true;
         pageLinks = new HashMap<>();
-        linkedPage = new HashMap<>();
-        title_citation = new HashMap<>();
+        linkedPage = new ConcurrentHashMap<>();
+        title_citation = new ConcurrentHashMap<>();
         stopWords = new HashSet<>();
-        this.totalTime = 0;
-        this.count = 0;
+        this.totalTime = new LongAdder();
+        this.count = new LongAdder();
         // Load stop words from file
         loadStopWords("assets/stop_words.txt");
-        // Create the multicast socket
+        queryParser = new QueryParser(stopWords);
+        pageRank = new PageRank(LINK_WEIGHT);
+        exports = new PageExports(TRANSFER_TIMEOUT, REBALANCE_CHUNK);
+        backgroundScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Barrel-background");
+            thread.setDaemon(true);
+            return thread;
+        });
+        epochScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Barrel-epoch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Create the multicast channel, with a receive buffer large enough to absorb bursts of pages
+        // It is bound to the port of the shard of the barrel once its ID is known
         try {
-            multicastSocket = new MulticastSocket(MULTICAST_PORT);
+            multicastChannel = DatagramChannel.open(StandardProtocolFamily.INET)
+                    .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                    .setOption(StandardSocketOptions.SO_RCVBUF, MULTICAST_RECEIVE_BUFFER);
+            int receiveBuffer = multicastChannel.getOption(StandardSocketOptions.SO_RCVBUF);
+            if (receiveBuffer < MULTICAST_RECEIVE_BUFFER) {
+                System.err.println("Multicast receive buffer limited to " + receiveBuffer + " of the "
+                        + MULTICAST_RECEIVE_BUFFER + " bytes requested.");
+            }
         } catch (IOException e) {
-            System.err.println("Error creating multicast socket: " + e.getMessage());
+            System.err.println("Error creating multicast channel: " + e.getMessage());
             System.exit(1);
         }
         // handle SIGINT
@@ -142,7 +408,7 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
     public void send(String s) throws RemoteException {
         if (s.equals("Gateway shutting down.")) {
             running = false;
-            multicastSocket.close();
+            closeMulticastChannel();
             System.out.println("Received shutdown signal from server. Shutting down...");
             try {
                 UnicastRemoteObject.unexportObject(this, true);
@@ -155,94 +421,197 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
     }
 
     /**
-     * The search method is used to search for a given string in the inverted index.
+     * The search method is used to search for a given query in the inverted index.
+     * The query is compiled into an operator tree, supporting OR, -word exclusions, parentheses,
+     * phrases and NEAR/k, which is executed directly over the postings.
+     * The searches are counted by the Gateway, which also answers the ones it has cached.
      */
     @Override
     public String search(String s) throws RemoteException {
-        Instant start = Instant.now();
-        String sep_words_aux[] = s.split(" ");
-        ArrayList<String> sep_words = new ArrayList<>();
-        // Remove punctuation from words and add to sep_words
-        for (String sep_word : sep_words_aux) {
-            sep_word = sep_word.replaceAll("\\p{Punct}", "");
-            if (!isStopWord(sep_word)) {
-                normalizeWord(sep_word);
-                sep_words.add(sep_word);
-
-                // Read top10.dat file and update the search count
-                HashMap<String, Integer> searchCount = readHashMapFromFileTop10("top10.dat");
-                if(searchCount == null){
-                    searchCount = new HashMap<>();
-                }
-                if(!searchCount.containsKey(sep_word)){
-                    searchCount.put(sep_word, 1);
-                }else{
-                    searchCount.put(sep_word, searchCount.get(sep_word) + 1);
-                }
-                // Save the updated search count to top10.dat file
-                saveHashMapToFileTop10(searchCount, "top10.dat");
-            }
-        }
-        
-        // Search for the words in the inverted index, and adds the links with all sep_words to links_search
-        List<String> links_search = new ArrayList<>(), links_search_aux = new ArrayList<>(), linksToRemove = new ArrayList<>();;
-        int words_count = 0;
-        for (String sep_word : sep_words) {
-            for(String key : invertedIndex.keySet()){
-                if(key.equals(sep_word)){
-                    words_count++;
-                    for (String link : invertedIndex.get(sep_word)) {
-                        links_search_aux.add(link);
-                    }
-                    if(!links_search.isEmpty()){
-                        for (String link : links_search) {
-                            if(!links_search_aux.contains(link)){
-                                linksToRemove.add(link);
-                            }
-                        }
-                        links_search.removeAll(linksToRemove);
-                    }else{
-                        links_search.addAll(links_search_aux);
-                    }
-                    links_search_aux.clear();
-                    break;
+        QueryNode query = queryParser.parse(s);
+        TopDocs topDocs = rank(query, MAX_RESULTS, true, null, null);
+        if (topDocs == null) {
+            return "";
+        }
+
+        // Create the string with title, citation and the links, turning the doc IDs back into urls
+        StringBuilder string_links = new StringBuilder();
+        for (int link : topDocs.getDocs()) {
+            LinkedHashSet<String> values = title_citation.get(link);
+            if (values != null) {
+                for (String value : values) {
+                    string_links.append(value).append("\n");
                 }
             }
+            string_links.append(docs.getUrl(link)).append("\n<>");
         }
+        return string_links.toString();
+    }
 
-        // Verify if all words were found in the inverted index
-        if (words_count != sep_words.size()) {
-            return "";
+    /**
+     * The search method is used to get a window of the ranked results of a query.
+     * Only the docs up to the end of the window are ranked, and only the ones in the window are
+     * turned into results. The window is limited to the first search_max_results docs of the ranking.
+     */
+    @Override
+    public SearchPage search(String s, int offset, int limit) throws RemoteException {
+        offset = Math.max(0, Math.min(offset, MAX_RESULTS));
+        limit = Math.max(0, Math.min(limit, MAX_RESULTS - offset));
+        QueryNode query = queryParser.parse(s);
+        TopDocs topDocs = rank(query, offset + limit, true, null, null);
+        ArrayList<Result> results = new ArrayList<>();
+        if (topDocs == null) {
+            return new SearchPage(results, 0, offset, limit);
+        }
+        int[] ranked = topDocs.getDocs();
+        for (int i = offset; i < ranked.length; i++) {
+            results.add(toResult(ranked[i]));
         }
+        return new SearchPage(results, topDocs.getTotalHits(), offset, limit);
+    }
 
-        // Order the links by the number of links that point to them
-        links_search.sort(Comparator.comparingInt(url -> {
-            HashSet<String> values = linkedPage.get(url);
-            return values != null ? values.size() : 0;
-        }).reversed());
-        
-        // Create the string with title, citation and the links
-        String string_links = "";
-        for (String link : links_search) {
-            for (Map.Entry<String, LinkedHashSet<String>> entry : title_citation.entrySet()) {
-                String key = entry.getKey();
-                if (key.equals(link)) {
-                    HashSet<String> values = entry.getValue();
-                    for (String value : values) {
-                        string_links += value + "\n";
-                    }
-                    break;
-                }
-            }
-            string_links += link + "\n<>";
+    /**
+     * The rank method is used to get the k best docs of a compiled query.
+     * @param query operator tree of the query, or null if it has no searchable words
+     * @param k number of docs to rank
+     * @param withLinks whether the PageRank of the docs is added to their score
+     * @param filter docs that can be ranked, or null to rank every doc
+     * @param stats statistics of the whole index the terms are weighed with, or null to use the ones of the barrel
+     * @return best ranked docs, or null if the query has no searchable words
+     */
+    private TopDocs rank(QueryNode query, int k, boolean withLinks, IntPredicate filter, CollectionStats stats) {
+        Instant start = Instant.now();
+        SegmentedIndex index = invertedIndex;
+        if (query == null || index == null) {
+            return null;
         }
+        // The whole search reads one version of the index, published atomically by the ingest
+        IndexView view = index.view();
+
+        // Rank the matches of the operator tree, only scoring the docs that can reach the top results
+        PageRank.Scores linkScores = pageRank.scores();
+        Bm25 bm25 = stats != null ? toBm25(stats) : new Bm25(view);
+        TopDocs topDocs = withLinks
+                ? TopKSearcher.search(view, query, filter, k, linkScores::get, linkScores.max(), bm25)
+                : TopKSearcher.search(view, query, filter, k, doc -> 0, 0, bm25);
+
         Instant end = Instant.now();
         Duration timeElapsed = Duration.between(start, end);
         long timeElapsedNanos = timeElapsed.toNanos();
 
-        totalTime += timeElapsedNanos;
-        count++;
-        return string_links;
+        totalTime.add(timeElapsedNanos);
+        count.increment();
+        return topDocs;
+    }
+
+    /**
+     * The searchShard method is used to get the best docs matching all the given terms, which belong to the
+     * shard of the barrel, scored without their PageRank so the Gateway can add the scores of other shards.
+     */
+    @Override
+    public ShardMatches searchShard(ArrayList<String> terms, int limit) throws RemoteException {
+        return toMatches(rank(queryParser.parse(String.join(" ", terms)), Math.max(0, limit), false, null, null));
+    }
+
+    /**
+     * The collectionStats method is used to get the statistics of the pages of the barrel for the terms of a query,
+     * which the Gateway adds up over the partitions. The document frequencies are upper bounds, read without
+     * building the postings.
+     */
+    @Override
+    public CollectionStats collectionStats(String s) throws RemoteException {
+        QueryNode query = queryParser.parse(s);
+        SegmentedIndex index = invertedIndex;
+        if (query == null || index == null) {
+            return new CollectionStats(0, 0, new String[0], new int[0]);
+        }
+        IndexView view = index.view();
+        List<String> terms = new ArrayList<>();
+        query.collectTerms(terms);
+        String[] distinct = new LinkedHashSet<>(terms).toArray(new String[0]);
+        int[] frequencies = new int[distinct.length];
+        for (int i = 0; i < distinct.length; i++) {
+            frequencies[i] = view.documentFrequency(distinct[i]);
+        }
+        return new CollectionStats(view.documentCount(), view.totalLength(), distinct, frequencies);
+    }
+
+    /**
+     * The searchPartition method is used to get the best docs matching a query among the pages of some arcs
+     * of the ring, scored without their PageRank so the Gateway can rank the matches of every partition.
+     * The terms are weighed with the statistics of the whole index sent by the Gateway, so the scores of
+     * every partition are comparable.
+     * The pages the barrel still holds from arcs it no longer owns are left out, since the Gateway asks
+     * their owners for them.
+     */
+    @Override
+    public ShardMatches searchPartition(String s, long[] ranges, int limit, CollectionStats stats) throws RemoteException {
+        return toMatches(rank(queryParser.parse(s), Math.max(0, limit), false,
+                doc -> HashRing.inRanges(HashRing.hash(docs.getUrl(doc)), ranges), stats));
+    }
+
+    /**
+     * The toBm25 method is used to build the scoring formula of the statistics of the whole index.
+     * @param stats statistics of the whole index for the terms of the query
+     * @return scoring formula weighing the terms with the statistics
+     */
+    private static Bm25 toBm25(CollectionStats stats) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (int i = 0; i < stats.getTerms().length; i++) {
+            frequencies.put(stats.getTerms()[i], stats.getDocumentFrequencies()[i]);
+        }
+        double averageLength = stats.getDocumentCount() > 0 ? (double) stats.getTotalLength() / stats.getDocumentCount() : 0;
+        return new Bm25(stats.getDocumentCount(), averageLength, frequencies);
+    }
+
+    /**
+     * The toMatches method is used to send the best docs of a search to the Gateway with their PageRank apart.
+     * @param topDocs best ranked docs, or null if the query has no searchable words
+     * @return urls of the docs with their scores and PageRank
+     */
+    private ShardMatches toMatches(TopDocs topDocs) {
+        if (topDocs == null) {
+            return new ShardMatches(new String[0], new double[0], new double[0], 0);
+        }
+        PageRank.Scores linkScores = pageRank.scores();
+        int[] ranked = topDocs.getDocs();
+        String[] urls = new String[ranked.length];
+        double[] priors = new double[ranked.length];
+        for (int i = 0; i < ranked.length; i++) {
+            urls[i] = docs.getUrl(ranked[i]);
+            priors[i] = linkScores.get(ranked[i]);
+        }
+        return new ShardMatches(urls, topDocs.getScores(), priors, topDocs.getTotalHits());
+    }
+
+    /**
+     * The describe method is used to get the title and citation of pages ranked by the Gateway.
+     */
+    @Override
+    public ArrayList<Result> describe(ArrayList<String> urls) throws RemoteException {
+        ArrayList<Result> results = new ArrayList<>();
+        for (String url : urls) {
+            int doc = docs.getId(url);
+            results.add(doc != -1 ? toResult(doc) : new Result(url, "", url));
+        }
+        return results;
+    }
+
+    /**
+     * The toResult method is used to build the search result of a doc from its title and citation.
+     * @param doc doc ID of the page
+     * @return result with the title, citation and url of the page
+     */
+    private Result toResult(int doc) {
+        String url = docs.getUrl(doc);
+        LinkedHashSet<String> values = title_citation.get(doc);
+        if (values == null || values.isEmpty()) {
+            return new Result(url, "", url);
+        }
+        Iterator<String> info = values.iterator();
+        String title = info.next();
+        String citation = info.hasNext() ? info.next() : "";
+        return new Result(title, citation, url);
     }
 
     /**
@@ -250,46 +619,125 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
      */
     @Override
     public String findSubLinks(String s) throws RemoteException {
-        HashSet<String> links = linkedPage.get(s);
+        int doc = docs.getId(s);
+        int[] links = doc != -1 ? linkedPage.get(doc) : null;
         String string_links = "";
         if (links != null) {
-            for (String link : links) {
-                string_links += link + "\n";
+            for (int link : links) {
+                string_links += docs.getUrl(link) + "\n";
             }
         }
         return string_links;
     }
 
     /**
-     * The getTop10Searches method is used to get the top 10 searches.
+     * The getId method is used to get the id of the barrel.
      */
     @Override
-    public String getTop10Searches() throws RemoteException {
-        // If file does not exist, return empty string
-        File top10File = new File("assets/top10.dat");
-        if (!top10File.exists()) {
-            return "";
+    public int getId() throws RemoteException {
+        return id;
+    }
+
+    /**
+     * The getIngestStats method is used to get the counters and queue depths of the ingest pipeline.
+     */
+    @Override
+    public IngestStats getIngestStats() throws RemoteException {
+        return pipeline != null ? pipeline.getStats() : new IngestStats(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * The openTransfer method is used to open a transfer of the state of the barrel to a barrel joining.
+     * The snapshot is serialized under the ingest lock together with the view of the index, so both hold
+     * the same documents; the index is exported after releasing the lock.
+     */
+    @Override
+    public TransferInfo openTransfer() throws RemoteException {
+        SegmentedIndex index = invertedIndex;
+        if (index == null || transfers == null) {
+            throw new RemoteException("Barrel " + id + " is not ready to transfer its state.");
         }
-        
-        String string_links = "";
-        HashMap<String, Integer> searchCount = readHashMapFromFileTop10("top10.dat");
-        List<Map.Entry<String, Integer>> entryList = new ArrayList<>(searchCount.entrySet());
-        Comparator<Map.Entry<String, Integer>> comparator = Comparator.comparingInt(Map.Entry::getValue);
+        byte[] snapshot;
+        IndexView view;
+        try {
+            synchronized (ingestLock) {
+                view = index.view();
+                snapshot = Snapshots.serialize(new BarrelSnapshot(docs, pageLinks, linkedPage, title_citation, 0));
+            }
+            TransferInfo info = transfers.open(snapshot, view);
+            System.out.println("Barrel " + id + " opened state transfer: " + info);
+            return info;
+        } catch (IOException e) {
+            throw new RemoteException("Barrel " + id + " failed to open a state transfer", e);
+        }
+    }
 
-        // Sort the entryList by the number of searches
-        entryList.sort(comparator.reversed());
-        for (int i = 0; i < entryList.size(); i++) {
-            string_links += entryList.get(i).getKey() + " - " + entryList.get(i).getValue() + "\n";
+    /**
+     * The readTransfer method is used to read a chunk of a state transfer.
+     */
+    @Override
+    public byte[] readTransfer(long session, int part, long offset, int length) throws RemoteException {
+        try {
+            return transfers.read(session, part, offset, length);
+        } catch (IOException e) {
+            throw new RemoteException("Barrel " + id + " failed to read a state transfer", e);
         }
-        return string_links;
     }
 
     /**
-     * The getId method is used to get the id of the barrel.
+     * The closeTransfer method is used to close a state transfer.
      */
     @Override
-    public int getId() throws RemoteException {
-        return id;
+    public void closeTransfer(long session) throws RemoteException {
+        transfers.close(session);
+    }
+
+    /**
+     * The setMembers method is used to update the ring when a barrel joins or leaves.
+     * The pages of the arcs the barrel became an owner of are copied in the background, so the Gateway
+     * is not kept waiting. The active barrels older than the newest ones received are ignored.
+     */
+    @Override
+    public void setMembers(long version, HashMap<Integer, IBarrel> members) throws RemoteException {
+        if (partitioned() && membersVersion.getAndAccumulate(version, Math::max) < version) {
+            backgroundScheduler.execute(() -> {
+                // A newer version received meanwhile replaces this one
+                if (membersVersion.get() == version) {
+                    changeMembers(members);
+                }
+            });
+        }
+    }
+
+    /**
+     * The exportPages method is used to rebuild a batch of the pages of some arcs of the ring from the index,
+     * for a barrel that became one of their owners. The pages of the arcs are selected once per copy, and
+     * their terms rebuilt for many batches at a time.
+     * The terms of the pages of other shards are not in the index, so they are sent as gaps.
+     */
+    @Override
+    public PageBatch exportPages(long[] ranges, int fromDoc, int max) throws RemoteException {
+        SegmentedIndex index = invertedIndex;
+        if (index == null) {
+            throw new RemoteException("Barrel " + id + " is not ready to export its pages.");
+        }
+        PageExports.Batch batch = exports.next(index.view(), docs::getUrl, ranges, fromDoc, max);
+        List<PageMessage> pages = new ArrayList<>(batch.getDocs().length);
+        for (int page : batch.getDocs()) {
+            Iterator<String> info = title_citation.getOrDefault(page, new LinkedHashSet<>()).iterator();
+            String title = info.hasNext() ? info.next() : "";
+            String citation = info.hasNext() ? info.next() : title;
+            int[] outlinks;
+            synchronized (pageLinks) {
+                outlinks = pageLinks.getOrDefault(page, NO_LINKS);
+            }
+            String[] links = new String[outlinks.length];
+            for (int i = 0; i < outlinks.length; i++) {
+                links[i] = docs.getUrl(outlinks[i]);
+            }
+            pages.add(new PageMessage(docs.getUrl(page), title, citation, batch.getTerms(page), links));
+        }
+        return new PageBatch(PageCodec.encode(pages), batch.getNextDoc());
     }
 
     /**
@@ -297,10 +745,11 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
      */
     @Override
     public double getAverageTime() throws RemoteException {
-        if (count == 0) {
+        long searches = count.sum();
+        if (searches == 0) {
             return 0;
         }
-        return (totalTime / 1_000_000.0) / count;
+        return (totalTime.sum() / 1_000_000.0) / searches;
     }
 
     /**
@@ -322,17 +771,20 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
             System.exit(1);
         }
 
-        // Add the barrel to the Gateway
+        // Reserve the ID of the barrel, which is only added to the Gateway once its data is loaded
         try {
             synchronized (gw) {
-                id = gw.AddBrl(this);
+                id = gw.reserveBrlId();
             }
-            System.out.println("Barrel " + id + " bound to Gateway.");
+            shard = TermPartitioner.shardOf(id, TERM_SHARDS);
         } catch (RemoteException e) {
             System.out.println("Error adding barrel to Gateway: " + e.getMessage());
             return;
         }
 
+        // Rank the pages in the background as links are ingested
+        backgroundScheduler.scheduleWithFixedDelay(this::refreshPageRank, PAGERANK_INTERVAL, PAGERANK_INTERVAL, TimeUnit.SECONDS);
+
         // Listen for multicast messages
         listenForMulticastMessages();
 
@@ -343,274 +795,794 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
      */
     private void listenForMulticastMessages() {
         try {
-            // Join the multicast group
+            transfers = new StateTransfer("assets", "Barrel" + id, TRANSFER_TIMEOUT, SegmentedIndex.MAX_SEGMENT_BYTES);
+            wal = new WriteAheadLog("assets", "Barrel" + id, WAL_SYNC_INTERVAL);
+
+            // A barrel with no snapshot copies the state of an active one, so it does not wait for a new crawl
+            // The log is rolled first, so every message received from now on is replayed on top of the copy
+            List<IBarrel> peers = new ArrayList<>();
+            if (STATE_TRANSFER && !partitioned() && !new File(snapshotPath()).exists()) {
+                peers = replicas(gw.getBrls());
+            }
+            long transferSegment = peers.isEmpty() ? -1 : wal.roll();
+
+            // Join the multicast group, on the port of the shard of the barrel
             InetAddress group = InetAddress.getByName(MULTICAST_ADDR);
-            multicastSocket.joinGroup(new InetSocketAddress(group, MULTICAST_PORT), NetworkInterface.getByIndex(0));
+            multicastChannel.bind(new InetSocketAddress(MULTICAST_PORT + shard));
+            multicastChannel.join(group, multicastInterface());
+
+            // Decode, apply and log the messages on other threads, so this one only reads the socket
+            // Until the barrel has loaded its data, the messages are only logged, to be replayed by the recovery
+            pipeline = new IngestPipeline("Barrel" + id, INGEST_DECODERS, INGEST_QUEUE_CAPACITY, INGEST_BATCH_SIZE,
+                    new FragmentAssembler(FRAGMENT_BUFFER, FRAGMENT_TIMEOUT), PageCodec::decode, this::applyBatch, this::persistBatch);
+            pipeline.hold();
+            pipeline.start();
+
+            // Load the data on another thread while this one receives the messages
+            List<IBarrel> sources = peers;
+            Thread loader = new Thread(() -> load(sources, transferSegment), "Barrel" + id + "-load");
+            loader.setDaemon(true);
+            loader.start();
 
             System.out.println("Barrel " + id + " listening for multicast messages...");
 
-            // Load the inverted index and linked pages from files
-            if (readHashMapFromFile("Barrel" + id + "index.dat") != null) {
-                invertedIndex = readHashMapFromFile("Barrel" + id + "index.dat");
+            // Listen for multicast messages, always into the same buffer outside the heap
+            // Each message is copied once, to an array of its size, which the pipeline decodes and logs
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+            while (running) {
+                buffer.clear();
+                try {
+                    multicastChannel.receive(buffer);
+                } catch (ClosedChannelException e) {
+                    return;
+                }
+                buffer.flip();
+                byte[] payload = new byte[buffer.remaining()];
+                buffer.get(payload);
+                pipeline.submit(payload);
             }
-            if (readHashMapFromFile("Barrel" + id + "linkedPage.dat") != null) {
-                linkedPage = readHashMapFromFile("Barrel" + id + "linkedPage.dat");
+        } catch (Exception e) {
+            crashed();
+        }
+    }
+
+    /**
+     * The load method is used to load the data of the barrel while the messages received are logged, and then
+     * add the barrel to the Gateway.
+     * The state of a peer is copied first if there are peers to copy from. The newest snapshot is then loaded
+     * and the write-ahead log replayed, including the messages logged while loading, before the pipeline
+     * starts applying the new ones, so the barrel only answers searches once it is up to date.
+     * @param peers active barrels to copy the state from, in no particular order, or none to only recover
+     * @param segment first write-ahead log segment written after the log was rolled for the copy
+     */
+    private void load(List<IBarrel> peers, long segment) {
+        try {
+            if (!peers.isEmpty()) {
+                transferState(peers, segment);
+            }
+            // When the pages are split, only the pages of the arcs of the barrel are applied from now on
+            HashMap<Integer, IBarrel> active = new HashMap<>();
+            if (partitioned()) {
+                for (IBarrel barrel : gw.getBrls()) {
+                    try {
+                        active.put(barrel.getId(), barrel);
+                    } catch (RemoteException e) {
+                    }
+                }
+                members = active;
+                synchronized (ingestLock) {
+                    freshUrls = new HashSet<>();
+                    ring = ring(active);
+                }
+            }
+            IOException[] failure = new IOException[1];
+            pipeline.startApplying(() -> {
+                try {
+                    recover();
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            // Copy the pages of the arcs the barrel takes from the active barrels before answering searches
+            if (partitioned()) {
+                HashMap<Integer, IBarrel> others = new HashMap<>(active);
+                others.remove(id);
+                HashRing previous = new HashRing(others.keySet(), REPLICATION_FACTOR, VIRTUAL_NODES);
+                try {
+                    // A failed copy is tried again when the Gateway sends the active barrels
+                    copiedRing = rebalance(previous, ring, active) ? ring : previous;
+                } finally {
+                    synchronized (ingestLock) {
+                        freshUrls = null;
+                    }
+                }
             }
-            if (readTitleCitationFromFile("Barrel" + id + "title_citation.dat") != null) {
-                title_citation = readTitleCitationFromFile("Barrel" + id + "title_citation.dat");
+            backgroundScheduler.scheduleWithFixedDelay(this::checkpoint, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL, TimeUnit.SECONDS);
+
+            // Add the barrel to the Gateway
+            synchronized (gw) {
+                gw.AddBrl(this, id);
             }
+            System.out.println("Barrel " + id + " bound to Gateway.");
+            epochScheduler.scheduleWithFixedDelay(this::reportEpoch, EPOCH_INTERVAL, EPOCH_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            System.out.println("Error loading barrel " + id + ": " + e.getMessage());
+            running = false;
+            closeMulticastChannel();
+            crashed();
+        }
+    }
 
-            // Listen for multicast messages
-            while (running) {
-                byte[] buffer = new byte[65507];  // Maximum size of a UDP packet
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                
+    /**
+     * The transferState method is used to replace the data of the barrel by a copy of the state of a peer.
+     * The peers are tried in turn until one copy succeeds. The old snapshot is deleted before the index is
+     * installed, so a crash in between leaves no snapshot and the next start copies the state again.
+     * @param peers active barrels to copy the state from
+     * @param segment first write-ahead log segment to replay on top of the copy
+     * @return true if the state of a peer was copied, false if the barrel keeps its own data
+     */
+    private boolean transferState(List<IBarrel> peers, long segment) {
+        Path snapshotCopy = new File("assets/Barrel" + id + "transfer-snapshot.dat").toPath();
+        IntFunction<Path> indexCopy = i -> new File("assets/Barrel" + id + "transfer-index-" + i + ".idx").toPath();
+        List<Path> copied = new ArrayList<>();
+        Collections.shuffle(peers);
+        try {
+            for (IBarrel peer : peers) {
                 try {
-                    multicastSocket.receive(packet);
-                } catch (SocketException e) {
-                    return;
+                    long start = System.nanoTime();
+                    copied = StateTransfer.fetch(peer, snapshotCopy, indexCopy);
+                    BarrelSnapshot state = Snapshots.read(snapshotCopy.toString(), BarrelSnapshot.class);
+                    if (state == null) {
+                        throw new IOException("Invalid snapshot");
+                    }
+                    new File(snapshotPath()).delete();
+                    SegmentedIndex.install("assets", "Barrel" + id, copied);
+                    Snapshots.write(snapshotPath(), Snapshots.serialize(new BarrelSnapshot(state.getDocs(),
+                            state.getPageLinks(), state.getLinkedPage(), state.getTitleCitation(), segment)));
+                    wal.deleteBefore(segment);
+                    System.out.println("Barrel " + id + " copied the state of barrel " + peer.getId() + " ("
+                            + copied.size() + " index segments) in " + (System.nanoTime() - start) / 1000000 + " ms");
+                    return true;
+                } catch (IOException e) {
+                    System.err.println("Barrel " + id + " failed to copy the state of a barrel: " + e.getMessage());
                 }
+            }
+            return false;
+        } finally {
+            snapshotCopy.toFile().delete();
+            for (Path path : copied) {
+                path.toFile().delete();
+            }
+        }
+    }
 
-                String message = new String(packet.getData(), 0, packet.getLength());
-                //System.out.println("Barrel " + id + " received message from " + packet.getAddress().getHostAddress() + ": " + message);
-                //System.out.println(message);
-                // Process the message dividing it into parts
-                String[] parts = message.split("\n");
-                String url = parts[0].replace("URL: ", "");
-                String title = parts[1].replace("Title: ", "");
-                String citation = parts[2].replace("Citation: ", "");
-                String keywordsString = parts[3].replace("Keywords: ", "").replace("[", "").replace("]", "");
-                String linksString = parts[4].replace("Links: ", "").replace("[", "").replace("]", "");
-
-                // Add the information to title_citation
-                LinkedHashSet<String> info = title_citation.get(url);
-                if (info == null) {
-                    info = new LinkedHashSet<String>();
-                    title_citation.put(url, info);
+    /**
+     * The replicas method is used to get the barrels holding the same shard of the terms as this one.
+     * @param barrels active barrels
+     * @return barrels of the same shard, leaving out the ones that cannot be reached
+     */
+    private List<IBarrel> replicas(List<IBarrel> barrels) {
+        List<IBarrel> replicas = new ArrayList<>();
+        for (IBarrel barrel : barrels) {
+            try {
+                if (TermPartitioner.shardOf(barrel.getId(), TERM_SHARDS) == shard) {
+                    replicas.add(barrel);
                 }
-                info.add(title);
-                info.add(citation);
+            } catch (RemoteException e) {
+            }
+        }
+        return replicas;
+    }
 
-                // Add the keywords to the inverted index
-                String[] keywords = keywordsString.split(", ");
-                for (String keyword : keywords) {
-                    addToIndex(keyword, url);
+    /**
+     * The partitioned method is used to check if the pages are split among the barrels by a ring.
+     * Splitting the pages is only used when the terms are not split in shards.
+     * @return true if each barrel only holds the pages of its arcs, false if it holds every page
+     */
+    private static boolean partitioned() {
+        return REPLICATION_FACTOR > 0 && TERM_SHARDS == 1;
+    }
+
+    /**
+     * The ring method is used to build the ring of the active barrels, always including this one.
+     * @param active active barrels, by ID
+     * @return ring assigning the pages to the barrels
+     */
+    private HashRing ring(Map<Integer, IBarrel> active) {
+        Set<Integer> ids = new HashSet<>(active.keySet());
+        ids.add(id);
+        return new HashRing(ids, REPLICATION_FACTOR, VIRTUAL_NODES);
+    }
+
+    /**
+     * The owns method is used to check if a page received is applied by the barrel.
+     * @param page page received or replayed
+     * @return true if the barrel holds every page or is one of the owners of the page, false otherwise
+     */
+    private boolean owns(PageMessage page) {
+        HashRing current = ring;
+        return current == null || current.owns(id, page.getUrl());
+    }
+
+    /**
+     * The changeMembers method is used to replace the ring by the ring of the active barrels and copy the
+     * pages of the arcs the barrel became an owner of, since the last ring whose pages it holds. Once they
+     * are copied, the barrel reports it to the Gateway, which only then asks it for those arcs.
+     * It runs on the background thread, one change at a time.
+     * @param active active barrels, by ID
+     */
+    private void changeMembers(HashMap<Integer, IBarrel> active) {
+        HashRing previous = copiedRing;
+        HashRing next = ring(active);
+        members = active;
+        if (previous == null) {
+            return;
+        }
+        if (!previous.getMembers().equals(next.getMembers())) {
+            // The new ring is used first, so the pages received while copying are applied, and remembered so
+            // the older versions copied from the previous owners do not replace them
+            synchronized (ingestLock) {
+                freshUrls = new HashSet<>();
+                ring = next;
+            }
+            try {
+                if (!rebalance(previous, next, active)) {
+                    return;
+                }
+            } finally {
+                synchronized (ingestLock) {
+                    freshUrls = null;
                 }
+            }
+            copiedRing = next;
+        }
+        try {
+            gw.partitionReady(id, new ArrayList<>(next.getMembers()));
+        } catch (RemoteException e) {
+            System.err.println("Barrel " + id + " failed to report its pages copied: " + e.getMessage());
+        }
+    }
 
-                // Add the links to the pageLinks
-                String[] links = linksString.split(", ");
-                for (String link : links) {
-                    addToUrls(url, link);
+    /**
+     * The rebalance method is used to copy the pages of the arcs the barrel owns in the new ring but did not
+     * own in the previous one, from a barrel that owned them and is still active.
+     * The boundaries of both rings split the ring in arcs whose owners are the same in each ring. The arcs
+     * with the same previous owners are copied together, trying those owners in random order.
+     * The pages of the arcs the barrel no longer owns are kept, but the Gateway asks their owners for them.
+     * @param previous ring before the change
+     * @param next ring after the change
+     * @param active active barrels, by ID
+     * @return true if the pages of every arc gained were copied or have no active owner to copy them from,
+     * false if a copy failed
+     */
+    private boolean rebalance(HashRing previous, HashRing next, Map<Integer, IBarrel> active) {
+        long[] boundaries = HashRing.boundaries(previous, next);
+        Map<List<Integer>, List<Long>> gained = new HashMap<>();
+        int orphaned = 0;
+        for (int i = 0; i < boundaries.length; i++) {
+            long start = boundaries[(i + boundaries.length - 1) % boundaries.length];
+            long end = boundaries[i];
+            List<Integer> sources = new ArrayList<>();
+            boolean owned = false;
+            for (int owner : previous.owners(end)) {
+                owned |= owner == id;
+                if (owner != id && active.containsKey(owner)) {
+                    sources.add(owner);
                 }
+            }
+            boolean owner = false;
+            for (int candidate : next.owners(end)) {
+                owner |= candidate == id;
+            }
+            if (!owner || owned || previous.isEmpty()) {
+                continue;
+            }
+            if (sources.isEmpty()) {
+                orphaned++;
+                continue;
+            }
+            List<Long> ranges = gained.computeIfAbsent(sources, s -> new ArrayList<>());
+            if (!ranges.isEmpty() && ranges.get(ranges.size() - 1) == start) {
+                ranges.set(ranges.size() - 1, end);
+            } else {
+                ranges.add(start);
+                ranges.add(end);
+            }
+        }
+        if (orphaned > 0) {
+            System.err.println("Barrel " + id + " has no active barrel to copy " + orphaned
+                    + " arcs from, their pages wait for a new crawl.");
+        }
+        boolean complete = true;
+        for (Map.Entry<List<Integer>, List<Long>> entry : gained.entrySet()) {
+            long[] ranges = new long[entry.getValue().size()];
+            for (int i = 0; i < ranges.length; i++) {
+                ranges[i] = entry.getValue().get(i);
+            }
+            List<Integer> sources = new ArrayList<>(entry.getKey());
+            Collections.shuffle(sources);
+            boolean copied = false;
+            for (int i = 0; i < sources.size() && !copied; i++) {
+                copied = copyPages(active.get(sources.get(i)), sources.get(i), ranges);
+            }
+            if (!copied) {
+                System.err.println("Barrel " + id + " failed to copy the pages of " + ranges.length / 2 + " arcs.");
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * The copyPages method is used to copy the pages of some arcs from another barrel, batch by batch.
+     * Each batch is applied and logged, so it is replayed after a crash.
+     * @param source barrel holding the pages
+     * @param sourceId ID of the barrel holding the pages
+     * @param ranges start and end of each arc
+     * @return true if every batch was copied, false if the barrel could not be reached
+     */
+    private boolean copyPages(IBarrel source, int sourceId, long[] ranges) {
+        long start = System.nanoTime();
+        int copied = 0;
+        try {
+            int from = 0;
+            while (from >= 0 && running) {
+                PageBatch batch = source.exportPages(ranges, from, REBALANCE_BATCH);
+                copied += applyCopied(PageCodec.decode(batch.getFrame()));
+                from = batch.getNextDoc();
+            }
+            System.out.println("Barrel " + id + " copied " + copied + " pages from barrel " + sourceId + " in "
+                    + (System.nanoTime() - start) / 1000000 + " ms");
+            return true;
+        } catch (RemoteException e) {
+            System.err.println("Barrel " + id + " failed to copy pages from barrel " + sourceId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * The crashed method is used to remove the barrel from the Gateway after an error it cannot recover from.
+     */
+    private void crashed() {
+        try {
+            System.out.println("Barrel " + id + " crashed.");
+            gw.rmvBrl(this, id);
+            gw.BrlMessage("Barrel " + id + " crashed.");
+        } catch (RemoteException e1) {
+            System.out.println("Error removing barrel from Gateway.");
+        }
+    }
 
-                // Add the linked pages to the linkedPage
-                addToLinkedPage(url);
+    /**
+     * The snapshotPath method is used to get the path of the snapshot of the barrel.
+     * @return path of the snapshot file
+     */
+    private String snapshotPath() {
+        return "assets/Barrel" + id + "snapshot.dat";
+    }
 
-                // Save the inverted index and linked pages to files
-                saveHashMapToFile(invertedIndex, "Barrel" + id + "index.dat");
-                saveHashMapToFile(linkedPage, "Barrel" + id + "linkedPage.dat");
-                saveTitleCitationToFile(title_citation, "Barrel" + id + "title_citation.dat");
+    /**
+     * The multicastInterface method is used to choose the network interface joining the multicast group.
+     * @return interface named in the configuration, or the first interface up that supports multicast,
+     * preferring one that is not the loopback
+     * @throws IOException if the interfaces cannot be listed or the configured one does not exist
+     */
+    private static NetworkInterface multicastInterface() throws IOException {
+        if (MULTICAST_INTERFACE != null && !MULTICAST_INTERFACE.isBlank()) {
+            NetworkInterface configured = NetworkInterface.getByName(MULTICAST_INTERFACE.trim());
+            if (configured == null) {
+                throw new IOException("Unknown network interface " + MULTICAST_INTERFACE);
             }
-        } catch (Exception e) {
-            try {
-                System.out.println("Barrel " + id + " crashed.");
-                gw.rmvBrl(this, id);
-                gw.BrlMessage("Barrel " + id + " crashed.");
-            } catch (RemoteException e1) {
-                System.out.println("Error removing barrel from Gateway.");
+            return configured;
+        }
+        NetworkInterface loopback = null;
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (candidate.isUp() && candidate.supportsMulticast()) {
+                if (!candidate.isLoopback()) {
+                    return candidate;
+                }
+                loopback = candidate;
             }
         }
+        if (loopback == null) {
+            throw new IOException("No network interface supports multicast");
+        }
+        return loopback;
     }
 
     /**
-     * The saveHashMapToFile method is used to save a hashmap to a file.
-     * @param hashMap hashmap to save
-     * @param filename name of the file to save
+     * The closeMulticastChannel method is used to close the multicast channel, which stops the receive loop.
      */
-    private static void saveHashMapToFile(HashMap<String, HashSet<String>> hashMap, String filename) {
-        synchronized (getLockObject(filename)) {
+    private void closeMulticastChannel() {
+        if (multicastChannel != null) {
             try {
-                FileOutputStream fileOut = new FileOutputStream("assets/" + filename);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
-                objectOut.writeObject(hashMap);
-                objectOut.close();
-            } catch (Exception ex) {
-                //System.out.println("Error writing file: " + ex.getMessage());
-                return;
+                multicastChannel.close();
+            } catch (IOException e) {
             }
         }
     }
 
     /**
-     * The readHashMapFromFile method is used to read a hashmap from a file.
-     * @param filename name of the file to read
-     * @return hashmap read from file
+     * The applyBatch method is used by the ingest pipeline to add a batch of decoded pages to the barrel.
+     * The batch is applied under the ingest lock and published to the searches once, as a single segment.
+     * When the pages are split among the barrels, the pages of other barrels are skipped.
+     * @param batch pages decoded from the messages received, in the order they were received
      */
-    private static HashMap<String, HashSet<String>> readHashMapFromFile(String filename) {
-        synchronized (getLockObject(filename)) {
-            File file = new File("assets/" + filename);
-            // If file does not exist, return null
-            if (!file.exists()) {
-                return null;
+    private void applyBatch(List<PageMessage> batch) {
+        synchronized (ingestLock) {
+            boolean applied = false;
+            for (PageMessage page : batch) {
+                if (owns(page) && applySafely(page)) {
+                    applied = true;
+                    if (freshUrls != null) {
+                        freshUrls.add(page.getUrl());
+                    }
+                }
             }
-            try {
-                FileInputStream fileIn = new FileInputStream(file);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn);
-                @SuppressWarnings("unchecked")
-                HashMap<String, HashSet<String>> hashMap = (HashMap<String, HashSet<String>>) objectIn.readObject();
-                objectIn.close();
-                return hashMap;
-            } catch (Exception ex) {
-                //ex.printStackTrace(); //Ver o erro
-                return null;
+            if (applied) {
+                ingestEpoch++;
             }
+            documentsSinceCheckpoint += batch.size();
+            invertedIndex.publish();
         }
     }
 
     /**
-     * The saveTitleCitationToFile method is used to save the title and citation hashmap to a file.
-     * @param hashMap hashmap to save
-     * @param filename name of the file to save
+     * The applyCopied method is used to add a batch of pages copied from a previous owner of their arcs.
+     * A page applied from the multicast since the ring changed is newer than its copy, so the copy is skipped.
+     * The pages applied are logged under the ingest lock, so a newer message of the same page, applied
+     * afterwards, is also logged afterwards and wins again in the replay.
+     * @param pages pages exported by the other barrel
+     * @return number of pages applied
      */
-    private static void saveTitleCitationToFile(HashMap<String, LinkedHashSet<String>> hashMap, String filename) {
-        synchronized (getLockObject(filename)) {
-            try {
-                FileOutputStream fileOut = new FileOutputStream("assets/" + filename);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
-                objectOut.writeObject(hashMap);
-                objectOut.close();
-            } catch (IOException ex) {
-                return;
-                //System.out.println("Error writing file: " + ex.getMessage());
+    private int applyCopied(List<PageMessage> pages) {
+        synchronized (ingestLock) {
+            List<PageMessage> copies = new ArrayList<>(pages.size());
+            for (PageMessage page : pages) {
+                if (owns(page) && (freshUrls == null || !freshUrls.contains(page.getUrl())) && applySafely(page)) {
+                    copies.add(page);
+                }
             }
+            if (!copies.isEmpty()) {
+                ingestEpoch++;
+                documentsSinceCheckpoint += copies.size();
+                invertedIndex.publish();
+                wal.append(PageCodec.encode(copies));
+            }
+            return copies.size();
+        }
+    }
+
+    /**
+     * The persistBatch method is used by the ingest pipeline to log the messages of a batch of applied pages.
+     * Messages are only logged once applied, so a malformed message is never replayed, and the log is synced
+     * to disk by the group commit.
+     * A checkpoint can run between the apply and the log of a batch, in which case the batch is both in the
+     * snapshot and after it in the log; replaying it on top of the snapshot leaves the barrel unchanged.
+     * @param batch messages applied, in the order they were applied
+     */
+    private void persistBatch(List<byte[]> batch) {
+        for (byte[] payload : batch) {
+            wal.append(payload);
         }
     }
 
     /**
-     * The readTitleCitationFromFile method is used to read the title and citation hashmap from a file.
-     * @param hashMap
-     * @param filename
+     * The applySafely method is used to add a page to the barrel, skipping it if it cannot be applied,
+     * so one bad page neither aborts the rest of its batch nor the replay of the write-ahead log.
+     * @param page page with the url, title, citation, keywords and links
+     * @return true if the page was applied, false if it was skipped
      */
+    private boolean applySafely(PageMessage page) {
+        try {
+            applyDocument(page);
+            return true;
+        } catch (RuntimeException e) {
+            System.err.println("Barrel " + id + " failed to apply the page " + page.getUrl() + ": " + e);
+            return false;
+        }
+    }
+
+    /**
+     * The applyDocument method is used to add a page received from a Downloader to the barrel.
+     * It is used both for the messages received and for the ones replayed from the write-ahead log.
+     * @param page page with the url, title, citation, keywords and links
+     */
+    private void applyDocument(PageMessage page) {
+        int doc = docs.getOrAdd(page.getUrl());
+
+        // Add the information to title_citation
+        LinkedHashSet<String> previous = title_citation.get(doc);
+        LinkedHashSet<String> info = previous != null ? new LinkedHashSet<String>(previous) : new LinkedHashSet<String>();
+        info.add(page.getTitle());
+        info.add(page.getCitation());
+        title_citation.put(doc, info);
 
-    private static HashMap<String, LinkedHashSet<String>> readTitleCitationFromFile(String filename) {
-        synchronized (getLockObject(filename)) {
-            File file = new File("assets/" + filename);
-            // If file does not exist, return null
-            if (!file.exists()) {
-                return null;
+        // Add the keywords to the inverted index, keeping their positions
+        invertedIndex.addDocument(doc, page.getKeywords());
+
+        // Replace the links of the page, inverting them into the linkedPage of the pages they point to
+        int[] outlinks = new int[page.getLinks().length];
+        int n = 0;
+        for (String link : page.getLinks()) {
+            if (!link.isEmpty()) {
+                outlinks[n++] = docs.getOrAdd(link);
             }
-            try {
-                FileInputStream fileIn = new FileInputStream(file);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn);
-                @SuppressWarnings("unchecked")
-                HashMap<String, LinkedHashSet<String>> hashMap = (HashMap<String, LinkedHashSet<String>>) objectIn.readObject();
-                objectIn.close();
-                return hashMap;
-            } catch (Exception ex) {
-                //System.out.println("Error reading file: " + ex.getMessage());
-                return null;
+        }
+        setPageLinks(doc, outlinks, n);
+    }
+
+    /**
+     * The recover method is used to open the index segments, load the newest snapshot and replay the
+     * documents logged after it.
+     * Without a snapshot, the files saved before the write-ahead log was introduced are loaded instead.
+     * It runs while the ingest pipeline is paused, once every message received so far is logged.
+     * @throws IOException if the index segments or the write-ahead log cannot be opened or read
+     */
+    private void recover() throws IOException {
+        long segment = 0;
+        invertedIndex = new SegmentedIndex("assets", "Barrel" + id, MERGE_FACTOR);
+        boolean legacy = false;
+        BarrelSnapshot snapshot = Snapshots.read(snapshotPath(), BarrelSnapshot.class);
+        if (snapshot != null) {
+            docs = snapshot.getDocs();
+            // The PageRank thread locks the map, so it is filled instead of replaced
+            synchronized (pageLinks) {
+                pageLinks.putAll(snapshot.getPageLinks());
+            }
+            linkedPage = new ConcurrentHashMap<>(snapshot.getLinkedPage());
+            title_citation = new ConcurrentHashMap<>(snapshot.getTitleCitation());
+            segment = snapshot.getWalSegment();
+        } else {
+            legacy = loadLegacyFiles();
+        }
+        // Write the messages logged while loading, so the replay reads them
+        wal.commit();
+        int replayed;
+        synchronized (ingestLock) {
+            replayed = wal.replay(segment, payload -> {
+                for (PageMessage page : PageCodec.decode(payload)) {
+                    if (owns(page)) {
+                        applySafely(page);
+                    }
+                }
+            });
+            invertedIndex.publish();
+            // A legacy index is only in memory until the next checkpoint writes it to a segment
+            documentsSinceCheckpoint = replayed + (legacy ? 1 : 0);
+        }
+        linksChanged = !pageLinks.isEmpty();
+        System.out.println("Barrel " + id + " recovered " + docs.size() + " urls, replayed " + replayed + " documents.");
+    }
+
+    /**
+     * The loadLegacyFiles method is used to load the doc dictionary, inverted index and linked pages
+     * from the files saved after every message before the write-ahead log was introduced.
+     * The other files hold doc IDs, so they are only loaded together with the dictionary.
+     * @return true if the legacy files were loaded, false otherwise
+     */
+    private boolean loadLegacyFiles() {
+        DocDictionary savedDocs = readObjectFromFile("Barrel" + id + "docs.dat", DocDictionary.class);
+        if (savedDocs != null) {
+            docs = savedDocs;
+            InvertedIndex savedIndex = readObjectFromFile("Barrel" + id + "index.dat", InvertedIndex.class);
+            if (savedIndex != null) {
+                invertedIndex.adopt(savedIndex);
+            }
+            HashMap<Integer, HashSet<Integer>> savedPageLinks = readObjectFromFile("Barrel" + id + "pageLinks.dat", HashMap.class);
+            if (savedPageLinks != null) {
+                synchronized (pageLinks) {
+                    for (Map.Entry<Integer, HashSet<Integer>> entry : savedPageLinks.entrySet()) {
+                        pageLinks.put(entry.getKey(), BarrelSnapshot.linkArray(entry.getValue()));
+                    }
+                }
+            }
+            HashMap<Integer, HashSet<Integer>> savedLinkedPage = readObjectFromFile("Barrel" + id + "linkedPage.dat", HashMap.class);
+            if (savedLinkedPage != null) {
+                ConcurrentHashMap<Integer, int[]> loaded = new ConcurrentHashMap<>();
+                for (Map.Entry<Integer, HashSet<Integer>> entry : savedLinkedPage.entrySet()) {
+                    loaded.put(entry.getKey(), BarrelSnapshot.linkArray(entry.getValue()));
+                }
+                linkedPage = loaded;
+            }
+            HashMap<Integer, LinkedHashSet<String>> savedTitleCitation = readObjectFromFile("Barrel" + id + "title_citation.dat", HashMap.class);
+            if (savedTitleCitation != null) {
+                title_citation = new ConcurrentHashMap<>(savedTitleCitation);
             }
+            return true;
         }
+        return false;
     }
 
     /**
-     * The saveHashMapToFileTop10 method is used to save the top10 hashmap to a file.
-     * @param hashMap hashmap to save
-     * @param filename name of the file to save
+     * The checkpoint method is used to save a snapshot of the barrel and drop the write-ahead log it covers.
+     * The ingest only pauses while the log is rolled, the in-memory index segment is frozen and the data
+     * is serialized in memory; the segment and the snapshot are written to disk after releasing the lock.
+     * The snapshot is only written once the segment is, so the log is kept until both cover it.
      */
-    private static void saveHashMapToFileTop10(HashMap<String, Integer> hashMap, String filename) {
-        synchronized (getLockObject(filename)) {
+    private void checkpoint() {
+        byte[] data;
+        long segment;
+        synchronized (ingestLock) {
+            if (documentsSinceCheckpoint == 0) {
+                return;
+            }
             try {
-                FileOutputStream fileOut = new FileOutputStream("assets/" + filename);
-                ObjectOutputStream objectOut = new ObjectOutputStream(fileOut);
-                objectOut.writeObject(hashMap);
-                objectOut.close();
-            } catch (IOException ex) {
+                segment = wal.roll();
+                invertedIndex.freeze();
+                data = Snapshots.serialize(new BarrelSnapshot(docs, pageLinks, linkedPage, title_citation, segment));
+            } catch (IOException e) {
+                System.err.println("Barrel " + id + " failed to checkpoint: " + e.getMessage());
                 return;
-                //System.out.println("Error writing file: " + ex.getMessage());
             }
+            documentsSinceCheckpoint = 0;
+        }
+        try {
+            invertedIndex.flush();
+            Snapshots.write(snapshotPath(), data);
+            wal.deleteBefore(segment);
+        } catch (IOException e) {
+            System.err.println("Barrel " + id + " failed to write checkpoint: " + e.getMessage());
         }
     }
 
     /**
-     * The readHashMapFromFileTop10 method is used to read the top10 hashmap from a file.
+     * The readObjectFromFile method is used to read one of the barrel data structures from a file.
+     * @param <T> type of the object stored in the file
      * @param filename name of the file to read
-     * @return hashmap read from file
+     * @param type class the object must have
+     * @return object read from file, or null if the file does not exist, cannot be read or holds another class
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T readObjectFromFile(String filename, Class<?> type) {
+        File file = new File("assets/" + filename);
+        // If file does not exist, return null
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            FileInputStream fileIn = new FileInputStream(file);
+            ObjectInputStream objectIn = new ObjectInputStream(fileIn);
+            Object object = objectIn.readObject();
+            objectIn.close();
+            return type.isInstance(object) ? (T) object : null;
+        } catch (Exception ex) {
+            //System.out.println("Error reading file: " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The refreshPageRank method is used to recompute the PageRank of the pages if links were ingested.
+     * The link graph is copied to arrays while holding its lock, and ranked after releasing it.
      */
-    private static HashMap<String, Integer> readHashMapFromFileTop10(String filename) {
-        synchronized (getLockObject(filename)) {
-            File file = new File("assets/" + filename);
-            // If file does not exist, return null
-            if (!file.exists()) {
-                return null;
+    private void refreshPageRank() {
+        if (!linksChanged) {
+            return;
+        }
+        linksChanged = false;
+        int[] sources;
+        int[] targets;
+        int edges = 0;
+        int n;
+        synchronized (pageLinks) {
+            int size = 0;
+            for (int[] links : pageLinks.values()) {
+                size += links.length;
             }
-            try {
-                FileInputStream fileIn = new FileInputStream(file);
-                ObjectInputStream objectIn = new ObjectInputStream(fileIn);
-                @SuppressWarnings("unchecked")
-                HashMap<String, Integer> hashMap = (HashMap<String, Integer>) objectIn.readObject();
-                objectIn.close();
-                return hashMap;
-            } catch (Exception ex) {
-                //System.out.println("Error reading file: " + ex.getMessage());
-                return null;
+            sources = new int[size];
+            targets = new int[size];
+            n = docs.size();
+            for (Map.Entry<Integer, int[]> entry : pageLinks.entrySet()) {
+                int source = entry.getKey();
+                for (int target : entry.getValue()) {
+                    sources[edges] = source;
+                    targets[edges] = target;
+                    edges++;
+                    n = Math.max(n, Math.max(source, target) + 1);
+                }
             }
         }
+        long start = System.nanoTime();
+        int iterations = pageRank.compute(n, sources, targets, edges);
+        System.out.println("Barrel " + id + " ranked " + n + " pages in " + iterations + " iterations ("
+                + (System.nanoTime() - start) / 1000000 + " ms)");
     }
 
     /**
-     * The addToIndex method is used to add a term and a url to the inverted index.
-     * @param term string to add to the index
-     * @param url url associated with the term
+     * The reportEpoch method is used to report the ingest epoch to the Gateway if new pages were applied since
+     * the last report, so a burst of pages costs one call per interval.
      */
-    public void addToIndex(String term, String url) {
-        HashSet<String> urls = invertedIndex.get(term);
-        if (urls == null) {
-            urls = new HashSet<String>();
-            invertedIndex.put(term, urls);
+    private void reportEpoch() {
+        long epoch = ingestEpoch;
+        if (epoch == reportedEpoch) {
+            return;
+        }
+        try {
+            gw.advanceEpoch(id, epoch);
+            reportedEpoch = epoch;
+        } catch (RemoteException e) {
+            System.err.println("Barrel " + id + " failed to report its ingest epoch: " + e.getMessage());
         }
-        urls.add(url);
     }
 
     /**
-     * The addToUrls method is used to add a url and its associated link to the pageLinks.
-     * @param url url to add
-     * @param url_new url associated with the main url
+     * The setPageLinks method is used to set the links of a page and update the linkedPage of the pages it links to.
+     * The links are inverted directly, including the links to pages that were not crawled yet, so the cost only
+     * depends on the number of links of the page. If the page was crawled before, only the links that changed
+     * are updated in the linkedPage, walking both sorted lists together.
+     * @param doc doc ID of the page
+     * @param outlinks doc IDs of the pages it links to, in any order and possibly repeated
+     * @param count number of doc IDs of outlinks to use
      */
-    public void addToUrls(String url, String url_new) {
-        HashSet<String> links = pageLinks.get(url);
-        if (links == null) {
-            links = new HashSet<String>();
-            pageLinks.put(url, links);
+    public void setPageLinks(int doc, int[] outlinks, int count) {
+        int[] links = BarrelSnapshot.linkArray(outlinks, count);
+        int[] previous;
+        synchronized (pageLinks) {
+            previous = pageLinks.put(doc, links);
+        }
+        boolean crawled = previous != null;
+        if (!crawled) {
+            previous = NO_LINKS;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < previous.length || j < links.length) {
+            if (j == links.length || (i < previous.length && previous[i] < links[j])) {
+                // The page no longer links to this target
+                linkedPage.computeIfPresent(previous[i++], (target, linked) -> withoutLink(linked, doc));
+            } else if (i == previous.length || links[j] < previous[i]) {
+                linkedPage.merge(links[j++], new int[] {doc}, (linked, added) -> withLink(linked, doc));
+            } else {
+                i++;
+                j++;
+            }
+        }
+        if (!crawled || !Arrays.equals(links, previous)) {
+            linksChanged = true;
         }
-        links.add(url_new);
     }
 
     /**
-     * The addToLinkedPage method is used to add a url to the linkedPage.
-     * @param url url to add
+     * The withLink method is used to add a doc ID to a sorted array of links, keeping the array unchanged.
+     * @param links sorted doc IDs
+     * @param doc doc ID to add
+     * @return sorted doc IDs with the doc, or the same array if it already holds it
      */
-    public void addToLinkedPage(String url) {
-        for (String key : pageLinks.keySet()) {
-            HashSet<String> links = pageLinks.get(key);
-            if (links.contains(url)) {
-                HashSet<String> linked = linkedPage.get(url);
-                if (linked == null) {
-                    linked = new HashSet<String>();
-                    linkedPage.put(url, linked);
-                }
-                linked.add(key);
-            }
+    private static int[] withLink(int[] links, int doc) {
+        int position = Arrays.binarySearch(links, doc);
+        if (position >= 0) {
+            return links;
         }
+        position = -position - 1;
+        int[] result = new int[links.length + 1];
+        System.arraycopy(links, 0, result, 0, position);
+        result[position] = doc;
+        System.arraycopy(links, position, result, position + 1, links.length - position);
+        return result;
     }
 
     /**
-     * The isStopWord method is used to check if a word is a stop word.
-     * @param word string to check
-     * @return true if the word is a stop word, false otherwise
+     * The withoutLink method is used to remove a doc ID from a sorted array of links, keeping the array unchanged.
+     * @param links sorted doc IDs
+     * @param doc doc ID to remove
+     * @return sorted doc IDs without the doc, or null if none is left so the entry is removed
      */
-    private boolean isStopWord(String word) {
-        return stopWords.contains(normalizeWord(word));
+    private static int[] withoutLink(int[] links, int doc) {
+        int position = Arrays.binarySearch(links, doc);
+        if (position < 0) {
+            return links;
+        }
+        if (links.length == 1) {
+            return null;
+        }
+        int[] result = new int[links.length - 1];
+        System.arraycopy(links, 0, result, 0, position);
+        System.arraycopy(links, position + 1, result, position, links.length - position - 1);
+        return result;
     }
 
     /**
@@ -655,6 +1627,24 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
             SERVER_PORT = prop.getProperty("server_port");
             MULTICAST_ADDR = prop.getProperty("multicast_ip");
             MULTICAST_PORT = Integer.parseInt(prop.getProperty("multicast_port"));
+            MULTICAST_INTERFACE = prop.getProperty("multicast_interface");
+            MULTICAST_RECEIVE_BUFFER = Integer.parseInt(prop.getProperty("multicast_receive_buffer", "4194304"));
+            FRAGMENT_BUFFER = Long.parseLong(prop.getProperty("fragment_buffer", "67108864"));
+            FRAGMENT_TIMEOUT = Long.parseLong(prop.getProperty("fragment_timeout", "5000"));
+            MAX_RESULTS = Integer.parseInt(prop.getProperty("search_max_results", "100"));
+            PAGERANK_INTERVAL = Integer.parseInt(prop.getProperty("pagerank_interval", "30"));
+            WAL_SYNC_INTERVAL = Integer.parseInt(prop.getProperty("wal_sync_interval", "50"));
+            CHECKPOINT_INTERVAL = Integer.parseInt(prop.getProperty("checkpoint_interval", "60"));
+            MERGE_FACTOR = Integer.parseInt(prop.getProperty("merge_factor", "10"));
+            INGEST_DECODERS = Integer.parseInt(prop.getProperty("ingest_decoders", "2"));
+            INGEST_QUEUE_CAPACITY = Integer.parseInt(prop.getProperty("ingest_queue_capacity", "4096"));
+            INGEST_BATCH_SIZE = Integer.parseInt(prop.getProperty("ingest_batch_size", "256"));
+            STATE_TRANSFER = Boolean.parseBoolean(prop.getProperty("state_transfer", "true"));
+            TRANSFER_TIMEOUT = Long.parseLong(prop.getProperty("transfer_timeout", "60000"));
+            TERM_SHARDS = Math.max(1, Integer.parseInt(prop.getProperty("term_shards", "1")));
+            REPLICATION_FACTOR = Math.max(0, Integer.parseInt(prop.getProperty("replication_factor", "0")));
+            VIRTUAL_NODES = Math.max(1, Integer.parseInt(prop.getProperty("virtual_nodes", "64")));
+            EPOCH_INTERVAL = Math.max(1, Integer.parseInt(prop.getProperty("epoch_interval", "500")));
             return Integer.parseInt(prop.getProperty("barrels"));
         } catch (IOException ex) {
             System.out.println("Failed to load config file: " + ex.getMessage());
@@ -663,22 +1653,26 @@ public class Barrel extends UnicastRemoteObject implements IBarrel, Runnable {
         }
     }
 
-    /**
-     * The getLockObject method is used to get the lock object for a given filename to syncronize.
-     * @param filename name of the file
-     * @return lock object
-     */
-    private static Object getLockObject(String filename) {
-        return filename.hashCode();
-    }
-
     /**
      * The shutdown method is used to shutdown the barrel.
      */
     private void shutdown() {
         try {
-            if (multicastSocket != null) {
-                multicastSocket.close();
+            backgroundScheduler.shutdownNow();
+            epochScheduler.shutdownNow();
+            // Stop receiving and let the pipeline apply and log what it already received
+            closeMulticastChannel();
+            if (pipeline != null) {
+                pipeline.close();
+            }
+            if (transfers != null) {
+                transfers.closeAll();
+            }
+            if (invertedIndex != null) {
+                invertedIndex.close();
+            }
+            if (wal != null) {
+                wal.close();
             }
             System.out.println("Barrel " + id + " shutting down...");
             // Notify the Gateway about the shutdown
@@ -15,6 +15,8 @@ import java.util.Properties;
 import java.util.Scanner;
 
 import com.googol.googolfe.objects.BrlObj;
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
 import com.googol.googolfe.objects.Top10Obj;
 import com.googol.googolfe.server.interfaces.IClient;
 import com.googol.googolfe.server.interfaces.IGatewayCli;
@@ -59,6 +61,11 @@ public class Client extends UnicastRemoteObject implements IClient {
    */
   public static final String ANSI_CYAN = "\u001B[36m";
 
+  /**
+   * The number of search results shown in each page.
+   */
+  private static final int RESULTS_PER_PAGE = 10;
+
   /**
    * The remote gateway interface used for communication with the gateway.
    */
@@ -226,21 +233,14 @@ public class Client extends UnicastRemoteObject implements IClient {
     System.out.print(ANSI_GREEN + "> " + ANSI_RESET);
     String query = sc.nextLine();
     System.out.println();
-    String result = null;
     try {
-      result = gw.search(query);
-      if (result != null) {
-        if (result.equals("")) {
-          System.out.println(ANSI_RED + "No results found.\n" + ANSI_RESET);
-          return;
-        } else if (result.equals("No barrels available")) {
-          System.out.println(ANSI_RED + "No barrels available.\n" + ANSI_RESET);
-          return;
-        } else {
-          displayResults(result, sc);
-        }
-      } else {
+      SearchPage result = gw.search(query, 0, RESULTS_PER_PAGE);
+      if (result == null) {
+        System.out.println(ANSI_RED + "No barrels available.\n" + ANSI_RESET);
+      } else if (result.getResults().isEmpty()) {
         System.out.println(ANSI_RED + "No results found.\n" + ANSI_RESET);
+      } else {
+        displayResults(query, result, sc);
       }
     } catch (RemoteException e) {
       System.out.println(ANSI_RED + "Error occurred during search.\n" + ANSI_RESET);
@@ -248,21 +248,29 @@ public class Client extends UnicastRemoteObject implements IClient {
   }
 
   /**
-   * Displays the search results in pages of 10 results each.
-   * @param result the search results to display.
+   * Displays the search results in pages of 10 results each, fetching each page from the gateway.
+   * @param query the query string searched for.
+   * @param result the first page of search results.
    * @param sc the Scanner object for user input.
+   * @throws RemoteException if there is an RMI-related error.
    */
-  private void displayResults(String result, Scanner sc) {
-    String[] resultsArray = result.split("\\*");
+  private void displayResults(String query, SearchPage result, Scanner sc) throws RemoteException {
     // Calculate the total number of pages based on the number of search results
-    int totalPages = (resultsArray.length + 10 - 1) / 10;
+    int totalPages = (result.getTotalHits() + RESULTS_PER_PAGE - 1) / RESULTS_PER_PAGE;
     int currentPage = 0;
 
     while (true) {
       // Display the current page of search results
       System.out.println(ANSI_YELLOW + "\nSearch results:" + ANSI_RESET);
-      for (int i = currentPage * 10; i < Math.min((currentPage + 1) * 10, resultsArray.length); i++) {
-        System.out.println(resultsArray[i]);
+      if (result.isPartial()) {
+        System.out.println(ANSI_RED + "Some parts of the index did not answer, results may be missing." + ANSI_RESET);
+      }
+      for (Result r : result.getResults()) {
+        System.out.println(r.getTitle());
+        if (!r.getCitation().isEmpty()) {
+          System.out.println(r.getCitation());
+        }
+        System.out.println(r.getUrl() + "\n");
       }
 
       // Display the page number and total pages, and prompt for user input
@@ -271,15 +279,25 @@ public class Client extends UnicastRemoteObject implements IClient {
       System.out.print(ANSI_GREEN + "> " + ANSI_RESET);
       String input = sc.nextLine().toLowerCase();
 
+      int nextPage;
       if (input.equals("q")) {
         break;
       } else if (input.equals("n")) {
-        currentPage = (currentPage + 1) % totalPages;
+        nextPage = (currentPage + 1) % totalPages;
       } else if (input.equals("p")) {
-        currentPage = (currentPage - 1 + totalPages) % totalPages;
+        nextPage = (currentPage - 1 + totalPages) % totalPages;
       } else {
         System.out.println(ANSI_RED + "Invalid command. Please try again." + ANSI_RESET);
+        continue;
+      }
+      SearchPage page = gw.search(query, nextPage * RESULTS_PER_PAGE, RESULTS_PER_PAGE);
+      if (page == null || page.getResults().isEmpty()) {
+        // The barrels only rank a bounded window of the results
+        System.out.println(ANSI_RED + "No more results." + ANSI_RESET);
+        continue;
       }
+      result = page;
+      currentPage = nextPage;
     }
   }
 
@@ -13,7 +13,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
@@ -35,6 +34,9 @@ import java.text.Normalizer;
 
 import com.googol.googolfe.server.interfaces.IDownloader;
 import com.googol.googolfe.server.interfaces.IGatewayDl;
+import com.googol.googolfe.server.net.PageMessage;
+import com.googol.googolfe.server.net.PageSender;
+import com.googol.googolfe.server.net.TermPartitioner;
 
 /**
  * The Downloader class implements the IDownloader interface and is responsible for downloading
@@ -100,9 +102,9 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
   private DatagramSocket multicastSocket;
 
   /**
-   * Lock object for multicast operations.
+   * Senders packing the pages and sending them via multicast, one per shard of the index.
    */
-  private final Object multicastLock;
+  private PageSender[] pageSenders;
 
   /**
    * The IP address of the gateway RMI server.
@@ -124,6 +126,26 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
    */
   private int MULTICAST_PORT;
 
+  /**
+   * The maximum size of a datagram packing several small pages.
+   */
+  private int MULTICAST_PACK_SIZE;
+
+  /**
+   * The maximum size of a datagram, above which a message is split in fragments.
+   */
+  private int MULTICAST_FRAGMENT_SIZE;
+
+  /**
+   * The maximum number of milliseconds a page waits for others to be packed with.
+   */
+  private long MULTICAST_LINGER;
+
+  /**
+   * The number of shards the terms of the index are split in, each listening on its own multicast port.
+   */
+  private int TERM_SHARDS;
+
   /**
    * Constructs a Downloader object with the given multicast address and port.
    * Connects to the Gateway and creates threads to download web pages concurrently.
@@ -136,7 +158,6 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
     queueSemaphore = new Semaphore(0);
     queue = new ConcurrentLinkedQueue<>();
     running = true;
-    multicastLock = new Object();
 
     try {
       // Load configuration
@@ -154,9 +175,14 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
 
       System.out.println("Downloader bound to Gateway.");
 
-      // Create a multicast socket
+      // Create a multicast socket and the senders packing the pages, one per shard
       try {
         multicastSocket = new DatagramSocket();
+        pageSenders = new PageSender[TERM_SHARDS];
+        for (int shard = 0; shard < TERM_SHARDS; shard++) {
+          pageSenders[shard] = new PageSender(multicastSocket, InetAddress.getByName(MULTICAST_ADDR), MULTICAST_PORT + shard,
+              MULTICAST_PACK_SIZE, MULTICAST_FRAGMENT_SIZE, MULTICAST_LINGER);
+        }
       } catch (IOException e) {
         System.err.println("Error creating multicast socket: " + e.getMessage());
         System.exit(1);
@@ -257,23 +283,17 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
         // Extract information from the URL
         extract(url);
         try {
-            // Prepare the information to be sent
-            String message = "URL: " + url + "\nTitle: " + title + "\nCitation: " + citation + "\nKeywords: " + keywords + "\nLinks: " + urlsList;
-            byte[] data = message.getBytes();
-
-            // Create a DatagramPacket with the data and the multicast address and port
-            InetAddress group = InetAddress.getByName(MULTICAST_ADDR);
-            DatagramPacket packet = new DatagramPacket(data, data.length, group, MULTICAST_PORT);
-
-            // Send the DatagramPacket via multicast
-            synchronized (multicastLock) {
-              try {
-                  multicastSocket.send(packet);
-              } catch (SocketException e) {
-                  return;
-              }
-              System.out.println("Information sent successfully via multicast.");
-          }
+            // Send the information via multicast, encoded in binary and packed with other small pages
+            // Each shard only receives the terms it owns
+            String[] pageKeywords = keywords != null ? keywords.toArray(new String[0]) : new String[0];
+            String[] pageLinks = urlsList != null ? urlsList.toArray(new String[0]) : new String[0];
+            PageMessage page = new PageMessage(url, title, citation, pageKeywords, pageLinks);
+            for (int shard = 0; shard < pageSenders.length; shard++) {
+              pageSenders[shard].send(TermPartitioner.partition(page, shard, pageSenders.length));
+            }
+            System.out.println("Information sent successfully via multicast.");
+        } catch (SocketException e) {
+            return;
         } catch (IOException e) {
             System.out.println("IO: " + e.getMessage());
         }
@@ -310,6 +330,7 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
     if (s.equals("Gateway shutting down.")) {
       System.out.println("Received shutdown signal from server. Shutting down...");
       running = false;
+      closeSenders();
       multicastSocket.close();
       try {
         UnicastRemoteObject.unexportObject(this, true);
@@ -432,12 +453,29 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
       SERVER_PORT = prop.getProperty("server_port");
       MULTICAST_ADDR = prop.getProperty("multicast_ip");
       MULTICAST_PORT = Integer.parseInt(prop.getProperty("multicast_port"));
+      MULTICAST_PACK_SIZE = Integer.parseInt(prop.getProperty("multicast_pack_size", "8192"));
+      MULTICAST_FRAGMENT_SIZE = Integer.parseInt(prop.getProperty("multicast_fragment_size", "16384"));
+      MULTICAST_LINGER = Long.parseLong(prop.getProperty("multicast_linger", "20"));
+      TERM_SHARDS = Math.max(1, Integer.parseInt(prop.getProperty("term_shards", "1")));
     } catch (IOException ex) {
       System.out.println("Failed to load config file: " + ex.getMessage());
       System.exit(1);
     }
   }
 
+  /**
+   * Sends the pages held by the senders and stops them.
+   */
+  private void closeSenders() {
+    if (pageSenders != null) {
+      for (PageSender sender : pageSenders) {
+        if (sender != null) {
+          sender.close();
+        }
+      }
+    }
+  }
+
   /**
    * Shuts down the downloader, releases resources, and notifies the Gateway.
    * Saves the queue contents to a file in case of a crash.
@@ -458,6 +496,7 @@ public class Downloader extends UnicastRemoteObject implements IDownloader, Runn
           }
         }
         running = false;
+        closeSenders();
         multicastSocket.close();
         // Notify the Gateway about the shutdown
         if (gw != null) {
@@ -1,7 +1,9 @@
 package com.googol.googolfe.server;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileReader;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -9,13 +11,21 @@ import java.rmi.Naming;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.server.UnicastRemoteObject;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -26,9 +36,23 @@ import com.googol.googolfe.server.interfaces.IGatewayCli;
 import com.googol.googolfe.server.interfaces.IGatewayDl;
 import com.googol.googolfe.server.interfaces.IClient;
 import com.googol.googolfe.objects.BrlObj;
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
 import com.googol.googolfe.objects.Top10Obj;
+import com.googol.googolfe.objects.TrendingObj;
 import com.googol.googolfe.server.interfaces.IBarrel;
 import com.googol.googolfe.server.interfaces.IDownloader;
+import com.googol.googolfe.server.index.QueryNode;
+import com.googol.googolfe.server.index.QueryParser;
+import com.googol.googolfe.server.search.BarrelSelector;
+import com.googol.googolfe.server.search.DocumentPartitionSearcher;
+import com.googol.googolfe.server.search.QueryCache;
+import com.googol.googolfe.server.search.SingleFlight;
+import com.googol.googolfe.server.search.TermShardSearcher;
+import com.googol.googolfe.server.stats.SearchStats;
+import com.googol.googolfe.server.stats.SpaceSaving;
+import com.googol.googolfe.server.stats.StatsPublisher;
+import com.googol.googolfe.server.stats.TrendingSearches;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -44,9 +68,9 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
    */
   private static final Logger LOGGER = Logger.getLogger(Gateway.class.getName());
   /**
-   * List of connected clients.
+   * List of connected clients, also read by the statistics publisher.
    */
-  private ArrayList<IClient> clients;
+  private List<IClient> clients;
 
   /**
    * List of active barrels.
@@ -83,6 +107,178 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
    */
   private Set<Integer> availableIds;
 
+  /**
+   * Parser used to extract the searched terms of the queries.
+   */
+  private QueryParser queryParser;
+
+  /**
+   * Counts of the terms searched in the recent time windows, fed by the queries sent to all barrels.
+   */
+  private TrendingSearches trending;
+
+  /**
+   * Counts of the terms searched since the first start, fed by every search, whether it was answered from the
+   * caches or by the barrels.
+   */
+  private SearchStats topSearches;
+
+  /**
+   * Searcher spreading the queries over the shards of the terms, when the index is split in several.
+   */
+  private TermShardSearcher shardSearcher;
+
+  /**
+   * Searcher spreading the queries over the partitions of the pages, when the pages are split among the barrels.
+   */
+  private DocumentPartitionSearcher partitionSearcher;
+
+  /**
+   * Selector choosing the barrel of the text searches when any barrel can answer them, hedging and retrying them.
+   * Each kind of request has its own selector, so the latencies it hedges after are the ones of that request.
+   */
+  private BarrelSelector textSelector;
+
+  /**
+   * Selector choosing the barrel of the pages of search results when any barrel can answer them.
+   */
+  private BarrelSelector pageSelector;
+
+  /**
+   * Selector choosing the barrel of the sub-links of a page when any barrel can answer them.
+   */
+  private BarrelSelector linksSelector;
+
+  /**
+   * Cache of the pages of results of the recent searches.
+   */
+  private QueryCache<SearchPage> pageCache;
+
+  /**
+   * Cache of the text results of the recent searches and sub-links.
+   */
+  private QueryCache<String> textCache;
+
+  /**
+   * Searches of pages of results in flight, shared by the concurrent searches of the same page.
+   */
+  private final SingleFlight<SearchPage> pageFlights = new SingleFlight<>();
+
+  /**
+   * Text searches and sub-links in flight, shared by the concurrent requests for the same query.
+   */
+  private final SingleFlight<String> textFlights = new SingleFlight<>();
+
+  /**
+   * Epoch of the cached results, advanced when a barrel applies new pages or the barrels change.
+   */
+  private final AtomicLong cacheEpoch = new AtomicLong();
+
+  /**
+   * Last ingest epoch reported by each barrel.
+   */
+  private final Map<Integer, Long> brlEpochs = new ConcurrentHashMap<>();
+
+  /**
+   * Publisher sending the trending searches and the average time of the barrels to the clients.
+   */
+  private StatsPublisher statsPublisher;
+
+  /**
+   * Thread sending the active barrels to the barrels, outside the lock of the barrels list.
+   */
+  private final ExecutorService membersPublisher = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "MembersPublisher");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * Version of the last active barrels sent to the barrels, guarded by the lock of the barrels list.
+   * It starts at the start time, so the barrels also accept the versions of a restarted Gateway.
+   */
+  private long membersVersion = System.currentTimeMillis();
+
+  /**
+   * The number of shards the terms of the index are split in.
+   */
+  private int TERM_SHARDS;
+
+  /**
+   * The number of milliseconds the shards have to answer a search.
+   */
+  private long SHARD_TIMEOUT;
+
+  /**
+   * The maximum number of matches asked to each shard.
+   */
+  private int SHARD_MAX_MATCHES;
+
+  /**
+   * The maximum number of results ranked by a search.
+   */
+  private int MAX_RESULTS;
+
+  /**
+   * The number of barrels holding each page when the pages are split among them, or 0 if every barrel holds every page.
+   */
+  private int REPLICATION_FACTOR;
+
+  /**
+   * The number of positions of each barrel on the ring assigning the pages.
+   */
+  private int VIRTUAL_NODES;
+
+  /**
+   * The weight of a new latency in the moving average of the latency of a barrel.
+   */
+  private double LATENCY_EWMA_ALPHA;
+
+  /**
+   * The minimum number of milliseconds waited before sending a request to a second barrel.
+   */
+  private long HEDGE_MIN_DELAY;
+
+  /**
+   * The number of milliseconds a request to the barrels has to answer, including its retries.
+   */
+  private long BARREL_TIMEOUT;
+
+  /**
+   * The maximum number of bytes of the results kept by each cache.
+   */
+  private long QUERY_CACHE_BYTES;
+
+  /**
+   * The number of milliseconds a result is kept in the caches.
+   */
+  private long QUERY_CACHE_TTL;
+
+  /**
+   * Number of milliseconds between two samples of the statistics sent to the clients.
+   */
+  private long STATS_INTERVAL;
+
+  /**
+   * Maximum number of times per second the statistics are sent to the clients.
+   */
+  private double STATS_MAX_RATE;
+
+  /**
+   * Number of seconds between saves of the search counts.
+   */
+  private int STATS_FLUSH_INTERVAL;
+
+  /**
+   * Number of counters of each bucket of the trending searches.
+   */
+  private static final int TRENDING_CAPACITY = 200;
+
+  /**
+   * Number of terms counted by the top searches.
+   */
+  private static final int TOP_SEARCHES_CAPACITY = 1000;
+
   /**
    * Constructs a Gateway object.
    * Initializes necessary data structures and sets up RMI registry.
@@ -90,13 +286,27 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
    */
   Gateway() throws RemoteException {
     super();
-    clients = new ArrayList<>();
+    clients = new CopyOnWriteArrayList<>();
     barrels = new ArrayList<>();
     downloaderManager = null;
     brlCount = 0;
     nextId = 1;
     availableIds = new HashSet<>();
+    queryParser = new QueryParser(loadStopWords("assets/stop_words.txt"));
+    trending = new TrendingSearches(TRENDING_CAPACITY);
     loadConfig();
+    topSearches = new SearchStats("assets/top10.dat", TOP_SEARCHES_CAPACITY, STATS_FLUSH_INTERVAL);
+    shardSearcher = new TermShardSearcher(TERM_SHARDS, SHARD_TIMEOUT, SHARD_MAX_MATCHES, MAX_RESULTS);
+    // The pages are only split among the barrels when the terms are not
+    partitionSearcher = new DocumentPartitionSearcher(TERM_SHARDS == 1 ? REPLICATION_FACTOR : 0, VIRTUAL_NODES,
+        SHARD_TIMEOUT, MAX_RESULTS);
+    textSelector = new BarrelSelector(LATENCY_EWMA_ALPHA, HEDGE_MIN_DELAY, BARREL_TIMEOUT);
+    pageSelector = new BarrelSelector(LATENCY_EWMA_ALPHA, HEDGE_MIN_DELAY, BARREL_TIMEOUT);
+    linksSelector = new BarrelSelector(LATENCY_EWMA_ALPHA, HEDGE_MIN_DELAY, BARREL_TIMEOUT);
+    pageCache = new QueryCache<>(QUERY_CACHE_BYTES, QUERY_CACHE_TTL, Gateway::weigh);
+    textCache = new QueryCache<>(QUERY_CACHE_BYTES, QUERY_CACHE_TTL, text -> 2 * text.length());
+    statsPublisher = new StatsPublisher(STATS_INTERVAL, STATS_MAX_RATE, this::sampleTrending, this::sampleBarrels,
+        () -> clients);
     initializeLogger();
     System.getProperties().put("java.security.policy", "policy.all");
     bindGatewayToRegistry();
@@ -184,50 +394,141 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
   }
 
   /**
-   * Gets the search results by choosing a random barrel to perform the search operation.
-   * Updates the top 10 searches and the average time of the barrels.
+   * Gets the search results by choosing the barrel expected to answer first to perform the search operation.
+   * When the terms are split in shards, or the pages among the barrels, the results are gathered from them instead.
+   * The results are cached until a barrel applies new pages.
+   * Counts the search in the top and trending searches, cached or not, which are sent to the clients in the background.
    * @param s the query string to search for.
    * @return the search results to the client. Returns "No barrels available" if there are no barrels available.
    * @throws RemoteException if there is a remote communication error.
    */
   @Override
   public String search(String s) throws RemoteException {
-    Random rand = new Random();
     if (brlCount == 0) {
       LOGGER.warning("No barrels available\n");
       return "No barrels available";
     }
-    int idx = rand.nextInt(barrels.size());
-    String result = barrels.get(idx).search(s);
-
-    // Update top 10 searches
-    ArrayList<Top10Obj> top10 = new ArrayList<>();
-    String stringTop10 = barrels.get(idx).getTop10Searches();
-    String[] top10Array = stringTop10.split("\n");
-    for (String top : top10Array) {
-      String[] split = top.split(" - ");
-      top10.add(new Top10Obj(split[0], Integer.parseInt(split[1])));
+    String result;
+    if (shardSearcher.isSharded() || partitionSearcher.isPartitioned()) {
+      StringBuilder links = new StringBuilder();
+      for (Result r : cachedSearch(s, 0, MAX_RESULTS).getResults()) {
+        links.append(r.getTitle()).append("\n").append(r.getCitation()).append("\n").append(r.getUrl()).append("\n<>");
+      }
+      result = links.toString();
+    } else {
+      long epoch = cacheEpoch.get();
+      String key = "search\n" + cacheKey(s);
+      result = textCache.get(key, epoch);
+      if (result == null) {
+        result = textFlights.run(key, () -> {
+          String links = textSelector.call(b -> b.search(s));
+          textCache.put(key, links, epoch);
+          return links;
+        });
+      }
     }
+    recordSearch(s);
 
-    // Update barrels average time
-    ArrayList<BrlObj> activeBarrels = new ArrayList<>();
-    for (IBarrel b : barrels) {
-      BigDecimal bd = new BigDecimal(b.getAverageTime());
-      bd = bd.setScale(3, RoundingMode.HALF_UP);
-      double formattedAverageTime = bd.doubleValue();
-      activeBarrels.add(new BrlObj(b.getId(), formattedAverageTime));
-    }
+    return result;
+  }
 
-    for (IClient c : clients) {
-      c.sendTop10(top10);
-      c.sendBrls(activeBarrels);
+  /**
+   * Gets a page of the search results by choosing the barrel expected to answer first to perform the search operation.
+   * Only the requested window of results is ranked and sent back by the barrel.
+   * When the terms are split in shards, or the pages among the barrels, they are searched in parallel and
+   * the page is marked partial if some of them did not answer in time.
+   * The pages are cached until a barrel applies new pages.
+   * Counts the search in the top and trending searches, cached or not, which are sent to the clients in the background.
+   * @param s the query string to search for.
+   * @param offset the position of the first result to return in the ranking.
+   * @param limit the maximum number of results to return.
+   * @return the page of results to the client. Returns null if there are no barrels available.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public SearchPage search(String s, int offset, int limit) throws RemoteException {
+    if (brlCount == 0) {
+      LOGGER.warning("No barrels available\n");
+      return null;
+    }
+    SearchPage result = cachedSearch(s, offset, limit);
+    // Only the first page counts as a search
+    if (offset == 0) {
+      recordSearch(s);
     }
 
     return result;
   }
 
   /**
-   * Finds the sub-links of a given URL by choosing a random barrel to perform the operation.
+   * Gets a page of the search results from the cache, or from the barrels if it is not cached at the current
+   * ingest epoch. Partial pages are not cached, so the next search asks the barrels again.
+   * Concurrent searches of the same page share one search of the barrels.
+   * @param s the query string to search for.
+   * @param offset the position of the first result to return in the ranking.
+   * @param limit the maximum number of results to return.
+   * @return the page of results.
+   * @throws RemoteException if no barrel could answer the search.
+   */
+  private SearchPage cachedSearch(String s, int offset, int limit) throws RemoteException {
+    long epoch = cacheEpoch.get();
+    String key = cacheKey(s) + "\n" + offset + "\n" + limit;
+    SearchPage cached = pageCache.get(key, epoch);
+    if (cached != null) {
+      return cached;
+    }
+    return pageFlights.run(key, () -> {
+      SearchPage result;
+      if (shardSearcher.isSharded() || partitionSearcher.isPartitioned()) {
+        result = shardSearcher.isSharded()
+            ? shardSearcher.search(queryParser.parse(s), s, offset, limit)
+            : partitionSearcher.search(s, offset, limit);
+        if (result.isPartial()) {
+          LOGGER.warning("Partial results for search: " + s + "\n");
+          return result;
+        }
+      } else {
+        result = pageSelector.call(b -> b.search(s, offset, limit));
+      }
+      pageCache.put(key, result, epoch);
+      return result;
+    });
+  }
+
+  /**
+   * Gets the key of a query in the cache, so queries differing only in case, accents, stop words or spacing
+   * share their results.
+   * @param s the query string searched.
+   * @return the normalized query.
+   */
+  private String cacheKey(String s) {
+    QueryNode query = queryParser.parse(s);
+    return query != null ? query.toString() : s.trim();
+  }
+
+  /**
+   * Counts the terms of a query in the top and trending searches.
+   * Every search of a user counts once here, including the ones answered from the caches or sharing the search
+   * of another user, while the barrels only see the searches missing the caches.
+   * @param s the query string searched.
+   */
+  private void recordSearch(String s) {
+    QueryNode query = queryParser.parse(s);
+    if (query == null) {
+      return;
+    }
+    List<String> terms = new ArrayList<>();
+    query.collectTerms(terms);
+    for (String term : terms) {
+      trending.record(term);
+      topSearches.record(term);
+    }
+  }
+
+  /**
+   * Finds the sub-links of a given URL by choosing the barrel expected to answer first to perform the operation.
+   * The sub-links are cached until a barrel applies new pages.
+   * When the pages are split among the barrels, the sub-links found by an owner of every partition are joined.
    * @param s the URL to find sub-links for.
    * @return The sub-links of the URL to the client. Returns "Invalid URL" if the URL is invalid
    *         or "No barrels available" if there are no barrels available.
@@ -238,30 +539,70 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
     if (!isValidURL(s)) {
       return "Invalid URL.";
     } else {
-      Random rand = new Random();
       if (brlCount == 0) {
         LOGGER.warning("No barrels available\n");
         return "No barrels available";
       }
-      int idx = rand.nextInt(barrels.size());
-      return barrels.get(idx).findSubLinks(s);
+      long epoch = cacheEpoch.get();
+      String key = "links\n" + s;
+      String result = textCache.get(key, epoch);
+      if (result == null) {
+        result = textFlights.run(key, () -> {
+          String links = partitionSearcher.isPartitioned()
+              ? partitionSearcher.findSubLinks(s)
+              : linksSelector.call(b -> b.findSubLinks(s));
+          textCache.put(key, links, epoch);
+          return links;
+        });
+      }
+      return result;
     }
   }
 
   /**
-   * Gets the top 10 searches by choosing a random barrel to perform the operation.
-   * @return the top 10 searches to the client. Returns "No barrels available" if there are no barrels available.
+   * Gets the top 10 searches, counted at the Gateway without asking the barrels.
+   * @return the top 10 searches to the client, one "term - count" per line.
    * @throws RemoteException if there is a remote communication error.
    */
   @Override
   public String getTop10Searches() throws RemoteException {
-    Random rand = new Random();
-    if (brlCount == 0) {
-      LOGGER.warning("No barrels available\n");
-      return "No barrels available";
+    StringBuilder top10 = new StringBuilder();
+    for (SpaceSaving.Counter counter : topSearches.top(10)) {
+      top10.append(counter.getItem()).append(" - ").append(counter.getCount()).append("\n");
+    }
+    return top10.toString();
+  }
+
+  /**
+   * Gets the top 10 searches of each time window, counted at the Gateway without asking the barrels.
+   * @return the top 10 searches of the last 5 minutes, the last hour and the last day, in this order, each
+   * window being listed even when it has no searches.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public ArrayList<TrendingObj> getTrendingSearches() throws RemoteException {
+    ArrayList<TrendingObj> windows = new ArrayList<>();
+    for (TrendingSearches.Window window : TrendingSearches.Window.values()) {
+      ArrayList<Top10Obj> top10 = new ArrayList<>();
+      for (SpaceSaving.Counter counter : trending.top(window, 10)) {
+        top10.add(new Top10Obj(counter.getItem(), (int) Math.min(counter.getCount(), Integer.MAX_VALUE), window.getLabel()));
+      }
+      windows.add(new TrendingObj(window.getLabel(), top10));
+    }
+    return windows;
+  }
+
+  /**
+   * Gets the top 10 searches of every time window in one list, as sent to the clients.
+   * @return the top 10 searches of each window, with the label of their window.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  private ArrayList<Top10Obj> sampleTrending() throws RemoteException {
+    ArrayList<Top10Obj> top10 = new ArrayList<>();
+    for (TrendingObj window : getTrendingSearches()) {
+      top10.addAll(window.getSearches());
     }
-    int idx = rand.nextInt(barrels.size());
-    return barrels.get(idx).getTop10Searches();
+    return top10;
   }
 
   /**
@@ -271,12 +612,28 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
    */
   @Override
   public ArrayList<BrlObj> getActiveBarrels() throws RemoteException {
+    return sampleBarrels();
+  }
+
+  /**
+   * Asks the active barrels for their average time. A barrel that does not answer is left out.
+   * @return the ids and average time of the barrels that answered.
+   */
+  private ArrayList<BrlObj> sampleBarrels() {
+    List<IBarrel> active;
+    synchronized (barrels) {
+      active = new ArrayList<>(barrels);
+    }
     ArrayList<BrlObj> activeBarrels = new ArrayList<>();
-    for (IBarrel b : barrels) {
-      BigDecimal bd = new BigDecimal(b.getAverageTime());
-      bd = bd.setScale(3, RoundingMode.HALF_UP);
-      double formattedAverageTime = bd.doubleValue();
-      activeBarrels.add(new BrlObj(b.getId(), formattedAverageTime));
+    for (IBarrel b : active) {
+      try {
+        BigDecimal bd = new BigDecimal(b.getAverageTime());
+        bd = bd.setScale(3, RoundingMode.HALF_UP);
+        double formattedAverageTime = bd.doubleValue();
+        activeBarrels.add(new BrlObj(b.getId(), formattedAverageTime));
+      } catch (RemoteException e) {
+        LOGGER.warning("Failed to get the average time of a barrel: " + e.getMessage() + "\n");
+      }
     }
     return activeBarrels;
   }
@@ -335,52 +692,85 @@ public class Gateway extends UnicastRemoteObject implements IGatewayCli, IGatewa
 
   /**
    * Adds a barrel to the Gateway by adding its iterface to the active barrels list.
-   * Updates the average time of the barrels and sends the updated list to the clients.
+   * The updated list of barrels is sent to the clients in the background.
    * @param brl the interface of the barrel to add.
    * @return the ID of the barrel added.
    * @throws RemoteException if there is a remote communication error.
    */
   @Override
 public int AddBrl(IBarrel brl) throws RemoteException {
+    synchronized (barrels) {
+        int currentId = reserveBrlId();
+        AddBrl(brl, currentId);
+        return currentId;
+    }
+}
+
+  /**
+   * Reserves the ID of a barrel that is still loading its data, without adding it to the active barrels list.
+   * @return the ID reserved.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public int reserveBrlId() throws RemoteException {
+    synchronized (barrels) {
+      int currentId;
+      if (!availableIds.isEmpty()) { // reuse id if available
+        Iterator<Integer> iterator = availableIds.iterator();
+        currentId = iterator.next();
+        iterator.remove();
+      } else { // create new id
+        currentId = nextId++;
+      }
+      return currentId;
+    }
+  }
+
+  /**
+   * Adds a barrel with a reserved ID to the Gateway by adding its iterface to the active barrels list.
+   * The updated list of barrels is sent to the clients in the background.
+   * @param brl the interface of the barrel to add.
+   * @param id the ID reserved by the barrel.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+public void AddBrl(IBarrel brl, int id) throws RemoteException {
     if (brl == null) {
         LOGGER.warning("Attempted to add a null barrel.\n");
         throw new RemoteException("Cannot add a null barrel.");
     }
 
     synchronized (barrels) {
-        int currentId;
-        if (!availableIds.isEmpty()) { // reuse id if available
-            Iterator<Integer> iterator = availableIds.iterator();
-            currentId = iterator.next();
-            iterator.remove();
-        } else { // create new id
-            currentId = nextId++;
-        }
         barrels.add(brl);
-        brlCount++;
-        LOGGER.info("Barrel added with ID: " + currentId + "\n");
-        
-        // Get the updated list of active barrels
-        ArrayList<BrlObj> activeBarrels = new ArrayList<>();
-        for (IBarrel b : barrels) {
-          BigDecimal bd = new BigDecimal(b.getAverageTime());
-          bd = bd.setScale(3, RoundingMode.HALF_UP);
-          double formattedAverageTime = bd.doubleValue();
-          activeBarrels.add(new BrlObj(b.getId(), formattedAverageTime));
+        shardSearcher.add(brl, id);
+        partitionSearcher.add(brl, id);
+        for (BarrelSelector selector : selectors()) {
+          selector.add(brl);
         }
-
-        for (IClient c : clients) {
-            c.sendBrls(activeBarrels);
-        }
-
-        return currentId;
+        cacheEpoch.incrementAndGet();
+        brlCount++;
+        publishMembers();
+        LOGGER.info("Barrel added with ID: " + id + "\n");
     }
+    statsPublisher.publishSoon();
 }
 
+  /**
+   * Gets the active barrels, so a barrel that is joining can copy the data of one of them.
+   * @return a copy of the active barrels list.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public ArrayList<IBarrel> getBrls() throws RemoteException {
+    synchronized (barrels) {
+      return new ArrayList<>(barrels);
+    }
+  }
+
 
   /**
    * Removes a barrel from the Gateway by removing its interface from the active barrels list.
-   * Updates the average time of the barrels and sends the updated list to the clients.
+   * The updated list of barrels is sent to the clients in the background.
    * @param brl the interface of the barrel to remove.
    * @param id the ID of the barrel to remove.
    * @throws RemoteException if there is a remote communication error.
@@ -389,27 +779,83 @@ public int AddBrl(IBarrel brl) throws RemoteException {
   public void rmvBrl(IBarrel brl, int id) throws RemoteException {
     synchronized (barrels) {
       if (barrels.remove(brl)) {
+        shardSearcher.remove(brl);
+        partitionSearcher.remove(brl);
+        for (BarrelSelector selector : selectors()) {
+          selector.remove(brl);
+        }
+        brlEpochs.remove(id);
+        cacheEpoch.incrementAndGet();
         LOGGER.warning("Barrel crashed: " + id + "\n");
         brlCount--;
         availableIds.add(id);
+        publishMembers();
       } else {
         LOGGER.warning("Barrel not found\n");
       }
-      // Get the updated list of active barrels
-      ArrayList<BrlObj> activeBarrels = new ArrayList<>();
-      for (IBarrel b : barrels) {
-        BigDecimal bd = new BigDecimal(b.getAverageTime());
-        bd = bd.setScale(3, RoundingMode.HALF_UP);
-        double formattedAverageTime = bd.doubleValue();
-        activeBarrels.add(new BrlObj(b.getId(), formattedAverageTime));
-      }
+    }
+    statsPublisher.publishSoon();
+  }
 
-      for (IClient c : clients) {
-          c.sendBrls(activeBarrels);
+  /**
+   * Sends the active barrels to every barrel when the pages are split among them, so each one moves the pages
+   * of the partitions it gained. Must be called while holding the lock of the barrels list.
+   * The barrels are copied under the lock with a new version and sent in the background, so a slow barrel
+   * does not hold the lock. A barrel ignores a version older than the last one it received.
+   */
+  private void publishMembers() {
+    if (!partitionSearcher.isPartitioned()) {
+      return;
+    }
+    HashMap<Integer, IBarrel> members = partitionSearcher.members();
+    List<IBarrel> recipients = new ArrayList<>(barrels);
+    long version = ++membersVersion;
+    membersPublisher.execute(() -> {
+      for (IBarrel b : recipients) {
+        try {
+          b.setMembers(version, members);
+        } catch (RemoteException e) {
+          LOGGER.warning("Failed to send the active barrels to a barrel: " + e.getMessage() + "\n");
+        }
       }
+    });
+  }
+
+  /**
+   * Gets the number of searches and sub-link requests answered by a call made for a concurrent identical request.
+   * @return the number of barrel calls saved by sharing them.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public long getCoalescedSearches() throws RemoteException {
+    return pageFlights.getCoalesced() + textFlights.getCoalesced();
+  }
+
+  /**
+   * Advances the epoch of the cached results when a barrel reports it applied new pages.
+   * @param id the ID of the barrel.
+   * @param epoch the ingest epoch of the barrel.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public void advanceEpoch(int id, long epoch) throws RemoteException {
+    Long previous = brlEpochs.put(id, epoch);
+    if (previous == null || previous != epoch) {
+      cacheEpoch.incrementAndGet();
     }
   }
 
+  /**
+   * Lets the searches ask a barrel for the arcs it gained once it reports it copied their pages.
+   * @param id the ID of the barrel.
+   * @param members the IDs of the barrels of the ring the barrel copied the pages of.
+   * @throws RemoteException if there is a remote communication error.
+   */
+  @Override
+  public void partitionReady(int id, ArrayList<Integer> members) throws RemoteException {
+    partitionSearcher.ready(id, members);
+  }
+
   /**
    * Messages from the barrels to be printed on the log.
    * @param s the message sent by the barrel.
@@ -438,6 +884,14 @@ public int AddBrl(IBarrel brl) throws RemoteException {
       for (IBarrel b : barrels) {
         b.send("Gateway shutting down.");
       }
+      shardSearcher.close();
+      partitionSearcher.close();
+      for (BarrelSelector selector : selectors()) {
+        selector.close();
+      }
+      statsPublisher.close();
+      membersPublisher.shutdownNow();
+      topSearches.close();
       Naming.unbind("rmi://" + SERVER_IP_ADDRESS + ":1099/gw");
       UnicastRemoteObject.unexportObject(this, true);
     } catch (Exception e) {
@@ -445,6 +899,14 @@ public int AddBrl(IBarrel brl) throws RemoteException {
     }
   }
 
+  /**
+   * Gets the selectors of every kind of request answered by any barrel.
+   * @return the selectors.
+   */
+  private List<BarrelSelector> selectors() {
+    return List.of(textSelector, pageSelector, linksSelector);
+  }
+
   /**
    * Deletes the queue file used by the downloaders manager.
    */
@@ -480,6 +942,40 @@ public int AddBrl(IBarrel brl) throws RemoteException {
         availableIds.add(id);
   }
 
+  /**
+   * Loads the stop words, normalized like the barrels do, so the trending searches count the same terms.
+   * @param filename the path of the stop words file.
+   * @return the normalized stop words, empty if the file cannot be read.
+   */
+  private Set<String> loadStopWords(String filename) {
+    Set<String> stopWords = new HashSet<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String word = Normalizer.normalize(line.trim().toLowerCase(), Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+        if (!word.isEmpty()) {
+          stopWords.add(word);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warning("Failed to load stop words file: " + e.getMessage() + "\n");
+    }
+    return stopWords;
+  }
+
+  /**
+   * Estimates the number of bytes of a page of results kept in the cache.
+   * @param page the page of results.
+   * @return the estimated number of bytes.
+   */
+  private static int weigh(SearchPage page) {
+    int bytes = 64;
+    for (Result r : page.getResults()) {
+      bytes += 48 + 2 * (r.getTitle().length() + r.getCitation().length() + r.getUrl().length());
+    }
+    return bytes;
+  }
+
   /**
    * Loads the configuration file to get the server IP address.
    */
@@ -489,6 +985,20 @@ public int AddBrl(IBarrel brl) throws RemoteException {
       prop.load(input);
       SERVER_IP_ADDRESS = prop.getProperty("server_ip");
       SERVER_PORT = Integer.parseInt(prop.getProperty("server_port"));
+      TERM_SHARDS = Math.max(1, Integer.parseInt(prop.getProperty("term_shards", "1")));
+      SHARD_TIMEOUT = Long.parseLong(prop.getProperty("shard_timeout", "2000"));
+      SHARD_MAX_MATCHES = Integer.parseInt(prop.getProperty("shard_max_matches", "10000"));
+      MAX_RESULTS = Integer.parseInt(prop.getProperty("search_max_results", "100"));
+      REPLICATION_FACTOR = Math.max(0, Integer.parseInt(prop.getProperty("replication_factor", "0")));
+      VIRTUAL_NODES = Math.max(1, Integer.parseInt(prop.getProperty("virtual_nodes", "64")));
+      LATENCY_EWMA_ALPHA = Double.parseDouble(prop.getProperty("latency_ewma_alpha", "0.2"));
+      HEDGE_MIN_DELAY = Long.parseLong(prop.getProperty("hedge_min_delay", "10"));
+      BARREL_TIMEOUT = Long.parseLong(prop.getProperty("barrel_timeout", "5000"));
+      QUERY_CACHE_BYTES = Long.parseLong(prop.getProperty("query_cache_bytes", "16777216"));
+      QUERY_CACHE_TTL = Long.parseLong(prop.getProperty("query_cache_ttl", "60000"));
+      STATS_INTERVAL = Long.parseLong(prop.getProperty("stats_interval", "1000"));
+      STATS_MAX_RATE = Double.parseDouble(prop.getProperty("stats_max_rate", "2"));
+      STATS_FLUSH_INTERVAL = Integer.parseInt(prop.getProperty("stats_flush_interval", "10"));
     } catch (IOException ex) {
       System.out.println("Failed to load config file: " + ex.getMessage());
       System.exit(1);
@@ -0,0 +1,93 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The AndNode class matches the docs that match all of its children, the implicit operator between words.
+ * The included children are ordered by their estimated size: the smallest one gives the candidates
+ * and the others only filter them, stopping as soon as no candidate is left. The excluded children
+ * are removed from the result at the end.
+ */
+final class AndNode extends QueryNode {
+    /**
+     * The included operators.
+     */
+    final List<QueryNode> included;
+
+    /**
+     * The excluded operators, the children of the NotNodes of the conjunction.
+     */
+    final List<QueryNode> excluded;
+
+    /**
+     * The AndNode constructor is used to create the operator of a conjunction.
+     * @param children operators of the conjunction, NotNodes are applied as exclusions
+     */
+    AndNode(List<QueryNode> children) {
+        included = new ArrayList<>();
+        excluded = new ArrayList<>();
+        for (QueryNode child : children) {
+            if (child instanceof NotNode) {
+                excluded.add(((NotNode) child).child);
+            } else {
+                included.add(child);
+            }
+        }
+    }
+
+    @Override
+    public long estimate(IndexReader index) {
+        long estimate = index.documentCount();
+        for (QueryNode child : included) {
+            estimate = Math.min(estimate, child.estimate(index));
+        }
+        return estimate;
+    }
+
+    @Override
+    public RoaringPostings evaluate(IndexReader index) {
+        RoaringPostings result;
+        if (included.isEmpty()) {
+            result = index.allDocs();
+        } else {
+            // Evaluate the cheapest clause first, its docs are the candidates
+            List<QueryNode> ordered = byEstimate(included, index);
+            if (ordered.get(0).estimate(index) == 0) {
+                return new RoaringPostings();
+            }
+            int[] candidates = ordered.get(0).evaluate(index).toArray();
+            int count = candidates.length;
+            for (int i = 1; i < ordered.size() && count > 0; i++) {
+                count = QueryExecutor.filter(candidates, count, ordered.get(i).evaluate(index));
+            }
+            result = RoaringPostings.of(candidates, count);
+        }
+        for (QueryNode child : excluded) {
+            if (result.isEmpty()) {
+                break;
+            }
+            result = result.andNot(child.evaluate(index));
+        }
+        return result;
+    }
+
+    @Override
+    public void collectTerms(List<String> terms) {
+        for (QueryNode child : included) {
+            child.collectTerms(terms);
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        for (QueryNode child : included) {
+            parts.add(child.toString());
+        }
+        for (QueryNode child : excluded) {
+            parts.add("-" + child);
+        }
+        return "(" + String.join(" ", parts) + ")";
+    }
+}
@@ -0,0 +1,358 @@
+package com.googol.googolfe.server.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The ArrayContainer class stores the values of a sparse container as a sorted array.
+ * It is converted to a BitmapContainer when it grows past MAX_SIZE values.
+ */
+final class ArrayContainer extends Container {
+    /**
+     * The maximum number of values kept as an array, above it a bitmap is smaller.
+     */
+    static final int MAX_SIZE = 4096;
+
+    /**
+     * The sorted values of the container.
+     */
+    char[] content;
+
+    /**
+     * The number of values used in content.
+     */
+    int cardinality;
+
+    /**
+     * The ArrayContainer constructor is used to create an empty container.
+     */
+    ArrayContainer() {
+        this(new char[4], 0);
+    }
+
+    /**
+     * The ArrayContainer constructor is used to create a container from sorted values.
+     * @param content sorted values
+     * @param cardinality number of values used in content
+     */
+    ArrayContainer(char[] content, int cardinality) {
+        this.content = content;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char x) {
+        // Doc IDs mostly arrive in increasing order, so appending is the common case
+        if (cardinality == 0 || x > content[cardinality - 1]) {
+            if (cardinality >= MAX_SIZE) {
+                return toBitmap().add(x);
+            }
+            ensureCapacity(cardinality + 1);
+            content[cardinality++] = x;
+            return this;
+        }
+        int i = Arrays.binarySearch(content, 0, cardinality, x);
+        if (i >= 0) {
+            return this;
+        }
+        if (cardinality >= MAX_SIZE) {
+            return toBitmap().add(x);
+        }
+        i = -i - 1;
+        ensureCapacity(cardinality + 1);
+        System.arraycopy(content, i, content, i + 1, cardinality - i);
+        content[i] = x;
+        cardinality++;
+        return this;
+    }
+
+    @Override
+    boolean contains(char x) {
+        return Arrays.binarySearch(content, 0, cardinality, x) >= 0;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    int last() {
+        return cardinality == 0 ? -1 : content[cardinality - 1];
+    }
+
+    @Override
+    Container and(Container other) {
+        if (other instanceof RunContainer) {
+            other = ((RunContainer) other).toEfficientContainer();
+        }
+        if (other instanceof BitmapContainer) {
+            BitmapContainer bitmap = (BitmapContainer) other;
+            char[] out = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (bitmap.contains(content[i])) {
+                    out[n++] = content[i];
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+        ArrayContainer array = (ArrayContainer) other;
+        char[] out = new char[Math.min(cardinality, array.cardinality)];
+        int n = intersect(content, cardinality, array.content, array.cardinality, out);
+        return new ArrayContainer(out, n);
+    }
+
+    @Override
+    Container or(Container other) {
+        if (other instanceof RunContainer) {
+            other = ((RunContainer) other).toEfficientContainer();
+        }
+        if (other instanceof BitmapContainer) {
+            return other.or(this);
+        }
+        ArrayContainer array = (ArrayContainer) other;
+        if (cardinality + array.cardinality > MAX_SIZE) {
+            BitmapContainer bitmap = toBitmap();
+            for (int i = 0; i < array.cardinality; i++) {
+                bitmap.add(array.content[i]);
+            }
+            return bitmap.cardinality() > MAX_SIZE ? bitmap : bitmap.toArrayContainer();
+        }
+        char[] out = new char[cardinality + array.cardinality];
+        int i = 0, j = 0, n = 0;
+        while (i < cardinality && j < array.cardinality) {
+            char a = content[i], b = array.content[j];
+            if (a < b) {
+                out[n++] = a;
+                i++;
+            } else if (a > b) {
+                out[n++] = b;
+                j++;
+            } else {
+                out[n++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < cardinality) {
+            out[n++] = content[i++];
+        }
+        while (j < array.cardinality) {
+            out[n++] = array.content[j++];
+        }
+        return new ArrayContainer(out, n);
+    }
+
+    @Override
+    Container andNot(Container other) {
+        if (other instanceof RunContainer) {
+            other = ((RunContainer) other).toEfficientContainer();
+        }
+        char[] out = new char[cardinality];
+        int n = 0;
+        if (other instanceof BitmapContainer) {
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(content[i])) {
+                    out[n++] = content[i];
+                }
+            }
+            return new ArrayContainer(out, n);
+        }
+        ArrayContainer array = (ArrayContainer) other;
+        int j = 0;
+        for (int i = 0; i < cardinality; i++) {
+            j = advanceUntil(array.content, j, array.cardinality, content[i]);
+            if (j >= array.cardinality || array.content[j] != content[i]) {
+                out[n++] = content[i];
+            }
+        }
+        return new ArrayContainer(out, n);
+    }
+
+    @Override
+    int fill(int[] out, int offset, int high) {
+        for (int i = 0; i < cardinality; i++) {
+            out[offset++] = high | content[i];
+        }
+        return offset;
+    }
+
+    @Override
+    Container runOptimize() {
+        int runs = numberOfRuns();
+        if (RunContainer.serializedSize(runs) < serializedSize(cardinality)) {
+            return RunContainer.fromSorted(content, cardinality, runs);
+        }
+        return this;
+    }
+
+    @Override
+    Container copy() {
+        return new ArrayContainer(Arrays.copyOf(content, Math.max(cardinality, 1)), cardinality);
+    }
+
+    @Override
+    byte type() {
+        return ARRAY;
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeShort(cardinality - 1);
+        for (int i = 0; i < cardinality; i++) {
+            out.writeChar(content[i]);
+        }
+    }
+
+    /**
+     * The deserialize method is used to read an array container from an input.
+     * @param in input to read from
+     * @return container read
+     * @throws IOException if there is an error reading
+     */
+    static ArrayContainer deserialize(DataInput in) throws IOException {
+        int cardinality = in.readUnsignedShort() + 1;
+        char[] content = new char[cardinality];
+        for (int i = 0; i < cardinality; i++) {
+            content[i] = in.readChar();
+        }
+        return new ArrayContainer(content, cardinality);
+    }
+
+    /**
+     * The serializedSize method is used to get the number of bytes used to serialize an array container.
+     * @param cardinality number of values of the container
+     * @return number of bytes
+     */
+    static int serializedSize(int cardinality) {
+        return 2 + 2 * cardinality;
+    }
+
+    /**
+     * The toBitmap method is used to convert the container to a bitmap.
+     * @return bitmap container with the same values
+     */
+    BitmapContainer toBitmap() {
+        BitmapContainer bitmap = new BitmapContainer();
+        for (int i = 0; i < cardinality; i++) {
+            bitmap.add(content[i]);
+        }
+        return bitmap;
+    }
+
+    /**
+     * The numberOfRuns method is used to count the runs of consecutive values in the container.
+     * @return number of runs
+     */
+    private int numberOfRuns() {
+        int runs = cardinality > 0 ? 1 : 0;
+        for (int i = 1; i < cardinality; i++) {
+            if (content[i] != content[i - 1] + 1) {
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    /**
+     * The ensureCapacity method is used to grow the content array.
+     * @param min minimum number of values the array must hold
+     */
+    private void ensureCapacity(int min) {
+        if (content.length < min) {
+            content = Arrays.copyOf(content, Math.min(MAX_SIZE, Math.max(min, content.length * 2)));
+        }
+    }
+
+    /**
+     * The intersect method is used to intersect two sorted arrays.
+     * When one array is much smaller, its values are looked up in the other one by galloping.
+     * @param a first array
+     * @param na number of values of the first array
+     * @param b second array
+     * @param nb number of values of the second array
+     * @param out array to write the intersection to
+     * @return number of values written
+     */
+    static int intersect(char[] a, int na, char[] b, int nb, char[] out) {
+        if (na * 64 < nb) {
+            return gallopIntersect(a, na, b, nb, out);
+        }
+        if (nb * 64 < na) {
+            return gallopIntersect(b, nb, a, na, out);
+        }
+        int i = 0, j = 0, n = 0;
+        while (i < na && j < nb) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The gallopIntersect method is used to intersect a small sorted array with a large one.
+     * @param small small array
+     * @param ns number of values of the small array
+     * @param large large array
+     * @param nl number of values of the large array
+     * @param out array to write the intersection to
+     * @return number of values written
+     */
+    private static int gallopIntersect(char[] small, int ns, char[] large, int nl, char[] out) {
+        int n = 0, j = 0;
+        for (int i = 0; i < ns && j < nl; i++) {
+            j = advanceUntil(large, j, nl, small[i]);
+            if (j < nl && large[j] == small[i]) {
+                out[n++] = small[i];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The advanceUntil method is used to find the first position holding a value not smaller than the target.
+     * It gallops from the starting position with doubling steps and finishes with a binary search.
+     * @param array sorted array
+     * @param from position to start from
+     * @param length number of values of the array
+     * @param target value to look for
+     * @return first position at or after from with a value not smaller than target, or length if there is none
+     */
+    static int advanceUntil(char[] array, int from, int length, char target) {
+        int lower = from;
+        if (lower >= length || array[lower] >= target) {
+            return lower;
+        }
+        int step = 1;
+        int upper = lower + step;
+        while (upper < length && array[upper] < target) {
+            lower = upper;
+            step <<= 1;
+            upper = lower + step;
+        }
+        if (upper > length) {
+            upper = length;
+        }
+        // array[lower] < target and array[upper] >= target (or upper == length)
+        int lo = lower + 1, hi = upper;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid] < target) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
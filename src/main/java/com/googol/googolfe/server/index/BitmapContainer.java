@@ -0,0 +1,274 @@
+package com.googol.googolfe.server.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The BitmapContainer class stores the values of a dense container as a bitmap of 65536 bits.
+ * The set operations work a 64-bit word at a time.
+ */
+final class BitmapContainer extends Container {
+    /**
+     * The number of 64-bit words of the bitmap.
+     */
+    static final int WORDS = 1024;
+
+    /**
+     * The bitmap with one bit per possible value.
+     */
+    final long[] bitmap;
+
+    /**
+     * The number of bits set in the bitmap.
+     */
+    int cardinality;
+
+    /**
+     * The BitmapContainer constructor is used to create an empty container.
+     */
+    BitmapContainer() {
+        this(new long[WORDS], 0);
+    }
+
+    /**
+     * The BitmapContainer constructor is used to create a container from a bitmap.
+     * @param bitmap bitmap with WORDS words
+     * @param cardinality number of bits set in the bitmap
+     */
+    BitmapContainer(long[] bitmap, int cardinality) {
+        this.bitmap = bitmap;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char x) {
+        long word = bitmap[x >>> 6];
+        long bit = 1L << x;
+        if ((word & bit) == 0) {
+            bitmap[x >>> 6] = word | bit;
+            cardinality++;
+        }
+        return this;
+    }
+
+    @Override
+    boolean contains(char x) {
+        return (bitmap[x >>> 6] & (1L << x)) != 0;
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    int last() {
+        for (int i = WORDS - 1; i >= 0; i--) {
+            if (bitmap[i] != 0) {
+                return 64 * i + 63 - Long.numberOfLeadingZeros(bitmap[i]);
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    Container and(Container other) {
+        if (other instanceof RunContainer) {
+            other = ((RunContainer) other).toEfficientContainer();
+        }
+        if (other instanceof ArrayContainer) {
+            return other.and(this);
+        }
+        long[] words = ((BitmapContainer) other).bitmap;
+        long[] out = new long[WORDS];
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            out[i] = bitmap[i] & words[i];
+            n += Long.bitCount(out[i]);
+        }
+        return shrink(out, n);
+    }
+
+    @Override
+    Container or(Container other) {
+        if (other instanceof RunContainer) {
+            other = ((RunContainer) other).toEfficientContainer();
+        }
+        long[] out = bitmap.clone();
+        if (other instanceof ArrayContainer) {
+            BitmapContainer result = new BitmapContainer(out, cardinality);
+            ArrayContainer array = (ArrayContainer) other;
+            for (int i = 0; i < array.cardinality; i++) {
+                result.add(array.content[i]);
+            }
+            return result;
+        }
+        long[] words = ((BitmapContainer) other).bitmap;
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            out[i] |= words[i];
+            n += Long.bitCount(out[i]);
+        }
+        return new BitmapContainer(out, n);
+    }
+
+    @Override
+    Container andNot(Container other) {
+        if (other instanceof RunContainer) {
+            other = ((RunContainer) other).toEfficientContainer();
+        }
+        long[] out = bitmap.clone();
+        int n = cardinality;
+        if (other instanceof ArrayContainer) {
+            ArrayContainer array = (ArrayContainer) other;
+            for (int i = 0; i < array.cardinality; i++) {
+                char x = array.content[i];
+                long word = out[x >>> 6];
+                long bit = 1L << x;
+                if ((word & bit) != 0) {
+                    out[x >>> 6] = word & ~bit;
+                    n--;
+                }
+            }
+            return shrink(out, n);
+        }
+        long[] words = ((BitmapContainer) other).bitmap;
+        n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            out[i] &= ~words[i];
+            n += Long.bitCount(out[i]);
+        }
+        return shrink(out, n);
+    }
+
+    @Override
+    int fill(int[] out, int offset, int high) {
+        for (int i = 0; i < WORDS; i++) {
+            long word = bitmap[i];
+            while (word != 0) {
+                out[offset++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    Container runOptimize() {
+        int runs = numberOfRuns();
+        if (RunContainer.serializedSize(runs) < serializedSize()) {
+            return RunContainer.fromBitmap(this, runs);
+        }
+        return this;
+    }
+
+    @Override
+    Container copy() {
+        return new BitmapContainer(bitmap.clone(), cardinality);
+    }
+
+    @Override
+    byte type() {
+        return BITMAP;
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        for (long word : bitmap) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * The deserialize method is used to read a bitmap container from an input.
+     * @param in input to read from
+     * @return container read
+     * @throws IOException if there is an error reading
+     */
+    static BitmapContainer deserialize(DataInput in) throws IOException {
+        long[] bitmap = new long[WORDS];
+        int cardinality = 0;
+        for (int i = 0; i < WORDS; i++) {
+            bitmap[i] = in.readLong();
+            cardinality += Long.bitCount(bitmap[i]);
+        }
+        return new BitmapContainer(bitmap, cardinality);
+    }
+
+    /**
+     * The serializedSize method is used to get the number of bytes used to serialize a bitmap container.
+     * @return number of bytes
+     */
+    static int serializedSize() {
+        return WORDS * 8;
+    }
+
+    /**
+     * The nextSetBit method is used to find the first value of the container not smaller than a given one.
+     * @param from value to start from
+     * @return first value at or after from, or -1 if there is none
+     */
+    int nextSetBit(int from) {
+        int i = from >>> 6;
+        if (i >= WORDS) {
+            return -1;
+        }
+        long word = bitmap[i] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (i << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++i == WORDS) {
+                return -1;
+            }
+            word = bitmap[i];
+        }
+    }
+
+    /**
+     * The toArrayContainer method is used to convert the container to a sorted array.
+     * @return array container with the same values
+     */
+    ArrayContainer toArrayContainer() {
+        char[] content = new char[cardinality];
+        int n = 0;
+        for (int i = 0; i < WORDS; i++) {
+            long word = bitmap[i];
+            while (word != 0) {
+                content[n++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(content, n);
+    }
+
+    /**
+     * The numberOfRuns method is used to count the runs of consecutive values in the bitmap.
+     * @return number of runs
+     */
+    int numberOfRuns() {
+        int runs = 0;
+        long next = bitmap[0];
+        for (int i = 0; i < WORDS - 1; i++) {
+            long word = next;
+            next = bitmap[i + 1];
+            // A run ends where a set bit is followed by a clear one, including across words
+            runs += Long.bitCount((~word) & (word << 1)) + (int) ((word >>> 63) & ~next);
+        }
+        long word = next;
+        runs += Long.bitCount((~word) & (word << 1)) + (int) (word >>> 63);
+        return runs;
+    }
+
+    /**
+     * The shrink method is used to build the result of an operation, as an array if it became sparse.
+     * @param words bitmap of the result
+     * @param cardinality number of bits set in the bitmap
+     * @return container with the values of the bitmap
+     */
+    private static Container shrink(long[] words, int cardinality) {
+        BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+        return cardinality > ArrayContainer.MAX_SIZE ? bitmap : bitmap.toArrayContainer();
+    }
+}
@@ -0,0 +1,102 @@
+package com.googol.googolfe.server.index;
+
+import java.util.Map;
+
+/**
+ * The Bm25 class scores how well a page matches a term with the Okapi BM25 formula.
+ * The score of a term grows with its frequency in the page, saturating as the frequency grows,
+ * shrinks for pages longer than the average, and is weighted by how rare the term is.
+ */
+public final class Bm25 {
+    /**
+     * The saturation of the term frequency.
+     */
+    static final double K1 = 1.2;
+
+    /**
+     * The weight of the length normalization.
+     */
+    static final double B = 0.75;
+
+    /**
+     * The number of indexed pages.
+     */
+    private final int docCount;
+
+    /**
+     * The average number of terms of the indexed pages.
+     */
+    private final double averageLength;
+
+    /**
+     * The number of pages containing each term, or null to count the postings of the index scored.
+     */
+    private final Map<String, Integer> documentFrequencies;
+
+    /**
+     * The Bm25 constructor is used to create a scorer with the statistics of an index.
+     * @param index index to score
+     */
+    public Bm25(IndexReader index) {
+        docCount = index.documentCount();
+        averageLength = index.averageDocumentLength();
+        documentFrequencies = null;
+    }
+
+    /**
+     * The Bm25 constructor is used to create a scorer with the statistics of a larger collection than the
+     * index scored, so indexes holding different pages of the collection give comparable scores.
+     * @param docCount number of pages of the collection
+     * @param averageLength average number of terms of the pages of the collection
+     * @param documentFrequencies number of pages of the collection containing each term
+     */
+    public Bm25(int docCount, double averageLength, Map<String, Integer> documentFrequencies) {
+        this.docCount = docCount;
+        this.averageLength = averageLength;
+        this.documentFrequencies = documentFrequencies;
+    }
+
+    /**
+     * The idf method is used to get the weight of a term of the index scored.
+     * @param term normalized term
+     * @param postings postings of the term in the index, counted if the collection is the index
+     * @return inverse document frequency, always positive
+     */
+    public double idf(String term, RoaringPostings postings) {
+        Integer documentFrequency = documentFrequencies != null ? documentFrequencies.get(term) : null;
+        return idf(documentFrequency != null ? documentFrequency : postings.cardinality());
+    }
+
+    /**
+     * The idf method is used to get the weight of a term, higher for rarer terms.
+     * @param documentFrequency number of pages containing the term
+     * @return inverse document frequency, always positive
+     */
+    public double idf(int documentFrequency) {
+        return Math.log(1 + (docCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * The score method is used to get the score of a term in a page.
+     * @param idf weight of the term
+     * @param frequency frequency of the term in the page
+     * @param length number of terms of the page
+     * @return score of the term
+     */
+    public double score(double idf, int frequency, int length) {
+        double norm = averageLength > 0 ? 1 - B + B * length / averageLength : 1;
+        return idf * frequency * (K1 + 1) / (frequency + K1 * norm);
+    }
+
+    /**
+     * The upperBound method is used to get a score no page can exceed for a term.
+     * The score grows with the frequency and shrinks with the length, so the bound is the score
+     * of the highest frequency in a page of length 0.
+     * @param idf weight of the term
+     * @param maxFrequency highest frequency of the term in a page
+     * @return upper bound of the score of the term
+     */
+    public double upperBound(double idf, int maxFrequency) {
+        return idf * maxFrequency * (K1 + 1) / (maxFrequency + K1 * (1 - B));
+    }
+}
@@ -0,0 +1,51 @@
+package com.googol.googolfe.server.index;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The ByteBufferInputStream class reads a region of a buffer as a stream, so the postings of a
+ * memory-mapped segment are read with the same code that reads them from a file.
+ */
+final class ByteBufferInputStream extends InputStream {
+    /**
+     * The region of the buffer to read, with its own position.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The ByteBufferInputStream constructor is used to create a stream over a region of a buffer.
+     * The buffer itself is not modified, so it can be shared between threads.
+     * @param buffer buffer to read
+     * @param offset position of the region
+     * @param length length of the region
+     */
+    ByteBufferInputStream(ByteBuffer buffer, long offset, long length) {
+        this.buffer = buffer.duplicate();
+        this.buffer.limit((int) (offset + length));
+        this.buffer.position((int) offset);
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+}
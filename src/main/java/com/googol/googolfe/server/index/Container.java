@@ -0,0 +1,129 @@
+package com.googol.googolfe.server.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The Container class is the base of the containers used by RoaringPostings.
+ * A container holds the low 16 bits of the doc IDs that share the same high 16 bits,
+ * using the representation that best fits its density: a sorted array, a bitmap or runs.
+ * The set operations never modify their inputs and always return a new container.
+ */
+abstract class Container {
+    /**
+     * The type written before an array container when serializing.
+     */
+    static final byte ARRAY = 0;
+
+    /**
+     * The type written before a bitmap container when serializing.
+     */
+    static final byte BITMAP = 1;
+
+    /**
+     * The type written before a run container when serializing.
+     */
+    static final byte RUN = 2;
+
+    /**
+     * The add method is used to add a value to the container.
+     * @param x value to add
+     * @return the container holding the value, which may be a new container of another type
+     */
+    abstract Container add(char x);
+
+    /**
+     * The contains method is used to check if the container holds a value.
+     * @param x value to check
+     * @return true if the value is in the container, false otherwise
+     */
+    abstract boolean contains(char x);
+
+    /**
+     * The cardinality method is used to get the number of values in the container.
+     * @return number of values
+     */
+    abstract int cardinality();
+
+    /**
+     * The last method is used to get the largest value of the container.
+     * @return largest value, or -1 if the container is empty
+     */
+    abstract int last();
+
+    /**
+     * The and method is used to intersect the container with another one.
+     * @param other container to intersect with
+     * @return new container with the values present in both
+     */
+    abstract Container and(Container other);
+
+    /**
+     * The or method is used to unite the container with another one.
+     * @param other container to unite with
+     * @return new container with the values present in either
+     */
+    abstract Container or(Container other);
+
+    /**
+     * The andNot method is used to remove the values of another container from this one.
+     * @param other container with the values to remove
+     * @return new container with the values present in this container but not in the other
+     */
+    abstract Container andNot(Container other);
+
+    /**
+     * The fill method is used to write the values of the container, combined with the high bits, to an array.
+     * @param out array to write to
+     * @param offset position of the array to start writing
+     * @param high high 16 bits shared by the values, already shifted
+     * @return position of the array after the last value written
+     */
+    abstract int fill(int[] out, int offset, int high);
+
+    /**
+     * The runOptimize method is used to get the most compact representation of the container.
+     * @return this container or an equivalent container of another type
+     */
+    abstract Container runOptimize();
+
+    /**
+     * The copy method is used to get an independent copy of the container.
+     * @return copy of the container
+     */
+    abstract Container copy();
+
+    /**
+     * The type method is used to get the type written before the container when serializing.
+     * @return type of the container
+     */
+    abstract byte type();
+
+    /**
+     * The serialize method is used to write the container to an output.
+     * @param out output to write to
+     * @throws IOException if there is an error writing
+     */
+    abstract void serialize(DataOutput out) throws IOException;
+
+    /**
+     * The deserialize method is used to read a container from an input.
+     * @param type type of the container, as returned by type()
+     * @param in input to read from
+     * @return container read
+     * @throws IOException if there is an error reading or the type is unknown
+     */
+    static Container deserialize(byte type, DataInput in) throws IOException {
+        switch (type) {
+            case ARRAY:
+                return ArrayContainer.deserialize(in);
+            case BITMAP:
+                return BitmapContainer.deserialize(in);
+            case RUN:
+                return RunContainer.deserialize(in);
+            default:
+                throw new IOException("Unknown container type: " + type);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.googol.googolfe.server.index;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The DiskSegment class is an immutable segment of the index stored in a file written by SegmentWriter.
+ * The file is memory-mapped, so its postings and positions stay in the page cache instead of the heap:
+ * only the doc IDs of the segment are loaded, and the terms are found by binary search on the mapping.
+ * The postings of the terms read most are kept deserialized within a fixed number of bytes, so the frequent
+ * query terms are not rebuilt on the heap at every search, whatever the size of the index.
+ * The file is mapped in one buffer read with int positions, which is why SegmentWriter never writes a segment
+ * larger than SegmentWriter.MAX_BYTES.
+ * Every read uses absolute positions or its own view of the mapping, so the segment can be shared between threads.
+ */
+final class DiskSegment implements Segment {
+    /**
+     * The number of bytes of serialized postings kept deserialized by each segment.
+     */
+    private static final int CACHE_BYTES = 4 << 20;
+
+    /**
+     * The largest postings kept deserialized, so a few very common terms do not take the whole cache.
+     */
+    private static final int MAX_CACHED_BYTES = CACHE_BYTES / 8;
+
+    /**
+     * The number of bytes counted for an entry of the cache besides its postings, so many small postings
+     * are also bounded.
+     */
+    private static final int ENTRY_BYTES = 96;
+
+    /**
+     * The path of the segment file.
+     */
+    private final Path path;
+
+    /**
+     * The mapping of the segment file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The version of the format of the segment file.
+     */
+    private final int version;
+
+    /**
+     * The number of terms of the segment.
+     */
+    private final int termCount;
+
+    /**
+     * The number of pages of the segment.
+     */
+    private final int docCount;
+
+    /**
+     * The sum of the lengths of the pages of the segment.
+     */
+    private final long totalLength;
+
+    /**
+     * The offsets of the sections of the file.
+     */
+    private final int docTableOffset, termIndexOffset, termDataOffset, postingsOffset, positionsOffset;
+
+    /**
+     * The doc IDs of the pages of the segment.
+     */
+    private final RoaringPostings docs;
+
+    /**
+     * The postings of the terms read most, least recently read first, guarded by its own lock.
+     */
+    private final LinkedHashMap<String, CachedPostings> cache;
+
+    /**
+     * The number of bytes counted for the entries of the cache.
+     */
+    private long cachedBytes;
+
+    /**
+     * The DiskSegment constructor is used to open a segment file.
+     * @param path path of the segment file
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    DiskSegment(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large to map: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.capacity() < SegmentWriter.HEADER || buffer.getInt(0) != SegmentWriter.MAGIC
+                || buffer.getInt(4) < 1 || buffer.getInt(4) > SegmentWriter.VERSION) {
+            throw new IOException("Not a segment file: " + path);
+        }
+        version = buffer.getInt(4);
+        termCount = buffer.getInt(8);
+        docCount = buffer.getInt(12);
+        totalLength = buffer.getLong(16);
+        int docsOffset = (int) buffer.getLong(24);
+        docTableOffset = (int) buffer.getLong(32);
+        termIndexOffset = (int) buffer.getLong(40);
+        termDataOffset = (int) buffer.getLong(48);
+        postingsOffset = (int) buffer.getLong(56);
+        positionsOffset = (int) buffer.getLong(64);
+        docs = RoaringPostings.deserialize(new DataInputStream(
+                new ByteBufferInputStream(buffer, docsOffset, docTableOffset - docsOffset)));
+        cache = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * The getPath method is used to get the path of the segment file.
+     * @return path of the segment file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * The size method is used to get the size of the segment file.
+     * @return number of bytes of the file
+     */
+    long size() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public RoaringPostings postings(String term) {
+        synchronized (cache) {
+            CachedPostings cached = cache.get(term);
+            if (cached != null) {
+                return cached.postings;
+            }
+        }
+        int entry = findTerm(term);
+        if (entry < 0) {
+            return null;
+        }
+        int offset = postingsOffset + (int) buffer.getLong(entry + 4);
+        RoaringPostings postings;
+        int bytes;
+        try {
+            ByteBufferInputStream in = new ByteBufferInputStream(buffer, offset, positionsOffset - offset);
+            int available = in.available();
+            postings = RoaringPostings.deserialize(new DataInputStream(in));
+            bytes = available - in.available() + ENTRY_BYTES;
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted segment " + path, e);
+        }
+        if (bytes <= MAX_CACHED_BYTES) {
+            synchronized (cache) {
+                if (cache.put(term, new CachedPostings(postings, bytes)) == null) {
+                    cachedBytes += bytes;
+                }
+                Iterator<CachedPostings> oldest = cache.values().iterator();
+                while (cachedBytes > CACHE_BYTES) {
+                    cachedBytes -= oldest.next().bytes;
+                    oldest.remove();
+                }
+            }
+        }
+        return postings;
+    }
+
+    @Override
+    public int documentFrequency(String term) {
+        int entry = findTerm(term);
+        if (entry < 0) {
+            return 0;
+        }
+        // Segments written before version 2 only have it at the start of the positions of the term
+        return version >= 2 ? buffer.getInt(entry + 20) : buffer.getInt(positionsOffset + (int) buffer.getLong(entry + 12));
+    }
+
+    @Override
+    public int[] positions(String term, int doc) {
+        byte[] encoded = encodedPositions(term, doc);
+        return encoded == null ? null : PositionList.decode(encoded, 0);
+    }
+
+    @Override
+    public byte[] encodedPositions(String term, int doc) {
+        int entry = findTerm(term);
+        if (entry < 0) {
+            return null;
+        }
+        int block = positionsOffset + (int) buffer.getLong(entry + 12);
+        int n = buffer.getInt(block);
+        int i = search(block + 4, n, doc);
+        if (i < 0) {
+            return null;
+        }
+        int offsets = block + 4 + 4 * n;
+        int data = offsets + 4 * (n + 1);
+        int start = buffer.getInt(offsets + 4 * i);
+        byte[] encoded = new byte[buffer.getInt(offsets + 4 * (i + 1)) - start];
+        buffer.get(data + start, encoded);
+        return encoded;
+    }
+
+    @Override
+    public int frequency(String term, int doc) {
+        byte[] encoded = encodedPositions(term, doc);
+        return encoded == null ? 0 : PositionList.frequency(encoded, 0);
+    }
+
+    @Override
+    public int maxFrequency(String term) {
+        int entry = findTerm(term);
+        return entry < 0 ? 0 : buffer.getInt(entry);
+    }
+
+    @Override
+    public int documentLength(int doc) {
+        int i = search(docTableOffset, docCount, doc);
+        return i < 0 ? 0 : buffer.getInt(docTableOffset + 4 * (docCount + i));
+    }
+
+    @Override
+    public RoaringPostings docs() {
+        return docs;
+    }
+
+    @Override
+    public long totalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public List<String> terms() {
+        List<String> terms = new ArrayList<>(termCount);
+        for (int i = 0; i < termCount; i++) {
+            terms.add(termAt(termDataOffset + buffer.getInt(termIndexOffset + 4 * i)));
+        }
+        return terms;
+    }
+
+    /**
+     * The findTerm method is used to find a term by binary search on the term index.
+     * @param term term to look for
+     * @return position of the data of the term after its name, or -1 if the term is not in the segment
+     */
+    private int findTerm(String term) {
+        int lo = 0, hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int entry = termDataOffset + buffer.getInt(termIndexOffset + 4 * mid);
+            int cmp = termAt(entry).compareTo(term);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return entry + 2 + (buffer.getShort(entry) & 0xFFFF);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The termAt method is used to read the name of a term from the term data.
+     * @param entry position of the term in the term data
+     * @return name of the term
+     */
+    private String termAt(int entry) {
+        byte[] bytes = new byte[buffer.getShort(entry) & 0xFFFF];
+        buffer.get(entry + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The search method is used to find a doc ID by binary search on a sorted table of the mapping.
+     * @param table position of the table
+     * @param n number of doc IDs of the table
+     * @param doc doc ID to look for
+     * @return index of the doc ID, or -1 if it is not in the table
+     */
+    private int search(int table, int n, int doc) {
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int value = buffer.getInt(table + 4 * mid);
+            if (value < doc) {
+                lo = mid + 1;
+            } else if (value > doc) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The CachedPostings class holds the postings of a term kept deserialized, with the bytes counted for them.
+     */
+    private static final class CachedPostings {
+        /**
+         * The postings of the term, never modified.
+         */
+        private final RoaringPostings postings;
+
+        /**
+         * The number of bytes counted for the entry: the serialized postings and the entry itself.
+         */
+        private final int bytes;
+
+        /**
+         * The CachedPostings constructor is used to create an entry of the cache.
+         * @param postings postings of the term
+         * @param bytes number of bytes counted for the entry
+         */
+        CachedPostings(RoaringPostings postings, int bytes) {
+            this.postings = postings;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.googol.googolfe.server.index;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The DocDictionary class maps every URL known to a barrel to a compact int doc ID.
+ * Each URL is stored only once, so the barrel data structures only keep ints and the
+ * strings are only needed again when the results are returned to the Gateway.
+ * Doc IDs are assigned sequentially starting at 0 and are never reused.
+ * The ingest thread adds URLs while the searches look them up without locking: a URL is stored
+ * before its doc ID is published, and the array of URLs is only replaced by a complete copy.
+ */
+public class DocDictionary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The serialized fields, kept as the list and map used before the dictionary was made concurrent.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("urls", ArrayList.class),
+        new ObjectStreamField("ids", HashMap.class)
+    };
+
+    /**
+     * The array of URLs, indexed by doc ID, with room for more.
+     */
+    private transient volatile String[] urls;
+
+    /**
+     * The number of URLs in the array.
+     */
+    private transient volatile int size;
+
+    /**
+     * The map used to find the doc ID of a URL.
+     */
+    private transient ConcurrentHashMap<String, Integer> ids;
+
+    /**
+     * The DocDictionary constructor is used to create an empty dictionary.
+     */
+    public DocDictionary() {
+        urls = new String[16];
+        size = 0;
+        ids = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The getOrAdd method is used to get the doc ID of a URL, assigning a new one if the URL is unknown.
+     * @param url url to look up
+     * @return doc ID of the url
+     */
+    public synchronized int getOrAdd(String url) {
+        Integer id = ids.get(url);
+        if (id == null) {
+            id = size;
+            if (id == urls.length) {
+                urls = Arrays.copyOf(urls, id * 2);
+            }
+            urls[id] = url;
+            ids.put(url, id);
+            size = id + 1;
+        }
+        return id;
+    }
+
+    /**
+     * The getId method is used to get the doc ID of a URL.
+     * @param url url to look up
+     * @return doc ID of the url, or -1 if the url is unknown
+     */
+    public int getId(String url) {
+        Integer id = ids.get(url);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * The getUrl method is used to get the URL of a doc ID.
+     * @param id doc ID to look up
+     * @return url of the doc ID
+     */
+    public String getUrl(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown doc ID " + id);
+        }
+        return urls[id];
+    }
+
+    /**
+     * The size method is used to get the number of URLs in the dictionary.
+     * @return number of URLs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The writeObject method is used to serialize the dictionary as a list of URLs and a map of doc IDs.
+     * @param out stream to write to
+     * @throws IOException if there is an error writing
+     */
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("urls", new ArrayList<>(Arrays.asList(urls).subList(0, size)));
+        fields.put("ids", new HashMap<>(ids));
+        out.writeFields();
+    }
+
+    /**
+     * The readObject method is used to deserialize a dictionary written by writeObject.
+     * @param in stream to read from
+     * @throws IOException if there is an error reading
+     * @throws ClassNotFoundException if a class of the stream cannot be found
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        ArrayList<String> list = (ArrayList<String>) fields.get("urls", null);
+        HashMap<String, Integer> map = (HashMap<String, Integer>) fields.get("ids", null);
+        urls = list.toArray(new String[Math.max(16, list.size())]);
+        size = list.size();
+        ids = new ConcurrentHashMap<>(map);
+    }
+}
@@ -0,0 +1,69 @@
+package com.googol.googolfe.server.index;
+
+/**
+ * The interface used by the query operators to read the index of a barrel.
+ */
+public interface IndexReader {
+  /**
+   * Gets the postings of a term.
+   * @param term The normalized term.
+   * @return The doc IDs of the pages containing the term, or null if the term is not in the index.
+   */
+  public RoaringPostings postings(String term);
+
+  /**
+   * Gets an upper bound of the number of pages containing a term, without building its postings,
+   * used to estimate the size of the query operators.
+   * @param term The normalized term.
+   * @return The document frequency of the term, 0 if the term is not in the index.
+   */
+  public int documentFrequency(String term);
+
+  /**
+   * Gets the positions of a term in a page, used by phrase and proximity queries.
+   * @param term The normalized term.
+   * @param doc The doc ID of the page.
+   * @return The increasing positions of the term in the page, or null if the page does not contain the term.
+   */
+  public int[] positions(String term, int doc);
+
+  /**
+   * Gets the number of times a term appears in a page, used for scoring.
+   * @param term The normalized term.
+   * @param doc The doc ID of the page.
+   * @return The frequency of the term in the page, 0 if the page does not contain the term.
+   */
+  public int frequency(String term, int doc);
+
+  /**
+   * Gets the highest number of times a term appears in a page, used to bound the score of the term.
+   * @param term The normalized term.
+   * @return The highest frequency of the term in a page, 0 if the term is not in the index.
+   */
+  public int maxFrequency(String term);
+
+  /**
+   * Gets the number of terms of a page.
+   * @param doc The doc ID of the page.
+   * @return The length of the page.
+   */
+  public int documentLength(int doc);
+
+  /**
+   * Gets the average number of terms of the indexed pages.
+   * @return The average length of the pages, 0 if there are none.
+   */
+  public double averageDocumentLength();
+
+  /**
+   * Gets every indexed document, used to evaluate exclusions that have nothing to exclude from.
+   * @return The doc IDs of all the indexed pages.
+   */
+  public RoaringPostings allDocs();
+
+  /**
+   * Gets the number of indexed documents, without building the set of all of them.
+   * @return The number of indexed pages.
+   */
+  public int documentCount();
+}
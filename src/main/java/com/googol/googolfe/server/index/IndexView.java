@@ -0,0 +1,333 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The IndexView class is an immutable version of a SegmentedIndex, read by the searches.
+ * A view is a list of segments that are never modified once published, with the pages of each segment
+ * replaced by newer segments. Ingesting or merging builds a new view and publishes it atomically, so a
+ * search reads one consistent version of the index from start to end without any lock, while the
+ * next versions are being built.
+ */
+public final class IndexView implements IndexReader {
+    /**
+     * The segments of the view, oldest first.
+     */
+    private final List<Entry> entries;
+
+    /**
+     * The version of the view, increased at every publication.
+     */
+    private final long version;
+
+    /**
+     * The number of live pages of the view.
+     */
+    private final int documentCount;
+
+    /**
+     * The sum of the lengths of the live pages of the view.
+     */
+    private final long totalLength;
+
+    /**
+     * The segments holding pages, sorted by their smallest doc ID, to find the segment of a page.
+     */
+    private final Entry[] byFirstDoc;
+
+    /**
+     * The smallest doc ID of each segment of byFirstDoc.
+     */
+    private final int[] firstDocs;
+
+    /**
+     * The largest doc ID of the segments of byFirstDoc up to each position, where a search for the segment
+     * of a page can stop.
+     */
+    private final int[] reach;
+
+    /**
+     * The IndexView constructor is used to create a view of some segments.
+     * @param entries segments of the view, oldest first, not modified afterwards
+     * @param version version of the view
+     */
+    IndexView(List<Entry> entries, long version) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.version = version;
+        int count = 0;
+        long total = 0;
+        for (Entry entry : entries) {
+            count += entry.segment.docs().cardinality() - entry.deleted.cardinality();
+            total += entry.segment.totalLength() - entry.deletedLength;
+        }
+        this.documentCount = count;
+        this.totalLength = total;
+
+        List<Entry> holding = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.segment.docs().isEmpty()) {
+                holding.add(entry);
+            }
+        }
+        holding.sort(Comparator.comparingInt(entry -> entry.segment.docs().first()));
+        byFirstDoc = holding.toArray(new Entry[0]);
+        firstDocs = new int[byFirstDoc.length];
+        reach = new int[byFirstDoc.length];
+        for (int i = 0; i < byFirstDoc.length; i++) {
+            firstDocs[i] = byFirstDoc[i].segment.docs().first();
+            reach[i] = Math.max(i > 0 ? reach[i - 1] : -1, byFirstDoc[i].segment.docs().last());
+        }
+    }
+
+    /**
+     * The getVersion method is used to get the version of the view.
+     * @return version of the view
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * The segmentCount method is used to get the number of segments of the view.
+     * @return number of segments
+     */
+    public int segmentCount() {
+        return entries.size();
+    }
+
+    /**
+     * The getEntries method is used to get the segments of the view, oldest first.
+     * @return segments of the view
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public RoaringPostings postings(String term) {
+        RoaringPostings result = null;
+        for (Entry entry : entries) {
+            RoaringPostings postings = entry.segment.postings(term);
+            if (postings == null) {
+                continue;
+            }
+            if (!entry.deleted.isEmpty()) {
+                postings = postings.andNot(entry.deleted);
+            }
+            result = result == null ? postings : result.or(postings);
+        }
+        return result;
+    }
+
+    @Override
+    public int documentFrequency(String term) {
+        // The replaced copies are counted too, which keeps it an upper bound
+        int frequency = 0;
+        for (Entry entry : entries) {
+            frequency += entry.segment.documentFrequency(term);
+        }
+        return frequency;
+    }
+
+    @Override
+    public int[] positions(String term, int doc) {
+        Segment owner = owner(doc);
+        return owner == null ? null : owner.positions(term, doc);
+    }
+
+    @Override
+    public int frequency(String term, int doc) {
+        Segment owner = owner(doc);
+        return owner == null ? 0 : owner.frequency(term, doc);
+    }
+
+    @Override
+    public int maxFrequency(String term) {
+        // The replaced copies can only raise the bound, which stays valid
+        int max = 0;
+        for (Entry entry : entries) {
+            max = Math.max(max, entry.segment.maxFrequency(term));
+        }
+        return max;
+    }
+
+    @Override
+    public int documentLength(int doc) {
+        Segment owner = owner(doc);
+        return owner == null ? 0 : owner.documentLength(doc);
+    }
+
+    @Override
+    public double averageDocumentLength() {
+        return documentCount == 0 ? 0 : (double) totalLength / documentCount;
+    }
+
+    /**
+     * The totalLength method is used to get the sum of the lengths of the live pages of the view.
+     * @return total number of terms of the pages
+     */
+    public long totalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public RoaringPostings allDocs() {
+        RoaringPostings result = new RoaringPostings();
+        for (Entry entry : entries) {
+            result = result.or(entry.deleted.isEmpty() ? entry.segment.docs() : entry.segment.docs().andNot(entry.deleted));
+        }
+        return result;
+    }
+
+    @Override
+    public int documentCount() {
+        return documentCount;
+    }
+
+    /**
+     * The documents method is used to rebuild the terms of some pages in the order they appear, to send them
+     * to another barrel. Every term of the segments holding the pages is visited, so it is meant for batches.
+     * @param docs doc IDs of the pages
+     * @return terms of each page indexed, with null at the positions of the terms of other shards
+     */
+    public Map<Integer, String[]> documents(RoaringPostings docs) {
+        Map<Integer, String[]> documents = new HashMap<>();
+        for (Entry entry : entries) {
+            RoaringPostings contained = entry.segment.docs().and(docs);
+            RoaringPostings live = entry.deleted.isEmpty() ? contained : contained.andNot(entry.deleted);
+            if (live.isEmpty()) {
+                continue;
+            }
+            live.forEach(doc -> documents.put(doc, new String[entry.segment.documentLength(doc)]));
+            for (String term : entry.segment.terms()) {
+                RoaringPostings postings = entry.segment.postings(term);
+                if (postings == null) {
+                    continue;
+                }
+                postings.and(live).forEach(doc -> {
+                    String[] terms = documents.get(doc);
+                    for (int position : entry.segment.positions(term, doc)) {
+                        if (position < terms.length) {
+                            terms[position] = term;
+                        }
+                    }
+                });
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * The owner method is used to find the segment where a page is live.
+     * The segments whose range of doc IDs can hold the page are found by binary search on their smallest
+     * doc ID. The new pages get increasing doc IDs, so the ranges of the segments barely overlap and only
+     * the pages indexed again make the search check more than one segment.
+     * @param doc doc ID of the page
+     * @return segment of the page, or null if the page is not indexed
+     */
+    private Segment owner(int doc) {
+        // The last segment starting at or before the page
+        int lo = 0, hi = firstDocs.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (firstDocs[mid] <= doc) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo - 1; i >= 0 && reach[i] >= doc; i--) {
+            Entry entry = byFirstDoc[i];
+            // A page is live in one segment at most
+            if (entry.segment.docs().contains(doc) && !entry.deleted.contains(doc)) {
+                return entry.segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The Entry class is an immutable segment of a view with the pages replaced by newer segments.
+     * Replacing more pages creates a new entry with the same number.
+     */
+    static final class Entry {
+        /**
+         * The segment, never modified once in a view.
+         */
+        final Segment segment;
+
+        /**
+         * The number of the segment, unique in the index, also used to name its file once stored.
+         */
+        final long number;
+
+        /**
+         * Whether the segment is waiting to be written to disk by the next flush.
+         */
+        final boolean frozen;
+
+        /**
+         * The doc IDs of the pages of the segment replaced by newer segments.
+         */
+        final RoaringPostings deleted;
+
+        /**
+         * The sum of the lengths of the replaced pages.
+         */
+        final long deletedLength;
+
+        /**
+         * The Entry constructor is used to create an entry.
+         * @param segment segment
+         * @param number number of the segment
+         * @param frozen whether the segment is waiting to be written to disk
+         * @param deleted doc IDs of the replaced pages
+         * @param deletedLength sum of the lengths of the replaced pages
+         */
+        Entry(Segment segment, long number, boolean frozen, RoaringPostings deleted, long deletedLength) {
+            this.segment = segment;
+            this.number = number;
+            this.frozen = frozen;
+            this.deleted = deleted;
+            this.deletedLength = deletedLength;
+        }
+
+        /**
+         * The isStored method is used to check if the segment is stored in a file.
+         * @return true if the segment is a DiskSegment, false if it is in memory
+         */
+        boolean isStored() {
+            return segment instanceof DiskSegment;
+        }
+
+        /**
+         * The delete method is used to get a copy of the entry with more pages replaced.
+         * @param docs doc IDs of the pages replaced, only the ones in the segment are used
+         * @return new entry, or this entry if no new page of the segment is replaced
+         */
+        Entry delete(RoaringPostings docs) {
+            RoaringPostings replaced = segment.docs().and(docs).andNot(deleted);
+            if (replaced.isEmpty()) {
+                return this;
+            }
+            long length = deletedLength;
+            for (int doc : replaced.toArray()) {
+                length += segment.documentLength(doc);
+            }
+            return new Entry(segment, number, frozen, deleted.or(replaced), length);
+        }
+
+        /**
+         * The freeze method is used to get a copy of the entry waiting to be written to disk.
+         * @return frozen entry
+         */
+        Entry freeze() {
+            return new Entry(segment, number, true, deleted, deletedLength);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.googol.googolfe.server.index;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The InvertedIndex class stores the compressed postings of each term, the positions of each term in
+ * the pages containing it, the length of each page and the set of indexed documents.
+ * It is an in-memory segment of a SegmentedIndex: it receives the documents of an ingest batch and is
+ * never modified once published.
+ */
+public class InvertedIndex implements IndexReader, Segment, Serializable {
+    private static final long serialVersionUID = 4L;
+
+    /**
+     * The hashmap used to store the postings of each term.
+     */
+    private HashMap<String, RoaringPostings> postings;
+
+    /**
+     * The hashmap used to store the positions of each term in the pages containing it.
+     */
+    private HashMap<String, TermPositions> positions;
+
+    /**
+     * The doc IDs of all the indexed pages.
+     */
+    private RoaringPostings docs;
+
+    /**
+     * The number of terms of each page. A map, so a small segment of pages with large doc IDs stays small.
+     */
+    private HashMap<Integer, Integer> lengths;
+
+    /**
+     * The sum of the lengths of all the indexed pages.
+     */
+    private long totalLength;
+
+    /**
+     * The InvertedIndex constructor is used to create an empty index.
+     */
+    public InvertedIndex() {
+        postings = new HashMap<>();
+        positions = new HashMap<>();
+        docs = new RoaringPostings();
+        lengths = new HashMap<>();
+        totalLength = 0;
+    }
+
+    /**
+     * The addDocument method is used to index the terms of a page with their positions.
+     * The position of a term is its index in the term stream of the page, so consecutive terms
+     * of a phrase have consecutive positions. Empty terms are skipped without taking a position, and null
+     * terms, the terms held by other shards, take their position and count in the length without being indexed.
+     * If the page was indexed before, the positions of its terms are replaced.
+     * @param doc doc ID of the page
+     * @param terms normalized terms of the page, in the order they appear
+     */
+    public void addDocument(int doc, String[] terms) {
+        docs.add(doc);
+        HashMap<String, List<Integer>> occurrences = new HashMap<>();
+        int position = 0;
+        for (String term : terms) {
+            if (term == null) {
+                // A term indexed by another shard still takes its place in the page
+                position++;
+                continue;
+            }
+            if (term.isEmpty()) {
+                continue;
+            }
+            occurrences.computeIfAbsent(term, t -> new ArrayList<>()).add(position++);
+        }
+        for (String term : occurrences.keySet()) {
+            List<Integer> list = occurrences.get(term);
+            int[] termPositions = new int[list.size()];
+            for (int i = 0; i < termPositions.length; i++) {
+                termPositions[i] = list.get(i);
+            }
+            postings.computeIfAbsent(term, t -> new RoaringPostings()).add(doc);
+            positions.computeIfAbsent(term, t -> new TermPositions()).put(doc, termPositions, termPositions.length);
+        }
+        Integer previous = lengths.put(doc, position);
+        totalLength += position - (previous != null ? previous : 0);
+    }
+
+    /**
+     * The addSegment method is used to copy pages of another segment, with their terms and positions.
+     * The pages must not be in this index yet.
+     * @param source segment to copy from
+     * @param live doc IDs of the pages to copy
+     */
+    void addSegment(Segment source, RoaringPostings live) {
+        for (String term : source.terms()) {
+            RoaringPostings sourcePostings = source.postings(term);
+            if (sourcePostings == null) {
+                continue;
+            }
+            RoaringPostings copied = sourcePostings.and(live);
+            if (copied.isEmpty()) {
+                continue;
+            }
+            RoaringPostings termPostings = postings.computeIfAbsent(term, t -> new RoaringPostings());
+            TermPositions termPositions = positions.computeIfAbsent(term, t -> new TermPositions());
+            for (int doc : copied.toArray()) {
+                int[] termPositionsOfDoc = source.positions(term, doc);
+                termPostings.add(doc);
+                termPositions.put(doc, termPositionsOfDoc, termPositionsOfDoc.length);
+            }
+        }
+        for (int doc : source.docs().and(live).toArray()) {
+            int length = source.documentLength(doc);
+            docs.add(doc);
+            lengths.put(doc, length);
+            totalLength += length;
+        }
+    }
+
+    @Override
+    public RoaringPostings postings(String term) {
+        return postings.get(term);
+    }
+
+    @Override
+    public int documentFrequency(String term) {
+        RoaringPostings termPostings = postings.get(term);
+        return termPostings != null ? termPostings.cardinality() : 0;
+    }
+
+    @Override
+    public int[] positions(String term, int doc) {
+        TermPositions termPositions = positions.get(term);
+        return termPositions != null ? termPositions.get(doc) : null;
+    }
+
+    @Override
+    public byte[] encodedPositions(String term, int doc) {
+        TermPositions termPositions = positions.get(term);
+        return termPositions != null ? termPositions.encoded(doc) : null;
+    }
+
+    @Override
+    public int frequency(String term, int doc) {
+        TermPositions termPositions = positions.get(term);
+        return termPositions != null ? termPositions.frequency(doc) : 0;
+    }
+
+    @Override
+    public int maxFrequency(String term) {
+        TermPositions termPositions = positions.get(term);
+        return termPositions != null ? termPositions.getMaxFrequency() : 0;
+    }
+
+    @Override
+    public int documentLength(int doc) {
+        return lengths.getOrDefault(doc, 0);
+    }
+
+    @Override
+    public double averageDocumentLength() {
+        int count = docs.cardinality();
+        return count > 0 ? (double) totalLength / count : 0;
+    }
+
+    @Override
+    public RoaringPostings allDocs() {
+        return docs;
+    }
+
+    @Override
+    public int documentCount() {
+        return docs.cardinality();
+    }
+
+    @Override
+    public RoaringPostings docs() {
+        return docs;
+    }
+
+    @Override
+    public long totalLength() {
+        return totalLength;
+    }
+
+    @Override
+    public List<String> terms() {
+        List<String> terms = new ArrayList<>(postings.keySet());
+        Collections.sort(terms);
+        return terms;
+    }
+
+    /**
+     * The isEmpty method is used to check if no document was indexed.
+     * @return true if the index is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return docs.isEmpty();
+    }
+}
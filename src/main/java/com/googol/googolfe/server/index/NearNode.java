@@ -0,0 +1,95 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The NearNode class matches the docs containing two terms at most a given distance apart, in any order.
+ * Like a phrase, the docs containing both terms are found by intersecting their postings, and the
+ * position lists of the two terms are then merged for each of those docs.
+ */
+final class NearNode extends QueryNode {
+    /**
+     * The normalized first term.
+     */
+    final String left;
+
+    /**
+     * The normalized second term.
+     */
+    final String right;
+
+    /**
+     * The maximum difference between the positions of the terms.
+     */
+    final int distance;
+
+    /**
+     * The NearNode constructor is used to create the operator of a proximity query.
+     * @param left normalized first term
+     * @param right normalized second term
+     * @param distance maximum difference between the positions of the terms
+     */
+    NearNode(String left, String right, int distance) {
+        this.left = left;
+        this.right = right;
+        this.distance = distance;
+    }
+
+    @Override
+    public long estimate(IndexReader index) {
+        return Math.min(index.documentFrequency(left), index.documentFrequency(right));
+    }
+
+    @Override
+    public RoaringPostings evaluate(IndexReader index) {
+        List<RoaringPostings> postings = new ArrayList<>();
+        postings.add(index.postings(left));
+        postings.add(index.postings(right));
+        int[] candidates = QueryExecutor.intersect(postings);
+        int count = 0;
+        for (int doc : candidates) {
+            if (matches(index.positions(left, doc), index.positions(right, doc), distance)) {
+                candidates[count++] = doc;
+            }
+        }
+        return RoaringPostings.of(candidates, count);
+    }
+
+    /**
+     * The matches method is used to check if two position lists have positions close enough.
+     * The lists are merged, always moving the smaller position, so each one is read at most once.
+     * @param a increasing positions of the first term
+     * @param b increasing positions of the second term
+     * @param distance maximum difference between the positions
+     * @return true if a position of a and a position of b differ by at most distance, false otherwise
+     */
+    static boolean matches(int[] a, int[] b, int distance) {
+        if (a == null || b == null) {
+            return false;
+        }
+        int i = 0, j = 0;
+        while (i < a.length && j < b.length) {
+            if (Math.abs(a[i] - b[j]) <= distance) {
+                return true;
+            }
+            if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void collectTerms(List<String> terms) {
+        terms.add(left);
+        terms.add(right);
+    }
+
+    @Override
+    public String toString() {
+        return left + " NEAR/" + distance + " " + right;
+    }
+}
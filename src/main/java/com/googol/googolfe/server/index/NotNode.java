@@ -0,0 +1,42 @@
+package com.googol.googolfe.server.index;
+
+import java.util.List;
+
+/**
+ * The NotNode class matches the docs that do not match its child, written as -term in a query.
+ * Inside an AndNode it is applied as an exclusion from the other clauses, so the whole index
+ * is only read when the exclusion is used on its own.
+ */
+final class NotNode extends QueryNode {
+    /**
+     * The excluded operator.
+     */
+    final QueryNode child;
+
+    /**
+     * The NotNode constructor is used to create the operator of an exclusion.
+     * @param child excluded operator
+     */
+    NotNode(QueryNode child) {
+        this.child = child;
+    }
+
+    @Override
+    public long estimate(IndexReader index) {
+        return Math.max(0, index.documentCount() - child.estimate(index));
+    }
+
+    @Override
+    public RoaringPostings evaluate(IndexReader index) {
+        return index.allDocs().andNot(child.evaluate(index));
+    }
+
+    @Override
+    public void collectTerms(List<String> terms) {
+    }
+
+    @Override
+    public String toString() {
+        return "-" + child;
+    }
+}
@@ -0,0 +1,59 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The OrNode class matches the docs that match any of its children.
+ */
+final class OrNode extends QueryNode {
+    /**
+     * The alternative operators.
+     */
+    final List<QueryNode> children;
+
+    /**
+     * The OrNode constructor is used to create the operator of an alternative.
+     * @param children alternative operators
+     */
+    OrNode(List<QueryNode> children) {
+        this.children = children;
+    }
+
+    @Override
+    public long estimate(IndexReader index) {
+        long estimate = 0;
+        for (QueryNode child : children) {
+            estimate += child.estimate(index);
+        }
+        return Math.min(estimate, index.documentCount());
+    }
+
+    @Override
+    public RoaringPostings evaluate(IndexReader index) {
+        // Unite the smaller results first so the larger ones are copied fewer times
+        List<QueryNode> ordered = byEstimate(children, index);
+        RoaringPostings result = null;
+        for (QueryNode child : ordered) {
+            RoaringPostings postings = child.evaluate(index);
+            result = result == null ? postings : result.or(postings);
+        }
+        return result != null ? result : new RoaringPostings();
+    }
+
+    @Override
+    public void collectTerms(List<String> terms) {
+        for (QueryNode child : children) {
+            child.collectTerms(terms);
+        }
+    }
+
+    @Override
+    public String toString() {
+        List<String> parts = new ArrayList<>();
+        for (QueryNode child : children) {
+            parts.add(child.toString());
+        }
+        return "(" + String.join(" OR ", parts) + ")";
+    }
+}
@@ -0,0 +1,211 @@
+package com.googol.googolfe.server.index;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The PageRank class computes a query-independent score for every page from the link graph.
+ * The graph is turned into arrays of incoming links, and the power iteration pulls the rank of
+ * each page from the pages linking to it, so the pages are updated in parallel without locks.
+ * Each computation starts from the ranks of the previous one, so refreshing after some pages
+ * were ingested only takes a few iterations.
+ * The scores used at query time are published as an immutable snapshot, so a search reads one
+ * array entry per candidate while a new snapshot is being computed.
+ */
+public class PageRank {
+    /**
+     * The probability of following a link instead of jumping to a random page.
+     */
+    static final double DAMPING = 0.85;
+
+    /**
+     * The total change of the ranks under which the iteration stops.
+     */
+    static final double TOLERANCE = 1e-6;
+
+    /**
+     * The maximum number of iterations of a computation.
+     */
+    static final int MAX_ITERATIONS = 100;
+
+    /**
+     * The weight of the link score in the score of a page.
+     */
+    private final double weight;
+
+    /**
+     * The ranks of the last computation, used to start the next one.
+     */
+    private double[] ranks;
+
+    /**
+     * The scores of the last computation, read by the searches.
+     */
+    private volatile Scores scores;
+
+    /**
+     * The PageRank constructor is used to create an empty ranking.
+     * @param weight weight of the link score in the score of a page
+     */
+    public PageRank(double weight) {
+        this.weight = weight;
+        ranks = new double[0];
+        scores = new Scores(new float[0], (float) unrankedScore(), (float) unrankedScore());
+    }
+
+    /**
+     * The scores method is used to get the latest scores, which do not change while they are used.
+     * @return latest scores
+     */
+    public Scores scores() {
+        return scores;
+    }
+
+    /**
+     * The compute method is used to rank the pages of a link graph and publish their scores.
+     * @param n number of pages, every doc ID of the links is smaller
+     * @param sources doc ID of the page each link is in
+     * @param targets doc ID of the page each link points to
+     * @param edges number of links used
+     * @return number of iterations run
+     */
+    public synchronized int compute(int n, int[] sources, int[] targets, int edges) {
+        // Build the incoming links of every page, sorted by target
+        int[] outDegree = new int[n];
+        int[] inOffsets = new int[n + 1];
+        for (int e = 0; e < edges; e++) {
+            outDegree[sources[e]]++;
+            inOffsets[targets[e] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        int[] inSources = new int[edges];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int e = 0; e < edges; e++) {
+            inSources[fill[targets[e]]++] = sources[e];
+        }
+
+        // Start from the previous ranks, new pages get the average rank
+        double[] rank = new double[n];
+        int known = Math.min(ranks.length, n);
+        System.arraycopy(ranks, 0, rank, 0, known);
+        Arrays.fill(rank, known, n, 1.0 / Math.max(n, 1));
+        double total = Arrays.stream(rank).sum();
+        for (int v = 0; v < n; v++) {
+            rank[v] /= total;
+        }
+
+        double[] next = new double[n];
+        double[] contribution = new double[n];
+        int iterations = 0;
+        while (n > 0 && iterations < MAX_ITERATIONS) {
+            iterations++;
+            double[] current = rank;
+            double[] updated = next;
+            // The rank of the pages without links is spread over every page
+            double dangling = IntStream.range(0, n).parallel()
+                    .mapToDouble(u -> {
+                        if (outDegree[u] == 0) {
+                            contribution[u] = 0;
+                            return current[u];
+                        }
+                        contribution[u] = current[u] / outDegree[u];
+                        return 0;
+                    }).sum();
+            double base = (1 - DAMPING) / n + DAMPING * dangling / n;
+            double delta = IntStream.range(0, n).parallel()
+                    .mapToDouble(v -> {
+                        double sum = 0;
+                        for (int k = inOffsets[v]; k < inOffsets[v + 1]; k++) {
+                            sum += contribution[inSources[k]];
+                        }
+                        updated[v] = base + DAMPING * sum;
+                        return Math.abs(updated[v] - current[v]);
+                    }).sum();
+            next = current;
+            rank = updated;
+            if (delta < TOLERANCE) {
+                break;
+            }
+        }
+        ranks = rank;
+        publish(rank, n);
+        return iterations;
+    }
+
+    /**
+     * The publish method is used to turn the ranks into scores and make them visible to the searches.
+     * The score of a page is the log of its rank relative to the average rank, so a few pages with a
+     * huge number of links do not drown the text score.
+     * @param rank ranks of the pages, adding up to 1
+     * @param n number of pages
+     */
+    private void publish(double[] rank, int n) {
+        float[] values = new float[n];
+        float max = (float) unrankedScore();
+        for (int v = 0; v < n; v++) {
+            values[v] = (float) (weight * Math.log1p(rank[v] * n));
+            max = Math.max(max, values[v]);
+        }
+        scores = new Scores(values, max, (float) unrankedScore());
+    }
+
+    /**
+     * The unrankedScore method is used to get the score of a page without incoming links,
+     * also used for the pages ingested after the last computation.
+     * @return score of a page that is only reached by random jumps
+     */
+    private double unrankedScore() {
+        return weight * Math.log1p(1 - DAMPING);
+    }
+
+    /**
+     * The Scores class is an immutable snapshot of the link scores of the pages.
+     */
+    public static final class Scores {
+        /**
+         * The score of each page, indexed by doc ID.
+         */
+        private final float[] values;
+
+        /**
+         * The highest score of a page.
+         */
+        private final float max;
+
+        /**
+         * The score of the pages that were not ranked yet.
+         */
+        private final float unranked;
+
+        /**
+         * The Scores constructor is used to create a snapshot of the scores.
+         * @param values score of each page, indexed by doc ID
+         * @param max highest score of a page
+         * @param unranked score of the pages that were not ranked yet
+         */
+        Scores(float[] values, float max, float unranked) {
+            this.values = values;
+            this.max = max;
+            this.unranked = unranked;
+        }
+
+        /**
+         * The get method is used to get the link score of a page.
+         * @param doc doc ID of the page
+         * @return link score of the page
+         */
+        public double get(int doc) {
+            return doc < values.length ? values[doc] : unranked;
+        }
+
+        /**
+         * The max method is used to get an upper bound of the link score of every page.
+         * @return highest link score
+         */
+        public double max() {
+            return max;
+        }
+    }
+}
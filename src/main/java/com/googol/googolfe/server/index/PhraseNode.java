@@ -0,0 +1,109 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PhraseNode class matches the docs containing its terms one right after the other.
+ * The docs containing all the terms are found by intersecting their postings, and then the
+ * position lists of the terms in each of those docs are merged to find a place where the
+ * phrase starts. The position lists are only read for the docs that survive the intersection.
+ */
+final class PhraseNode extends QueryNode {
+    /**
+     * The normalized terms of the phrase, in order.
+     */
+    final List<String> terms;
+
+    /**
+     * The PhraseNode constructor is used to create the operator of a phrase.
+     * @param terms normalized terms of the phrase, in order
+     */
+    PhraseNode(List<String> terms) {
+        this.terms = terms;
+    }
+
+    @Override
+    public long estimate(IndexReader index) {
+        long estimate = Long.MAX_VALUE;
+        for (String term : terms) {
+            estimate = Math.min(estimate, index.documentFrequency(term));
+        }
+        return estimate;
+    }
+
+    @Override
+    public RoaringPostings evaluate(IndexReader index) {
+        List<RoaringPostings> postings = new ArrayList<>();
+        for (String term : terms) {
+            postings.add(index.postings(term));
+        }
+        int[] candidates = QueryExecutor.intersect(postings);
+        int[][] positions = new int[terms.size()][];
+        int count = 0;
+        for (int doc : candidates) {
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = index.positions(terms.get(i), doc);
+            }
+            if (matches(positions)) {
+                candidates[count++] = doc;
+            }
+        }
+        return RoaringPostings.of(candidates, count);
+    }
+
+    /**
+     * The matches method is used to check if the position lists of the terms of a doc contain the phrase.
+     * The shortest list is the anchor: each of its positions gives where the phrase would start, and the
+     * other lists are only walked forward to check the expected positions, so every list is read at most once.
+     * @param positions increasing positions of each term of the phrase in the doc
+     * @return true if the terms appear in order at consecutive positions, false otherwise
+     */
+    static boolean matches(int[][] positions) {
+        int anchor = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] == null) {
+                return false;
+            }
+            if (positions[i].length < positions[anchor].length) {
+                anchor = i;
+            }
+        }
+        int[] pointers = new int[positions.length];
+        next:
+        for (int position : positions[anchor]) {
+            int start = position - anchor;
+            if (start < 0) {
+                continue;
+            }
+            for (int i = 0; i < positions.length; i++) {
+                if (i == anchor) {
+                    continue;
+                }
+                int[] list = positions[i];
+                int target = start + i;
+                while (pointers[i] < list.length && list[pointers[i]] < target) {
+                    pointers[i]++;
+                }
+                if (pointers[i] == list.length) {
+                    return false;
+                }
+                if (list[pointers[i]] != target) {
+                    continue next;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void collectTerms(List<String> terms) {
+        terms.addAll(this.terms);
+    }
+
+    @Override
+    public String toString() {
+        return "\"" + String.join(" ", terms) + "\"";
+    }
+}
@@ -0,0 +1,110 @@
+package com.googol.googolfe.server.index;
+
+import java.util.Arrays;
+
+/**
+ * The PositionList class encodes the positions of a term in a page.
+ * An encoded list is the number of positions followed by the gaps between consecutive positions,
+ * all written as variable-length integers, so most positions take a single byte.
+ */
+public final class PositionList {
+    /**
+     * The PositionList constructor is private because the class only has static methods.
+     */
+    private PositionList() {
+    }
+
+    /**
+     * The encode method is used to encode increasing positions.
+     * @param positions increasing positions
+     * @param count number of positions used
+     * @return encoded positions
+     */
+    public static byte[] encode(int[] positions, int count) {
+        byte[] out = new byte[5 * (count + 1)];
+        int n = writeVarInt(out, 0, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            n = writeVarInt(out, n, positions[i] - previous);
+            previous = positions[i];
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * The decode method is used to decode positions written by encode.
+     * @param data array holding the encoded positions
+     * @param offset position of the encoded positions in the array
+     * @return increasing positions
+     */
+    public static int[] decode(byte[] data, int offset) {
+        int[] cursor = { offset };
+        int count = readVarInt(data, cursor);
+        int[] positions = new int[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarInt(data, cursor);
+            positions[i] = previous;
+        }
+        return positions;
+    }
+
+    /**
+     * The frequency method is used to get the number of positions without decoding them.
+     * @param data array holding the encoded positions
+     * @param offset position of the encoded positions in the array
+     * @return number of positions, the frequency of the term in the page
+     */
+    public static int frequency(byte[] data, int offset) {
+        return readVarInt(data, new int[] { offset });
+    }
+
+    /**
+     * The encodedLength method is used to get the number of bytes of encoded positions.
+     * @param data array holding the encoded positions
+     * @param offset position of the encoded positions in the array
+     * @return number of bytes
+     */
+    public static int encodedLength(byte[] data, int offset) {
+        int[] cursor = { offset };
+        int count = readVarInt(data, cursor);
+        for (int i = 0; i < count; i++) {
+            readVarInt(data, cursor);
+        }
+        return cursor[0] - offset;
+    }
+
+    /**
+     * The writeVarInt method is used to write a non-negative integer 7 bits per byte.
+     * @param out array to write to
+     * @param offset position to write at
+     * @param value value to write
+     * @return position after the value
+     */
+    static int writeVarInt(byte[] out, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * The readVarInt method is used to read an integer written by writeVarInt.
+     * @param data array to read from
+     * @param cursor single-element array with the position to read at, advanced past the value
+     * @return value read
+     */
+    static int readVarInt(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,81 @@
+package com.googol.googolfe.server.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The PostingsCache class reads an index keeping the postings of each term read, for the time of one search.
+ * The postings of a term of an IndexView are merged from every segment, and deserialized from the file of
+ * the stored segments, so a term found in several operators of a query, and then scored, is only read once.
+ * A cache is not shared between threads.
+ */
+final class PostingsCache implements IndexReader {
+    /**
+     * The index read.
+     */
+    private final IndexReader index;
+
+    /**
+     * The postings of the terms read, null for the terms not in the index.
+     */
+    private final Map<String, RoaringPostings> postings;
+
+    /**
+     * The PostingsCache constructor is used to create an empty cache over an index.
+     * @param index index to read
+     */
+    PostingsCache(IndexReader index) {
+        this.index = index;
+        this.postings = new HashMap<>();
+    }
+
+    @Override
+    public RoaringPostings postings(String term) {
+        if (postings.containsKey(term)) {
+            return postings.get(term);
+        }
+        RoaringPostings termPostings = index.postings(term);
+        postings.put(term, termPostings);
+        return termPostings;
+    }
+
+    @Override
+    public int documentFrequency(String term) {
+        return index.documentFrequency(term);
+    }
+
+    @Override
+    public int[] positions(String term, int doc) {
+        return index.positions(term, doc);
+    }
+
+    @Override
+    public int frequency(String term, int doc) {
+        return index.frequency(term, doc);
+    }
+
+    @Override
+    public int maxFrequency(String term) {
+        return index.maxFrequency(term);
+    }
+
+    @Override
+    public int documentLength(int doc) {
+        return index.documentLength(doc);
+    }
+
+    @Override
+    public double averageDocumentLength() {
+        return index.averageDocumentLength();
+    }
+
+    @Override
+    public RoaringPostings allDocs() {
+        return index.allDocs();
+    }
+
+    @Override
+    public int documentCount() {
+        return index.documentCount();
+    }
+}
@@ -0,0 +1,73 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The QueryExecutor class runs the intersections of the postings of multi-term queries.
+ * The postings are ordered by document frequency and intersected smallest-first: the doc IDs
+ * of the rarest term are the candidates, and every other postings is only probed at those
+ * candidates with a cursor that skips containers and gallops inside them.
+ * The intersection stops as soon as no candidate is left.
+ */
+public final class QueryExecutor {
+    /**
+     * The empty result of an intersection.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The QueryExecutor constructor is private because the class only has static methods.
+     */
+    private QueryExecutor() {
+    }
+
+    /**
+     * The intersect method is used to get the doc IDs present in all the given postings.
+     * @param postings postings of the terms of the query, null for a term that is not in the index
+     * @return sorted doc IDs present in all the postings, empty if there are no postings
+     */
+    public static int[] intersect(List<RoaringPostings> postings) {
+        if (postings.isEmpty() || postings.contains(null)) {
+            return EMPTY;
+        }
+        // Order the postings by document frequency
+        List<RoaringPostings> ordered = new ArrayList<>(postings);
+        ordered.sort(Comparator.comparingInt(RoaringPostings::cardinality));
+        if (ordered.get(0).isEmpty()) {
+            return EMPTY;
+        }
+
+        // The rarest term gives the candidates, the others filter them in place
+        int[] candidates = ordered.get(0).toArray();
+        int count = candidates.length;
+        for (int i = 1; i < ordered.size() && count > 0; i++) {
+            count = filter(candidates, count, ordered.get(i));
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * The filter method is used to keep the candidates that are in a postings.
+     * @param candidates sorted candidate doc IDs, compacted in place
+     * @param count number of candidates used
+     * @param postings postings to probe at the candidates
+     * @return number of candidates kept
+     */
+    public static int filter(int[] candidates, int count, RoaringPostings postings) {
+        RoaringPostings.Cursor cursor = postings.cursor();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int doc = cursor.advance(candidates[i]);
+            if (doc == -1) {
+                break;
+            }
+            if (doc == candidates[i]) {
+                candidates[kept++] = doc;
+            }
+        }
+        return kept;
+    }
+}
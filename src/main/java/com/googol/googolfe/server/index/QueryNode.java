@@ -0,0 +1,52 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The QueryNode class is the base of the operator tree a parsed query is compiled into.
+ * The barrel executes the tree directly over the postings of the index, and every operator
+ * can estimate the size of its result so the cheap clauses are evaluated first.
+ */
+public abstract class QueryNode {
+    /**
+     * The estimate method is used to get an upper bound of the number of docs matched by the operator,
+     * without evaluating it.
+     * @param index index to read
+     * @return estimated number of docs
+     */
+    public abstract long estimate(IndexReader index);
+
+    /**
+     * The evaluate method is used to get the docs matched by the operator.
+     * The result may be a postings of the index, so it must not be modified.
+     * @param index index to read
+     * @return doc IDs matched
+     */
+    public abstract RoaringPostings evaluate(IndexReader index);
+
+    /**
+     * The collectTerms method is used to get the terms a matching doc must or may contain, leaving out excluded terms.
+     * @param terms list to add the terms to
+     */
+    public abstract void collectTerms(List<String> terms);
+
+    /**
+     * The byEstimate method is used to sort operators by increasing estimated size, estimating each one once.
+     * @param nodes operators to sort
+     * @param index index to read
+     * @return sorted copy of the operators
+     */
+    static List<QueryNode> byEstimate(List<QueryNode> nodes, IndexReader index) {
+        Map<QueryNode, Long> estimates = new IdentityHashMap<>();
+        for (QueryNode node : nodes) {
+            estimates.put(node, node.estimate(index));
+        }
+        List<QueryNode> ordered = new ArrayList<>(nodes);
+        ordered.sort(Comparator.comparingLong(estimates::get));
+        return ordered;
+    }
+}
@@ -0,0 +1,258 @@
+package com.googol.googolfe.server.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The QueryParser class compiles a search query into a tree of QueryNode operators.
+ * The query language supports:
+ * - words separated by spaces, which must all be present (an optional AND is accepted);
+ * - OR between clauses, which must have at least one present;
+ * - a - before a word or a group, which must not be present;
+ * - parentheses to group clauses;
+ * - words in double quotes, which must appear as a phrase, one right after the other;
+ * - NEAR/k between two words, which must appear at most k positions apart, in any order.
+ * Words are normalized like the Downloader does before indexing, and stop words are dropped.
+ * The parser is lenient: unbalanced parentheses and misplaced operators are ignored instead of
+ * rejecting the query.
+ */
+public class QueryParser {
+    /**
+     * The pattern of the proximity operator, with the maximum distance as its group.
+     */
+    private static final Pattern NEAR = Pattern.compile("NEAR/(\\d{1,4})");
+
+    /**
+     * The set of stop words to be ignored in the query.
+     */
+    private final Set<String> stopWords;
+
+    /**
+     * The tokens of the query being parsed.
+     */
+    private List<String> tokens;
+
+    /**
+     * The position of the next token to parse.
+     */
+    private int position;
+
+    /**
+     * The QueryParser constructor is used to create a parser that drops the given stop words.
+     * @param stopWords normalized stop words
+     */
+    public QueryParser(Set<String> stopWords) {
+        this.stopWords = stopWords;
+    }
+
+    /**
+     * The parse method is used to compile a query into an operator tree.
+     * @param query query typed by the user
+     * @return root operator, or null if the query has no searchable words
+     */
+    public synchronized QueryNode parse(String query) {
+        tokens = tokenize(query);
+        position = 0;
+        List<QueryNode> clauses = new ArrayList<>();
+        while (position < tokens.size()) {
+            QueryNode clause = parseOr();
+            if (clause != null) {
+                clauses.add(clause);
+            }
+            // Skip a closing parenthesis without an opening one
+            if (position < tokens.size() && tokens.get(position).equals(")")) {
+                position++;
+            }
+        }
+        return and(clauses);
+    }
+
+    /**
+     * The parseOr method is used to parse clauses separated by OR.
+     * @return operator of the clauses, or null if they have no searchable words
+     */
+    private QueryNode parseOr() {
+        List<QueryNode> alternatives = new ArrayList<>();
+        QueryNode first = parseAnd();
+        if (first != null) {
+            alternatives.add(first);
+        }
+        while (position < tokens.size() && tokens.get(position).equals("OR")) {
+            position++;
+            QueryNode next = parseAnd();
+            if (next != null) {
+                alternatives.add(next);
+            }
+        }
+        if (alternatives.isEmpty()) {
+            return null;
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : new OrNode(alternatives);
+    }
+
+    /**
+     * The parseAnd method is used to parse consecutive clauses, which must all match.
+     * @return operator of the clauses, or null if they have no searchable words
+     */
+    private QueryNode parseAnd() {
+        List<QueryNode> clauses = new ArrayList<>();
+        while (position < tokens.size()) {
+            String token = tokens.get(position);
+            if (token.equals("OR") || token.equals(")")) {
+                break;
+            }
+            if (token.equals("AND")) {
+                position++;
+                continue;
+            }
+            Matcher near = NEAR.matcher(token);
+            if (near.matches()) {
+                position++;
+                if (position >= tokens.size()) {
+                    break;
+                }
+                QueryNode right = parseUnary();
+                QueryNode left = clauses.isEmpty() ? null : clauses.get(clauses.size() - 1);
+                if (left instanceof TermNode && right instanceof TermNode) {
+                    // Only two words can be near each other, otherwise the clauses are simply joined
+                    clauses.set(clauses.size() - 1, new NearNode(((TermNode) left).term,
+                            ((TermNode) right).term, Integer.parseInt(near.group(1))));
+                } else if (right != null) {
+                    clauses.add(right);
+                }
+                continue;
+            }
+            QueryNode clause = parseUnary();
+            if (clause != null) {
+                clauses.add(clause);
+            }
+        }
+        return and(clauses);
+    }
+
+    /**
+     * The parseUnary method is used to parse a clause, possibly excluded with a -.
+     * @return operator of the clause, or null if it has no searchable words
+     */
+    private QueryNode parseUnary() {
+        if (tokens.get(position).equals("-")) {
+            position++;
+            if (position >= tokens.size() || tokens.get(position).equals(")") || tokens.get(position).equals("OR")) {
+                return null;
+            }
+            QueryNode clause = parsePrimary();
+            return clause != null ? new NotNode(clause) : null;
+        }
+        return parsePrimary();
+    }
+
+    /**
+     * The parsePrimary method is used to parse a word, a phrase or a group in parentheses.
+     * @return operator of the word, phrase or group, or null if it has no searchable words
+     */
+    private QueryNode parsePrimary() {
+        String token = tokens.get(position++);
+        if (token.equals("(")) {
+            QueryNode group = parseOr();
+            if (position < tokens.size() && tokens.get(position).equals(")")) {
+                position++;
+            }
+            return group;
+        }
+        if (token.equals("\"")) {
+            return parsePhrase();
+        }
+        if (token.equals("-") || token.equals("OR") || token.equals("AND") || NEAR.matcher(token).matches()) {
+            return null;
+        }
+        String term = normalizeWord(token);
+        if (term.isEmpty() || stopWords.contains(term)) {
+            return null;
+        }
+        return new TermNode(term);
+    }
+
+    /**
+     * The parsePhrase method is used to parse the words of a phrase, up to the closing quote.
+     * Stop words are dropped like the Downloader does, so the remaining words are consecutive in the index.
+     * @return operator of the phrase, or null if it has no searchable words
+     */
+    private QueryNode parsePhrase() {
+        List<String> terms = new ArrayList<>();
+        while (position < tokens.size()) {
+            String token = tokens.get(position++);
+            if (token.equals("\"")) {
+                break;
+            }
+            String term = normalizeWord(token);
+            if (!term.isEmpty() && !stopWords.contains(term)) {
+                terms.add(term);
+            }
+        }
+        if (terms.isEmpty()) {
+            return null;
+        }
+        return terms.size() == 1 ? new TermNode(terms.get(0)) : new PhraseNode(terms);
+    }
+
+    /**
+     * The and method is used to build the operator of a conjunction, simplified when possible.
+     * @param clauses operators that must all match
+     * @return operator of the conjunction, or null if there are no clauses
+     */
+    private static QueryNode and(List<QueryNode> clauses) {
+        if (clauses.isEmpty()) {
+            return null;
+        }
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        return new AndNode(clauses);
+    }
+
+    /**
+     * The tokenize method is used to split a query into words, parentheses, quotes, exclusions and operators.
+     * A - is only an exclusion at the start of a word, so hyphenated words stay whole.
+     * @param query query typed by the user
+     * @return tokens of the query
+     */
+    private static List<String> tokenize(String query) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+                if (word.length() > 0) {
+                    result.add(word.toString());
+                    word.setLength(0);
+                }
+                if (c == '(' || c == ')' || c == '"') {
+                    result.add(String.valueOf(c));
+                }
+            } else if (c == '-' && word.length() == 0) {
+                result.add("-");
+            } else {
+                word.append(c);
+            }
+        }
+        if (word.length() > 0) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+
+    /**
+     * The normalizeWord method is used to normalize a word like the Downloader does before indexing it.
+     * @param word string to normalize
+     * @return normalized word, without punctuation and accents
+     */
+    private static String normalizeWord(String word) {
+        return Normalizer.normalize(word.replaceAll("\\p{Punct}", ""), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase();
+    }
+}
@@ -0,0 +1,419 @@
+package com.googol.googolfe.server.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The RoaringPostings class is a compressed sorted set of doc IDs, used for the postings of the inverted index.
+ * The doc IDs are split by their high 16 bits into containers that adapt to their density:
+ * sorted arrays for sparse blocks, bitmaps for dense blocks and runs for consecutive doc IDs.
+ * The set operations work container by container and never modify their inputs.
+ */
+public class RoaringPostings implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The sorted high 16 bits of the containers.
+     */
+    private transient char[] keys;
+
+    /**
+     * The containers, in the same order as the keys.
+     */
+    private transient Container[] containers;
+
+    /**
+     * The number of containers used.
+     */
+    private transient int size;
+
+    /**
+     * The RoaringPostings constructor is used to create an empty set.
+     */
+    public RoaringPostings() {
+        keys = new char[4];
+        containers = new Container[4];
+        size = 0;
+    }
+
+    /**
+     * The of method is used to build a set from sorted doc IDs.
+     * @param docs sorted doc IDs
+     * @param count number of doc IDs used
+     * @return set with the doc IDs
+     */
+    public static RoaringPostings of(int[] docs, int count) {
+        RoaringPostings result = new RoaringPostings();
+        for (int i = 0; i < count; i++) {
+            result.add(docs[i]);
+        }
+        return result;
+    }
+
+    /**
+     * The add method is used to add a doc ID to the set.
+     * @param doc doc ID to add
+     */
+    public void add(int doc) {
+        char high = (char) (doc >>> 16);
+        // Doc IDs mostly arrive in increasing order, so the last container is checked first
+        int i = size > 0 && keys[size - 1] == high ? size - 1 : findKey(high);
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, high, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) doc);
+    }
+
+    /**
+     * The contains method is used to check if a doc ID is in the set.
+     * @param doc doc ID to check
+     * @return true if the doc ID is in the set, false otherwise
+     */
+    public boolean contains(int doc) {
+        int i = findKey((char) (doc >>> 16));
+        return i >= 0 && containers[i].contains((char) doc);
+    }
+
+    /**
+     * The cardinality method is used to get the number of doc IDs in the set.
+     * @return number of doc IDs
+     */
+    public int cardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * The isEmpty method is used to check if the set has no doc IDs.
+     * @return true if the set is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The first method is used to get the smallest doc ID of the set.
+     * @return smallest doc ID, or -1 if the set is empty
+     */
+    public int first() {
+        return size == 0 ? -1 : cursor().advance(0);
+    }
+
+    /**
+     * The last method is used to get the largest doc ID of the set.
+     * @return largest doc ID, or -1 if the set is empty
+     */
+    public int last() {
+        return size == 0 ? -1 : (keys[size - 1] << 16) | containers[size - 1].last();
+    }
+
+    /**
+     * The and method is used to intersect the set with another one.
+     * @param other set to intersect with
+     * @return new set with the doc IDs present in both
+     */
+    public RoaringPostings and(RoaringPostings other) {
+        RoaringPostings result = new RoaringPostings();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The or method is used to unite the set with another one.
+     * @param other set to unite with
+     * @return new set with the doc IDs present in either
+     */
+    public RoaringPostings or(RoaringPostings other) {
+        RoaringPostings result = new RoaringPostings();
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        for (; i < size; i++) {
+            result.append(keys[i], containers[i].copy());
+        }
+        for (; j < other.size; j++) {
+            result.append(other.keys[j], other.containers[j].copy());
+        }
+        return result;
+    }
+
+    /**
+     * The andNot method is used to remove the doc IDs of another set from this one.
+     * @param other set with the doc IDs to remove
+     * @return new set with the doc IDs present in this set but not in the other
+     */
+    public RoaringPostings andNot(RoaringPostings other) {
+        RoaringPostings result = new RoaringPostings();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The toArray method is used to get the doc IDs of the set in increasing order.
+     * @return sorted doc IDs
+     */
+    public int[] toArray() {
+        int[] out = new int[cardinality()];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            offset = containers[i].fill(out, offset, keys[i] << 16);
+        }
+        return out;
+    }
+
+    /**
+     * The forEach method is used to visit the doc IDs of the set in increasing order.
+     * @param action action to run for each doc ID
+     */
+    public void forEach(IntConsumer action) {
+        for (int doc : toArray()) {
+            action.accept(doc);
+        }
+    }
+
+    /**
+     * The cursor method is used to get a cursor over the doc IDs of the set.
+     * @return cursor positioned before the first doc ID
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * The copy method is used to get an independent copy of the set.
+     * @return copy of the set
+     */
+    public RoaringPostings copy() {
+        RoaringPostings result = new RoaringPostings();
+        for (int i = 0; i < size; i++) {
+            result.append(keys[i], containers[i].copy());
+        }
+        return result;
+    }
+
+    /**
+     * The runOptimize method is used to switch every container to its most compact representation.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < size; i++) {
+            containers[i] = containers[i].runOptimize();
+        }
+    }
+
+    /**
+     * The serialize method is used to write the set to an output in its compact form.
+     * Each container is written in its most compact representation.
+     * @param out output to write to
+     * @throws IOException if there is an error writing
+     */
+    public void serialize(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i].runOptimize();
+            out.writeChar(keys[i]);
+            out.writeByte(container.type());
+            container.serialize(out);
+        }
+    }
+
+    /**
+     * The deserialize method is used to read a set written by serialize.
+     * @param in input to read from
+     * @return set read
+     * @throws IOException if there is an error reading
+     */
+    public static RoaringPostings deserialize(DataInput in) throws IOException {
+        RoaringPostings result = new RoaringPostings();
+        result.readContainers(in);
+        return result;
+    }
+
+    /**
+     * The writeObject method is used to serialize the set with the compact format instead of the default one.
+     * @param out stream to write to
+     * @throws IOException if there is an error writing
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        serialize(out);
+    }
+
+    /**
+     * The readObject method is used to deserialize a set written by writeObject.
+     * @param in stream to read from
+     * @throws IOException if there is an error reading
+     * @throws ClassNotFoundException if a class of the stream cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        keys = new char[4];
+        containers = new Container[4];
+        readContainers(in);
+    }
+
+    /**
+     * The readContainers method is used to read the containers written by serialize into this set.
+     * @param in input to read from
+     * @throws IOException if there is an error reading
+     */
+    private void readContainers(DataInput in) throws IOException {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            char key = in.readChar();
+            byte type = in.readByte();
+            append(key, Container.deserialize(type, in));
+        }
+    }
+
+    /**
+     * The append method is used to add a container after the last one, skipping empty containers.
+     * @param key high 16 bits of the container
+     * @param container container to add
+     */
+    private void append(char key, Container container) {
+        if (container.cardinality() > 0) {
+            insert(size, key, container);
+        }
+    }
+
+    /**
+     * The insert method is used to add a container at a given position.
+     * @param i position of the container
+     * @param key high 16 bits of the container
+     * @param container container to add
+     */
+    private void insert(int i, char key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    /**
+     * The Cursor class walks the doc IDs of a set in increasing order, skipping ahead on demand.
+     * The container keys act as skip pointers, so whole blocks of 65536 doc IDs are skipped at once,
+     * and inside an array container the target is found by galloping from the current position.
+     */
+    public final class Cursor {
+        /**
+         * The index of the current container.
+         */
+        private int container;
+
+        /**
+         * The position inside the current container: the array index or the run index.
+         */
+        private int position;
+
+        /**
+         * The Cursor constructor is used to create a cursor at the start of the set.
+         */
+        private Cursor() {
+            container = 0;
+            position = 0;
+        }
+
+        /**
+         * The advance method is used to move to the first doc ID not smaller than a target.
+         * The targets must not decrease between calls.
+         * @param target doc ID to look for
+         * @return first doc ID at or after target, or -1 if there is none
+         */
+        public int advance(int target) {
+            char high = (char) (target >>> 16);
+            if (container < size && keys[container] < high) {
+                int i = Arrays.binarySearch(keys, container, size, high);
+                container = i >= 0 ? i : -i - 1;
+                position = 0;
+            }
+            while (container < size) {
+                int low = keys[container] == high ? target & 0xFFFF : 0;
+                int value = nextValue(containers[container], low);
+                if (value >= 0) {
+                    return (keys[container] << 16) | value;
+                }
+                container++;
+                position = 0;
+            }
+            return -1;
+        }
+
+        /**
+         * The nextValue method is used to find the first value of a container not smaller than a given one.
+         * @param c current container
+         * @param low value to look for
+         * @return first value at or after low, or -1 if there is none
+         */
+        private int nextValue(Container c, int low) {
+            if (c instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) c;
+                position = ArrayContainer.advanceUntil(array.content, position, array.cardinality, (char) low);
+                return position < array.cardinality ? array.content[position] : -1;
+            }
+            if (c instanceof BitmapContainer) {
+                return ((BitmapContainer) c).nextSetBit(low);
+            }
+            RunContainer run = (RunContainer) c;
+            while (position < run.nbrRuns && run.start(position) + run.length(position) < low) {
+                position++;
+            }
+            return position < run.nbrRuns ? Math.max(run.start(position), low) : -1;
+        }
+    }
+
+    /**
+     * The findKey method is used to find the container of given high 16 bits.
+     * @param key high 16 bits to look for
+     * @return index of the container, or -(insertion point) - 1 if there is none
+     */
+    private int findKey(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+}
@@ -0,0 +1,282 @@
+package com.googol.googolfe.server.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The RunContainer class stores the values of a container as runs of consecutive values.
+ * Each run is kept as a pair (start, length - 1), so a block of doc IDs crawled one after
+ * the other costs four bytes no matter its size.
+ * The set operations convert the runs to an array or a bitmap first.
+ */
+final class RunContainer extends Container {
+    /**
+     * The runs of the container, as pairs of start and length - 1.
+     */
+    char[] runs;
+
+    /**
+     * The number of runs used in runs.
+     */
+    int nbrRuns;
+
+    /**
+     * The number of values in the runs.
+     */
+    int cardinality;
+
+    /**
+     * The RunContainer constructor is used to create a container from runs.
+     * @param runs pairs of start and length - 1
+     * @param nbrRuns number of runs used in runs
+     * @param cardinality number of values in the runs
+     */
+    RunContainer(char[] runs, int nbrRuns, int cardinality) {
+        this.runs = runs;
+        this.nbrRuns = nbrRuns;
+        this.cardinality = cardinality;
+    }
+
+    @Override
+    Container add(char x) {
+        int i = findRun(x);
+        if (i >= 0) {
+            int end = start(i) + length(i);
+            if (x <= end) {
+                return this;
+            }
+            if (x == end + 1) {
+                if (i + 1 < nbrRuns && start(i + 1) == x + 1) {
+                    // x joins run i with run i + 1
+                    runs[2 * i + 1] = (char) (start(i + 1) + length(i + 1) - start(i));
+                    System.arraycopy(runs, 2 * (i + 2), runs, 2 * (i + 1), 2 * (nbrRuns - i - 2));
+                    nbrRuns--;
+                } else {
+                    runs[2 * i + 1]++;
+                }
+                cardinality++;
+                return this;
+            }
+        }
+        if (i + 1 < nbrRuns && start(i + 1) == x + 1) {
+            runs[2 * (i + 1)] = x;
+            runs[2 * (i + 1) + 1]++;
+            cardinality++;
+            return this;
+        }
+        if (2 * (nbrRuns + 1) > runs.length) {
+            runs = Arrays.copyOf(runs, Math.max(4, runs.length * 2));
+        }
+        System.arraycopy(runs, 2 * (i + 1), runs, 2 * (i + 2), 2 * (nbrRuns - i - 1));
+        runs[2 * (i + 1)] = x;
+        runs[2 * (i + 1) + 1] = 0;
+        nbrRuns++;
+        cardinality++;
+        return this;
+    }
+
+    @Override
+    boolean contains(char x) {
+        int i = findRun(x);
+        return i >= 0 && x <= start(i) + length(i);
+    }
+
+    @Override
+    int cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    int last() {
+        return nbrRuns == 0 ? -1 : start(nbrRuns - 1) + length(nbrRuns - 1);
+    }
+
+    @Override
+    Container and(Container other) {
+        return toEfficientContainer().and(other);
+    }
+
+    @Override
+    Container or(Container other) {
+        return toEfficientContainer().or(other);
+    }
+
+    @Override
+    Container andNot(Container other) {
+        return toEfficientContainer().andNot(other);
+    }
+
+    @Override
+    int fill(int[] out, int offset, int high) {
+        for (int i = 0; i < nbrRuns; i++) {
+            int start = start(i), end = start + length(i);
+            for (int v = start; v <= end; v++) {
+                out[offset++] = high | v;
+            }
+        }
+        return offset;
+    }
+
+    @Override
+    Container runOptimize() {
+        int size = serializedSize(nbrRuns);
+        if (cardinality <= ArrayContainer.MAX_SIZE) {
+            return size <= ArrayContainer.serializedSize(cardinality) ? this : toEfficientContainer();
+        }
+        return size <= BitmapContainer.serializedSize() ? this : toEfficientContainer();
+    }
+
+    @Override
+    Container copy() {
+        return new RunContainer(Arrays.copyOf(runs, Math.max(2, 2 * nbrRuns)), nbrRuns, cardinality);
+    }
+
+    @Override
+    byte type() {
+        return RUN;
+    }
+
+    @Override
+    void serialize(DataOutput out) throws IOException {
+        out.writeShort(nbrRuns);
+        for (int i = 0; i < 2 * nbrRuns; i++) {
+            out.writeChar(runs[i]);
+        }
+    }
+
+    /**
+     * The deserialize method is used to read a run container from an input.
+     * @param in input to read from
+     * @return container read
+     * @throws IOException if there is an error reading
+     */
+    static RunContainer deserialize(DataInput in) throws IOException {
+        int nbrRuns = in.readUnsignedShort();
+        char[] runs = new char[Math.max(2, 2 * nbrRuns)];
+        int cardinality = 0;
+        for (int i = 0; i < 2 * nbrRuns; i += 2) {
+            runs[i] = in.readChar();
+            runs[i + 1] = in.readChar();
+            cardinality += runs[i + 1] + 1;
+        }
+        return new RunContainer(runs, nbrRuns, cardinality);
+    }
+
+    /**
+     * The serializedSize method is used to get the number of bytes used to serialize a run container.
+     * @param nbrRuns number of runs of the container
+     * @return number of bytes
+     */
+    static int serializedSize(int nbrRuns) {
+        return 2 + 4 * nbrRuns;
+    }
+
+    /**
+     * The fromSorted method is used to build a run container from sorted values.
+     * @param content sorted values
+     * @param cardinality number of values used in content
+     * @param nbrRuns number of runs in the values
+     * @return run container with the same values
+     */
+    static RunContainer fromSorted(char[] content, int cardinality, int nbrRuns) {
+        char[] runs = new char[Math.max(2, 2 * nbrRuns)];
+        int r = 0;
+        for (int i = 0; i < cardinality; i++) {
+            if (i == 0 || content[i] != content[i - 1] + 1) {
+                runs[2 * r] = content[i];
+                runs[2 * r + 1] = 0;
+                r++;
+            } else {
+                runs[2 * r - 1]++;
+            }
+        }
+        return new RunContainer(runs, r, cardinality);
+    }
+
+    /**
+     * The fromBitmap method is used to build a run container from a bitmap.
+     * @param bitmap bitmap container
+     * @param nbrRuns number of runs in the bitmap
+     * @return run container with the same values
+     */
+    static RunContainer fromBitmap(BitmapContainer bitmap, int nbrRuns) {
+        char[] runs = new char[Math.max(2, 2 * nbrRuns)];
+        int r = 0;
+        int start = bitmap.nextSetBit(0);
+        while (start >= 0) {
+            int end = start;
+            while (end + 1 < 65536 && bitmap.contains((char) (end + 1))) {
+                end++;
+            }
+            runs[2 * r] = (char) start;
+            runs[2 * r + 1] = (char) (end - start);
+            r++;
+            start = end + 1 < 65536 ? bitmap.nextSetBit(end + 1) : -1;
+        }
+        return new RunContainer(runs, r, bitmap.cardinality);
+    }
+
+    /**
+     * The toEfficientContainer method is used to convert the runs to an array or a bitmap, whichever fits.
+     * @return array or bitmap container with the same values
+     */
+    Container toEfficientContainer() {
+        if (cardinality <= ArrayContainer.MAX_SIZE) {
+            char[] content = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < nbrRuns; i++) {
+                int start = start(i), end = start + length(i);
+                for (int v = start; v <= end; v++) {
+                    content[n++] = (char) v;
+                }
+            }
+            return new ArrayContainer(content, n);
+        }
+        long[] bitmap = new long[BitmapContainer.WORDS];
+        for (int i = 0; i < nbrRuns; i++) {
+            int start = start(i), end = start + length(i);
+            for (int v = start; v <= end; v++) {
+                bitmap[v >>> 6] |= 1L << v;
+            }
+        }
+        return new BitmapContainer(bitmap, cardinality);
+    }
+
+    /**
+     * The start method is used to get the first value of a run.
+     * @param i index of the run
+     * @return first value of the run
+     */
+    int start(int i) {
+        return runs[2 * i];
+    }
+
+    /**
+     * The length method is used to get the length - 1 of a run.
+     * @param i index of the run
+     * @return length of the run minus one
+     */
+    int length(int i) {
+        return runs[2 * i + 1];
+    }
+
+    /**
+     * The findRun method is used to find the last run starting at or before a value.
+     * @param x value to look for
+     * @return index of the run, or -1 if every run starts after the value
+     */
+    int findRun(int x) {
+        int lo = 0, hi = nbrRuns - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return hi;
+    }
+}
@@ -0,0 +1,81 @@
+package com.googol.googolfe.server.index;
+
+import java.util.List;
+
+/**
+ * The interface of a segment of the index: the in-memory segment receiving new documents,
+ * or an immutable segment stored on disk.
+ * A segment answers for every document it contains, including the ones replaced by a newer segment;
+ * the SegmentedIndex masks those.
+ */
+interface Segment {
+  /**
+   * Gets the postings of a term in the segment.
+   * @param term The normalized term.
+   * @return The doc IDs of the pages containing the term, or null if the term is not in the segment.
+   */
+  RoaringPostings postings(String term);
+
+  /**
+   * Gets the number of pages of the segment containing a term, without building its postings.
+   * @param term The normalized term.
+   * @return The document frequency of the term, 0 if the term is not in the segment.
+   */
+  int documentFrequency(String term);
+
+  /**
+   * Gets the positions of a term in a page of the segment.
+   * @param term The normalized term.
+   * @param doc The doc ID of the page.
+   * @return The increasing positions of the term, or null if the page does not contain the term.
+   */
+  int[] positions(String term, int doc);
+
+  /**
+   * Gets the encoded positions of a term in a page of the segment, used to copy them to a new segment.
+   * @param term The normalized term.
+   * @param doc The doc ID of the page.
+   * @return The positions encoded by PositionList, or null if the page does not contain the term.
+   */
+  byte[] encodedPositions(String term, int doc);
+
+  /**
+   * Gets the number of times a term appears in a page of the segment.
+   * @param term The normalized term.
+   * @param doc The doc ID of the page.
+   * @return The frequency of the term, 0 if the page does not contain the term.
+   */
+  int frequency(String term, int doc);
+
+  /**
+   * Gets the highest number of times a term appears in a page of the segment.
+   * @param term The normalized term.
+   * @return The highest frequency of the term, 0 if the term is not in the segment.
+   */
+  int maxFrequency(String term);
+
+  /**
+   * Gets the number of terms of a page of the segment.
+   * @param doc The doc ID of the page.
+   * @return The length of the page, 0 if the page is not in the segment.
+   */
+  int documentLength(int doc);
+
+  /**
+   * Gets the pages of the segment.
+   * @return The doc IDs of the pages.
+   */
+  RoaringPostings docs();
+
+  /**
+   * Gets the sum of the lengths of the pages of the segment.
+   * @return The total length.
+   */
+  long totalLength();
+
+  /**
+   * Gets the terms of the segment, in increasing order.
+   * @return The sorted terms.
+   */
+  List<String> terms();
+}
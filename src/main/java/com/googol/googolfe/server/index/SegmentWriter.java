@@ -0,0 +1,296 @@
+package com.googol.googolfe.server.index;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.IntFunction;
+
+/**
+ * The SegmentWriter class writes segments to the on-disk format read by DiskSegment.
+ * The file is a header followed by the sections:
+ * - docs: the doc IDs of the segment, as serialized postings;
+ * - doc table: the sorted doc IDs and the length of each page;
+ * - term index: the offset of each term in the term data, in term order, for binary search;
+ * - term data: each term with its highest frequency, the offsets of its postings and positions, and its
+ *   document frequency, so the size of a term is known without reading its postings;
+ * - postings: the serialized postings of each term;
+ * - positions: for each term, its sorted doc IDs, the offsets of their encoded positions and the positions.
+ * The postings and positions are streamed to temporary files, so writing a segment only keeps the term
+ * dictionary and one term at a time in memory.
+ * A segment file is mapped in a single buffer read with int positions, so it can never be larger than
+ * MAX_BYTES: the pages are split among several segment files when they do not fit in one.
+ */
+final class SegmentWriter {
+    /**
+     * The magic number at the start of a segment file.
+     */
+    static final int MAGIC = 0x474F4F47;
+
+    /**
+     * The version of the segment format.
+     */
+    static final int VERSION = 2;
+
+    /**
+     * The size of the header of a segment file.
+     */
+    static final int HEADER = 72;
+
+    /**
+     * The largest size of a segment file, the largest buffer a file can be mapped to.
+     */
+    static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    /**
+     * The SegmentWriter constructor is private because the class only has static methods.
+     */
+    private SegmentWriter() {
+    }
+
+    /**
+     * The write method is used to write the live documents of some segments into as many segment files as
+     * needed to keep each file under a size. The pages are split by ranges of doc IDs, first from the size of
+     * the stored sources, then again for every file that turns out to be too large.
+     * The live documents of the sources must not overlap. If the write fails, the files written are deleted.
+     * @param paths path of each segment file, by its position in the list returned
+     * @param sources segments to copy
+     * @param live doc IDs to copy from each source
+     * @param maxBytes largest size of a segment file, at most MAX_BYTES
+     * @return paths of the segment files written, in increasing order of their doc IDs
+     * @throws IOException if there is an error writing or a single page does not fit in a segment file
+     */
+    static List<Path> write(IntFunction<Path> paths, List<Segment> sources, List<RoaringPostings> live, long maxBytes)
+            throws IOException {
+        maxBytes = Math.min(maxBytes, MAX_BYTES);
+        RoaringPostings all = new RoaringPostings();
+        long estimate = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            all = all.or(live.get(i));
+            if (sources.get(i) instanceof DiskSegment) {
+                DiskSegment stored = (DiskSegment) sources.get(i);
+                int count = stored.docs().cardinality();
+                estimate += count == 0 ? 0 : (long) ((double) stored.size() * live.get(i).cardinality() / count);
+            }
+        }
+        Deque<int[]> pending = new ArrayDeque<>();
+        pushRanges(pending, all.toArray(), (int) (estimate / maxBytes) + 1);
+        List<Path> written = new ArrayList<>();
+        Path path = null;
+        try {
+            while (!pending.isEmpty()) {
+                int[] docs = pending.pop();
+                if (path == null) {
+                    path = paths.apply(written.size());
+                }
+                RoaringPostings range = RoaringPostings.of(docs, docs.length);
+                List<RoaringPostings> rangeLive = new ArrayList<>();
+                for (RoaringPostings l : live) {
+                    rangeLive.add(l.and(range));
+                }
+                long size = write(path, sources, rangeLive, maxBytes);
+                if (size <= maxBytes) {
+                    written.add(path);
+                    path = null;
+                } else if (docs.length == 1) {
+                    throw new IOException("Page " + docs[0] + " does not fit in a segment of " + maxBytes + " bytes");
+                } else {
+                    pushRanges(pending, docs, (int) Math.min(docs.length, size / maxBytes + 1));
+                }
+            }
+            return written;
+        } catch (IOException | RuntimeException e) {
+            for (Path file : written) {
+                file.toFile().delete();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The pushRanges method is used to split sorted doc IDs into ranges of about the same number of pages,
+     * pushed so the first range is popped first.
+     * @param pending stack of the ranges left to write
+     * @param docs sorted doc IDs
+     * @param count number of ranges
+     */
+    private static void pushRanges(Deque<int[]> pending, int[] docs, int count) {
+        count = Math.max(1, Math.min(count, docs.length));
+        for (int i = count - 1; i >= 0; i--) {
+            pending.push(Arrays.copyOfRange(docs, (int) ((long) docs.length * i / count),
+                    (int) ((long) docs.length * (i + 1) / count)));
+        }
+    }
+
+    /**
+     * The write method is used to write the live documents of some segments into a new segment file.
+     * The live documents of the sources must not overlap. The file is only written if it fits in maxBytes.
+     * @param path path of the segment file
+     * @param sources segments to copy
+     * @param live doc IDs to copy from each source
+     * @param maxBytes largest size of the segment file
+     * @return size of the segment, larger than maxBytes if the file was not written
+     * @throws IOException if there is an error writing
+     */
+    private static long write(Path path, List<Segment> sources, List<RoaringPostings> live, long maxBytes)
+            throws IOException {
+        // Doc table of the live documents
+        RoaringPostings docs = new RoaringPostings();
+        for (RoaringPostings l : live) {
+            docs = docs.or(l);
+        }
+        int[] docIds = docs.toArray();
+        ByteArrayOutputStream docTable = new ByteArrayOutputStream();
+        DataOutputStream docTableOut = new DataOutputStream(docTable);
+        long totalLength = 0;
+        for (int doc : docIds) {
+            docTableOut.writeInt(doc);
+        }
+        for (int doc : docIds) {
+            int length = sources.get(owner(live, doc)).documentLength(doc);
+            docTableOut.writeInt(length);
+            totalLength += length;
+        }
+
+        TreeSet<String> terms = new TreeSet<>();
+        for (Segment source : sources) {
+            terms.addAll(source.terms());
+        }
+
+        File postingsFile = new File(path + ".postings.tmp");
+        File positionsFile = new File(path + ".positions.tmp");
+        ByteArrayOutputStream termIndex = new ByteArrayOutputStream();
+        ByteArrayOutputStream termData = new ByteArrayOutputStream();
+        DataOutputStream termIndexOut = new DataOutputStream(termIndex);
+        DataOutputStream termDataOut = new DataOutputStream(termData);
+        int termCount = 0;
+        try (DataOutputStream postingsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(postingsFile)));
+             DataOutputStream positionsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(positionsFile)))) {
+            for (String term : terms) {
+                RoaringPostings postings = new RoaringPostings();
+                for (int i = 0; i < sources.size(); i++) {
+                    RoaringPostings p = sources.get(i).postings(term);
+                    if (p != null) {
+                        postings = postings.or(p.and(live.get(i)));
+                    }
+                }
+                if (postings.isEmpty()) {
+                    continue;
+                }
+                int[] termDocs = postings.toArray();
+                byte[][] encoded = new byte[termDocs.length][];
+                int maxFrequency = 0;
+                for (int i = 0; i < termDocs.length; i++) {
+                    encoded[i] = sources.get(owner(live, termDocs[i])).encodedPositions(term, termDocs[i]);
+                    maxFrequency = Math.max(maxFrequency, PositionList.frequency(encoded[i], 0));
+                }
+
+                byte[] termBytes = term.getBytes(StandardCharsets.UTF_8);
+                termIndexOut.writeInt(termData.size());
+                termDataOut.writeShort(termBytes.length);
+                termDataOut.write(termBytes);
+                termDataOut.writeInt(maxFrequency);
+                termDataOut.writeLong(postingsOut.size());
+                termDataOut.writeLong(positionsOut.size());
+                termDataOut.writeInt(termDocs.length);
+                termCount++;
+
+                postings.serialize(postingsOut);
+                positionsOut.writeInt(termDocs.length);
+                for (int doc : termDocs) {
+                    positionsOut.writeInt(doc);
+                }
+                int offset = 0;
+                for (byte[] e : encoded) {
+                    positionsOut.writeInt(offset);
+                    offset += e.length;
+                }
+                positionsOut.writeInt(offset);
+                for (byte[] e : encoded) {
+                    positionsOut.write(e);
+                }
+            }
+        }
+
+        // Assemble the segment file, then move it in place
+        ByteArrayOutputStream docsSection = new ByteArrayOutputStream();
+        docs.serialize(new DataOutputStream(docsSection));
+        long docsOffset = HEADER;
+        long docTableOffset = docsOffset + docsSection.size();
+        long termIndexOffset = docTableOffset + docTable.size();
+        long termDataOffset = termIndexOffset + termIndex.size();
+        long postingsOffset = termDataOffset + termData.size();
+        long positionsOffset = postingsOffset + postingsFile.length();
+        long size = positionsOffset + positionsFile.length();
+        if (size > maxBytes) {
+            postingsFile.delete();
+            positionsFile.delete();
+            return size;
+        }
+
+        File tmp = new File(path + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(termCount);
+            out.writeInt(docIds.length);
+            out.writeLong(totalLength);
+            out.writeLong(docsOffset);
+            out.writeLong(docTableOffset);
+            out.writeLong(termIndexOffset);
+            out.writeLong(termDataOffset);
+            out.writeLong(postingsOffset);
+            out.writeLong(positionsOffset);
+            docsSection.writeTo(out);
+            docTable.writeTo(out);
+            termIndex.writeTo(out);
+            termData.writeTo(out);
+            out.flush();
+            FileChannel channel = file.getChannel();
+            for (File section : new File[] { postingsFile, positionsFile }) {
+                try (FileChannel in = FileChannel.open(section.toPath(), StandardOpenOption.READ)) {
+                    long position = 0;
+                    while (position < in.size()) {
+                        position += in.transferTo(position, in.size() - position, channel);
+                    }
+                }
+            }
+            file.getFD().sync();
+        } finally {
+            postingsFile.delete();
+            positionsFile.delete();
+        }
+        Files.move(tmp.toPath(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * The owner method is used to find the source a live document is copied from.
+     * @param live doc IDs to copy from each source
+     * @param doc doc ID of the page
+     * @return index of the source
+     */
+    private static int owner(List<RoaringPostings> live, int doc) {
+        for (int i = 0; i < live.size(); i++) {
+            if (live.get(i).contains(doc)) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Document " + doc + " is not live in any source");
+    }
+}
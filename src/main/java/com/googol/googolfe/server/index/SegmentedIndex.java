@@ -0,0 +1,509 @@
+package com.googol.googolfe.server.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.googol.googolfe.server.storage.Snapshots;
+
+/**
+ * The SegmentedIndex class is the inverted index of a barrel, split into segments.
+ * New documents are indexed in a private in-memory segment, which is published as a new immutable
+ * segment after each ingest batch. Searches read an IndexView, an immutable list of segments replaced
+ * atomically at every publication, flush or merge, so they never wait for the ingest and always see one
+ * consistent version of the index.
+ * The small in-memory segments are merged in memory as they accumulate, and at every checkpoint they are
+ * frozen and written together to an immutable memory-mapped segment file, so the postings and positions
+ * live in the page cache instead of the heap and a restart only maps the files.
+ * A background thread merges the stored segments by size tier, so a query only visits a logarithmic
+ * number of segments.
+ * A page indexed again is replaced, not updated: it is only live in the newest segment that contains it,
+ * and the older copies are masked by a deletion set per segment. The deletion sets are not stored, they
+ * are rebuilt from the segments when the index is opened.
+ * The stored segments in use are listed in a manifest replaced atomically, and segment files left out of
+ * it by a crash are deleted when the index is opened.
+ */
+public class SegmentedIndex {
+    /**
+     * The largest size of a segment file written by a flush, a merge or an export, well under the size
+     * SegmentWriter can write, so merges keep a margin and every file stays mappable at once.
+     */
+    public static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    /**
+     * The number of live documents under which stored segments are all in the first tier, so the small
+     * segments written at every checkpoint are merged together whatever their exact size.
+     */
+    private static final int TIER_FLOOR = 1000;
+
+    /**
+     * The directory of the segment files.
+     */
+    private final String directory;
+
+    /**
+     * The prefix of the segment files and of the manifest.
+     */
+    private final String name;
+
+    /**
+     * The number of segments of the same tier merged together.
+     */
+    private final int mergeFactor;
+
+    /**
+     * The pattern of the segment file names, with the segment number as its group.
+     */
+    private final Pattern segmentFile;
+
+    /**
+     * The version of the index read by the searches.
+     */
+    private volatile IndexView view;
+
+    /**
+     * The in-memory segment receiving the documents of the current batch, not visible to the searches.
+     */
+    private InvertedIndex building;
+
+    /**
+     * The number of the next segment.
+     */
+    private long nextSegment;
+
+    /**
+     * Whether the merge thread is running.
+     */
+    private boolean merging;
+
+    /**
+     * The thread merging stored segments in the background.
+     */
+    private final ExecutorService merger;
+
+    /**
+     * The SegmentedIndex constructor is used to open the segments listed in the manifest of an index.
+     * @param directory directory of the segment files
+     * @param name prefix of the segment files and of the manifest
+     * @param mergeFactor number of segments of the same tier merged together
+     * @throws IOException if a segment file cannot be read
+     */
+    public SegmentedIndex(String directory, String name, int mergeFactor) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.mergeFactor = Math.max(2, mergeFactor);
+        segmentFile = Pattern.compile(Pattern.quote(name) + "-seg-(\\d+)\\.idx");
+        building = new InvertedIndex();
+
+        Set<Long> listed = new HashSet<>();
+        List<IndexView.Entry> opened = new ArrayList<>();
+        File manifest = new File(directory, name + "segments");
+        if (manifest.exists()) {
+            for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                long number = Long.parseLong(line.trim());
+                listed.add(number);
+                opened.add(new IndexView.Entry(new DiskSegment(segmentPath(number)), number, false, new RoaringPostings(), 0));
+            }
+        }
+        // Delete the segments written or merged by a crashed process before they were listed
+        File[] files = new File(directory).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.getName().startsWith(name + "-seg-")) {
+                    continue;
+                }
+                Matcher matcher = segmentFile.matcher(file.getName());
+                if (matcher.matches()) {
+                    nextSegment = Math.max(nextSegment, Long.parseLong(matcher.group(1)) + 1);
+                }
+                if (!matcher.matches() || !listed.contains(Long.parseLong(matcher.group(1)))) {
+                    file.delete();
+                }
+            }
+        }
+        for (long number : listed) {
+            nextSegment = Math.max(nextSegment, number + 1);
+        }
+        // A page is only live in the newest segment that contains it
+        for (int i = opened.size() - 1; i > 0; i--) {
+            for (int j = 0; j < i; j++) {
+                opened.set(j, opened.get(j).delete(opened.get(i).segment.docs()));
+            }
+        }
+        view = new IndexView(opened, 0);
+
+        merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-merge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maybeMerge();
+    }
+
+    /**
+     * The view method is used to get the current version of the index, to run a search on.
+     * @return immutable view of the index
+     */
+    public IndexView view() {
+        return view;
+    }
+
+    /**
+     * The addDocument method is used to index a page in the current batch, replacing any older copy.
+     * The page is only visible to the searches once the batch is published.
+     * @param doc doc ID of the page
+     * @param terms normalized terms of the page, in order
+     */
+    public synchronized void addDocument(int doc, String[] terms) {
+        if (building.docs().contains(doc)) {
+            // The page is replaced across segments, so its older copy is published first
+            publish();
+        }
+        building.addDocument(doc, terms);
+    }
+
+    /**
+     * The adopt method is used to index the documents of an index saved before the segments were introduced.
+     * They are published at once and written to a segment at the next flush.
+     * @param legacy inverted index read from a legacy file
+     */
+    public synchronized void adopt(InvertedIndex legacy) {
+        publish();
+        building = legacy;
+        publish();
+    }
+
+    /**
+     * The publish method is used to make the current batch visible to the searches.
+     * The batch becomes an immutable segment of a new view, replacing the older copies of its pages,
+     * and the small in-memory segments are merged when enough of them accumulate.
+     */
+    public synchronized void publish() {
+        if (building.isEmpty()) {
+            return;
+        }
+        List<IndexView.Entry> entries = new ArrayList<>();
+        for (IndexView.Entry entry : view.getEntries()) {
+            entries.add(entry.delete(building.docs()));
+        }
+        entries.add(new IndexView.Entry(building, nextSegment++, false, new RoaringPostings(), 0));
+        building = new InvertedIndex();
+
+        List<IndexView.Entry> run;
+        while ((run = findMerge(entries, false)) != null) {
+            InvertedIndex merged = new InvertedIndex();
+            for (IndexView.Entry entry : run) {
+                merged.addSegment(entry.segment, entry.segment.docs().andNot(entry.deleted));
+            }
+            entries = replace(entries, run, List.of(new IndexView.Entry(merged, nextSegment++, false, new RoaringPostings(), 0)));
+        }
+        view = new IndexView(entries, view.getVersion() + 1);
+    }
+
+    /**
+     * The freeze method is used to publish the current batch and mark the in-memory segments to be written
+     * by the next flush. It must be called at the same point as the write-ahead log is rolled.
+     */
+    public synchronized void freeze() {
+        publish();
+        List<IndexView.Entry> entries = new ArrayList<>();
+        boolean changed = false;
+        for (IndexView.Entry entry : view.getEntries()) {
+            if (!entry.isStored() && !entry.frozen) {
+                entry = entry.freeze();
+                changed = true;
+            }
+            entries.add(entry);
+        }
+        if (changed) {
+            view = new IndexView(entries, view.getVersion() + 1);
+        }
+    }
+
+    /**
+     * The flush method is used to write the frozen segments to segment files and list them in the manifest.
+     * They are written to one file, or to several if their pages do not fit in MAX_SEGMENT_BYTES.
+     * The frozen segments keep answering the searches while they are written.
+     * @throws IOException if the segments or the manifest cannot be written
+     */
+    public void flush() throws IOException {
+        List<IndexView.Entry> run = new ArrayList<>();
+        synchronized (this) {
+            for (IndexView.Entry entry : view.getEntries()) {
+                if (entry.frozen) {
+                    run.add(entry);
+                }
+            }
+        }
+        if (!run.isEmpty()) {
+            List<IndexView.Entry> stored = write(run);
+            synchronized (this) {
+                view = new IndexView(replace(view.getEntries(), run, stored), view.getVersion() + 1);
+                writeManifest();
+            }
+        }
+        maybeMerge();
+    }
+
+    /**
+     * The export method is used to write the live pages of a view to segment files of a bounded size, to send
+     * the index to another barrel. The view is immutable, so the export does not block the ingest or the merges.
+     * @param view view of the index to export
+     * @param paths path of each segment file to write, by its position
+     * @param maxBytes largest size of a segment file, at most MAX_SEGMENT_BYTES so the files can be opened
+     * @return paths of the segment files written
+     * @throws IOException if there is an error writing
+     */
+    public static List<Path> export(IndexView view, IntFunction<Path> paths, long maxBytes) throws IOException {
+        List<Segment> sources = new ArrayList<>();
+        List<RoaringPostings> live = new ArrayList<>();
+        for (IndexView.Entry entry : view.getEntries()) {
+            sources.add(entry.segment);
+            live.add(entry.segment.docs().andNot(entry.deleted));
+        }
+        return SegmentWriter.write(paths, sources, live, Math.min(maxBytes, MAX_SEGMENT_BYTES));
+    }
+
+    /**
+     * The install method is used to replace the segments of an index, while it is not open, by the segment
+     * files exported by another barrel.
+     * @param directory directory of the segment files
+     * @param name prefix of the segment files and of the manifest
+     * @param segments segment files to install, moved into the index
+     * @throws IOException if a segment cannot be moved or the manifest cannot be written
+     */
+    public static void install(String directory, String name, List<Path> segments) throws IOException {
+        File[] files = new File(directory).listFiles();
+        long number = 0;
+        if (files != null) {
+            Pattern segmentFile = Pattern.compile(Pattern.quote(name) + "-seg-(\\d+)\\.idx");
+            for (File file : files) {
+                Matcher matcher = segmentFile.matcher(file.getName());
+                if (matcher.matches()) {
+                    number = Math.max(number, Long.parseLong(matcher.group(1)) + 1);
+                }
+            }
+        }
+        // The old segments are deleted when the index is opened, as the manifest no longer lists them
+        StringBuilder manifest = new StringBuilder();
+        for (Path segment : segments) {
+            Files.move(segment, new File(directory, name + "-seg-" + number + ".idx").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            manifest.append(number++).append('\n');
+        }
+        Snapshots.write(new File(directory, name + "segments").getPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The close method is used to stop the merge thread. A merge in progress is abandoned and its file
+     * deleted the next time the index is opened.
+     */
+    public void close() {
+        merger.shutdownNow();
+    }
+
+    /**
+     * The maybeMerge method is used to start the merge thread if some stored segments can be merged.
+     */
+    private synchronized void maybeMerge() {
+        if (!merging && findMerge(view.getEntries(), true) != null) {
+            merging = true;
+            merger.execute(this::runMerges);
+        }
+    }
+
+    /**
+     * The runMerges method is used to merge stored segments until no tier has enough segments.
+     * Only the live documents are copied, so merges also reclaim the space of replaced pages.
+     */
+    private void runMerges() {
+        try {
+            while (true) {
+                List<IndexView.Entry> run;
+                synchronized (this) {
+                    run = findMerge(view.getEntries(), true);
+                    if (run == null) {
+                        merging = false;
+                        return;
+                    }
+                }
+                List<IndexView.Entry> merged = write(run);
+                synchronized (this) {
+                    view = new IndexView(replace(view.getEntries(), run, merged), view.getVersion() + 1);
+                    writeManifest();
+                }
+                // The mappings of the old segments stay valid for the searches still using them
+                for (IndexView.Entry old : run) {
+                    ((DiskSegment) old.segment).getPath().toFile().delete();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to merge segments of " + name + ": " + e.getMessage());
+            synchronized (this) {
+                merging = false;
+            }
+        }
+    }
+
+    /**
+     * The write method is used to write the live pages of some segments to new segment files of at most
+     * MAX_SEGMENT_BYTES. The pages of the new segments do not overlap.
+     * @param run segments to write, oldest first
+     * @return entries of the new segments
+     * @throws IOException if there is an error writing
+     */
+    private List<IndexView.Entry> write(List<IndexView.Entry> run) throws IOException {
+        List<Segment> sources = new ArrayList<>();
+        List<RoaringPostings> live = new ArrayList<>();
+        for (IndexView.Entry entry : run) {
+            sources.add(entry.segment);
+            live.add(entry.segment.docs().andNot(entry.deleted));
+        }
+        List<Long> numbers = new ArrayList<>();
+        List<Path> paths = SegmentWriter.write(i -> {
+            long number = nextNumber();
+            numbers.add(number);
+            return segmentPath(number);
+        }, sources, live, MAX_SEGMENT_BYTES);
+        List<IndexView.Entry> written = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i++) {
+            written.add(new IndexView.Entry(new DiskSegment(paths.get(i)), numbers.get(i), false, new RoaringPostings(), 0));
+        }
+        return written;
+    }
+
+    /**
+     * The nextNumber method is used to reserve the number of a new segment.
+     * @return number of the segment
+     */
+    private synchronized long nextNumber() {
+        return nextSegment++;
+    }
+
+    /**
+     * The replace method is used to replace adjacent segments of a list by segments with their live pages.
+     * The segments are found by number, since their entries are replaced as pages are deleted.
+     * @param entries segments of the index, oldest first
+     * @param run adjacent segments to replace, oldest first
+     * @param merged new segments with the live pages of the run, whose pages do not overlap
+     * @return new list of segments
+     */
+    private static List<IndexView.Entry> replace(List<IndexView.Entry> entries, List<IndexView.Entry> run,
+            List<IndexView.Entry> merged) {
+        int first = 0;
+        while (entries.get(first).number != run.get(0).number) {
+            first++;
+        }
+        List<IndexView.Entry> updated = new ArrayList<>(entries.subList(0, first));
+        for (IndexView.Entry entry : merged) {
+            // Pages indexed again while the segment was built are only live in the newer segments
+            for (int i = first + run.size(); i < entries.size(); i++) {
+                entry = entry.delete(entries.get(i).segment.docs());
+            }
+            updated.add(entry);
+        }
+        updated.addAll(entries.subList(first + run.size(), entries.size()));
+        return updated;
+    }
+
+    /**
+     * The findMerge method is used to find adjacent segments to merge, preferring the smallest ones.
+     * A window of mergeFactor adjacent segments is merged when none of them is above a given tier, trying
+     * the lowest tier first, so segments of the same size are merged together and a small segment left
+     * between bigger ones is eventually merged with them instead of staying alone.
+     * @param list segments of the index, oldest first
+     * @param stored true to merge stored segments, false to merge the in-memory segments not frozen
+     * @return segments to merge, oldest first, or null if there are not enough adjacent segments
+     */
+    private List<IndexView.Entry> findMerge(List<IndexView.Entry> list, boolean stored) {
+        int floor = stored ? TIER_FLOOR : 1;
+        int maxTier = -1;
+        for (IndexView.Entry entry : list) {
+            if (isMergeable(entry, stored)) {
+                maxTier = Math.max(maxTier, tier(entry, floor));
+            }
+        }
+        for (int tier = 0; tier <= maxTier; tier++) {
+            int start = 0;
+            long bytes = 0;
+            for (int i = 0; i < list.size(); i++) {
+                IndexView.Entry entry = list.get(i);
+                if (!isMergeable(entry, stored) || tier(entry, floor) > tier) {
+                    start = i + 1;
+                    bytes = 0;
+                    continue;
+                }
+                if (stored) {
+                    bytes += ((DiskSegment) entry.segment).size();
+                    while (bytes > MAX_SEGMENT_BYTES && start <= i) {
+                        bytes -= ((DiskSegment) list.get(start).segment).size();
+                        start++;
+                    }
+                }
+                if (i - start + 1 == mergeFactor) {
+                    return new ArrayList<>(list.subList(start, i + 1));
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The isMergeable method is used to check if a segment can be merged by a kind of merge.
+     * @param entry segment of the index
+     * @param stored true for merges of stored segments, false for merges of in-memory segments
+     * @return true if the segment can be merged, false otherwise
+     */
+    private static boolean isMergeable(IndexView.Entry entry, boolean stored) {
+        return stored ? entry.isStored() : !entry.isStored() && !entry.frozen;
+    }
+
+    /**
+     * The tier method is used to get the size tier of a segment: the logarithm in base mergeFactor
+     * of its live documents, with every segment under floor documents in the first tier.
+     * @param entry segment of the index
+     * @param floor number of live documents of the first tier
+     * @return tier of the segment
+     */
+    private int tier(IndexView.Entry entry, int floor) {
+        int live = entry.segment.docs().cardinality() - entry.deleted.cardinality();
+        return live <= floor ? 0 : (int) (Math.log((double) live / floor) / Math.log(mergeFactor)) + 1;
+    }
+
+    /**
+     * The writeManifest method is used to replace the manifest with the stored segments, oldest first.
+     * @throws IOException if there is an error writing
+     */
+    private void writeManifest() throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (IndexView.Entry entry : view.getEntries()) {
+            if (entry.isStored()) {
+                manifest.append(entry.number).append('\n');
+            }
+        }
+        Snapshots.write(new File(directory, name + "segments").getPath(), manifest.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The segmentPath method is used to get the path of a segment file.
+     * @param number number of the segment
+     * @return path of the segment file
+     */
+    private Path segmentPath(long number) {
+        return new File(directory, name + "-seg-" + number + ".idx").toPath();
+    }
+}
@@ -0,0 +1,42 @@
+package com.googol.googolfe.server.index;
+
+import java.util.List;
+
+/**
+ * The TermNode class matches the docs containing a term.
+ */
+final class TermNode extends QueryNode {
+    /**
+     * The normalized term.
+     */
+    final String term;
+
+    /**
+     * The TermNode constructor is used to create the operator of a term.
+     * @param term normalized term
+     */
+    TermNode(String term) {
+        this.term = term;
+    }
+
+    @Override
+    public long estimate(IndexReader index) {
+        return index.documentFrequency(term);
+    }
+
+    @Override
+    public RoaringPostings evaluate(IndexReader index) {
+        RoaringPostings postings = index.postings(term);
+        return postings != null ? postings : new RoaringPostings();
+    }
+
+    @Override
+    public void collectTerms(List<String> terms) {
+        terms.add(term);
+    }
+
+    @Override
+    public String toString() {
+        return term;
+    }
+}
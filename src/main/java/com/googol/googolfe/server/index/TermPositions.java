@@ -0,0 +1,208 @@
+package com.googol.googolfe.server.index;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The TermPositions class stores the encoded positions of a term in every page containing it.
+ * The encoded lists are packed in a single byte array, found through a sorted array of doc IDs,
+ * so a term costs a few arrays instead of one object per page.
+ * When a page is indexed again its new list is appended and the old one is reclaimed by compacting.
+ */
+final class TermPositions implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * The sorted doc IDs of the pages containing the term.
+     */
+    private transient int[] docs;
+
+    /**
+     * The offset in data of the encoded positions of each doc.
+     */
+    private transient int[] offsets;
+
+    /**
+     * The number of docs used.
+     */
+    private transient int size;
+
+    /**
+     * The encoded positions of all the docs.
+     */
+    private transient byte[] data;
+
+    /**
+     * The number of bytes used in data.
+     */
+    private transient int used;
+
+    /**
+     * The number of bytes of data holding replaced lists.
+     */
+    private transient int garbage;
+
+    /**
+     * The highest frequency of the term in a page.
+     */
+    private transient int maxFrequency;
+
+    /**
+     * The TermPositions constructor is used to create an empty list.
+     */
+    TermPositions() {
+        docs = new int[4];
+        offsets = new int[4];
+        data = new byte[16];
+    }
+
+    /**
+     * The put method is used to set the positions of the term in a page.
+     * @param doc doc ID of the page
+     * @param positions increasing positions of the term in the page
+     * @param count number of positions used
+     */
+    void put(int doc, int[] positions, int count) {
+        // Doc IDs mostly arrive in increasing order, so appending is the common case
+        int i = size == 0 || docs[size - 1] < doc ? -size - 1 : Arrays.binarySearch(docs, 0, size, doc);
+        int offset = append(PositionList.encode(positions, count));
+        if (i >= 0) {
+            garbage += PositionList.encodedLength(data, offsets[i]);
+            offsets[i] = offset;
+        } else {
+            i = -i - 1;
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            System.arraycopy(docs, i, docs, i + 1, size - i);
+            System.arraycopy(offsets, i, offsets, i + 1, size - i);
+            docs[i] = doc;
+            offsets[i] = offset;
+            size++;
+        }
+        maxFrequency = Math.max(maxFrequency, count);
+        if (garbage > used / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * The get method is used to get the positions of the term in a page.
+     * @param doc doc ID of the page
+     * @return increasing positions, or null if the page does not contain the term
+     */
+    int[] get(int doc) {
+        int i = Arrays.binarySearch(docs, 0, size, doc);
+        return i >= 0 ? PositionList.decode(data, offsets[i]) : null;
+    }
+
+    /**
+     * The encoded method is used to get the encoded positions of the term in a page, without decoding them.
+     * @param doc doc ID of the page
+     * @return positions encoded by PositionList, or null if the page does not contain the term
+     */
+    byte[] encoded(int doc) {
+        int i = Arrays.binarySearch(docs, 0, size, doc);
+        if (i < 0) {
+            return null;
+        }
+        return Arrays.copyOfRange(data, offsets[i], offsets[i] + PositionList.encodedLength(data, offsets[i]));
+    }
+
+    /**
+     * The frequency method is used to get the number of times the term appears in a page.
+     * @param doc doc ID of the page
+     * @return frequency of the term, 0 if the page does not contain it
+     */
+    int frequency(int doc) {
+        int i = Arrays.binarySearch(docs, 0, size, doc);
+        return i >= 0 ? PositionList.frequency(data, offsets[i]) : 0;
+    }
+
+    /**
+     * The getMaxFrequency method is used to get the highest frequency of the term in a page.
+     * @return highest frequency
+     */
+    int getMaxFrequency() {
+        return maxFrequency;
+    }
+
+    /**
+     * The append method is used to add encoded positions at the end of data.
+     * @param encoded encoded positions
+     * @return offset of the encoded positions in data
+     */
+    private int append(byte[] encoded) {
+        if (used + encoded.length > data.length) {
+            data = Arrays.copyOf(data, Math.max(used + encoded.length, data.length * 2));
+        }
+        System.arraycopy(encoded, 0, data, used, encoded.length);
+        int offset = used;
+        used += encoded.length;
+        return offset;
+    }
+
+    /**
+     * The compact method is used to drop the replaced lists and the unused capacity.
+     */
+    private void compact() {
+        byte[] compacted = new byte[used - garbage];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            int length = PositionList.encodedLength(data, offsets[i]);
+            System.arraycopy(data, offsets[i], compacted, n, length);
+            offsets[i] = n;
+            n += length;
+        }
+        data = compacted;
+        used = n;
+        garbage = 0;
+        docs = Arrays.copyOf(docs, Math.max(size, 1));
+        offsets = Arrays.copyOf(offsets, Math.max(size, 1));
+    }
+
+    /**
+     * The writeObject method is used to serialize the list without the replaced lists and the unused capacity.
+     * The list is not modified, so it can be serialized while it is being read.
+     * @param out stream to write to
+     * @throws IOException if there is an error writing
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(size);
+        out.writeInt(maxFrequency);
+        for (int i = 0; i < size; i++) {
+            int length = PositionList.encodedLength(data, offsets[i]);
+            out.writeInt(docs[i]);
+            out.writeInt(length);
+            out.write(data, offsets[i], length);
+        }
+    }
+
+    /**
+     * The readObject method is used to deserialize a list written by writeObject.
+     * @param in stream to read from
+     * @throws IOException if there is an error reading
+     * @throws ClassNotFoundException if a class of the stream cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = in.readInt();
+        maxFrequency = in.readInt();
+        docs = new int[Math.max(size, 1)];
+        offsets = new int[Math.max(size, 1)];
+        data = new byte[16];
+        used = 0;
+        garbage = 0;
+        for (int i = 0; i < size; i++) {
+            docs[i] = in.readInt();
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            offsets[i] = append(encoded);
+        }
+    }
+}
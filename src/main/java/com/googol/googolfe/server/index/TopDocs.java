@@ -0,0 +1,57 @@
+package com.googol.googolfe.server.index;
+
+/**
+ * The TopDocs class holds the best ranked docs of a search, by decreasing score.
+ */
+public final class TopDocs {
+    /**
+     * The doc IDs of the best ranked docs, by decreasing score.
+     */
+    private final int[] docs;
+
+    /**
+     * The score of each doc.
+     */
+    private final double[] scores;
+
+    /**
+     * The number of docs matching the query, ranked or not.
+     */
+    private final int totalHits;
+
+    /**
+     * The TopDocs constructor is used to create the result of a search.
+     * @param docs doc IDs of the best ranked docs, by decreasing score
+     * @param scores score of each doc
+     * @param totalHits number of docs matching the query
+     */
+    TopDocs(int[] docs, double[] scores, int totalHits) {
+        this.docs = docs;
+        this.scores = scores;
+        this.totalHits = totalHits;
+    }
+
+    /**
+     * The getDocs method is used to get the best ranked docs.
+     * @return doc IDs by decreasing score
+     */
+    public int[] getDocs() {
+        return docs;
+    }
+
+    /**
+     * The getScores method is used to get the scores of the best ranked docs.
+     * @return scores, in the same order as the docs
+     */
+    public double[] getScores() {
+        return scores;
+    }
+
+    /**
+     * The getTotalHits method is used to get the number of docs matching the query.
+     * @return number of matching docs
+     */
+    public int getTotalHits() {
+        return totalHits;
+    }
+}
@@ -0,0 +1,364 @@
+package com.googol.googolfe.server.index;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * The TopKSearcher class finds the k best docs of a query without scoring every match.
+ * The score of a doc is the BM25 score of the query terms it contains plus a static prior.
+ * The docs are visited in increasing order with the MaxScore algorithm: the terms are sorted by
+ * the upper bound of their score, and once k docs are collected, the terms whose bounds add up
+ * to less than the k-th score are no longer used to find candidates, since a doc containing only
+ * those terms cannot enter the top k. They are still probed for the candidates found by the other
+ * terms, stopping as soon as the remaining bounds cannot lift the doc above the k-th score.
+ * Only the docs matched by the operator tree of the query are ranked.
+ */
+public final class TopKSearcher {
+    /**
+     * The TopKSearcher constructor is private because the class only has static methods.
+     */
+    private TopKSearcher() {
+    }
+
+    /**
+     * The search method is used to get the k best docs matching a query.
+     * Docs are ranked by their terms, so a doc matching the query only through an exclusion, like the
+     * docs of a OR -b without a, is only ranked when the query has no terms at all.
+     * @param index index to search
+     * @param query operator tree of the query
+     * @param k maximum number of docs to return
+     * @param prior static score of each doc, added to its BM25 score
+     * @param priorBound upper bound of the static score
+     * @return best ranked docs, by decreasing score
+     */
+    public static TopDocs search(IndexReader index, QueryNode query, int k, IntToDoubleFunction prior, double priorBound) {
+        return search(index, query, null, k, prior, priorBound);
+    }
+
+    /**
+     * The search method is used to get the k best docs matching a query among the docs accepted by a filter.
+     * The filter is only tested on the docs matching the query, so it can be costly per doc.
+     * @param source index to search
+     * @param query operator tree of the query
+     * @param filter docs that can be returned, or null to accept every doc
+     * @param k maximum number of docs to return
+     * @param prior static score of each doc, added to its BM25 score
+     * @param priorBound upper bound of the static score
+     * @return best ranked docs, by decreasing score, counting only the accepted docs in the total hits
+     */
+    public static TopDocs search(IndexReader source, QueryNode query, IntPredicate filter, int k, IntToDoubleFunction prior, double priorBound) {
+        return search(source, query, filter, k, prior, priorBound, new Bm25(source));
+    }
+
+    /**
+     * The search method is used to get the k best docs matching a query among the docs accepted by a filter,
+     * weighing the terms with the statistics of a collection the index is part of.
+     * @param source index to search
+     * @param query operator tree of the query
+     * @param filter docs that can be returned, or null to accept every doc
+     * @param k maximum number of docs to return
+     * @param prior static score of each doc, added to its BM25 score
+     * @param priorBound upper bound of the static score
+     * @param bm25 scoring formula with the statistics of the collection
+     * @return best ranked docs, by decreasing score, counting only the accepted docs in the total hits
+     */
+    public static TopDocs search(IndexReader source, QueryNode query, IntPredicate filter, int k, IntToDoubleFunction prior, double priorBound, Bm25 bm25) {
+        // The postings read to match the query are reused to score it
+        IndexReader index = new PostingsCache(source);
+        RoaringPostings matches = query.evaluate(index);
+        if (filter != null) {
+            int[] candidates = matches.toArray();
+            int accepted = 0;
+            for (int doc : candidates) {
+                if (filter.test(doc)) {
+                    candidates[accepted++] = doc;
+                }
+            }
+            matches = RoaringPostings.of(candidates, accepted);
+        }
+        int totalHits = matches.cardinality();
+        Heap heap = new Heap(k);
+        if (k <= 0 || totalHits == 0) {
+            return heap.toTopDocs(totalHits);
+        }
+
+        // Build a scorer per distinct term present in the index, by increasing upper bound
+        List<String> terms = new ArrayList<>();
+        query.collectTerms(terms);
+        List<TermScorer> scorers = new ArrayList<>();
+        for (String term : new LinkedHashSet<>(terms)) {
+            RoaringPostings postings = index.postings(term);
+            if (postings != null && !postings.isEmpty()) {
+                scorers.add(new TermScorer(term, postings, bm25, index));
+            }
+        }
+        if (scorers.isEmpty()) {
+            for (int doc : matches.toArray()) {
+                heap.offer(doc, prior.applyAsDouble(doc));
+            }
+            return heap.toTopDocs(totalHits);
+        }
+        scorers.sort((a, b) -> Double.compare(a.bound, b.bound));
+
+        int n = scorers.size();
+        // prefix[i] is the sum of the bounds of the scorers 0 to i
+        double[] prefix = new double[n];
+        int[] current = new int[n];
+        for (int i = 0; i < n; i++) {
+            prefix[i] = scorers.get(i).bound + (i > 0 ? prefix[i - 1] : 0);
+            current[i] = scorers.get(i).cursor.advance(0);
+        }
+        RoaringPostings.Cursor matchCursor = matches.cursor();
+        // The scorers from essential on are the ones that find the candidates
+        int essential = 0;
+
+        while (essential < n) {
+            int doc = -1;
+            for (int i = essential; i < n; i++) {
+                if (current[i] != -1 && (doc == -1 || current[i] < doc)) {
+                    doc = current[i];
+                }
+            }
+            if (doc == -1) {
+                break;
+            }
+            int match = matchCursor.advance(doc);
+            if (match == -1) {
+                break;
+            }
+            if (match != doc) {
+                // The candidate does not match the query, skip the essential scorers to the next match
+                for (int i = essential; i < n; i++) {
+                    if (current[i] != -1 && current[i] < match) {
+                        current[i] = scorers.get(i).cursor.advance(match);
+                    }
+                }
+                continue;
+            }
+
+            double score = prior.applyAsDouble(doc);
+            for (int i = essential; i < n; i++) {
+                if (current[i] == doc) {
+                    score += scorers.get(i).score(doc);
+                    current[i] = scorers.get(i).cursor.advance(doc + 1);
+                }
+            }
+            for (int i = essential - 1; i >= 0 && score + prefix[i] > heap.threshold(); i--) {
+                if (current[i] != -1 && current[i] < doc) {
+                    current[i] = scorers.get(i).cursor.advance(doc);
+                }
+                if (current[i] == doc) {
+                    score += scorers.get(i).score(doc);
+                }
+            }
+
+            if (heap.offer(doc, score)) {
+                while (essential < n && priorBound + prefix[essential] <= heap.threshold()) {
+                    essential++;
+                }
+            }
+        }
+        return heap.toTopDocs(totalHits);
+    }
+
+    /**
+     * The TermScorer class walks the postings of a term and scores the docs containing it.
+     */
+    private static final class TermScorer {
+        /**
+         * The normalized term.
+         */
+        final String term;
+
+        /**
+         * The cursor over the postings of the term.
+         */
+        final RoaringPostings.Cursor cursor;
+
+        /**
+         * The weight of the term.
+         */
+        final double idf;
+
+        /**
+         * The upper bound of the score of the term.
+         */
+        final double bound;
+
+        /**
+         * The scoring formula.
+         */
+        final Bm25 bm25;
+
+        /**
+         * The index, read for the frequencies and lengths.
+         */
+        final IndexReader index;
+
+        /**
+         * The TermScorer constructor is used to create the scorer of a term.
+         * @param term normalized term
+         * @param postings postings of the term
+         * @param bm25 scoring formula
+         * @param index index to read
+         */
+        TermScorer(String term, RoaringPostings postings, Bm25 bm25, IndexReader index) {
+            this.term = term;
+            this.cursor = postings.cursor();
+            this.idf = bm25.idf(term, postings);
+            this.bound = bm25.upperBound(idf, index.maxFrequency(term));
+            this.bm25 = bm25;
+            this.index = index;
+        }
+
+        /**
+         * The score method is used to get the score of the term in a doc containing it.
+         * @param doc doc ID of the page
+         * @return score of the term
+         */
+        double score(int doc) {
+            return bm25.score(idf, index.frequency(term, doc), index.documentLength(doc));
+        }
+    }
+
+    /**
+     * The Heap class keeps the k best docs seen, with the worst one at the root.
+     * Ties are broken by doc ID, the lower one being better, so the docs visited later never win a tie.
+     */
+    private static final class Heap {
+        /**
+         * The doc IDs in the heap.
+         */
+        final int[] docs;
+
+        /**
+         * The score of each doc in the heap.
+         */
+        final double[] scores;
+
+        /**
+         * The number of docs in the heap.
+         */
+        int size;
+
+        /**
+         * The Heap constructor is used to create an empty heap.
+         * @param k maximum number of docs
+         */
+        Heap(int k) {
+            docs = new int[Math.max(k, 0)];
+            scores = new double[Math.max(k, 0)];
+        }
+
+        /**
+         * The threshold method is used to get the score a doc must exceed to enter the heap.
+         * @return score of the worst doc if the heap is full, negative infinity otherwise
+         */
+        double threshold() {
+            return size == docs.length && size > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+        }
+
+        /**
+         * The offer method is used to add a doc visited in increasing order, if it is among the k best.
+         * @param doc doc ID
+         * @param score score of the doc
+         * @return true if the heap is full and its threshold changed, false otherwise
+         */
+        boolean offer(int doc, double score) {
+            if (size < docs.length) {
+                docs[size] = doc;
+                scores[size] = score;
+                siftUp(size++);
+                return size == docs.length;
+            }
+            if (size == 0 || score <= scores[0]) {
+                return false;
+            }
+            docs[0] = doc;
+            scores[0] = score;
+            siftDown(0);
+            return true;
+        }
+
+        /**
+         * The worse method is used to compare two entries of the heap.
+         * @param i first entry
+         * @param j second entry
+         * @return true if entry i ranks below entry j
+         */
+        private boolean worse(int i, int j) {
+            return scores[i] < scores[j] || (scores[i] == scores[j] && docs[i] > docs[j]);
+        }
+
+        /**
+         * The siftUp method is used to move an entry up until its parent is worse.
+         * @param i entry to move
+         */
+        private void siftUp(int i) {
+            while (i > 0 && worse(i, (i - 1) / 2)) {
+                swap(i, (i - 1) / 2);
+                i = (i - 1) / 2;
+            }
+        }
+
+        /**
+         * The siftDown method is used to move an entry down until its children are better.
+         * @param i entry to move
+         */
+        private void siftDown(int i) {
+            while (true) {
+                int worst = i;
+                int left = 2 * i + 1, right = left + 1;
+                if (left < size && worse(left, worst)) {
+                    worst = left;
+                }
+                if (right < size && worse(right, worst)) {
+                    worst = right;
+                }
+                if (worst == i) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        /**
+         * The swap method is used to exchange two entries.
+         * @param i first entry
+         * @param j second entry
+         */
+        private void swap(int i, int j) {
+            int doc = docs[i];
+            docs[i] = docs[j];
+            docs[j] = doc;
+            double score = scores[i];
+            scores[i] = scores[j];
+            scores[j] = score;
+        }
+
+        /**
+         * The toTopDocs method is used to empty the heap into the result of the search.
+         * @param totalHits number of docs matching the query
+         * @return docs of the heap, by decreasing score
+         */
+        TopDocs toTopDocs(int totalHits) {
+            int n = size;
+            int[] outDocs = new int[n];
+            double[] outScores = new double[n];
+            for (int i = n - 1; i >= 0; i--) {
+                outDocs[i] = docs[0];
+                outScores[i] = scores[0];
+                size--;
+                if (size > 0) {
+                    swap(0, size);
+                    siftDown(0);
+                }
+            }
+            return new TopDocs(outDocs, outScores, totalHits);
+        }
+    }
+}
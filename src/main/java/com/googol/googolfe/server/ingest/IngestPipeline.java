@@ -0,0 +1,484 @@
+package com.googol.googolfe.server.ingest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.googol.googolfe.objects.IngestStats;
+import com.googol.googolfe.server.net.FragmentAssembler;
+import com.googol.googolfe.server.net.PageMessage;
+
+/**
+ * The IngestPipeline class moves the messages received by a barrel through four stages, each on its own
+ * threads, so a slow stage never stops the socket from being read:
+ * - receive: the thread reading the socket joins the fragments of large messages, submits each message
+ *   and goes back to the socket;
+ * - decode: worker threads decode the messages into pages, as a message can hold several pages;
+ * - apply: one thread applies the decoded pages to the barrel in batches;
+ * - persist: one thread logs the messages of the applied pages.
+ * The stages are connected by bounded ring buffers with a single producer and a single consumer. Each
+ * decoder has its own input and output buffer, and messages are dealt to the decoders in turn and
+ * collected from them in the same turn, so the pages are applied in the order they were received.
+ * When a buffer is full the stage feeding it waits, so the backlog stays bounded and ends up in the
+ * socket buffer instead of the heap.
+ * A pipeline can be held before it starts: the messages are then only logged, not applied, until the
+ * barrel has loaded its state and replayed the log, so nothing received while it loads is lost.
+ */
+public class IngestPipeline {
+    /**
+     * The number of times an idle stage spins before yielding.
+     */
+    private static final int SPIN_LIMIT = 100;
+
+    /**
+     * The number of times an idle stage yields before parking.
+     */
+    private static final int YIELD_LIMIT = 200;
+
+    /**
+     * The number of nanoseconds an idle stage parks between checks of its queue.
+     */
+    private static final long PARK_NANOS = 100_000;
+
+    /**
+     * The number of milliseconds close waits for each stage to drain.
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     * The marker left by a decoder for a message it could not decode, so the turn of the decoders is kept.
+     */
+    private static final Decoded MALFORMED = new Decoded(null, Collections.emptyList());
+
+    /**
+     * The name of the pipeline, used to name its threads.
+     */
+    private final String name;
+
+    /**
+     * The maximum number of pages applied in one batch.
+     */
+    private final int maxBatch;
+
+    /**
+     * The assembler joining the fragments of the messages too large for a datagram.
+     */
+    private final FragmentAssembler assembler;
+
+    /**
+     * The function decoding the pages of a message.
+     */
+    private final Function<byte[], List<PageMessage>> decoder;
+
+    /**
+     * The function applying a batch of pages to the barrel.
+     */
+    private final Consumer<List<PageMessage>> applier;
+
+    /**
+     * The function logging the messages of a batch of applied pages.
+     */
+    private final Consumer<List<byte[]>> persister;
+
+    /**
+     * The messages waiting to be decoded, one buffer per decoder.
+     */
+    private final RingBuffer<byte[]>[] decodeQueues;
+
+    /**
+     * The decoded messages waiting to be applied, one buffer per decoder.
+     */
+    private final RingBuffer<Decoded>[] applyQueues;
+
+    /**
+     * The messages of the batches of applied pages waiting to be logged.
+     */
+    private final RingBuffer<List<byte[]>> persistQueue;
+
+    /**
+     * The decoder threads.
+     */
+    private final Thread[] decoders;
+
+    /**
+     * The apply thread.
+     */
+    private final Thread applyThread;
+
+    /**
+     * The persist thread.
+     */
+    private final Thread persistThread;
+
+    /**
+     * The lock held by the apply thread while it handles a batch, so the apply stage can be resumed between two batches.
+     */
+    private final Object applyLock;
+
+    /**
+     * Whether the batches are applied, or only logged while the pipeline is held.
+     */
+    private boolean applying;
+
+    /**
+     * Whether the pipeline stopped accepting messages.
+     */
+    private volatile boolean closing;
+
+    /**
+     * Whether the decoders finished, so the apply stage stops once its queues are empty.
+     */
+    private volatile boolean decodersDone;
+
+    /**
+     * Whether the apply stage finished, so the persist stage stops once its queue is empty.
+     */
+    private volatile boolean applyDone;
+
+    /**
+     * The counters of the pipeline. Each one is only written by the thread of its stage.
+     */
+    private volatile long received;
+    private volatile long stalls;
+    private volatile long applied;
+    private volatile long appliedMessages;
+    private volatile long batches;
+    private volatile long persisted;
+    private volatile long persistFailed;
+
+    /**
+     * The number of malformed messages dropped by each decoder.
+     */
+    private final long[] malformed;
+
+    /**
+     * The IngestPipeline constructor is used to create the stages of a pipeline, without starting them.
+     * @param name name of the pipeline, used to name its threads
+     * @param decoderCount number of decoder threads
+     * @param capacity capacity of the buffers between the stages
+     * @param maxBatch maximum number of pages applied in one batch
+     * @param assembler assembler joining the fragments of the messages too large for a datagram
+     * @param decoder function decoding the pages of a message
+     * @param applier function applying a batch of pages to the barrel
+     * @param persister function logging the messages of a batch of applied pages
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public IngestPipeline(String name, int decoderCount, int capacity, int maxBatch, FragmentAssembler assembler,
+            Function<byte[], List<PageMessage>> decoder, Consumer<List<PageMessage>> applier,
+            Consumer<List<byte[]>> persister) {
+        this.name = name;
+        this.maxBatch = maxBatch;
+        this.assembler = assembler;
+        this.decoder = decoder;
+        this.applier = applier;
+        this.persister = persister;
+        applyLock = new Object();
+        applying = true;
+        decodeQueues = new RingBuffer[decoderCount];
+        applyQueues = new RingBuffer[decoderCount];
+        decoders = new Thread[decoderCount];
+        malformed = new long[decoderCount];
+        for (int i = 0; i < decoderCount; i++) {
+            decodeQueues[i] = new RingBuffer<>(capacity);
+            applyQueues[i] = new RingBuffer<>(capacity);
+            final int index = i;
+            decoders[i] = newThread(() -> decode(index), name + "-decode-" + i);
+        }
+        persistQueue = new RingBuffer<>(Math.max(1, capacity / maxBatch));
+        applyThread = newThread(this::apply, name + "-apply");
+        persistThread = newThread(this::persist, name + "-persist");
+    }
+
+    /**
+     * The hold method is used, before the pipeline starts, to only log the messages until startApplying is called.
+     */
+    public void hold() {
+        synchronized (applyLock) {
+            applying = false;
+        }
+    }
+
+    /**
+     * The startApplying method is used to resume applying the messages of a held pipeline.
+     * The apply stage is paused and the messages it passed on are logged before the catch-up runs, so the
+     * catch-up can replay the log and find every message received while the pipeline was held.
+     * @param catchUp task run between the last message logged and the first message applied
+     */
+    public void startApplying(Runnable catchUp) {
+        synchronized (applyLock) {
+            int idle = 0;
+            while (persisted + persistFailed < appliedMessages && persistThread.isAlive()) {
+                idle(idle++);
+            }
+            catchUp.run();
+            applying = true;
+        }
+    }
+
+    /**
+     * The start method is used to start the threads of the stages.
+     */
+    public void start() {
+        for (Thread decoder : decoders) {
+            decoder.start();
+        }
+        applyThread.start();
+        persistThread.start();
+    }
+
+    /**
+     * The submit method is used by the receive thread to hand over a message, waiting while the decoder
+     * whose turn it is has a full queue. A fragment is kept until the rest of its message arrives.
+     * It must always be called from the same thread.
+     * @param payload message received
+     * @return true if the message was submitted or kept, false if the pipeline is closing
+     */
+    public boolean submit(byte[] payload) {
+        payload = assembler.add(payload);
+        if (payload == null) {
+            return true;
+        }
+        RingBuffer<byte[]> queue = decodeQueues[(int) (received % decodeQueues.length)];
+        if (!queue.offer(payload)) {
+            stalls++;
+            int idle = 0;
+            do {
+                if (closing) {
+                    return false;
+                }
+                idle(idle++);
+            } while (!queue.offer(payload));
+        }
+        received++;
+        return true;
+    }
+
+    /**
+     * The decode method is the loop of a decoder thread.
+     * A message that cannot be decoded is replaced by a marker, so it is dropped without being applied or logged.
+     * @param index index of the decoder
+     */
+    private void decode(int index) {
+        RingBuffer<byte[]> input = decodeQueues[index];
+        RingBuffer<Decoded> output = applyQueues[index];
+        int idle = 0;
+        while (true) {
+            byte[] payload = input.poll();
+            if (payload == null) {
+                if (closing) {
+                    return;
+                }
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            Decoded decoded;
+            try {
+                decoded = new Decoded(payload, decoder.apply(payload));
+            } catch (RuntimeException e) {
+                malformed[index]++;
+                decoded = MALFORMED;
+            }
+            while (!output.offer(decoded)) {
+                idle(idle++);
+            }
+            idle = 0;
+        }
+    }
+
+    /**
+     * The apply method is the loop of the apply thread.
+     * The pages are collected from the decoders in the turn they were dealt, and applied when the batch
+     * is full or no more pages are ready, so a busy pipeline applies large batches and an idle one
+     * applies each page as soon as it arrives.
+     */
+    private void apply() {
+        List<PageMessage> batch = new ArrayList<>(maxBatch);
+        List<byte[]> payloads = new ArrayList<>();
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            Decoded decoded = applyQueues[(int) (next % applyQueues.length)].poll();
+            if (decoded != null) {
+                next++;
+                if (decoded != MALFORMED) {
+                    batch.addAll(decoded.pages);
+                    payloads.add(decoded.payload);
+                }
+                if (batch.size() < maxBatch) {
+                    continue;
+                }
+            }
+            if (!payloads.isEmpty()) {
+                synchronized (applyLock) {
+                    try {
+                        if (applying) {
+                            applier.accept(batch);
+                            applied += batch.size();
+                            batches++;
+                        }
+                    } catch (RuntimeException e) {
+                        System.err.println("Ingest pipeline " + name + " failed to apply a batch: " + e);
+                    } finally {
+                        // The pages applied before a failure are published by the next batch, so they are always logged
+                        appliedMessages += payloads.size();
+                        while (!persistQueue.offer(payloads)) {
+                            idle(idle++);
+                        }
+                    }
+                }
+                batch = new ArrayList<>(maxBatch);
+                payloads = new ArrayList<>();
+                idle = 0;
+                continue;
+            }
+            if (decodersDone && isEmpty(applyQueues)) {
+                return;
+            }
+            idle(idle++);
+        }
+    }
+
+    /**
+     * The persist method is the loop of the persist thread.
+     */
+    private void persist() {
+        int idle = 0;
+        while (true) {
+            List<byte[]> batch = persistQueue.poll();
+            if (batch == null) {
+                if (applyDone && persistQueue.isEmpty()) {
+                    return;
+                }
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            try {
+                persister.accept(batch);
+                persisted += batch.size();
+            } catch (RuntimeException e) {
+                persistFailed += batch.size();
+                System.err.println("Ingest pipeline " + name + " failed to persist a batch: " + e);
+            }
+        }
+    }
+
+    /**
+     * The getStats method is used to get the counters of the pipeline and the depth of its queues.
+     * @return counters and queue depths of the pipeline
+     */
+    public IngestStats getStats() {
+        long malformedCount = 0;
+        for (long count : malformed) {
+            malformedCount += count;
+        }
+        long appliedCount = appliedMessages;
+        return new IngestStats(received, assembler.getFragments(), assembler.getIncomplete(), malformedCount,
+                applied, persisted, batches, stalls,
+                depth(decodeQueues), depth(applyQueues), (int) Math.max(0, appliedCount - persisted));
+    }
+
+    /**
+     * The close method is used to stop accepting messages and wait for the stages to drain, in order.
+     */
+    public void close() {
+        closing = true;
+        for (Thread decoder : decoders) {
+            join(decoder);
+        }
+        decodersDone = true;
+        join(applyThread);
+        applyDone = true;
+        join(persistThread);
+    }
+
+    /**
+     * The join method is used to wait for a stage thread to finish, for at most the close timeout.
+     * @param thread thread to wait for
+     */
+    private static void join(Thread thread) {
+        try {
+            thread.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The idle method is used by a stage with nothing to do to wait before checking its queue again.
+     * It spins first, so a busy pipeline reacts without a context switch, then yields, then parks.
+     * @param count number of consecutive times the stage was idle
+     */
+    private static void idle(int count) {
+        if (count < SPIN_LIMIT) {
+            Thread.onSpinWait();
+        } else if (count < SPIN_LIMIT + YIELD_LIMIT) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /**
+     * The depth method is used to get the number of elements in a set of buffers.
+     * @param queues buffers to count
+     * @return number of elements in the buffers
+     */
+    private static int depth(RingBuffer<?>[] queues) {
+        int depth = 0;
+        for (RingBuffer<?> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /**
+     * The isEmpty method is used to check if a set of buffers has no elements.
+     * @param queues buffers to check
+     * @return true if all the buffers are empty, false otherwise
+     */
+    private static boolean isEmpty(RingBuffer<?>[] queues) {
+        return depth(queues) == 0;
+    }
+
+    /**
+     * The Decoded class holds a message with the pages decoded from it, on their way to the apply stage.
+     */
+    private static final class Decoded {
+        /**
+         * The message received.
+         */
+        private final byte[] payload;
+
+        /**
+         * The pages decoded from the message.
+         */
+        private final List<PageMessage> pages;
+
+        /**
+         * The Decoded constructor is used to pair a message with its pages.
+         * @param payload message received
+         * @param pages pages decoded from the message
+         */
+        Decoded(byte[] payload, List<PageMessage> pages) {
+            this.payload = payload;
+            this.pages = pages;
+        }
+    }
+
+    /**
+     * The newThread method is used to create the daemon thread of a stage.
+     * @param task loop of the stage
+     * @param name name of the thread
+     * @return thread of the stage
+     */
+    private static Thread newThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
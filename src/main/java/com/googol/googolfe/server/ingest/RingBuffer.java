@@ -0,0 +1,108 @@
+package com.googol.googolfe.server.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The RingBuffer class is a bounded queue connecting two stages of the ingest pipeline.
+ * It has a single producer thread and a single consumer thread, so it needs no locks: the producer only
+ * moves the tail and the consumer only moves the head, and each publishes its move with an ordered write
+ * after touching the slot.
+ * @param <E> type of the elements
+ */
+public final class RingBuffer<E> {
+    /**
+     * The slots of the buffer, a power of two so the index of a position is a mask.
+     */
+    private final Object[] slots;
+
+    /**
+     * The mask of the index of a position in the slots.
+     */
+    private final int mask;
+
+    /**
+     * The position of the next element to take, only moved by the consumer.
+     */
+    private final AtomicLong head;
+
+    /**
+     * The position of the next element to add, only moved by the producer.
+     */
+    private final AtomicLong tail;
+
+    /**
+     * The RingBuffer constructor is used to create an empty buffer.
+     * @param capacity minimum number of elements the buffer holds, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        slots = new Object[size];
+        mask = size - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+    }
+
+    /**
+     * The offer method is used by the producer to add an element, if the buffer is not full.
+     * @param element element to add
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        if (position - head.get() == slots.length) {
+            return false;
+        }
+        slots[(int) position & mask] = element;
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * The poll method is used by the consumer to take the oldest element, if there is one.
+     * @return oldest element, or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long position = head.get();
+        if (position == tail.get()) {
+            return null;
+        }
+        int index = (int) position & mask;
+        E element = (E) slots[index];
+        slots[index] = null;
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * The size method is used to get the number of elements in the buffer.
+     * It can be called from any thread, and is only exact when neither stage is running.
+     * @return number of elements
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, slots.length));
+    }
+
+    /**
+     * The isEmpty method is used to check if the buffer has no elements.
+     * @return true if the buffer is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * The capacity method is used to get the maximum number of elements in the buffer.
+     * @return capacity of the buffer
+     */
+    public int capacity() {
+        return slots.length;
+    }
+}
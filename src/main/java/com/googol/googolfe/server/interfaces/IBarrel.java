@@ -2,6 +2,16 @@ package com.googol.googolfe.server.interfaces;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.googol.googolfe.objects.CollectionStats;
+import com.googol.googolfe.objects.IngestStats;
+import com.googol.googolfe.objects.PageBatch;
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
+import com.googol.googolfe.objects.ShardMatches;
+import com.googol.googolfe.objects.TransferInfo;
 
 /**
  * The interface for a Barrel, which represents a component of the search engine responsible
@@ -25,19 +35,80 @@ public interface IBarrel extends Remote {
   public String search(String s) throws RemoteException;
 
   /**
-   * Finds sub-links related to the specified URL in the indexed data stored in the Barrel.
-   * @param s The URL for which to find sub-links.
-   * @return The found sub-links as a string.
+   * Searches for the specified query string and returns only a window of the ranked results.
+   * @param s The query string to search for.
+   * @param offset The position of the first result to return in the ranking.
+   * @param limit The maximum number of results to return.
+   * @return The page of results, with the total number of matching pages.
    * @throws RemoteException If a communication-related exception occurs.
    */
-  public String findSubLinks(String s) throws RemoteException;
+  public SearchPage search(String s, int offset, int limit) throws RemoteException;
+
+  /**
+   * Searches for the pages containing all the given terms, which belong to the shard of the Barrel.
+   * The pages are scored by these terms only, so the Gateway can add the scores sent by the other shards.
+   * @param terms The normalized terms to search for.
+   * @param limit The maximum number of matches to return, best scored first.
+   * @return The best scored matches, with the number of pages matching the terms.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public ShardMatches searchShard(ArrayList<String> terms, int limit) throws RemoteException;
+
+  /**
+   * Retrieves the title and citation of pages ranked by the Gateway.
+   * @param urls The urls of the pages.
+   * @return The results of the pages, in the same order as the urls.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public ArrayList<Result> describe(ArrayList<String> urls) throws RemoteException;
+
+  /**
+   * Gets the statistics of the pages of the barrel for the terms of a query, when the pages are split among the
+   * barrels, so the Gateway can add them up into the statistics of the whole index.
+   * @param s The query string to search for.
+   * @return The number of pages of the barrel, their total length and the number of pages containing each term.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public CollectionStats collectionStats(String s) throws RemoteException;
+
+  /**
+   * Searches for a query in the pages of some arcs of the ring of barrels, when the pages are split among them.
+   * The pages are scored without their PageRank, which is sent apart, and with the statistics of the whole
+   * index, so the Gateway ranks the pages of all the partitions the same way.
+   * @param s The query string to search for.
+   * @param ranges The start and end of each arc to search, the start excluded and the end included.
+   * @param limit The maximum number of matches to return, best scored first.
+   * @param stats The statistics of the whole index for the terms of the query, or null to use the ones of the barrel.
+   * @return The best scored matches in the arcs, with the number of pages of the arcs matching the query.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public ShardMatches searchPartition(String s, long[] ranges, int limit, CollectionStats stats) throws RemoteException;
+
+  /**
+   * Sets the barrels of the ring the pages are split among, so the Barrel copies the pages it became an owner of.
+   * @param version The version of the active barrels, increasing with each change, so an older one arriving late is ignored.
+   * @param members The active barrels, by ID.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public void setMembers(long version, HashMap<Integer, IBarrel> members) throws RemoteException;
 
   /**
-   * Retrieves the top 10 searches performed in the indexed data stored in the Barrel.
-   * @return The top 10 searches as a string.
+   * Retrieves a batch of the pages of some arcs of the ring, for a Barrel that became one of their owners.
+   * @param ranges The start and end of each arc, the start excluded and the end included.
+   * @param fromDoc The doc ID to start reading at, 0 for the first batch.
+   * @param max The maximum number of pages of the batch.
+   * @return The pages found, with the doc ID to start the next batch at.
    * @throws RemoteException If a communication-related exception occurs.
    */
-  public String getTop10Searches() throws RemoteException;
+  public PageBatch exportPages(long[] ranges, int fromDoc, int max) throws RemoteException;
+
+  /**
+   * Finds sub-links related to the specified URL in the indexed data stored in the Barrel.
+   * @param s The URL for which to find sub-links.
+   * @return The found sub-links as a string.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public String findSubLinks(String s) throws RemoteException;
 
   /**
    * Retrieves the ID of the Barrel.
@@ -52,4 +123,36 @@ public interface IBarrel extends Remote {
    * @throws RemoteException If a communication-related exception occurs.
    */
   public double getAverageTime() throws RemoteException;
-}
\ No newline at end of file
+
+  /**
+   * Retrieves the counters and queue depths of the pipeline ingesting the pages sent to the Barrel.
+   * @return The statistics of the ingest pipeline.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public IngestStats getIngestStats() throws RemoteException;
+
+  /**
+   * Opens a transfer of a consistent copy of the data of the Barrel, for a Barrel that is joining.
+   * @return The session of the transfer, with the size and checksum of each of its parts.
+   * @throws RemoteException If a communication-related exception occurs or the copy cannot be made.
+   */
+  public TransferInfo openTransfer() throws RemoteException;
+
+  /**
+   * Reads a chunk of a part of an open transfer.
+   * @param session The ID of the transfer.
+   * @param part The part to read, 0 for the snapshot and 1 + i for the index segment i.
+   * @param offset The position of the first byte to read in the part.
+   * @param length The maximum number of bytes to read.
+   * @return The bytes read, fewer than asked only at the end of the part.
+   * @throws RemoteException If a communication-related exception occurs or the transfer is not open.
+   */
+  public byte[] readTransfer(long session, int part, long offset, int length) throws RemoteException;
+
+  /**
+   * Closes a transfer, releasing the copy of the data.
+   * @param session The ID of the transfer.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public void closeTransfer(long session) throws RemoteException;
+}
@@ -2,6 +2,7 @@ package com.googol.googolfe.server.interfaces;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
 
 /**
  * This interface allows the Barrels to communicate to the Gateway via RMI.
@@ -15,6 +16,28 @@ public interface IGatewayBrl extends Remote {
    */
   public int AddBrl(IBarrel brl) throws RemoteException;
 
+  /**
+   * Reserves an ID for a barrel that is still loading its data, before it is added to the gateway.
+   * @return The ID reserved for the barrel.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public int reserveBrlId() throws RemoteException;
+
+  /**
+   * Adds a barrel with a reserved ID to the gateway, once it is ready to answer searches.
+   * @param brl The barrel to add.
+   * @param id  The ID reserved by the barrel.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public void AddBrl(IBarrel brl, int id) throws RemoteException;
+
+  /**
+   * Retrieves the barrels added to the gateway, so a joining barrel can copy the data of one of them.
+   * @return The active barrels.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public ArrayList<IBarrel> getBrls() throws RemoteException;
+
   /**
    * Removes a barrel from the gateway.
    * @param brl The barrel to remove.
@@ -23,6 +46,24 @@ public interface IGatewayBrl extends Remote {
    */
   public void rmvBrl(IBarrel brl, int id) throws RemoteException;
 
+  /**
+   * Reports the ingest epoch of a barrel, which advances every time it applies new pages, so the gateway
+   * stops answering from the results cached before.
+   * @param id    The ID of the barrel.
+   * @param epoch The ingest epoch of the barrel.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public void advanceEpoch(int id, long epoch) throws RemoteException;
+
+  /**
+   * Reports that a barrel holds the pages of every arc it owns in a ring, once it copied the arcs it gained,
+   * so the gateway stops asking the previous owners of those arcs.
+   * @param id      The ID of the barrel.
+   * @param members The IDs of the barrels of the ring, by increasing ID.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public void partitionReady(int id, ArrayList<Integer> members) throws RemoteException;
+
   /**
    * Sends error messages from the Barrels to print on the Gateway log.
    * @param s The message to send.
@@ -5,6 +5,9 @@ import java.rmi.RemoteException;
 import java.util.ArrayList;
 
 import com.googol.googolfe.objects.BrlObj;
+import com.googol.googolfe.objects.SearchPage;
+import com.googol.googolfe.objects.Top10Obj;
+import com.googol.googolfe.objects.TrendingObj;
 
 /**
  * This interface allows the Clients to connect to the Gateway via RMI.
@@ -40,6 +43,16 @@ public interface IGatewayCli extends Remote{
    */
   public String search(String s) throws RemoteException;
 
+  /**
+   * Searches for a given query string and returns only a window of the ranked results.
+   * @param s The query string to search for.
+   * @param offset The position of the first result to return in the ranking.
+   * @param limit The maximum number of results to return.
+   * @return The page of results, or null if there are no barrels available.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public SearchPage search(String s, int offset, int limit) throws RemoteException;
+
   /**
    * Finds sub-links for a given URL.
    * @param s The URL to find sub-links for.
@@ -55,10 +68,24 @@ public interface IGatewayCli extends Remote{
    */
   public String getTop10Searches() throws RemoteException;
 
+  /**
+   * Gets the top 10 searches of the last 5 minutes, the last hour and the last day.
+   * @return The top 10 searches of each time window, in this order, with the label of the window.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public ArrayList<TrendingObj> getTrendingSearches() throws RemoteException;
+
   /**
    * Gets the active barrels.
    * @return The active barrels.
    * @throws RemoteException If a communication-related exception occurs.
    */
   public ArrayList<BrlObj> getActiveBarrels() throws RemoteException;
+
+  /**
+   * Gets the number of searches that shared the barrel call of a concurrent identical search.
+   * @return The number of coalesced searches.
+   * @throws RemoteException If a communication-related exception occurs.
+   */
+  public long getCoalescedSearches() throws RemoteException;
 }
@@ -0,0 +1,203 @@
+package com.googol.googolfe.server.net;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * The FragmentAssembler class joins the fragments of the messages too large for a datagram.
+ * Fragments are kept until every fragment of their message arrives. Memory is bounded: a message that is
+ * not complete within the timeout is dropped, and when the fragments kept exceed the memory budget the
+ * oldest incomplete messages are dropped first.
+ * It is used by a single thread, the one receiving the datagrams.
+ */
+public class FragmentAssembler {
+    /**
+     * The maximum number of bytes of the fragments kept.
+     */
+    private final long maxBytes;
+
+    /**
+     * The number of nanoseconds a message has to be complete, from its first fragment.
+     */
+    private final long timeoutNanos;
+
+    /**
+     * The incomplete messages by ID, oldest first.
+     */
+    private final LinkedHashMap<Long, Partial> partials;
+
+    /**
+     * The number of bytes of the fragments kept.
+     */
+    private long bytes;
+
+    /**
+     * The number of fragments received.
+     */
+    private volatile long fragments;
+
+    /**
+     * The number of messages dropped before all their fragments arrived.
+     */
+    private volatile long incomplete;
+
+    /**
+     * The FragmentAssembler constructor is used to create an assembler with no fragments.
+     * @param maxBytes maximum number of bytes of the fragments kept
+     * @param timeoutMillis number of milliseconds a message has to be complete, from its first fragment
+     */
+    public FragmentAssembler(long maxBytes, long timeoutMillis) {
+        this.maxBytes = maxBytes;
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        partials = new LinkedHashMap<>();
+        bytes = 0;
+    }
+
+    /**
+     * The add method is used to add a message received, joining it with the other fragments of its message.
+     * @param payload message received
+     * @return the payload itself if it is not a fragment, the whole message if it was its last missing
+     * fragment, or null if the message is still incomplete or the fragment is malformed
+     */
+    public byte[] add(byte[] payload) {
+        if (!PageCodec.isFragment(payload)) {
+            return payload;
+        }
+        long now = System.nanoTime();
+        expire(now);
+        fragments++;
+        ByteBuffer header = ByteBuffer.wrap(payload, 2, PageCodec.FRAGMENT_HEADER - 2);
+        long id = header.getLong();
+        int index = header.getShort() & 0xFFFF;
+        int count = header.getShort() & 0xFFFF;
+        if (count == 0 || index >= count) {
+            return null;
+        }
+        int length = payload.length - PageCodec.FRAGMENT_HEADER;
+        Partial partial = partials.get(id);
+        if (partial == null) {
+            partial = new Partial(count, now);
+            partials.put(id, partial);
+        } else if (partial.parts.length != count) {
+            drop(id, partial);
+            return null;
+        }
+        if (partial.parts[index] != null) {
+            return null;
+        }
+        byte[] part = new byte[length];
+        System.arraycopy(payload, PageCodec.FRAGMENT_HEADER, part, 0, length);
+        partial.parts[index] = part;
+        partial.received++;
+        partial.bytes += length;
+        bytes += length;
+        if (partial.received == count) {
+            partials.remove(id);
+            bytes -= partial.bytes;
+            return partial.join();
+        }
+        // Make room by dropping the oldest messages, this one last
+        Iterator<Partial> oldest = partials.values().iterator();
+        while (bytes > maxBytes && oldest.hasNext()) {
+            Partial victim = oldest.next();
+            oldest.remove();
+            bytes -= victim.bytes;
+            incomplete++;
+        }
+        return null;
+    }
+
+    /**
+     * The expire method is used to drop the messages not complete within the timeout.
+     * @param now current time in nanoseconds
+     */
+    private void expire(long now) {
+        Iterator<Partial> oldest = partials.values().iterator();
+        while (oldest.hasNext()) {
+            Partial partial = oldest.next();
+            if (now - partial.started < timeoutNanos) {
+                break;
+            }
+            oldest.remove();
+            bytes -= partial.bytes;
+            incomplete++;
+        }
+    }
+
+    /**
+     * The drop method is used to drop an incomplete message.
+     * @param id ID of the message
+     * @param partial fragments of the message
+     */
+    private void drop(long id, Partial partial) {
+        partials.remove(id);
+        bytes -= partial.bytes;
+        incomplete++;
+    }
+
+    /**
+     * The getFragments method is used to get the number of fragments received.
+     * @return number of fragments received
+     */
+    public long getFragments() {
+        return fragments;
+    }
+
+    /**
+     * The getIncomplete method is used to get the number of messages dropped before all their fragments arrived.
+     * @return number of incomplete messages dropped
+     */
+    public long getIncomplete() {
+        return incomplete;
+    }
+
+    /**
+     * The Partial class holds the fragments received of a message.
+     */
+    private static final class Partial {
+        /**
+         * The fragments of the message, null until they arrive.
+         */
+        private final byte[][] parts;
+
+        /**
+         * The time the first fragment arrived, in nanoseconds.
+         */
+        private final long started;
+
+        /**
+         * The number of fragments received.
+         */
+        private int received;
+
+        /**
+         * The number of bytes of the fragments received.
+         */
+        private long bytes;
+
+        /**
+         * The Partial constructor is used to create a message with no fragments yet.
+         * @param count number of fragments of the message
+         * @param started time the first fragment arrived, in nanoseconds
+         */
+        Partial(int count, long started) {
+            this.parts = new byte[count][];
+            this.started = started;
+        }
+
+        /**
+         * The join method is used to join the fragments of a complete message.
+         * @return message
+         */
+        byte[] join() {
+            byte[] message = new byte[(int) bytes];
+            int offset = 0;
+            for (byte[] part : parts) {
+                System.arraycopy(part, 0, message, offset, part.length);
+                offset += part.length;
+            }
+            return message;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.googol.googolfe.server.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The HashRing class assigns the pages to the barrels with consistent hashing, so each barrel only holds
+ * a part of the documents and the index can grow with the number of barrels.
+ * Every barrel is placed on a ring of 64-bit hashes at several virtual nodes, which evens out the size of
+ * the parts. A page belongs to the first barrels found clockwise from the hash of its url, as many distinct
+ * ones as the replication factor, so each page is held by several barrels.
+ * The positions of the virtual nodes split the ring in arcs whose pages all have the same owners. Adding or
+ * removing a barrel only changes the owners of the arcs next to its virtual nodes, so only the pages of those
+ * arcs move.
+ * The ring is immutable: a change of members builds a new ring.
+ */
+public final class HashRing {
+    /**
+     * The members of the ring, by increasing ID.
+     */
+    private final List<Integer> members;
+
+    /**
+     * The number of barrels holding each page.
+     */
+    private final int replicas;
+
+    /**
+     * The positions of the virtual nodes, in increasing order.
+     */
+    private final long[] positions;
+
+    /**
+     * The member at each virtual node, in the order of the positions.
+     */
+    private final int[] nodes;
+
+    /**
+     * The HashRing constructor is used to create a ring with the given members.
+     * @param members IDs of the barrels
+     * @param replicas number of barrels holding each page, limited to the number of members
+     * @param virtualNodes number of positions of each barrel on the ring
+     */
+    public HashRing(Collection<Integer> members, int replicas, int virtualNodes) {
+        this.members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(members)));
+        this.replicas = Math.max(1, Math.min(replicas, this.members.size()));
+        int perMember = Math.max(1, virtualNodes);
+        long[][] entries = new long[this.members.size() * perMember][];
+        int n = 0;
+        for (int member : this.members) {
+            for (int i = 0; i < perMember; i++) {
+                entries[n++] = new long[] {hash(member + "#" + i), member};
+            }
+        }
+        Arrays.sort(entries, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        positions = new long[n];
+        nodes = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = entries[i][0];
+            nodes[i] = (int) entries[i][1];
+        }
+    }
+
+    /**
+     * The hash method is used to place a key on the ring.
+     * The FNV-1a hash of the UTF-8 bytes is mixed at the end, so keys differing only in their last
+     * characters, like the virtual nodes of a barrel, spread over the whole ring.
+     * @param key url of a page or name of a virtual node
+     * @return position of the key
+     */
+    public static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * The getMembers method is used to get the members of the ring.
+     * @return IDs of the barrels, by increasing ID
+     */
+    public List<Integer> getMembers() {
+        return members;
+    }
+
+    /**
+     * The isEmpty method is used to check if the ring has no members.
+     * @return true if there are no barrels, false otherwise
+     */
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * The owners method is used to get the barrels holding the pages at a position of the ring.
+     * @param position position of a page, or the end of an arc
+     * @return IDs of the owners, from the first found clockwise, or none if the ring is empty
+     */
+    public int[] owners(long position) {
+        if (positions.length == 0) {
+            return new int[0];
+        }
+        int start = Arrays.binarySearch(positions, position);
+        if (start < 0) {
+            start = -start - 1;
+        } else {
+            // Several virtual nodes can share a position, the first one comes first
+            while (start > 0 && positions[start - 1] == position) {
+                start--;
+            }
+        }
+        int[] owners = new int[replicas];
+        int found = 0;
+        for (int i = 0; i < positions.length && found < replicas; i++) {
+            int member = nodes[(start + i) % positions.length];
+            boolean seen = false;
+            for (int j = 0; j < found && !seen; j++) {
+                seen = owners[j] == member;
+            }
+            if (!seen) {
+                owners[found++] = member;
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * The owns method is used to check if a barrel holds a page.
+     * @param member ID of the barrel
+     * @param url url of the page
+     * @return true if the barrel is one of the owners of the page, false otherwise
+     */
+    public boolean owns(int member, String url) {
+        for (int owner : owners(hash(url))) {
+            if (owner == member) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The boundaries method is used to get the ends of the arcs of one or more rings.
+     * Each boundary ends the arc starting after the previous one, and the first boundary ends the arc
+     * starting after the last one, across the end of the ring. Within the arcs of the boundaries of several
+     * rings, the owners are the same in each of the rings.
+     * @param rings rings whose virtual nodes split the ring
+     * @return distinct positions of the virtual nodes, in increasing order
+     */
+    public static long[] boundaries(HashRing... rings) {
+        int size = 0;
+        for (HashRing ring : rings) {
+            size += ring.positions.length;
+        }
+        long[] merged = new long[size];
+        int n = 0;
+        for (HashRing ring : rings) {
+            System.arraycopy(ring.positions, 0, merged, n, ring.positions.length);
+            n += ring.positions.length;
+        }
+        Arrays.sort(merged);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || merged[i] != merged[distinct - 1]) {
+                merged[distinct++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, distinct);
+    }
+
+    /**
+     * The inRanges method is used to check if a position falls in a list of arcs.
+     * An arc whose start is not below its end crosses the end of the ring, and the arc of a single
+     * boundary, starting and ending at the same position, is the whole ring.
+     * @param position position of a page
+     * @param ranges start and end of each arc, the start excluded and the end included
+     * @return true if the position is in one of the arcs, false otherwise
+     */
+    public static boolean inRanges(long position, long[] ranges) {
+        for (int i = 0; i + 1 < ranges.length; i += 2) {
+            long start = ranges[i];
+            long end = ranges[i + 1];
+            if (start < end ? position > start && position <= end : position > start || position <= end) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
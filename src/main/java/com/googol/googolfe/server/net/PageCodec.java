@@ -0,0 +1,629 @@
+package com.googol.googolfe.server.net;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The PageCodec class encodes the pages sent by the Downloaders to the barrels, and decodes them.
+ * A message is a frame holding one or more pages, so several small pages can share a datagram:
+ * - the frame starts with a magic byte, the version of the format and the number of pages;
+ * - a page is its url, title and citation, its distinct terms and its links;
+ * - each distinct term is written once, with its number of occurrences and the gaps between its positions;
+ *   the positions of the terms sent to other shards are written under the empty term, which no page holds;
+ * - strings are their length in bytes followed by their UTF-8 bytes, and all the numbers are varints.
+ * A frame can also be compressed with Deflater, and a message too large for a datagram is split in
+ * fragments, which the FragmentAssembler of the barrel joins back. Both are marked in place of the version.
+ * The magic byte can never start a UTF-8 string, so the text messages sent before this format, which
+ * barrels still find in their write-ahead logs, are told apart and decoded too.
+ */
+public final class PageCodec {
+    /**
+     * The first byte of a frame.
+     */
+    public static final byte MAGIC = (byte) 0xC0;
+
+    /**
+     * The version of the format written by the encoder.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * The byte after the magic byte of a compressed frame.
+     */
+    public static final byte DEFLATED = 2;
+
+    /**
+     * The byte after the magic byte of a fragment of a message.
+     */
+    public static final byte FRAGMENT = 3;
+
+    /**
+     * The size of the header of a fragment: magic byte, marker, message ID, index and number of fragments.
+     */
+    public static final int FRAGMENT_HEADER = 14;
+
+    /**
+     * The maximum number of fragments of a message.
+     */
+    public static final int MAX_FRAGMENTS = 0xFFFF;
+
+    /**
+     * The maximum size of a decompressed frame, so a corrupt or hostile frame cannot exhaust the memory.
+     */
+    public static final int MAX_MESSAGE_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The size of the header of a frame before the number of pages: magic byte and version.
+     */
+    private static final int HEADER = 2;
+
+    /**
+     * The names starting the lines of the fields of a text message, in the order they are sent.
+     */
+    private static final byte[][] TEXT_FIELDS = {
+        "URL: ".getBytes(), "Title: ".getBytes(), "Citation: ".getBytes(), "Keywords: ".getBytes(), "Links: ".getBytes()
+    };
+
+    /**
+     * The PageCodec constructor is private, as the class only has static methods.
+     */
+    private PageCodec() {
+    }
+
+    /**
+     * The encode method is used to encode pages in a single frame.
+     * @param pages pages to encode
+     * @return frame holding the pages
+     */
+    public static byte[] encode(List<PageMessage> pages) {
+        List<byte[]> encoded = new ArrayList<>(pages.size());
+        for (PageMessage page : pages) {
+            encoded.add(encodePage(page));
+        }
+        return frame(encoded);
+    }
+
+    /**
+     * The encodePage method is used to encode a page, to be put in a frame with the frame method.
+     * Empty terms are skipped without taking a position, like the index does.
+     * @param page page to encode
+     * @return encoded page
+     */
+    public static byte[] encodePage(PageMessage page) {
+        // Group the positions of each term, keeping the terms in the order they first appear
+        LinkedHashMap<String, List<Integer>> occurrences = new LinkedHashMap<>();
+        int length = 0;
+        for (String term : page.getKeywords()) {
+            if (term == null) {
+                occurrences.computeIfAbsent("", t -> new ArrayList<>()).add(length++);
+            } else if (!term.isEmpty()) {
+                occurrences.computeIfAbsent(term, t -> new ArrayList<>()).add(length++);
+            }
+        }
+        Writer writer = new Writer(64 + 4 * length);
+        writer.writeString(page.getUrl());
+        writer.writeString(page.getTitle());
+        writer.writeString(page.getCitation());
+        writer.writeVarint(occurrences.size());
+        for (Map.Entry<String, List<Integer>> entry : occurrences.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeVarint(entry.getValue().size());
+            int previous = -1;
+            for (int position : entry.getValue()) {
+                writer.writeVarint(position - previous - 1);
+                previous = position;
+            }
+        }
+        String[] links = page.getLinks();
+        writer.writeVarint(links.length);
+        for (String link : links) {
+            writer.writeString(link);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * The frame method is used to put encoded pages in a single frame.
+     * @param pages pages encoded by the encodePage method
+     * @return frame holding the pages
+     */
+    public static byte[] frame(List<byte[]> pages) {
+        int size = 0;
+        for (byte[] page : pages) {
+            size += page.length;
+        }
+        Writer writer = new Writer(HEADER + 5 + size);
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeVarint(pages.size());
+        for (byte[] page : pages) {
+            writer.writeBytes(page, 0, page.length);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * The deflate method is used to compress a frame.
+     * @param frame frame to compress
+     * @return compressed frame, or the frame itself if compressing does not make it smaller
+     */
+    public static byte[] deflate(byte[] frame) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(frame);
+            deflater.finish();
+            Writer writer = new Writer(HEADER + 5 + frame.length / 2);
+            writer.writeByte(MAGIC);
+            writer.writeByte(DEFLATED);
+            writer.writeVarint(frame.length);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                writer.writeBytes(chunk, 0, length);
+                if (writer.size() >= frame.length) {
+                    return frame;
+                }
+            }
+            return writer.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * The fragment method is used to split a message in fragments of at most a given size.
+     * @param message message to split
+     * @param id ID of the message, unique among the messages of the sender
+     * @param fragmentSize maximum size of a fragment, header included
+     * @return fragments of the message, in order
+     * @throws IllegalArgumentException if the message needs more than the maximum number of fragments
+     */
+    public static List<byte[]> fragment(byte[] message, long id, int fragmentSize) {
+        int chunk = fragmentSize - FRAGMENT_HEADER;
+        int count = (message.length + chunk - 1) / chunk;
+        if (count > MAX_FRAGMENTS) {
+            throw new IllegalArgumentException("Message of " + message.length + " bytes needs " + count + " fragments");
+        }
+        List<byte[]> fragments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int offset = i * chunk;
+            int length = Math.min(chunk, message.length - offset);
+            ByteBuffer fragment = ByteBuffer.allocate(FRAGMENT_HEADER + length);
+            fragment.put(MAGIC).put(FRAGMENT).putLong(id).putShort((short) i).putShort((short) count);
+            fragment.put(message, offset, length);
+            fragments.add(fragment.array());
+        }
+        return fragments;
+    }
+
+    /**
+     * The isFragment method is used to check if a message is a fragment of a larger one.
+     * @param payload message received
+     * @return true if the message is a fragment, false otherwise
+     */
+    public static boolean isFragment(byte[] payload) {
+        return payload.length >= FRAGMENT_HEADER && payload[0] == MAGIC && payload[1] == FRAGMENT;
+    }
+
+    /**
+     * The frameSize method is used to get the size of a frame holding pages of a given total size.
+     * @param pageCount number of pages in the frame
+     * @param pagesSize total size of the encoded pages
+     * @return size of the frame
+     */
+    public static int frameSize(int pageCount, int pagesSize) {
+        return HEADER + Writer.varintSize(pageCount) + pagesSize;
+    }
+
+    /**
+     * The decode method is used to decode the pages of a message.
+     * @param payload frame, or text message of a single page
+     * @return pages of the message, in the order they were encoded
+     * @throws IllegalArgumentException if the message is malformed or has an unknown version
+     */
+    public static List<PageMessage> decode(byte[] payload) {
+        if (payload.length == 0 || payload[0] != MAGIC) {
+            return Collections.singletonList(decodeText(payload));
+        }
+        if (payload.length >= HEADER && payload[1] == DEFLATED) {
+            byte[] frame = inflate(payload);
+            if (frame.length < HEADER || frame[0] != MAGIC || frame[1] != VERSION) {
+                throw new IllegalArgumentException("Compressed frame does not hold pages");
+            }
+            payload = frame;
+        }
+        if (payload.length < HEADER || payload[1] != VERSION) {
+            throw new IllegalArgumentException("Unknown frame version " + (payload.length < HEADER ? -1 : payload[1]));
+        }
+        Reader reader = new Reader(payload, HEADER);
+        int count = reader.readCount();
+        List<PageMessage> pages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pages.add(decodePage(reader));
+        }
+        if (reader.remaining() != 0) {
+            throw new IllegalArgumentException("Frame has " + reader.remaining() + " bytes after its pages");
+        }
+        return pages;
+    }
+
+    /**
+     * The inflate method is used to decompress a compressed frame.
+     * @param payload compressed frame
+     * @return frame
+     * @throws IllegalArgumentException if the frame is corrupt or too large
+     */
+    private static byte[] inflate(byte[] payload) {
+        Reader reader = new Reader(payload, HEADER);
+        int length = reader.readVarint();
+        if (length > MAX_MESSAGE_SIZE) {
+            throw new IllegalArgumentException("Compressed frame of " + length + " bytes");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload, reader.position, reader.remaining());
+            byte[] frame = new byte[length];
+            int inflated = 0;
+            while (inflated < length) {
+                int count = inflater.inflate(frame, inflated, length - inflated);
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length || !inflater.finished()) {
+                throw new IllegalArgumentException("Compressed frame is corrupt");
+            }
+            return frame;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed frame is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * The decodePage method is used to decode a page of a frame.
+     * @param reader reader positioned at the start of the page
+     * @return decoded page
+     */
+    private static PageMessage decodePage(Reader reader) {
+        String url = reader.readString();
+        String title = reader.readString();
+        String citation = reader.readString();
+        int termCount = reader.readCount();
+        String[] terms = new String[termCount];
+        int[][] termPositions = new int[termCount][];
+        int length = 0;
+        for (int t = 0; t < termCount; t++) {
+            terms[t] = reader.readString();
+            int count = reader.readCount();
+            int[] list = new int[count];
+            int position = -1;
+            for (int i = 0; i < count; i++) {
+                position += reader.readVarint() + 1;
+                if (position < 0) {
+                    throw new IllegalArgumentException("Position out of range");
+                }
+                list[i] = position;
+            }
+            termPositions[t] = list;
+            length += count;
+        }
+        // Every position up to the length of the page must have exactly one term, null for the terms of other shards
+        String[] keywords = new String[length];
+        boolean[] filled = new boolean[length];
+        for (int t = 0; t < termCount; t++) {
+            for (int position : termPositions[t]) {
+                if (position >= length || filled[position]) {
+                    throw new IllegalArgumentException("Position " + position + " of a page of length " + length);
+                }
+                filled[position] = true;
+                keywords[position] = terms[t].isEmpty() ? null : terms[t];
+            }
+        }
+        int linkCount = reader.readCount();
+        String[] links = new String[linkCount];
+        for (int i = 0; i < linkCount; i++) {
+            links[i] = reader.readString();
+        }
+        return new PageMessage(url, title, citation, keywords, links);
+    }
+
+    /**
+     * The decodeText method is used to decode a text message, as sent before the frames were introduced.
+     * The fields are read straight from the bytes of the message: each one is a line starting with its name,
+     * and the keywords and links are lists between brackets separated by ", ".
+     * @param payload text message of a page
+     * @return decoded page
+     * @throws IllegalArgumentException if the message does not have all the fields of a page
+     */
+    private static PageMessage decodeText(byte[] payload) {
+        int[] lines = new int[TEXT_FIELDS.length + 1];
+        int line = 0;
+        for (int i = 0; i < payload.length && line < TEXT_FIELDS.length - 1; i++) {
+            if (payload[i] == '\n') {
+                lines[++line] = i + 1;
+            }
+        }
+        if (line < TEXT_FIELDS.length - 1) {
+            throw new IllegalArgumentException("Message has " + (line + 1) + " of the " + TEXT_FIELDS.length + " fields of a page");
+        }
+        // The last field ends at the next line, if there is one
+        int end = lines[line];
+        while (end < payload.length && payload[end] != '\n') {
+            end++;
+        }
+        lines[TEXT_FIELDS.length] = end + 1;
+        String url = textField(payload, lines, 0);
+        String title = textField(payload, lines, 1);
+        String citation = textField(payload, lines, 2);
+        String[] keywords = textList(payload, lines, 3);
+        String[] links = textList(payload, lines, 4);
+        return new PageMessage(url, title, citation, keywords, links);
+    }
+
+    /**
+     * The textFieldStart method is used to find where the value of a field of a text message starts, after its name.
+     * @param payload text message of a page
+     * @param lines offsets where each line starts, followed by the offset after the last one
+     * @param field index of the field
+     * @return offset of the value of the field
+     */
+    private static int textFieldStart(byte[] payload, int[] lines, int field) {
+        int start = lines[field];
+        byte[] name = TEXT_FIELDS[field];
+        if (lines[field + 1] - 1 - start < name.length) {
+            return start;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (payload[start + i] != name[i]) {
+                return start;
+            }
+        }
+        return start + name.length;
+    }
+
+    /**
+     * The textField method is used to read the value of a field of a text message.
+     * @param payload text message of a page
+     * @param lines offsets where each line starts, followed by the offset after the last one
+     * @param field index of the field
+     * @return value of the field
+     */
+    private static String textField(byte[] payload, int[] lines, int field) {
+        int start = textFieldStart(payload, lines, field);
+        return new String(payload, start, lines[field + 1] - 1 - start);
+    }
+
+    /**
+     * The textList method is used to read the values of a field of a text message holding a list between brackets.
+     * @param payload text message of a page
+     * @param lines offsets where each line starts, followed by the offset after the last one
+     * @param field index of the field
+     * @return values of the list, without the empty ones
+     */
+    private static String[] textList(byte[] payload, int[] lines, int field) {
+        int start = textFieldStart(payload, lines, field);
+        int end = lines[field + 1] - 1;
+        if (start < end && payload[start] == '[') {
+            start++;
+        }
+        if (start < end && payload[end - 1] == ']') {
+            end--;
+        }
+        List<String> values = new ArrayList<>();
+        int valueStart = start;
+        for (int i = start; i <= end; i++) {
+            boolean separator = i + 1 < end && payload[i] == ',' && payload[i + 1] == ' ';
+            if (i == end || separator) {
+                if (i > valueStart) {
+                    values.add(new String(payload, valueStart, i - valueStart));
+                }
+                if (separator) {
+                    i++;
+                    valueStart = i + 1;
+                }
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+
+    /**
+     * The Writer class is a growable buffer the pages are encoded into.
+     */
+    private static final class Writer {
+        /**
+         * The bytes written, with room for more.
+         */
+        private byte[] data;
+
+        /**
+         * The number of bytes written.
+         */
+        private int size;
+
+        /**
+         * The Writer constructor is used to create an empty buffer.
+         * @param capacity initial capacity of the buffer
+         */
+        Writer(int capacity) {
+            data = new byte[Math.max(16, capacity)];
+        }
+
+        /**
+         * The ensure method is used to make room for more bytes.
+         * @param extra number of bytes about to be written
+         */
+        private void ensure(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + extra));
+            }
+        }
+
+        /**
+         * The writeByte method is used to write a byte.
+         * @param value byte to write
+         */
+        void writeByte(byte value) {
+            ensure(1);
+            data[size++] = value;
+        }
+
+        /**
+         * The writeBytes method is used to write a range of an array.
+         * @param bytes array to write from
+         * @param offset offset of the first byte to write
+         * @param length number of bytes to write
+         */
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        /**
+         * The writeVarint method is used to write a non-negative int in 7-bit groups, lowest first.
+         * @param value value to write
+         */
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        /**
+         * The writeString method is used to write a string as its length and its UTF-8 bytes.
+         * @param value string to write, or null for an empty string
+         */
+        void writeString(String value) {
+            byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            writeVarint(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+
+        /**
+         * The size method is used to get the number of bytes written.
+         * @return number of bytes written
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * The toByteArray method is used to get the bytes written.
+         * @return copy of the bytes written
+         */
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+
+        /**
+         * The varintSize method is used to get the number of bytes of a varint.
+         * @param value value of the varint
+         * @return number of bytes written by writeVarint
+         */
+        static int varintSize(int value) {
+            int size = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                size++;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * The Reader class reads the values of a frame, checking they do not go past its end.
+     */
+    private static final class Reader {
+        /**
+         * The bytes of the frame.
+         */
+        private final byte[] data;
+
+        /**
+         * The offset of the next byte to read.
+         */
+        private int position;
+
+        /**
+         * The Reader constructor is used to read a frame from an offset.
+         * @param data bytes of the frame
+         * @param position offset of the first byte to read
+         */
+        Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        /**
+         * The remaining method is used to get the number of bytes left to read.
+         * @return number of bytes left
+         */
+        int remaining() {
+            return data.length - position;
+        }
+
+        /**
+         * The readVarint method is used to read a non-negative int written by writeVarint.
+         * @return value read
+         */
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("Truncated frame");
+                }
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    if (value < 0) {
+                        throw new IllegalArgumentException("Varint out of range");
+                    }
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint too long");
+        }
+
+        /**
+         * The readCount method is used to read a number of values, each taking at least one byte.
+         * Checking it against the bytes left keeps a corrupt frame from allocating huge arrays.
+         * @return number of values
+         */
+        int readCount() {
+            int count = readVarint();
+            if (count > remaining()) {
+                throw new IllegalArgumentException("Count " + count + " larger than the " + remaining() + " bytes left");
+            }
+            return count;
+        }
+
+        /**
+         * The readString method is used to read a string written by writeString.
+         * @return string read
+         */
+        String readString() {
+            int length = readVarint();
+            if (length > remaining()) {
+                throw new IllegalArgumentException("Truncated frame");
+            }
+            String value = new String(data, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
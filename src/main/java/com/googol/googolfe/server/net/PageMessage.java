@@ -0,0 +1,89 @@
+package com.googol.googolfe.server.net;
+
+/**
+ * The PageMessage class holds a page sent by a Downloader to the barrels: its url, title and citation,
+ * the terms of its text in the order they appear, and the urls it links to.
+ * It is encoded and decoded by the PageCodec.
+ */
+public final class PageMessage {
+    /**
+     * The url of the page.
+     */
+    private final String url;
+
+    /**
+     * The title of the page.
+     */
+    private final String title;
+
+    /**
+     * The citation of the page.
+     */
+    private final String citation;
+
+    /**
+     * The terms of the page, in the order they appear, with null in place of the terms sent to other shards.
+     */
+    private final String[] keywords;
+
+    /**
+     * The urls of the pages it links to.
+     */
+    private final String[] links;
+
+    /**
+     * The PageMessage constructor is used to create a page.
+     * @param url url of the page
+     * @param title title of the page
+     * @param citation citation of the page
+     * @param keywords terms of the page, in the order they appear, with null in place of the terms of other shards
+     * @param links urls of the pages it links to
+     */
+    public PageMessage(String url, String title, String citation, String[] keywords, String[] links) {
+        this.url = url;
+        this.title = title;
+        this.citation = citation;
+        this.keywords = keywords;
+        this.links = links;
+    }
+
+    /**
+     * The getUrl method is used to get the url of the page.
+     * @return url of the page
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * The getTitle method is used to get the title of the page.
+     * @return title of the page
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * The getCitation method is used to get the citation of the page.
+     * @return citation of the page
+     */
+    public String getCitation() {
+        return citation;
+    }
+
+    /**
+     * The getKeywords method is used to get the terms of the page.
+     * @return terms of the page, in the order they appear, with null in place of the terms of other shards
+     */
+    public String[] getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * The getLinks method is used to get the urls of the pages it links to.
+     * @return urls of the linked pages
+     */
+    public String[] getLinks() {
+        return links;
+    }
+}
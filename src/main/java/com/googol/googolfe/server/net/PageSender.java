@@ -0,0 +1,150 @@
+package com.googol.googolfe.server.net;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The PageSender class sends the pages of a Downloader to the barrels by multicast, encoded by the PageCodec.
+ * Small pages are packed together: a page is held until the next one would make the frame larger than the
+ * pack size, or until the linger time passes, so a busy Downloader sends fewer and fuller datagrams and an
+ * idle one still sends each page within the linger time. A page larger than the pack size is sent alone.
+ * Frames are compressed when that makes them smaller, and a frame still larger than the fragment size is
+ * split in fragments, which the barrels join back.
+ */
+public class PageSender {
+    /**
+     * The socket the datagrams are sent from.
+     */
+    private final DatagramSocket socket;
+
+    /**
+     * The multicast group of the barrels.
+     */
+    private final InetAddress group;
+
+    /**
+     * The multicast port of the barrels.
+     */
+    private final int port;
+
+    /**
+     * The maximum size of a frame packing several pages.
+     */
+    private final int packSize;
+
+    /**
+     * The maximum size of a datagram, above which a frame is split in fragments.
+     */
+    private final int fragmentSize;
+
+    /**
+     * The ID of the next message split in fragments.
+     */
+    private long nextId;
+
+    /**
+     * The encoded pages waiting to be sent.
+     */
+    private final List<byte[]> pending;
+
+    /**
+     * The total size of the encoded pages waiting to be sent.
+     */
+    private int pendingSize;
+
+    /**
+     * The thread sending the pages held for longer than the linger time.
+     */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * The PageSender constructor is used to create a sender and start sending the pages held in the background.
+     * @param socket socket the datagrams are sent from
+     * @param group multicast group of the barrels
+     * @param port multicast port of the barrels
+     * @param packSize maximum size of a frame packing several pages
+     * @param fragmentSize maximum size of a datagram, above which a frame is split in fragments
+     * @param linger number of milliseconds a page can be held before it is sent
+     */
+    public PageSender(DatagramSocket socket, InetAddress group, int port, int packSize, int fragmentSize, long linger) {
+        this.socket = socket;
+        this.group = group;
+        this.port = port;
+        this.packSize = packSize;
+        this.fragmentSize = fragmentSize;
+        // Start from a random ID, so the messages of a restarted sender are not mistaken for earlier ones
+        nextId = new Random().nextLong();
+        pending = new ArrayList<>();
+        pendingSize = 0;
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PageSender-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (IOException e) {
+                System.out.println("Error sending pages: " + e.getMessage());
+            }
+        }, linger, linger, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The send method is used to send a page, packed with the pages sent after it if it is small enough.
+     * @param page page to send
+     * @throws IOException if a datagram cannot be sent
+     */
+    public synchronized void send(PageMessage page) throws IOException {
+        byte[] encoded = PageCodec.encodePage(page);
+        if (PageCodec.frameSize(pending.size() + 1, pendingSize + encoded.length) > packSize) {
+            flush();
+        }
+        pending.add(encoded);
+        pendingSize += encoded.length;
+        if (PageCodec.frameSize(pending.size(), pendingSize) >= packSize) {
+            flush();
+        }
+    }
+
+    /**
+     * The flush method is used to send the pages held, in a single frame, compressed and split if needed.
+     * @throws IOException if a datagram cannot be sent
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        byte[] frame = PageCodec.deflate(PageCodec.frame(pending));
+        pending.clear();
+        pendingSize = 0;
+        if (frame.length <= fragmentSize) {
+            socket.send(new DatagramPacket(frame, frame.length, group, port));
+            return;
+        }
+        for (byte[] fragment : PageCodec.fragment(frame, nextId++, fragmentSize)) {
+            socket.send(new DatagramPacket(fragment, fragment.length, group, port));
+        }
+    }
+
+    /**
+     * The close method is used to send the pages held and stop the background thread.
+     * The socket is left open, as it belongs to the caller.
+     */
+    public void close() {
+        flusher.shutdownNow();
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("Error sending pages: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.googol.googolfe.server.net;
+
+/**
+ * The TermPartitioner class splits the term space of the index in shards, so each barrel only holds the
+ * postings of the terms of its shard and the index can grow past what a single barrel can hold.
+ * A term belongs to the shard given by the hash of its text, and a barrel to the shard given by its ID,
+ * so the barrels of the same shard are replicas of each other.
+ * Every shard receives every page, with the terms of the other shards left as gaps: the positions and
+ * the length of the page stay the same in all shards, so phrases within a shard still match and the BM25
+ * scores of the terms of different shards add up to the score of the whole index.
+ */
+public final class TermPartitioner {
+    /**
+     * The TermPartitioner constructor is private because the class only has static methods.
+     */
+    private TermPartitioner() {
+    }
+
+    /**
+     * The shard method is used to get the shard owning a term.
+     * The hash of the string is mixed first, so terms sharing a prefix or a suffix spread over the shards.
+     * @param term normalized term
+     * @param shards number of shards
+     * @return shard of the term, from 0 to shards - 1
+     */
+    public static int shard(String term, int shards) {
+        if (shards <= 1) {
+            return 0;
+        }
+        int hash = term.hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards);
+    }
+
+    /**
+     * The shardOf method is used to get the shard of a barrel.
+     * @param barrelId ID of the barrel, starting at 1
+     * @param shards number of shards
+     * @return shard of the barrel, from 0 to shards - 1
+     */
+    public static int shardOf(int barrelId, int shards) {
+        return shards <= 1 ? 0 : Math.floorMod(barrelId - 1, shards);
+    }
+
+    /**
+     * The partition method is used to get the part of a page sent to a shard.
+     * @param page page with all its terms
+     * @param shard shard the page is sent to
+     * @param shards number of shards
+     * @return page with the terms of the other shards replaced by null, or the page itself if there is one shard
+     */
+    public static PageMessage partition(PageMessage page, int shard, int shards) {
+        if (shards <= 1) {
+            return page;
+        }
+        String[] keywords = page.getKeywords();
+        String[] owned = new String[keywords.length];
+        for (int i = 0; i < keywords.length; i++) {
+            String term = keywords[i];
+            if (term != null && (term.isEmpty() || shard(term, shards) == shard)) {
+                owned[i] = term;
+            }
+        }
+        return new PageMessage(page.getUrl(), page.getTitle(), page.getCitation(), owned, page.getLinks());
+    }
+}
@@ -0,0 +1,20 @@
+package com.googol.googolfe.server.search;
+
+import java.rmi.RemoteException;
+
+import com.googol.googolfe.server.interfaces.IBarrel;
+
+/**
+ * The BarrelCall interface is a remote call made to a barrel, which the searchers of the Gateway can send
+ * to any of the barrels able to answer it.
+ * @param <T> type of the answer
+ */
+public interface BarrelCall<T> {
+    /**
+     * The call method is used to make the call.
+     * @param barrel barrel to call
+     * @return answer of the barrel
+     * @throws RemoteException if the barrel cannot be reached
+     */
+    T call(IBarrel barrel) throws RemoteException;
+}
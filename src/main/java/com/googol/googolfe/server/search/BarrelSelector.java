@@ -0,0 +1,293 @@
+package com.googol.googolfe.server.search;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.googol.googolfe.server.interfaces.IBarrel;
+
+/**
+ * The BarrelSelector class chooses the barrel answering a request of the Gateway when any barrel can answer it.
+ * Each barrel has a cost, the moving average (EWMA) of the latency of its calls times the number of calls it
+ * is answering plus one. Two barrels are drawn at random and the cheaper one is called, so a slow or busy
+ * barrel gets fewer requests without all of them going to the same fastest barrel.
+ * If the call has not answered after the 95th percentile of the recent latencies, the same request is sent to
+ * another barrel and the first answer is used (hedging), so one slow barrel does not slow the whole search.
+ * The latencies of different requests are not comparable, so a selector is meant for one kind of request.
+ * A call that fails is sent to another barrel, until every barrel was tried or the timeout is reached.
+ */
+public class BarrelSelector {
+    /**
+     * The number of recent latencies the percentile is computed from.
+     */
+    private static final int SAMPLES = 512;
+
+    /**
+     * The number of new latencies after which the percentile is computed again.
+     */
+    private static final int SAMPLES_PER_UPDATE = 64;
+
+    /**
+     * The weight of a new latency in the moving average of a barrel.
+     */
+    private final double alpha;
+
+    /**
+     * The minimum number of nanoseconds waited before hedging a call.
+     */
+    private final long minHedgeNanos;
+
+    /**
+     * The number of nanoseconds a request has to answer, including its retries.
+     */
+    private final long timeoutNanos;
+
+    /**
+     * The latency of each active barrel.
+     */
+    private final Map<IBarrel, Latency> barrels;
+
+    /**
+     * The recent latencies of every barrel, in nanoseconds, in a circular buffer.
+     */
+    private final long[] samples;
+
+    /**
+     * The number of latencies recorded.
+     */
+    private long recorded;
+
+    /**
+     * The number of nanoseconds waited before hedging a call, the 95th percentile of the recent latencies.
+     */
+    private volatile long hedgeNanos;
+
+    /**
+     * The threads calling the barrels.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The BarrelSelector constructor is used to create a selector with no barrels.
+     * @param alpha weight of a new latency in the moving average of a barrel, from 0 to 1
+     * @param minHedgeMillis minimum number of milliseconds waited before hedging a call
+     * @param timeoutMillis number of milliseconds a request has to answer, including its retries
+     */
+    public BarrelSelector(double alpha, long minHedgeMillis, long timeoutMillis) {
+        this.alpha = alpha;
+        this.minHedgeNanos = minHedgeMillis * 1_000_000L;
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        barrels = new ConcurrentHashMap<>();
+        samples = new long[SAMPLES];
+        hedgeNanos = timeoutNanos;
+        executor = RemoteCalls.executor("Gateway-barrel");
+    }
+
+    /**
+     * The add method is used to add an active barrel, with no latency observed yet.
+     * @param barrel barrel to add
+     */
+    public void add(IBarrel barrel) {
+        barrels.put(barrel, new Latency());
+    }
+
+    /**
+     * The remove method is used to remove a barrel that stopped.
+     * @param barrel barrel to remove
+     */
+    public void remove(IBarrel barrel) {
+        barrels.remove(barrel);
+    }
+
+    /**
+     * The call method is used to make a request to the best barrel, hedging it and retrying it on other barrels.
+     * @param <T> type of the answer
+     * @param request remote call to make
+     * @return first answer received
+     * @throws RemoteException if there are no barrels, or every barrel tried failed or none answered in time
+     */
+    public <T> T call(BarrelCall<T> request) throws RemoteException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        CompletionService<T> answers = new ExecutorCompletionService<>(executor);
+        List<Future<T>> calls = new ArrayList<>();
+        Set<IBarrel> tried = new HashSet<>();
+        RemoteException failure = null;
+        boolean hedged = false;
+        int pending = submit(request, answers, calls, tried);
+        if (pending == 0) {
+            throw new RemoteException("No barrels available");
+        }
+        try {
+            while (pending > 0) {
+                long remaining = deadline - System.nanoTime();
+                Future<T> answer = answers.poll(Math.max(0, hedged ? remaining : Math.min(remaining, hedgeNanos)), TimeUnit.NANOSECONDS);
+                if (answer == null) {
+                    if (hedged || remaining <= 0) {
+                        break;
+                    }
+                    // The first call is slower than most, send the same request to another barrel
+                    hedged = true;
+                    pending += submit(request, answers, calls, tried);
+                    continue;
+                }
+                pending--;
+                try {
+                    return answer.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof RemoteException
+                            ? (RemoteException) e.getCause() : new RemoteException("Barrel call failed", e.getCause());
+                    pending += submit(request, answers, calls, tried);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Future<T> call : calls) {
+                call.cancel(false);
+            }
+        }
+        throw failure != null ? failure : new RemoteException("No barrel answered in time");
+    }
+
+    /**
+     * The submit method is used to send a request to the best barrel not tried yet.
+     * @param <T> type of the answer
+     * @param request remote call to make
+     * @param answers answers of the calls of the request
+     * @param calls calls of the request, to cancel the ones left once it ends
+     * @param tried barrels already called for the request
+     * @return 1 if a barrel was called, 0 if every barrel was tried
+     */
+    private <T> int submit(BarrelCall<T> request, CompletionService<T> answers, List<Future<T>> calls, Set<IBarrel> tried) {
+        IBarrel barrel = choose(tried);
+        if (barrel == null) {
+            return 0;
+        }
+        tried.add(barrel);
+        Latency latency = barrels.get(barrel);
+        calls.add(answers.submit(() -> {
+            long start = System.nanoTime();
+            if (latency != null) {
+                latency.inFlight.incrementAndGet();
+            }
+            try {
+                T answer = request.call(barrel);
+                record(latency, System.nanoTime() - start);
+                return answer;
+            } catch (RemoteException e) {
+                // A barrel that fails is made as costly as one that times out, without counting in the percentile
+                if (latency != null) {
+                    latency.update(timeoutNanos, alpha);
+                }
+                throw e;
+            } finally {
+                if (latency != null) {
+                    latency.inFlight.decrementAndGet();
+                }
+            }
+        }));
+        return 1;
+    }
+
+    /**
+     * The choose method is used to get the cheaper of two distinct barrels drawn at random among the ones not tried yet.
+     * @param tried barrels already called for the request
+     * @return barrel to call, or null if every barrel was tried
+     */
+    private IBarrel choose(Set<IBarrel> tried) {
+        List<Map.Entry<IBarrel, Latency>> candidates = new ArrayList<>();
+        for (Map.Entry<IBarrel, Latency> entry : barrels.entrySet()) {
+            if (!tried.contains(entry.getKey())) {
+                candidates.add(entry);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map.Entry<IBarrel, Latency> first = candidates.get(random.nextInt(candidates.size()));
+        if (candidates.size() == 1) {
+            return first.getKey();
+        }
+        Map.Entry<IBarrel, Latency> second = candidates.get(random.nextInt(candidates.size() - 1));
+        if (second == first) {
+            second = candidates.get(candidates.size() - 1);
+        }
+        return first.getValue().cost() <= second.getValue().cost() ? first.getKey() : second.getKey();
+    }
+
+    /**
+     * The record method is used to add a latency to the moving average of a barrel and to the recent latencies.
+     * @param latency latency of the barrel, or null if it was removed
+     * @param nanos latency of the call, in nanoseconds
+     */
+    private void record(Latency latency, long nanos) {
+        if (latency != null) {
+            latency.update(nanos, alpha);
+        }
+        long[] sorted = null;
+        synchronized (samples) {
+            samples[(int) (recorded % SAMPLES)] = nanos;
+            recorded++;
+            if (recorded % SAMPLES_PER_UPDATE == 0) {
+                sorted = Arrays.copyOf(samples, (int) Math.min(recorded, SAMPLES));
+            }
+        }
+        if (sorted != null) {
+            Arrays.sort(sorted);
+            hedgeNanos = Math.max(minHedgeNanos, sorted[(int) (sorted.length * 0.95)]);
+        }
+    }
+
+    /**
+     * The close method is used to stop the threads calling the barrels.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The Latency class holds the moving average of the latency of a barrel and its calls in flight.
+     */
+    private static final class Latency {
+        /**
+         * The moving average of the latency, in nanoseconds, or 0 before the first call.
+         */
+        private double average;
+
+        /**
+         * The number of calls the barrel is answering.
+         */
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        /**
+         * The update method is used to add a latency to the moving average.
+         * @param nanos latency of the call, in nanoseconds
+         * @param alpha weight of the new latency
+         */
+        synchronized void update(long nanos, double alpha) {
+            average = average == 0 ? nanos : alpha * nanos + (1 - alpha) * average;
+        }
+
+        /**
+         * The cost method is used to estimate how long a new call would take.
+         * @return moving average of the latency times the calls in flight plus one
+         */
+        synchronized double cost() {
+            return average * (inFlight.get() + 1);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.googol.googolfe.server.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.googol.googolfe.objects.CollectionStats;
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
+import com.googol.googolfe.objects.ShardMatches;
+import com.googol.googolfe.server.interfaces.IBarrel;
+import com.googol.googolfe.server.net.HashRing;
+
+/**
+ * The DocumentPartitionSearcher class answers the searches of the Gateway when the pages are split among the
+ * barrels by a consistent-hash ring, each page being held by as many barrels as the replication factor.
+ * Every arc of the ring is assigned to one of its owners, chosen at random so the searches spread over the
+ * replicas, and each barrel is asked in parallel for the best matches in the arcs assigned to it. The arcs
+ * hold disjoint pages, and every barrel weighs the terms with the same statistics of the whole index, so the
+ * best matches of every barrel, merged by score, are the best of the whole index. The statistics are the sums
+ * of the statistics of every barrel divided by the number of copies of each page, which only estimates them,
+ * so the ranking is an approximation of the one a single barrel holding every page would give.
+ * The arcs of a barrel that fails are given to another owner while there is time left; the arcs that no
+ * barrel answered in time are left out and the page is marked partial.
+ * When a barrel joins or leaves, the owners that gained arcs copy their pages in the background. Until an
+ * owner reports the copy finished, it is not asked for those arcs: an owner in the last ring whose pages
+ * were all in place is asked instead, and since it no longer receives the new pages of the arc, the page
+ * is marked partial.
+ */
+public class DocumentPartitionSearcher {
+    /**
+     * The number of barrels holding each page, or 0 if the pages are not split.
+     */
+    private final int replicas;
+
+    /**
+     * The number of positions of each barrel on the ring.
+     */
+    private final int virtualNodes;
+
+    /**
+     * The number of nanoseconds the barrels have to answer.
+     */
+    private final long timeoutNanos;
+
+    /**
+     * The maximum number of results ranked by a search.
+     */
+    private final int maxResults;
+
+    /**
+     * The active barrels, by ID.
+     */
+    private final Map<Integer, IBarrel> members;
+
+    /**
+     * The rings the searches are split by, replaced atomically when the barrels change.
+     */
+    private volatile Layout layout;
+
+    /**
+     * The threads calling the barrels.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The generator choosing the owner asked for each arc.
+     */
+    private final Random random;
+
+    /**
+     * The DocumentPartitionSearcher constructor is used to create a searcher with no barrels.
+     * @param replicas number of barrels holding each page, or 0 if the pages are not split
+     * @param virtualNodes number of positions of each barrel on the ring
+     * @param timeoutMillis number of milliseconds the barrels have to answer
+     * @param maxResults maximum number of results ranked by a search
+     */
+    public DocumentPartitionSearcher(int replicas, int virtualNodes, long timeoutMillis, int maxResults) {
+        this.replicas = Math.max(0, replicas);
+        this.virtualNodes = virtualNodes;
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        this.maxResults = maxResults;
+        members = new ConcurrentHashMap<>();
+        HashRing empty = new HashRing(members.keySet(), 1, virtualNodes);
+        layout = new Layout(empty, empty, new HashSet<>());
+        executor = RemoteCalls.executor("Gateway-partition");
+        random = new Random();
+    }
+
+    /**
+     * The isPartitioned method is used to check if the pages are split among the barrels.
+     * @return true if the pages are split, false if every barrel holds every page
+     */
+    public boolean isPartitioned() {
+        return replicas > 0;
+    }
+
+    /**
+     * The add method is used to add an active barrel to the ring.
+     * @param barrel barrel to add
+     * @param id ID of the barrel
+     */
+    public synchronized void add(IBarrel barrel, int id) {
+        members.put(id, barrel);
+        changeRing();
+    }
+
+    /**
+     * The remove method is used to remove a barrel that stopped from the ring.
+     * @param barrel barrel to remove
+     */
+    public synchronized void remove(IBarrel barrel) {
+        members.values().remove(barrel);
+        changeRing();
+    }
+
+    /**
+     * The ready method is used when a barrel reports it copied the pages of the arcs it gained in a ring.
+     * Once every owner of the current ring did, it becomes the ring whose pages are all in place.
+     * @param id ID of the barrel
+     * @param ringMembers IDs of the barrels of the ring the barrel copied the pages of
+     */
+    public synchronized void ready(int id, List<Integer> ringMembers) {
+        Layout current = layout;
+        if (!current.ring.getMembers().equals(ringMembers) || !current.syncing.contains(id)) {
+            return;
+        }
+        Set<Integer> syncing = new HashSet<>(current.syncing);
+        syncing.remove(id);
+        layout = new Layout(current.ring, syncing.isEmpty() ? current.ring : current.stable, syncing);
+    }
+
+    /**
+     * The changeRing method is used to build the ring of the active barrels, marking the barrels that own arcs
+     * they did not own in the last ring whose pages were all in place as copying them.
+     */
+    private void changeRing() {
+        Layout current = layout;
+        // While a change is still being copied, the pages are only known to be in place in the stable ring
+        HashRing stable = current.syncing.isEmpty() ? current.ring : current.stable;
+        HashRing next = new HashRing(members.keySet(), replicas, virtualNodes);
+        Set<Integer> syncing = new HashSet<>();
+        if (!stable.isEmpty()) {
+            for (long[] arc : arcs(stable, next)) {
+                Set<Integer> previousOwners = new HashSet<>();
+                for (int owner : stable.owners(arc[1])) {
+                    previousOwners.add(owner);
+                }
+                for (int owner : next.owners(arc[1])) {
+                    if (!previousOwners.contains(owner)) {
+                        syncing.add(owner);
+                    }
+                }
+            }
+        }
+        layout = new Layout(next, syncing.isEmpty() ? next : stable, syncing);
+    }
+
+    /**
+     * The members method is used to get the active barrels, to send them to the barrels when the ring changes.
+     * @return copy of the active barrels, by ID
+     */
+    public synchronized HashMap<Integer, IBarrel> members() {
+        return new HashMap<>(members);
+    }
+
+    /**
+     * The search method is used to get a window of the ranked results of a query from the partitions.
+     * Each barrel returns its best matches up to the end of the window, which is enough to rank the window
+     * since no other barrel is asked for the same pages.
+     * @param s query typed by the user
+     * @param offset position of the first result to return in the ranking
+     * @param limit maximum number of results to return
+     * @return page of results, partial if some arcs of the ring were not answered
+     */
+    public SearchPage search(String s, int offset, int limit) {
+        offset = Math.max(0, Math.min(offset, maxResults));
+        limit = Math.max(0, Math.min(limit, maxResults - offset));
+        int k = offset + limit;
+        long deadline = System.nanoTime() + timeoutNanos;
+        Layout current = layout;
+        Map<Integer, IBarrel> active = new HashMap<>(members);
+        CollectionStats stats = collectionStats(s, active, deadline);
+
+        // Scatter the arcs to their owners, giving the arcs of a failed barrel to another owner
+        List<ShardMatches> answers = new ArrayList<>();
+        List<IBarrel> answered = new ArrayList<>();
+        Set<Integer> failed = new HashSet<>();
+        List<long[]> pending = arcs(current.ring, current.stable);
+        boolean partial = current.ring.isEmpty();
+        while (!pending.isEmpty() && System.nanoTime() < deadline) {
+            Map<Integer, List<long[]>> assignment = new LinkedHashMap<>();
+            partial |= !assign(current, active, pending, failed, assignment);
+            Map<Integer, Future<ShardMatches>> calls = new LinkedHashMap<>();
+            for (Map.Entry<Integer, List<long[]>> entry : assignment.entrySet()) {
+                IBarrel barrel = active.get(entry.getKey());
+                long[] ranges = ranges(entry.getValue());
+                calls.put(entry.getKey(), executor.submit(() -> barrel.searchPartition(s, ranges, k, stats)));
+            }
+            pending = new ArrayList<>();
+            for (Map.Entry<Integer, Future<ShardMatches>> entry : calls.entrySet()) {
+                ShardMatches matches = RemoteCalls.await(entry.getValue(), deadline);
+                if (matches != null) {
+                    answers.add(matches);
+                    answered.add(active.get(entry.getKey()));
+                } else {
+                    failed.add(entry.getKey());
+                    pending.addAll(assignment.get(entry.getKey()));
+                }
+            }
+        }
+        partial |= !pending.isEmpty();
+
+        // Gather the best matches of every barrel, remembering which one can describe each page
+        List<Hit> ranked = new ArrayList<>();
+        int totalHits = 0;
+        for (int i = 0; i < answers.size(); i++) {
+            ShardMatches matches = answers.get(i);
+            totalHits += matches.getTotalHits();
+            for (int j = 0; j < matches.getUrls().length; j++) {
+                ranked.add(new Hit(matches.getUrls()[j], matches.getScores()[j] + matches.getPriors()[j], answered.get(i)));
+            }
+        }
+        ranked.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : a.url.compareTo(b.url));
+
+        // Only the pages of the window are described, each by the barrel that returned it
+        List<String> window = new ArrayList<>();
+        Map<IBarrel, ArrayList<String>> byBarrel = new LinkedHashMap<>();
+        for (int i = offset; i < Math.min(ranked.size(), k); i++) {
+            Hit hit = ranked.get(i);
+            window.add(hit.url);
+            byBarrel.computeIfAbsent(hit.barrel, b -> new ArrayList<>()).add(hit.url);
+        }
+        Map<IBarrel, Future<ArrayList<Result>>> descriptions = new LinkedHashMap<>();
+        for (Map.Entry<IBarrel, ArrayList<String>> entry : byBarrel.entrySet()) {
+            descriptions.put(entry.getKey(), executor.submit(() -> entry.getKey().describe(entry.getValue())));
+        }
+        Map<String, Result> described = new HashMap<>();
+        for (Map.Entry<IBarrel, Future<ArrayList<Result>>> entry : descriptions.entrySet()) {
+            ArrayList<Result> results = RemoteCalls.await(entry.getValue(), deadline);
+            if (results != null) {
+                for (Result result : results) {
+                    described.put(result.getUrl(), result);
+                }
+            }
+        }
+        ArrayList<Result> results = new ArrayList<>();
+        for (String url : window) {
+            results.add(described.getOrDefault(url, new Result(url, "", url)));
+        }
+        return new SearchPage(results, totalHits, offset, limit, partial);
+    }
+
+    /**
+     * The collectionStats method is used to estimate the statistics of the whole index for the terms of a query,
+     * adding up the statistics of the active barrels. Each page is counted by every barrel holding a copy, so
+     * the sums are divided by the number of copies, and the barrels that did not answer in time are assumed
+     * to hold as many pages as the ones that did.
+     * @param s query typed by the user
+     * @param active active barrels when the search started, by ID
+     * @param deadline time by which the barrels have to answer, in nanoseconds
+     * @return statistics of the whole index, or null if no barrel answered so each uses its own
+     */
+    private CollectionStats collectionStats(String s, Map<Integer, IBarrel> active, long deadline) {
+        List<Future<CollectionStats>> calls = new ArrayList<>();
+        for (IBarrel barrel : active.values()) {
+            calls.add(executor.submit(() -> barrel.collectionStats(s)));
+        }
+        int answered = 0;
+        long documentCount = 0;
+        long totalLength = 0;
+        Map<String, Long> frequencies = new LinkedHashMap<>();
+        for (Future<CollectionStats> call : calls) {
+            CollectionStats stats = RemoteCalls.await(call, deadline);
+            if (stats == null) {
+                continue;
+            }
+            answered++;
+            documentCount += stats.getDocumentCount();
+            totalLength += stats.getTotalLength();
+            for (int i = 0; i < stats.getTerms().length; i++) {
+                frequencies.merge(stats.getTerms()[i], (long) stats.getDocumentFrequencies()[i], Long::sum);
+            }
+        }
+        if (answered == 0) {
+            return null;
+        }
+        double scale = (double) active.size() / ((long) answered * Math.max(1, Math.min(replicas, active.size())));
+        int count = (int) Math.min(Integer.MAX_VALUE, Math.round(documentCount * scale));
+        String[] terms = new String[frequencies.size()];
+        int[] documentFrequencies = new int[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<String, Long> entry : frequencies.entrySet()) {
+            terms[i] = entry.getKey();
+            documentFrequencies[i++] = (int) Math.min(count, Math.round(entry.getValue() * scale));
+        }
+        return new CollectionStats(count, Math.round(totalLength * scale), terms, documentFrequencies);
+    }
+
+    /**
+     * The findSubLinks method is used to find the links pointing to a page, which are held by the barrels
+     * owning the pages they come from, so the links of an owner of every arc are joined.
+     * @param url url of the page
+     * @return urls of the pages linking to it, one per line
+     */
+    public String findSubLinks(String url) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        Layout current = layout;
+        Map<Integer, IBarrel> active = new HashMap<>(members);
+        Map<Integer, List<long[]>> assignment = new LinkedHashMap<>();
+        assign(current, active, arcs(current.ring, current.stable), new HashSet<>(), assignment);
+        List<Future<String>> calls = new ArrayList<>();
+        for (int id : assignment.keySet()) {
+            IBarrel barrel = active.get(id);
+            calls.add(executor.submit(() -> barrel.findSubLinks(url)));
+        }
+        Set<String> links = new LinkedHashSet<>();
+        for (Future<String> call : calls) {
+            String answer = RemoteCalls.await(call, deadline);
+            if (answer != null) {
+                for (String link : answer.split("\n")) {
+                    if (!link.isEmpty()) {
+                        links.add(link);
+                    }
+                }
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (String link : links) {
+            result.append(link).append("\n");
+        }
+        return result.toString();
+    }
+
+    /**
+     * The arcs method is used to split the rings in the arcs whose pages have the same owners in each ring.
+     * @param rings rings to split
+     * @return start and end of each arc, the start excluded and the end included
+     */
+    private static List<long[]> arcs(HashRing... rings) {
+        long[] boundaries = HashRing.boundaries(rings);
+        List<long[]> arcs = new ArrayList<>(boundaries.length);
+        for (int i = 0; i < boundaries.length; i++) {
+            arcs.add(new long[] {boundaries[(i + boundaries.length - 1) % boundaries.length], boundaries[i]});
+        }
+        return arcs;
+    }
+
+    /**
+     * The assign method is used to give each arc to one of its owners that has not failed, chosen at random.
+     * An owner still copying the pages of the arc is skipped, and when no other owner is left, an owner of the
+     * stable ring is used instead, which may miss the newest pages of the arc.
+     * @param layout rings the arcs belong to
+     * @param active active barrels when the search started, by ID
+     * @param arcs arcs to assign
+     * @param failed IDs of the barrels that failed during the search
+     * @param assignment arcs given to each barrel, filled by the method
+     * @return true if every arc has an owner left holding all of its pages, false otherwise
+     */
+    private boolean assign(Layout layout, Map<Integer, IBarrel> active, List<long[]> arcs, Set<Integer> failed, Map<Integer, List<long[]>> assignment) {
+        boolean complete = true;
+        for (long[] arc : arcs) {
+            List<Integer> candidates = new ArrayList<>();
+            for (int owner : layout.ring.owners(arc[1])) {
+                if (!failed.contains(owner) && active.containsKey(owner) && !layout.syncing.contains(owner)) {
+                    candidates.add(owner);
+                }
+            }
+            if (candidates.isEmpty() && layout.stable != layout.ring) {
+                complete = false;
+                for (int owner : layout.stable.owners(arc[1])) {
+                    if (!failed.contains(owner) && active.containsKey(owner)) {
+                        candidates.add(owner);
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                complete = false;
+                continue;
+            }
+            int owner = candidates.get(random.nextInt(candidates.size()));
+            assignment.computeIfAbsent(owner, o -> new ArrayList<>()).add(arc);
+        }
+        return complete;
+    }
+
+    /**
+     * The ranges method is used to turn the arcs given to a barrel into the ranges sent to it, joining the
+     * arcs that follow each other.
+     * @param arcs arcs in the order of the ring
+     * @return start and end of each range
+     */
+    private static long[] ranges(List<long[]> arcs) {
+        long[] ranges = new long[2 * arcs.size()];
+        int n = 0;
+        for (long[] arc : arcs) {
+            if (n > 0 && ranges[n - 1] == arc[0]) {
+                ranges[n - 1] = arc[1];
+            } else {
+                ranges[n++] = arc[0];
+                ranges[n++] = arc[1];
+            }
+        }
+        return Arrays.copyOf(ranges, n);
+    }
+
+    /**
+     * The close method is used to stop the threads calling the barrels.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The Layout class holds the rings a search is split by, read together by each search.
+     */
+    private static final class Layout {
+        /**
+         * The ring of the active barrels.
+         */
+        final HashRing ring;
+
+        /**
+         * The last ring whose owners all hold the pages of their arcs, the same as ring once no copy is pending.
+         */
+        final HashRing stable;
+
+        /**
+         * The IDs of the barrels of the ring still copying the pages of the arcs they gained.
+         */
+        final Set<Integer> syncing;
+
+        /**
+         * The Layout constructor is used to create the rings of a search.
+         * @param ring ring of the active barrels
+         * @param stable last ring whose owners all hold the pages of their arcs
+         * @param syncing IDs of the barrels still copying the pages of the arcs they gained
+         */
+        Layout(HashRing ring, HashRing stable, Set<Integer> syncing) {
+            this.ring = ring;
+            this.stable = stable;
+            this.syncing = syncing;
+        }
+    }
+
+    /**
+     * The Hit class is a match returned by a barrel, with the barrel that can describe it.
+     */
+    private static final class Hit {
+        /**
+         * The url of the page.
+         */
+        final String url;
+
+        /**
+         * The score of the page, with its PageRank.
+         */
+        final double score;
+
+        /**
+         * The barrel that returned the page.
+         */
+        final IBarrel barrel;
+
+        /**
+         * The Hit constructor is used to create a match.
+         * @param url url of the page
+         * @param score score of the page, with its PageRank
+         * @param barrel barrel that returned the page
+         */
+        Hit(String url, double score, IBarrel barrel) {
+            this.url = url;
+            this.score = score;
+            this.barrel = barrel;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.googol.googolfe.server.search;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * The QueryCache class keeps the results of recent queries in the Gateway, so the same query is not searched
+ * again by a barrel until the index changes.
+ * Each result is stored with the ingest epoch it was computed at, and is only returned while the epoch is the
+ * same, since a new epoch means a barrel applied new pages. A result is also dropped once older than the TTL,
+ * so an epoch reported late never keeps a result for long.
+ * The cache is limited in bytes, as estimated by a weigher, and evicts the least recently used results.
+ * A new result is only admitted if its query was asked more often than the one it would evict (TinyLFU), so a
+ * burst of queries asked once does not flush the popular ones. The frequencies are estimated by a count-min
+ * sketch, whose counters are halved periodically so old popularity fades.
+ * @param <V> type of the results
+ */
+public class QueryCache<V> {
+    /**
+     * The number of bytes assumed for a result when sizing the frequency sketch.
+     */
+    private static final int AVERAGE_ENTRY_BYTES = 1024;
+
+    /**
+     * The maximum number of bytes of the results kept.
+     */
+    private final long maxBytes;
+
+    /**
+     * The number of nanoseconds a result is kept.
+     */
+    private final long ttlNanos;
+
+    /**
+     * The estimate of the number of bytes of a result.
+     */
+    private final ToIntFunction<V> weigher;
+
+    /**
+     * The results by query, from the least to the most recently used.
+     */
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    /**
+     * The estimated number of times each query was asked recently.
+     */
+    private final FrequencySketch frequencies;
+
+    /**
+     * The number of bytes of the results kept.
+     */
+    private long bytes;
+
+    /**
+     * The number of results found in the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of results not found in the cache.
+     */
+    private long misses;
+
+    /**
+     * The QueryCache constructor is used to create an empty cache.
+     * @param maxBytes maximum number of bytes of the results kept, or 0 to keep none
+     * @param ttlMillis number of milliseconds a result is kept
+     * @param weigher estimate of the number of bytes of a result, without its query
+     */
+    public QueryCache(long maxBytes, long ttlMillis, ToIntFunction<V> weigher) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.weigher = weigher;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        frequencies = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, this.maxBytes / AVERAGE_ENTRY_BYTES)));
+    }
+
+    /**
+     * The get method is used to get the result of a query, counting the query as asked.
+     * @param query normalized query
+     * @param epoch current ingest epoch
+     * @return result of the query, or null if it is not cached, expired or was computed at another epoch
+     */
+    public synchronized V get(String query, long epoch) {
+        frequencies.increment(query);
+        Entry<V> entry = entries.get(query);
+        if (entry != null && (entry.epoch != epoch || System.nanoTime() - entry.created >= ttlNanos)) {
+            remove(query);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * The put method is used to keep the result of a query, if it is admitted.
+     * @param query normalized query
+     * @param value result of the query
+     * @param epoch ingest epoch the result was computed at
+     */
+    public synchronized void put(String query, V value, long epoch) {
+        long weight = 2L * query.length() + weigher.applyAsInt(value) + 64;
+        if (weight > maxBytes) {
+            return;
+        }
+        remove(query);
+        Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+        boolean admitted = false;
+        while (bytes + weight > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry<V>> victim = eldest.next();
+            // Only a query asked more often than the least recently used one takes its place
+            if (!admitted && frequencies.frequency(query) <= frequencies.frequency(victim.getKey())) {
+                return;
+            }
+            admitted = true;
+            bytes -= victim.getValue().weight;
+            eldest.remove();
+        }
+        entries.put(query, new Entry<>(value, epoch, weight));
+        bytes += weight;
+    }
+
+    /**
+     * The clear method is used to drop every result.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * The getHitRate method is used to get the fraction of the queries answered by the cache.
+     * @return number of hits over the number of queries, or 0 if no query was asked
+     */
+    public synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * The remove method is used to drop the result of a query.
+     * @param query normalized query
+     */
+    private void remove(String query) {
+        Entry<V> entry = entries.remove(query);
+        if (entry != null) {
+            bytes -= entry.weight;
+        }
+    }
+
+    /**
+     * The Entry class holds a cached result.
+     * @param <V> type of the result
+     */
+    private static final class Entry<V> {
+        /**
+         * The result of the query.
+         */
+        final V value;
+
+        /**
+         * The ingest epoch the result was computed at.
+         */
+        final long epoch;
+
+        /**
+         * The estimated number of bytes of the result and its query.
+         */
+        final long weight;
+
+        /**
+         * The time the result was computed, in nanoseconds.
+         */
+        final long created;
+
+        /**
+         * The Entry constructor is used to create a cached result.
+         * @param value result of the query
+         * @param epoch ingest epoch the result was computed at
+         * @param weight estimated number of bytes of the result and its query
+         */
+        Entry(V value, long epoch, long weight) {
+            this.value = value;
+            this.epoch = epoch;
+            this.weight = weight;
+            this.created = System.nanoTime();
+        }
+    }
+
+    /**
+     * The FrequencySketch class estimates how often each query was asked with a count-min sketch of four rows
+     * of counters saturating at 15. After ten increments per counter of a row, every counter is halved.
+     */
+    private static final class FrequencySketch {
+        /**
+         * The number of rows of counters.
+         */
+        private static final int ROWS = 4;
+
+        /**
+         * The largest value of a counter.
+         */
+        private static final int MAX_COUNT = 15;
+
+        /**
+         * The counters of each row.
+         */
+        private final byte[][] counters;
+
+        /**
+         * The mask giving the counter of a hash in a row.
+         */
+        private final int mask;
+
+        /**
+         * The number of increments after which the counters are halved.
+         */
+        private final int sampleSize;
+
+        /**
+         * The number of increments since the counters were last halved.
+         */
+        private int increments;
+
+        /**
+         * The FrequencySketch constructor is used to create a sketch with every counter at 0.
+         * @param width minimum number of counters of each row, rounded up to a power of two
+         */
+        FrequencySketch(int width) {
+            int size = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+            counters = new byte[ROWS][size];
+            mask = size - 1;
+            sampleSize = 10 * size;
+        }
+
+        /**
+         * The increment method is used to count a query as asked once more.
+         * @param query normalized query
+         */
+        void increment(String query) {
+            int hash = query.hashCode();
+            for (int row = 0; row < ROWS; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < MAX_COUNT) {
+                    counters[row][index]++;
+                }
+            }
+            if (++increments >= sampleSize) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] >>= 1;
+                    }
+                }
+                increments = 0;
+            }
+        }
+
+        /**
+         * The frequency method is used to estimate how often a query was asked.
+         * @param query normalized query
+         * @return smallest counter of the query over the rows
+         */
+        int frequency(String query) {
+            int hash = query.hashCode();
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < ROWS; row++) {
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * The index method is used to get the counter of a hash in a row, mixing the hash with a seed per row.
+         * @param hash hash of the query
+         * @param row row of counters
+         * @return index of the counter
+         */
+        private int index(int hash, int row) {
+            int h = (hash + row * 0x9E3779B9) * 0x85EBCA6B;
+            return (h ^ (h >>> 15)) & mask;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.googol.googolfe.server.search;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The RemoteCalls class holds what the searchers of the Gateway use to call several barrels in parallel
+ * and wait for their answers until the deadline of a search.
+ */
+final class RemoteCalls {
+    /**
+     * The RemoteCalls constructor is private because the class only has static methods.
+     */
+    private RemoteCalls() {
+    }
+
+    /**
+     * The executor method is used to create the threads calling the barrels, which never keep the Gateway running.
+     * @param name name of the threads
+     * @return executor creating threads as needed
+     */
+    static ExecutorService executor(String name) {
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The await method is used to wait for the answer of a barrel until the deadline of the search.
+     * @param <T> type of the answer
+     * @param answer pending answer
+     * @param deadline time the search ends, in nanoseconds
+     * @return answer, or null if the barrel failed or did not answer in time
+     */
+    static <T> T await(Future<T> answer, long deadline) {
+        try {
+            return answer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            answer.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
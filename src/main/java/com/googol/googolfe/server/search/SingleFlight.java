@@ -0,0 +1,107 @@
+package com.googol.googolfe.server.search;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SingleFlight class makes concurrent requests for the same key share a single call to the barrels.
+ * The first request for a key makes the call, and the requests arriving while it is in flight wait for it and
+ * get the same answer, or the same exception. Once the call ends the key is free again, so a later request
+ * makes a new call: the answers are shared, not kept, which is the job of the cache.
+ * @param <V> type of the answers
+ */
+public class SingleFlight<V> {
+    /**
+     * The calls in flight, by key.
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<V>> calls;
+
+    /**
+     * The number of requests answered by a call made for another request.
+     */
+    private final AtomicLong coalesced;
+
+    /**
+     * The SingleFlight constructor is used to create a group with no calls in flight.
+     */
+    public SingleFlight() {
+        calls = new ConcurrentHashMap<>();
+        coalesced = new AtomicLong();
+    }
+
+    /**
+     * The run method is used to get the answer of a call, joining the call in flight for the same key if any.
+     * @param key normalized request
+     * @param call call made if none is in flight for the key
+     * @return answer of the call
+     * @throws RemoteException if the call failed, for every request sharing it
+     */
+    public V run(String key, Call<V> call) throws RemoteException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+        try {
+            V answer = call.call();
+            flight.complete(answer);
+            return answer;
+        } catch (RemoteException | RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, flight);
+        }
+    }
+
+    /**
+     * The getCoalesced method is used to get the number of requests that shared the call of another request.
+     * @return number of calls saved
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * The await method is used to wait for the answer of a call made for another request.
+     * @param flight call in flight
+     * @return answer of the call
+     * @throws RemoteException if the call failed or the wait was interrupted
+     */
+    private V await(CompletableFuture<V> flight) throws RemoteException {
+        try {
+            return flight.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RemoteException) {
+                throw (RemoteException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RemoteException("Shared call failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted while waiting for a shared call", e);
+        }
+    }
+
+    /**
+     * The Call interface is the call shared by the requests for the same key.
+     * @param <V> type of the answer
+     */
+    public interface Call<V> {
+        /**
+         * The call method is used to make the call.
+         * @return answer of the call
+         * @throws RemoteException if the barrels cannot answer
+         */
+        V call() throws RemoteException;
+    }
+}
@@ -0,0 +1,235 @@
+package com.googol.googolfe.server.search;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
+import com.googol.googolfe.objects.ShardMatches;
+import com.googol.googolfe.server.index.QueryNode;
+import com.googol.googolfe.server.interfaces.IBarrel;
+import com.googol.googolfe.server.net.TermPartitioner;
+
+/**
+ * The TermShardSearcher class answers the searches of the Gateway when the terms of the index are split
+ * in shards, each held by its own barrels.
+ * A query whose terms all belong to one shard is sent whole to a barrel of that shard, with all its operators.
+ * Otherwise the terms are grouped by shard and sent to a barrel of each shard in parallel (scatter), and the
+ * pages returned by every shard are intersected and ranked by the sum of their scores (gather). Operators
+ * spanning several shards cannot be evaluated by one barrel, so such a query is answered as the conjunction
+ * of its terms.
+ * Each shard has until the timeout to answer, trying its replicas in turn; the shards that do not answer
+ * are left out and the page is marked partial, as is a page built from truncated lists of matches.
+ */
+public class TermShardSearcher {
+    /**
+     * The number of shards of the terms.
+     */
+    private final int shards;
+
+    /**
+     * The number of nanoseconds the shards have to answer.
+     */
+    private final long timeoutNanos;
+
+    /**
+     * The maximum number of matches asked to each shard.
+     */
+    private final int maxMatches;
+
+    /**
+     * The maximum number of results ranked by a search.
+     */
+    private final int maxResults;
+
+    /**
+     * The shard of each active barrel.
+     */
+    private final Map<IBarrel, Integer> replicas;
+
+    /**
+     * The threads calling the shards.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The TermShardSearcher constructor is used to create a searcher with no barrels.
+     * @param shards number of shards of the terms
+     * @param timeoutMillis number of milliseconds the shards have to answer
+     * @param maxMatches maximum number of matches asked to each shard
+     * @param maxResults maximum number of results ranked by a search
+     */
+    public TermShardSearcher(int shards, long timeoutMillis, int maxMatches, int maxResults) {
+        this.shards = Math.max(1, shards);
+        this.timeoutNanos = timeoutMillis * 1_000_000L;
+        this.maxMatches = maxMatches;
+        this.maxResults = maxResults;
+        replicas = new ConcurrentHashMap<>();
+        executor = RemoteCalls.executor("Gateway-shard");
+    }
+
+    /**
+     * The isSharded method is used to check if the terms are split in more than one shard.
+     * @return true if there are several shards, false otherwise
+     */
+    public boolean isSharded() {
+        return shards > 1;
+    }
+
+    /**
+     * The add method is used to add an active barrel to the shard given by its ID.
+     * @param barrel barrel to add
+     * @param id ID of the barrel
+     */
+    public void add(IBarrel barrel, int id) {
+        replicas.put(barrel, TermPartitioner.shardOf(id, shards));
+    }
+
+    /**
+     * The remove method is used to remove a barrel that stopped.
+     * @param barrel barrel to remove
+     */
+    public void remove(IBarrel barrel) {
+        replicas.remove(barrel);
+    }
+
+    /**
+     * The search method is used to get a window of the ranked results of a query from the shards.
+     * @param query operator tree of the query, or null if it has no searchable words
+     * @param s query typed by the user
+     * @param offset position of the first result to return in the ranking
+     * @param limit maximum number of results to return
+     * @return page of results, partial if some shards did not answer
+     */
+    public SearchPage search(QueryNode query, String s, int offset, int limit) {
+        offset = Math.max(0, Math.min(offset, maxResults));
+        limit = Math.max(0, Math.min(limit, maxResults - offset));
+        List<String> collected = new ArrayList<>();
+        if (query != null) {
+            query.collectTerms(collected);
+        }
+        Map<Integer, ArrayList<String>> terms = new LinkedHashMap<>();
+        for (String term : new LinkedHashSet<>(collected)) {
+            terms.computeIfAbsent(TermPartitioner.shard(term, shards), t -> new ArrayList<>()).add(term);
+        }
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        // A query within one shard is answered by a barrel of that shard, with all its operators
+        if (terms.size() <= 1) {
+            int shard = terms.isEmpty() ? 0 : terms.keySet().iterator().next();
+            final int from = offset;
+            final int count = limit;
+            SearchPage page = RemoteCalls.await(executor.submit(() -> call(shard, barrel -> barrel.search(s, from, count))), deadline);
+            return page != null ? page : new SearchPage(new ArrayList<>(), 0, offset, limit, true);
+        }
+
+        // Scatter the terms to their shards
+        Map<Integer, Future<ShardMatches>> pending = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ArrayList<String>> entry : terms.entrySet()) {
+            ArrayList<String> shardTerms = entry.getValue();
+            pending.put(entry.getKey(), executor.submit(() -> call(entry.getKey(), barrel -> barrel.searchShard(shardTerms, maxMatches))));
+        }
+        List<ShardMatches> answers = new ArrayList<>();
+        List<Integer> answered = new ArrayList<>();
+        boolean partial = false;
+        for (Map.Entry<Integer, Future<ShardMatches>> entry : pending.entrySet()) {
+            ShardMatches matches = RemoteCalls.await(entry.getValue(), deadline);
+            if (matches == null) {
+                partial = true;
+            } else {
+                answers.add(matches);
+                answered.add(entry.getKey());
+                partial |= matches.isTruncated();
+            }
+        }
+        if (answers.isEmpty()) {
+            return new SearchPage(new ArrayList<>(), 0, offset, limit, true);
+        }
+
+        // Gather the pages matched by every shard, starting from the smallest list
+        answers.sort((a, b) -> Integer.compare(a.getUrls().length, b.getUrls().length));
+        ShardMatches smallest = answers.get(0);
+        Map<String, double[]> merged = new HashMap<>();
+        for (int i = 0; i < smallest.getUrls().length; i++) {
+            merged.put(smallest.getUrls()[i], new double[] {smallest.getScores()[i] + smallest.getPriors()[i]});
+        }
+        for (ShardMatches matches : answers.subList(1, answers.size())) {
+            Map<String, Double> scores = new HashMap<>();
+            for (int i = 0; i < matches.getUrls().length; i++) {
+                scores.put(matches.getUrls()[i], matches.getScores()[i]);
+            }
+            merged.entrySet().removeIf(entry -> {
+                Double score = scores.get(entry.getKey());
+                if (score == null) {
+                    return true;
+                }
+                entry.getValue()[0] += score;
+                return false;
+            });
+        }
+        List<Map.Entry<String, double[]>> ranked = new ArrayList<>(merged.entrySet());
+        ranked.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                ? Double.compare(b.getValue()[0], a.getValue()[0]) : a.getKey().compareTo(b.getKey()));
+
+        // Only the pages of the window are described, by a barrel of a shard that answered
+        ArrayList<String> urls = new ArrayList<>();
+        for (int i = offset; i < Math.min(ranked.size(), offset + limit); i++) {
+            urls.add(ranked.get(i).getKey());
+        }
+        ArrayList<Result> results = null;
+        if (!urls.isEmpty()) {
+            int shard = answered.get(0);
+            results = RemoteCalls.await(executor.submit(() -> call(shard, barrel -> barrel.describe(urls))), deadline);
+        }
+        if (results == null) {
+            results = new ArrayList<>();
+            for (String url : urls) {
+                results.add(new Result(url, "", url));
+            }
+        }
+        return new SearchPage(results, ranked.size(), offset, limit, partial);
+    }
+
+    /**
+     * The call method is used to call a barrel of a shard, trying its replicas in random order until one answers.
+     * @param <T> type of the answer
+     * @param shard shard to call
+     * @param request remote call to make
+     * @return answer of the first replica that answered
+     * @throws RemoteException if the shard has no replicas or none of them answered
+     */
+    private <T> T call(int shard, BarrelCall<T> request) throws RemoteException {
+        List<IBarrel> candidates = new ArrayList<>();
+        for (Map.Entry<IBarrel, Integer> entry : replicas.entrySet()) {
+            if (entry.getValue() == shard) {
+                candidates.add(entry.getKey());
+            }
+        }
+        Collections.shuffle(candidates);
+        RemoteException failure = new RemoteException("No barrels available for shard " + shard);
+        for (IBarrel barrel : candidates) {
+            try {
+                return request.call(barrel);
+            } catch (RemoteException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * The close method is used to stop the threads calling the shards.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,175 @@
+package com.googol.googolfe.server.stats;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.googol.googolfe.server.storage.Snapshots;
+
+/**
+ * The SearchStats class counts the terms searched, to report the most searched ones.
+ * Searches only add to in-memory counters: a concurrent map of pending counts, updated with per-bin
+ * locking so concurrent searches rarely contend. The pending counts are drained into a SpaceSaving
+ * sketch, which keeps the most searched terms in a fixed number of counters, and the sketch is written
+ * to disk by a background thread. No disk access happens on the search path, and the memory used does
+ * not depend on the number of distinct terms ever searched.
+ */
+public class SearchStats {
+    /**
+     * The number of pending terms above which a search drains them itself instead of waiting for the flush.
+     */
+    private static final int MAX_PENDING = 10_000;
+
+    /**
+     * The path of the file where the sketch is saved.
+     */
+    private final String path;
+
+    /**
+     * The counts not yet added to the sketch.
+     */
+    private final ConcurrentHashMap<String, Long> pending;
+
+    /**
+     * The total number of terms searched since the start.
+     */
+    private final LongAdder searches;
+
+    /**
+     * The sketch of the most searched terms, guarded by this object.
+     */
+    private final SpaceSaving sketch;
+
+    /**
+     * Whether the sketch changed since it was last saved.
+     */
+    private volatile boolean dirty;
+
+    /**
+     * The thread saving the sketch in the background.
+     */
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * The SearchStats constructor is used to load the saved counts and start saving them periodically.
+     * A file holding the map of counts written before the sketch was introduced is loaded into the sketch.
+     * @param path path of the file where the counts are saved
+     * @param capacity number of terms counted by the sketch
+     * @param flushInterval number of seconds between saves
+     */
+    @SuppressWarnings("unchecked")
+    public SearchStats(String path, int capacity, int flushInterval) {
+        this.path = path;
+        pending = new ConcurrentHashMap<>();
+        searches = new LongAdder();
+        SpaceSaving saved = Snapshots.read(path, SpaceSaving.class);
+        if (saved != null) {
+            sketch = saved;
+        } else {
+            sketch = new SpaceSaving(capacity);
+            HashMap<String, Integer> legacy = Snapshots.read(path, HashMap.class);
+            if (legacy != null) {
+                for (Map.Entry<String, Integer> entry : legacy.entrySet()) {
+                    sketch.offer(entry.getKey(), entry.getValue());
+                }
+                dirty = true;
+            }
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SearchStats-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * The record method is used to count a searched term.
+     * @param term normalized term searched
+     */
+    public void record(String term) {
+        pending.merge(term, 1L, Long::sum);
+        searches.increment();
+        if (pending.size() > MAX_PENDING) {
+            drain();
+        }
+    }
+
+    /**
+     * The top method is used to get the most searched terms, by decreasing count.
+     * @param k maximum number of terms
+     * @return counters of the most searched terms
+     */
+    public List<SpaceSaving.Counter> top(int k) {
+        drain();
+        synchronized (this) {
+            return sketch.top(k);
+        }
+    }
+
+    /**
+     * The getSearches method is used to get the number of terms searched since the start.
+     * @return number of terms searched
+     */
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    /**
+     * The flush method is used to save the sketch if it changed. The sketch is serialized while holding
+     * its lock and written after releasing it.
+     */
+    public void flush() {
+        drain();
+        if (!dirty) {
+            return;
+        }
+        byte[] data;
+        synchronized (this) {
+            try {
+                data = Snapshots.serialize(sketch);
+            } catch (IOException e) {
+                System.err.println("Failed to save search stats: " + e.getMessage());
+                return;
+            }
+            dirty = false;
+        }
+        try {
+            Snapshots.write(path, data);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Failed to save search stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The close method is used to save the sketch and stop the background thread.
+     */
+    public void close() {
+        flusher.shutdownNow();
+        flush();
+    }
+
+    /**
+     * The drain method is used to add the pending counts to the sketch.
+     * Each count is removed atomically, so a count added during the drain is kept for the next one.
+     */
+    private synchronized void drain() {
+        Iterator<String> terms = pending.keySet().iterator();
+        while (terms.hasNext()) {
+            String term = terms.next();
+            Long count = pending.remove(term);
+            if (count != null) {
+                sketch.offer(term, count);
+                dirty = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.googol.googolfe.server.stats;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The SpaceSaving class estimates the most frequent items of a stream with a fixed number of counters.
+ * An item without a counter takes the counter of the least frequent item and inherits its count as
+ * the error of its estimate, so every item more frequent than total / capacity is guaranteed to be kept
+ * and the memory used does not depend on the number of distinct items.
+ * The counters are kept in a min-heap, so each update costs a logarithmic time in the capacity.
+ * The class is not thread-safe.
+ */
+public class SpaceSaving implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The maximum number of counters.
+     */
+    private final int capacity;
+
+    /**
+     * The items of the counters, in heap order.
+     */
+    private final String[] items;
+
+    /**
+     * The estimated counts of the items, in heap order.
+     */
+    private final long[] counts;
+
+    /**
+     * The largest overestimation of each count, in heap order.
+     */
+    private final long[] errors;
+
+    /**
+     * The number of counters used.
+     */
+    private int size;
+
+    /**
+     * The position of the counter of each item in the heap.
+     */
+    private transient HashMap<String, Integer> positions;
+
+    /**
+     * The SpaceSaving constructor is used to create an empty sketch.
+     * @param capacity maximum number of counters
+     */
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        items = new String[this.capacity];
+        counts = new long[this.capacity];
+        errors = new long[this.capacity];
+        positions = new HashMap<>();
+    }
+
+    /**
+     * The offer method is used to count occurrences of an item.
+     * @param item item seen
+     * @param weight number of occurrences
+     */
+    public void offer(String item, long weight) {
+        Integer i = positions.get(item);
+        if (i != null) {
+            counts[i] += weight;
+            siftDown(i);
+        } else if (size < capacity) {
+            items[size] = item;
+            counts[size] = weight;
+            errors[size] = 0;
+            positions.put(item, size);
+            siftUp(size++);
+        } else {
+            // The least frequent item gives its counter to the new one
+            positions.remove(items[0]);
+            items[0] = item;
+            errors[0] = counts[0];
+            counts[0] += weight;
+            positions.put(item, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * The top method is used to get the most frequent items, by decreasing estimated count.
+     * @param k maximum number of items
+     * @return counters of the most frequent items
+     */
+    public List<Counter> top(int k) {
+        List<Counter> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(new Counter(items[i], counts[i], errors[i]));
+        }
+        result.sort(Comparator.comparingLong(Counter::getCount).reversed().thenComparing(Counter::getItem));
+        return result.subList(0, Math.min(Math.max(k, 0), result.size()));
+    }
+
+    /**
+     * The siftUp method is used to move a counter towards the root while it is smaller than its parent.
+     * @param i position of the counter
+     */
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (counts[parent] <= counts[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    /**
+     * The siftDown method is used to move a counter towards the leaves while it is larger than a child.
+     * @param i position of the counter
+     */
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1, right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    /**
+     * The swap method is used to exchange two counters of the heap.
+     * @param i position of the first counter
+     * @param j position of the second counter
+     */
+    private void swap(int i, int j) {
+        String item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long error = errors[i];
+        errors[i] = errors[j];
+        errors[j] = error;
+        positions.put(items[i], i);
+        positions.put(items[j], j);
+    }
+
+    /**
+     * The readObject method is used to rebuild the positions of the counters after deserializing the sketch.
+     * @param in stream to read from
+     * @throws IOException if there is an error reading
+     * @throws ClassNotFoundException if a class of the stream cannot be found
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        positions = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            positions.put(items[i], i);
+        }
+    }
+
+    /**
+     * The Counter class is the estimated count of an item of a sketch.
+     */
+    public static final class Counter {
+        /**
+         * The item counted.
+         */
+        private final String item;
+
+        /**
+         * The estimated count, never below the real one.
+         */
+        private final long count;
+
+        /**
+         * The largest overestimation of the count.
+         */
+        private final long error;
+
+        /**
+         * The Counter constructor is used to create the estimated count of an item.
+         * @param item item counted
+         * @param count estimated count
+         * @param error largest overestimation of the count
+         */
+        Counter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+
+        /**
+         * The getItem method is used to get the item counted.
+         * @return item counted
+         */
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * The getCount method is used to get the estimated count of the item.
+         * @return estimated count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * The getError method is used to get the largest overestimation of the count.
+         * @return largest overestimation
+         */
+        public long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.googol.googolfe.server.stats;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.googol.googolfe.objects.BrlObj;
+import com.googol.googolfe.objects.Top10Obj;
+import com.googol.googolfe.server.interfaces.IClient;
+
+/**
+ * The StatsPublisher class sends the trending searches and the average time of the barrels to the clients of the
+ * Gateway from a background thread, so the searches never wait for the barrels or the clients to be asked.
+ * The statistics are sampled periodically, and only the ones that changed since they were last sent are sent.
+ * The statistics are sent at most a given number of times per second: a change found sooner is sent once the
+ * minimum delay since the last send has passed.
+ */
+public class StatsPublisher {
+    /**
+     * The number of nanoseconds between two samples.
+     */
+    private final long intervalNanos;
+
+    /**
+     * The minimum number of nanoseconds between two sends.
+     */
+    private final long minDelayNanos;
+
+    /**
+     * The source of the trending searches.
+     */
+    private final Sampler<ArrayList<Top10Obj>> trending;
+
+    /**
+     * The source of the average time of the barrels.
+     */
+    private final Sampler<ArrayList<BrlObj>> barrels;
+
+    /**
+     * The source of the clients subscribed.
+     */
+    private final Supplier<List<IClient>> clients;
+
+    /**
+     * The trending searches last sent, only used by the publishing thread.
+     */
+    private ArrayList<Top10Obj> sentTrending;
+
+    /**
+     * The average time of the barrels last sent, only used by the publishing thread.
+     */
+    private ArrayList<BrlObj> sentBarrels;
+
+    /**
+     * The time of the last send, in nanoseconds, only used by the publishing thread.
+     */
+    private long lastSent;
+
+    /**
+     * Whether a sample is already scheduled for when sending is allowed again, only used by the publishing thread.
+     */
+    private boolean delayed;
+
+    /**
+     * The thread sampling and sending the statistics.
+     */
+    private final ScheduledExecutorService publisher;
+
+    /**
+     * The StatsPublisher constructor is used to start sampling the statistics periodically.
+     * @param intervalMillis number of milliseconds between two samples
+     * @param maxRate maximum number of sends per second
+     * @param trending source of the trending searches
+     * @param barrels source of the average time of the barrels
+     * @param clients source of the clients subscribed
+     */
+    public StatsPublisher(long intervalMillis, double maxRate, Sampler<ArrayList<Top10Obj>> trending,
+            Sampler<ArrayList<BrlObj>> barrels, Supplier<List<IClient>> clients) {
+        this.intervalNanos = Math.max(1, intervalMillis) * 1_000_000L;
+        this.minDelayNanos = maxRate > 0 ? (long) (1_000_000_000L / maxRate) : 0;
+        this.trending = trending;
+        this.barrels = barrels;
+        this.clients = clients;
+        lastSent = System.nanoTime() - minDelayNanos;
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "StatsPublisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publish, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The publishSoon method is used to sample the statistics without waiting for the next period, when they are
+     * known to have changed, such as when a barrel joins or leaves. The limit of sends per second still applies.
+     */
+    public void publishSoon() {
+        try {
+            publisher.execute(this::publish);
+        } catch (RejectedExecutionException e) {
+            // The publisher was closed
+        }
+    }
+
+    /**
+     * The close method is used to stop sampling and sending the statistics.
+     */
+    public void close() {
+        publisher.shutdownNow();
+    }
+
+    /**
+     * The publish method is used to sample the statistics and send the ones that changed, if sending is allowed.
+     * Otherwise one more sample is scheduled for when it is, unless the next period comes first.
+     */
+    private void publish() {
+        long wait = lastSent + minDelayNanos - System.nanoTime();
+        if (wait > 0) {
+            if (!delayed && wait < intervalNanos) {
+                delayed = true;
+                publisher.schedule(this::publish, wait, TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+        delayed = false;
+        ArrayList<Top10Obj> top10 = sample(trending);
+        ArrayList<BrlObj> activeBarrels = sample(barrels);
+        boolean sendTrending = top10 != null && !top10.equals(sentTrending);
+        boolean sendBarrels = activeBarrels != null && !activeBarrels.equals(sentBarrels);
+        if (!sendTrending && !sendBarrels) {
+            return;
+        }
+        for (IClient c : clients.get()) {
+            try {
+                if (sendTrending) {
+                    c.sendTop10(top10);
+                }
+                if (sendBarrels) {
+                    c.sendBrls(activeBarrels);
+                }
+            } catch (RemoteException | RuntimeException e) {
+                System.err.println("Failed to send the statistics to a client: " + e.getMessage());
+            }
+        }
+        if (sendTrending) {
+            sentTrending = top10;
+        }
+        if (sendBarrels) {
+            sentBarrels = activeBarrels;
+        }
+        lastSent = System.nanoTime();
+    }
+
+    /**
+     * The sample method is used to get the current value of a statistic.
+     * @param <T> type of the statistic
+     * @param sampler source of the statistic
+     * @return value of the statistic, or null if it could not be sampled
+     */
+    private static <T> T sample(Sampler<T> sampler) {
+        try {
+            return sampler.sample();
+        } catch (RemoteException | RuntimeException e) {
+            System.err.println("Failed to sample the statistics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The Sampler interface is the source of a statistic sent to the clients.
+     * @param <T> type of the statistic
+     */
+    public interface Sampler<T> {
+        /**
+         * The sample method is used to get the current value of the statistic.
+         * @return value of the statistic
+         * @throws RemoteException if the barrels cannot be asked
+         */
+        T sample() throws RemoteException;
+    }
+}
@@ -0,0 +1,89 @@
+package com.googol.googolfe.server.stats;
+
+import java.util.List;
+
+/**
+ * The TrendingSearches class counts the terms searched in the last 5 minutes, the last hour and the last day.
+ */
+public class TrendingSearches {
+    /**
+     * The Window enum lists the time windows of the trending searches.
+     */
+    public enum Window {
+        LAST_5_MINUTES("Last 5 minutes", 60, 5_000L),
+        LAST_HOUR("Last hour", 60, 60_000L),
+        LAST_DAY("Last day", 96, 900_000L);
+
+        /**
+         * The name of the window shown to the users.
+         */
+        private final String label;
+
+        /**
+         * The number of buckets of the window.
+         */
+        private final int buckets;
+
+        /**
+         * The duration of a bucket, in milliseconds.
+         */
+        private final long bucketMillis;
+
+        /**
+         * The Window constructor is used to describe a time window.
+         * @param label name of the window shown to the users
+         * @param buckets number of buckets of the window
+         * @param bucketMillis duration of a bucket, in milliseconds
+         */
+        Window(String label, int buckets, long bucketMillis) {
+            this.label = label;
+            this.buckets = buckets;
+            this.bucketMillis = bucketMillis;
+        }
+
+        /**
+         * The getLabel method is used to get the name of the window shown to the users.
+         * @return name of the window
+         */
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * The windows, in the order of Window.
+     */
+    private final TrendingWindow[] windows;
+
+    /**
+     * The TrendingSearches constructor is used to create empty windows.
+     * @param capacity number of counters of the sketch of each bucket
+     */
+    public TrendingSearches(int capacity) {
+        windows = new TrendingWindow[Window.values().length];
+        for (Window window : Window.values()) {
+            windows[window.ordinal()] = new TrendingWindow(window.buckets, window.bucketMillis, capacity);
+        }
+    }
+
+    /**
+     * The record method is used to count a searched term in every window.
+     * @param term normalized term searched
+     */
+    public void record(String term) {
+        long now = System.currentTimeMillis();
+        for (TrendingWindow window : windows) {
+            window.record(term, now);
+        }
+    }
+
+    /**
+     * The top method is used to get the most searched terms of a window, by decreasing count.
+     * @param window time window
+     * @param k maximum number of terms
+     * @return counters of the most searched terms
+     */
+    public List<SpaceSaving.Counter> top(Window window, int k) {
+        return windows[window.ordinal()].top(k, System.currentTimeMillis());
+    }
+}
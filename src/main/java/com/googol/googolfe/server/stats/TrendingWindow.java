@@ -0,0 +1,123 @@
+package com.googol.googolfe.server.stats;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The TrendingWindow class counts the terms searched in a sliding time window.
+ * The window is a ring of buckets of fixed duration, each with its own SpaceSaving sketch, so old
+ * searches expire a bucket at a time by reusing its slot, and the memory used is fixed.
+ * Reading the window merges the sketches of its buckets. The merge of the closed buckets is kept until
+ * a new bucket starts, so a read only adds the counters of the current bucket to it.
+ */
+public class TrendingWindow {
+    /**
+     * The duration of a bucket, in milliseconds.
+     */
+    private final long bucketMillis;
+
+    /**
+     * The number of counters of the sketch of each bucket.
+     */
+    private final int capacity;
+
+    /**
+     * The sketches of the buckets, null for a bucket never used.
+     */
+    private final SpaceSaving[] buckets;
+
+    /**
+     * The epoch (start time / bucketMillis) of each bucket.
+     */
+    private final long[] epochs;
+
+    /**
+     * The merged counts and errors of the closed buckets of the window.
+     */
+    private HashMap<String, long[]> closed;
+
+    /**
+     * The epoch of the current bucket when the closed buckets were merged.
+     */
+    private long closedEpoch;
+
+    /**
+     * The TrendingWindow constructor is used to create an empty window.
+     * @param buckets number of buckets of the window
+     * @param bucketMillis duration of a bucket, in milliseconds
+     * @param capacity number of counters of the sketch of each bucket
+     */
+    public TrendingWindow(int buckets, long bucketMillis, int capacity) {
+        this.bucketMillis = bucketMillis;
+        this.capacity = capacity;
+        this.buckets = new SpaceSaving[buckets];
+        this.epochs = new long[buckets];
+        this.closedEpoch = -1;
+    }
+
+    /**
+     * The record method is used to count a searched term.
+     * @param term normalized term searched
+     * @param now current time, in milliseconds
+     */
+    public synchronized void record(String term, long now) {
+        long epoch = now / bucketMillis;
+        int slot = (int) (epoch % buckets.length);
+        if (buckets[slot] == null || epochs[slot] != epoch) {
+            // The slot held a bucket that left the window
+            buckets[slot] = new SpaceSaving(capacity);
+            epochs[slot] = epoch;
+        }
+        buckets[slot].offer(term, 1);
+    }
+
+    /**
+     * The top method is used to get the most searched terms of the window, by decreasing count.
+     * @param k maximum number of terms
+     * @param now current time, in milliseconds
+     * @return counters of the most searched terms
+     */
+    public synchronized List<SpaceSaving.Counter> top(int k, long now) {
+        long epoch = now / bucketMillis;
+        if (closed == null || closedEpoch != epoch) {
+            closed = new HashMap<>();
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != null && epochs[i] < epoch && epochs[i] > epoch - buckets.length) {
+                    add(closed, buckets[i]);
+                }
+            }
+            closedEpoch = epoch;
+        }
+        HashMap<String, long[]> merged = closed;
+        int slot = (int) (epoch % buckets.length);
+        if (buckets[slot] != null && epochs[slot] == epoch) {
+            merged = new HashMap<>(closed.size() * 2);
+            for (Map.Entry<String, long[]> entry : closed.entrySet()) {
+                merged.put(entry.getKey(), entry.getValue().clone());
+            }
+            add(merged, buckets[slot]);
+        }
+        List<SpaceSaving.Counter> result = new ArrayList<>(merged.size());
+        for (Map.Entry<String, long[]> entry : merged.entrySet()) {
+            result.add(new SpaceSaving.Counter(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        result.sort(Comparator.comparingLong(SpaceSaving.Counter::getCount).reversed().thenComparing(SpaceSaving.Counter::getItem));
+        return result.subList(0, Math.min(Math.max(k, 0), result.size()));
+    }
+
+    /**
+     * The add method is used to add the counters of a bucket to merged counts.
+     * @param merged merged counts and errors of each term
+     * @param bucket sketch of the bucket
+     */
+    private void add(HashMap<String, long[]> merged, SpaceSaving bucket) {
+        for (SpaceSaving.Counter counter : bucket.top(capacity)) {
+            long[] sum = merged.computeIfAbsent(counter.getItem(), item -> new long[2]);
+            sum[0] += counter.getCount();
+            sum[1] += counter.getError();
+        }
+    }
+}
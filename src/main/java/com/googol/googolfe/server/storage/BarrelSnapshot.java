@@ -0,0 +1,162 @@
+package com.googol.googolfe.server.storage;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import com.googol.googolfe.server.index.DocDictionary;
+
+/**
+ * The BarrelSnapshot class is a checkpoint of the data of a barrel, with the write-ahead log
+ * segment to replay after loading it.
+ * The inverted index is not included, its segments are stored in their own files.
+ * The links are stored as sorted arrays of doc IDs. The snapshots saved when they were sets of doc IDs have
+ * the same serialized fields, and their links are converted when they are read.
+ */
+public class BarrelSnapshot implements Serializable {
+    private static final long serialVersionUID = 3L;
+
+    /**
+     * The dictionary of the doc IDs.
+     */
+    private final DocDictionary docs;
+
+    /**
+     * The links of each page, as sorted doc IDs.
+     */
+    private final HashMap<Integer, int[]> pageLinks;
+
+    /**
+     * The pages linking to each page, as sorted doc IDs.
+     */
+    private final Map<Integer, int[]> linkedPage;
+
+    /**
+     * The title and citation of each page.
+     */
+    private final Map<Integer, LinkedHashSet<String>> titleCitation;
+
+    /**
+     * The first write-ahead log segment not included in the snapshot.
+     */
+    private final long walSegment;
+
+    /**
+     * The BarrelSnapshot constructor is used to create a checkpoint of the data of a barrel.
+     * @param docs dictionary of the doc IDs
+     * @param pageLinks links of each page, as sorted doc IDs
+     * @param linkedPage pages linking to each page, as sorted doc IDs
+     * @param titleCitation title and citation of each page
+     * @param walSegment first write-ahead log segment not included in the snapshot
+     */
+    public BarrelSnapshot(DocDictionary docs, HashMap<Integer, int[]> pageLinks,
+            Map<Integer, int[]> linkedPage, Map<Integer, LinkedHashSet<String>> titleCitation, long walSegment) {
+        this.docs = docs;
+        this.pageLinks = pageLinks;
+        this.linkedPage = linkedPage;
+        this.titleCitation = titleCitation;
+        this.walSegment = walSegment;
+    }
+
+    /**
+     * The getDocs method is used to get the dictionary of the doc IDs.
+     * @return dictionary of the doc IDs
+     */
+    public DocDictionary getDocs() {
+        return docs;
+    }
+
+    /**
+     * The getPageLinks method is used to get the links of each page.
+     * @return links of each page, as sorted doc IDs
+     */
+    public HashMap<Integer, int[]> getPageLinks() {
+        return pageLinks;
+    }
+
+    /**
+     * The getLinkedPage method is used to get the pages linking to each page.
+     * @return pages linking to each page, as sorted doc IDs
+     */
+    public Map<Integer, int[]> getLinkedPage() {
+        return linkedPage;
+    }
+
+    /**
+     * The getTitleCitation method is used to get the title and citation of each page.
+     * @return title and citation of each page
+     */
+    public Map<Integer, LinkedHashSet<String>> getTitleCitation() {
+        return titleCitation;
+    }
+
+    /**
+     * The getWalSegment method is used to get the first write-ahead log segment to replay after the snapshot.
+     * @return segment number
+     */
+    public long getWalSegment() {
+        return walSegment;
+    }
+
+    /**
+     * The linkArray method is used to turn links loaded as a collection of doc IDs into a sorted array.
+     * @param links doc IDs of the links
+     * @return distinct doc IDs, in increasing order
+     */
+    public static int[] linkArray(Collection<Integer> links) {
+        int[] array = new int[links.size()];
+        int n = 0;
+        for (int link : links) {
+            array[n++] = link;
+        }
+        return linkArray(array, n);
+    }
+
+    /**
+     * The linkArray method is used to turn the doc IDs of the links of a page into a sorted array.
+     * @param links doc IDs of the links, in any order and possibly repeated
+     * @param count number of doc IDs of links to use
+     * @return distinct doc IDs, in increasing order
+     */
+    public static int[] linkArray(int[] links, int count) {
+        int[] array = Arrays.copyOf(links, count);
+        Arrays.sort(array);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || array[i] != array[distinct - 1]) {
+                array[distinct++] = array[i];
+            }
+        }
+        return distinct == count ? array : Arrays.copyOf(array, distinct);
+    }
+
+    /**
+     * The readObject method is used to read a snapshot, converting the links saved as sets of doc IDs.
+     * @param in stream the snapshot is read from
+     * @throws IOException if the stream cannot be read
+     * @throws ClassNotFoundException if a class of the snapshot is missing
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        convertLinks(pageLinks);
+        convertLinks(linkedPage);
+    }
+
+    /**
+     * The convertLinks method is used to replace the sets of doc IDs of a map read from an older snapshot.
+     * @param links links read, whose values may still be sets
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void convertLinks(Map<Integer, int[]> links) {
+        for (Map.Entry entry : ((Map<Integer, Object>) (Map) links).entrySet()) {
+            if (entry.getValue() instanceof Collection) {
+                entry.setValue(linkArray((Collection<Integer>) entry.getValue()));
+            }
+        }
+    }
+}
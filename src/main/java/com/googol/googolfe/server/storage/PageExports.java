@@ -0,0 +1,219 @@
+package com.googol.googolfe.server.storage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+import com.googol.googolfe.server.index.IndexView;
+import com.googol.googolfe.server.index.RoaringPostings;
+import com.googol.googolfe.server.net.HashRing;
+
+/**
+ * The PageExports class keeps the pages of some arcs of the ring a barrel is copying to another barrel, batch
+ * by batch, when the pages move between barrels.
+ * The pages of the arcs are selected once per copy, from a view of the index taken when the copy starts, and
+ * their terms are rebuilt for many batches in each pass over the vocabulary of the segments, instead of once
+ * per batch. A copy not read for longer than the idle timeout is dropped.
+ */
+public class PageExports {
+    /**
+     * The number of nanoseconds a copy is kept without being read.
+     */
+    private final long idleNanos;
+
+    /**
+     * The maximum number of pages whose terms are rebuilt in one pass.
+     */
+    private final int chunkSize;
+
+    /**
+     * The copies in progress, by the arcs they copy.
+     */
+    private final Map<String, Export> exports;
+
+    /**
+     * The PageExports constructor is used to create an exporter with no copies in progress.
+     * @param idleMillis number of milliseconds a copy is kept without being read
+     * @param chunkSize maximum number of pages whose terms are rebuilt in one pass
+     */
+    public PageExports(long idleMillis, int chunkSize) {
+        this.idleNanos = idleMillis * 1_000_000L;
+        this.chunkSize = Math.max(1, chunkSize);
+        exports = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * The next method is used to get a batch of the pages of some arcs. A copy starts when the first batch
+     * is asked, selecting the pages of the arcs in the current view; the next batches are read from it.
+     * @param view current view of the index, used when a copy starts
+     * @param urls url of each doc ID
+     * @param ranges start and end of each arc
+     * @param fromDoc first doc ID of the batch, 0 to start a copy
+     * @param max maximum number of pages of the batch
+     * @return pages of the batch with their terms, and the first doc ID of the next batch
+     */
+    public synchronized Batch next(IndexView view, IntFunction<String> urls, long[] ranges, int fromDoc, int max) {
+        expire();
+        String key = Arrays.toString(ranges);
+        Export export = fromDoc > 0 ? exports.get(key) : null;
+        if (export == null) {
+            // A copy whose session expired restarts from the current view at the doc it reached
+            export = new Export(view, select(view, urls, ranges));
+            exports.put(key, export);
+        }
+        export.lastRead = System.nanoTime();
+        int[] selected = export.selected;
+        int from = Arrays.binarySearch(selected, Math.max(0, fromDoc));
+        from = from < 0 ? -from - 1 : from;
+        int to = Math.min(selected.length, from + Math.max(0, max));
+        if (from < export.chunkStart || to > export.chunkEnd) {
+            export.chunkStart = from;
+            export.chunkEnd = Math.min(selected.length, from + Math.max(chunkSize, to - from));
+            int[] chunk = Arrays.copyOfRange(selected, export.chunkStart, export.chunkEnd);
+            export.terms = export.view.documents(RoaringPostings.of(chunk, chunk.length));
+        }
+        Batch batch = new Batch(Arrays.copyOfRange(selected, from, to), export.terms, to < selected.length ? selected[to] : -1);
+        if (to >= selected.length) {
+            exports.remove(key);
+        }
+        return batch;
+    }
+
+    /**
+     * The select method is used to find the live pages of a view in some arcs.
+     * @param view view of the index
+     * @param urls url of each doc ID
+     * @param ranges start and end of each arc
+     * @return doc IDs of the pages, in increasing order
+     */
+    private static int[] select(IndexView view, IntFunction<String> urls, long[] ranges) {
+        RoaringPostings live = view.allDocs();
+        int[] selected = new int[live.cardinality()];
+        int[] found = new int[1];
+        live.forEach(doc -> {
+            if (HashRing.inRanges(HashRing.hash(urls.apply(doc)), ranges)) {
+                selected[found[0]++] = doc;
+            }
+        });
+        return Arrays.copyOf(selected, found[0]);
+    }
+
+    /**
+     * The expire method is used to drop the copies not read within the idle timeout.
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        Iterator<Export> iterator = exports.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastRead >= idleNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * The Export class is a copy in progress.
+     */
+    private static final class Export {
+        /**
+         * The view of the index the pages are read from.
+         */
+        final IndexView view;
+
+        /**
+         * The doc IDs of the pages of the arcs, in increasing order.
+         */
+        final int[] selected;
+
+        /**
+         * The position in selected of the first page whose terms were rebuilt.
+         */
+        int chunkStart;
+
+        /**
+         * The position in selected after the last page whose terms were rebuilt.
+         */
+        int chunkEnd;
+
+        /**
+         * The terms of the pages rebuilt, by doc ID.
+         */
+        Map<Integer, String[]> terms;
+
+        /**
+         * The time the copy was last read, in nanoseconds.
+         */
+        long lastRead;
+
+        /**
+         * The Export constructor is used to start a copy with no terms rebuilt.
+         * @param view view of the index the pages are read from
+         * @param selected doc IDs of the pages of the arcs, in increasing order
+         */
+        Export(IndexView view, int[] selected) {
+            this.view = view;
+            this.selected = selected;
+            this.terms = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * The Batch class is a batch of the pages of a copy.
+     */
+    public static final class Batch {
+        /**
+         * The doc IDs of the pages, in increasing order.
+         */
+        private final int[] docs;
+
+        /**
+         * The terms of the pages, by doc ID, which may hold other pages too.
+         */
+        private final Map<Integer, String[]> terms;
+
+        /**
+         * The first doc ID of the next batch, or -1 if the batch is the last.
+         */
+        private final int nextDoc;
+
+        /**
+         * The Batch constructor is used to create a batch of pages.
+         * @param docs doc IDs of the pages
+         * @param terms terms of the pages, by doc ID
+         * @param nextDoc first doc ID of the next batch, or -1 if the batch is the last
+         */
+        Batch(int[] docs, Map<Integer, String[]> terms, int nextDoc) {
+            this.docs = docs;
+            this.terms = terms;
+            this.nextDoc = nextDoc;
+        }
+
+        /**
+         * The getDocs method is used to get the doc IDs of the pages.
+         * @return doc IDs, in increasing order
+         */
+        public int[] getDocs() {
+            return docs;
+        }
+
+        /**
+         * The getTerms method is used to get the terms of a page of the batch.
+         * @param doc doc ID of the page
+         * @return terms of the page in order, with null at the positions of the terms of other shards
+         */
+        public String[] getTerms(int doc) {
+            return terms.getOrDefault(doc, new String[0]);
+        }
+
+        /**
+         * The getNextDoc method is used to get where the next batch starts.
+         * @return first doc ID of the next batch, or -1 if the batch is the last
+         */
+        public int getNextDoc() {
+            return nextDoc;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.googol.googolfe.server.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The Snapshots class writes and reads the checkpoints of a barrel.
+ * A snapshot is written to a temporary file, forced to disk and then renamed over the previous one,
+ * so a crash while checkpointing always leaves a complete snapshot behind.
+ */
+public final class Snapshots {
+    /**
+     * The Snapshots constructor is private because the class only has static methods.
+     */
+    private Snapshots() {
+    }
+
+    /**
+     * The serialize method is used to turn a state into bytes, so it can be written without holding its lock.
+     * @param state state to serialize
+     * @return serialized state
+     * @throws IOException if the state cannot be serialized
+     */
+    public static byte[] serialize(Object state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(state);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The write method is used to atomically replace a snapshot file.
+     * @param path path of the snapshot file
+     * @param data serialized state
+     * @throws IOException if there is an error writing
+     */
+    public static void write(String path, byte[] data) throws IOException {
+        File tmp = new File(path + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        Files.move(tmp.toPath(), new File(path).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The read method is used to read a snapshot file.
+     * @param <T> type of the state
+     * @param path path of the snapshot file
+     * @param type class of the state
+     * @return state read, or null if the file does not exist or does not hold a state of the given type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T read(String path, Class<T> type) {
+        File file = new File(path);
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Object state = in.readObject();
+            return type.isInstance(state) ? (T) state : null;
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Error reading snapshot " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package com.googol.googolfe.server.storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+import com.googol.googolfe.objects.TransferInfo;
+import com.googol.googolfe.server.index.IndexView;
+import com.googol.googolfe.server.index.SegmentedIndex;
+import com.googol.googolfe.server.interfaces.IBarrel;
+
+/**
+ * The StateTransfer class copies the data of a barrel to a barrel that is joining, so the new barrel
+ * starts from the state of a healthy one instead of waiting for the pages to be crawled again.
+ * The barrel sending its state keeps each transfer as a session with several parts: its snapshot, serialized
+ * in memory, and its index, exported to temporary segment files of a bounded size so each of them can be
+ * mapped by the joining barrel. The joining barrel reads every part in chunks, so no single remote call
+ * carries the whole state, and checks them against their CRC32.
+ * A session not read for longer than the idle timeout is dropped, with its temporary files.
+ */
+public class StateTransfer {
+    /**
+     * The part of a transfer holding the snapshot.
+     */
+    public static final int SNAPSHOT = 0;
+
+    /**
+     * The part of a transfer holding the first index segment, followed by the parts of the next segments.
+     */
+    public static final int INDEX = 1;
+
+    /**
+     * The maximum number of bytes read in one call.
+     */
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    /**
+     * The directory of the temporary segment files.
+     */
+    private final String directory;
+
+    /**
+     * The prefix of the temporary segment files.
+     */
+    private final String name;
+
+    /**
+     * The number of nanoseconds a session is kept without being read.
+     */
+    private final long idleNanos;
+
+    /**
+     * The largest size of an index segment file.
+     */
+    private final long segmentBytes;
+
+    /**
+     * The open sessions by ID.
+     */
+    private final Map<Long, Session> sessions;
+
+    /**
+     * The generator of the session IDs.
+     */
+    private final Random random;
+
+    /**
+     * The StateTransfer constructor is used to create a sender with no sessions, deleting the temporary
+     * files left by a process that stopped during a transfer.
+     * @param directory directory of the temporary segment files
+     * @param name prefix of the temporary segment files
+     * @param idleMillis number of milliseconds a session is kept without being read
+     * @param segmentBytes largest size of an index segment file
+     */
+    public StateTransfer(String directory, String name, long idleMillis, long segmentBytes) {
+        this.directory = directory;
+        this.name = name;
+        this.idleNanos = idleMillis * 1_000_000L;
+        this.segmentBytes = segmentBytes;
+        sessions = new ConcurrentHashMap<>();
+        random = new Random();
+        File[] files = new File(directory).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().startsWith(name + "transfer-")) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * The open method is used to open a session sending a snapshot and a view of the index.
+     * The view is immutable, so it is exported without blocking the ingest.
+     * @param snapshot serialized snapshot of the barrel, taken together with the view
+     * @param view view of the index
+     * @return session with the size and checksum of each part
+     * @throws IOException if the index cannot be exported
+     */
+    public TransferInfo open(byte[] snapshot, IndexView view) throws IOException {
+        expire();
+        long id = random.nextLong() & Long.MAX_VALUE;
+        List<Path> index = SegmentedIndex.export(view,
+                i -> new File(directory, name + "transfer-" + id + "-" + i + ".idx").toPath(), segmentBytes);
+        Session session = new Session(snapshot, index);
+        sessions.put(id, session);
+        long[] indexLengths = new long[index.size()];
+        long[] indexCrcs = new long[index.size()];
+        try {
+            for (int i = 0; i < index.size(); i++) {
+                indexLengths[i] = Files.size(index.get(i));
+                indexCrcs[i] = checksum(index.get(i));
+            }
+        } catch (IOException e) {
+            close(id);
+            throw e;
+        }
+        CRC32 snapshotCrc = new CRC32();
+        snapshotCrc.update(snapshot);
+        return new TransferInfo(id, snapshot.length, snapshotCrc.getValue(), indexLengths, indexCrcs);
+    }
+
+    /**
+     * The read method is used to read a chunk of a part of a session.
+     * @param id ID of the session
+     * @param part part to read, SNAPSHOT or INDEX plus the position of an index segment
+     * @param offset position of the first byte to read in the part
+     * @param length maximum number of bytes to read, limited to the chunk size
+     * @return bytes read, fewer than asked only at the end of the part
+     * @throws IOException if the session is not open or the part cannot be read
+     */
+    public byte[] read(long id, int part, long offset, int length) throws IOException {
+        Session session = sessions.get(id);
+        if (session == null) {
+            throw new IOException("Unknown transfer session " + id);
+        }
+        session.lastRead = System.nanoTime();
+        length = Math.max(0, Math.min(length, CHUNK_SIZE));
+        if (part == SNAPSHOT) {
+            int start = (int) Math.max(0, Math.min(offset, session.snapshot.length));
+            int end = Math.min(session.snapshot.length, start + length);
+            byte[] chunk = new byte[end - start];
+            System.arraycopy(session.snapshot, start, chunk, 0, chunk.length);
+            return chunk;
+        }
+        if (part < INDEX || part - INDEX >= session.index.size()) {
+            throw new IOException("Unknown transfer part " + part);
+        }
+        try (FileChannel channel = FileChannel.open(session.index.get(part - INDEX), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.max(0, Math.min(length, size - offset)));
+            while (chunk.hasRemaining()) {
+                if (channel.read(chunk, offset + chunk.position()) < 0) {
+                    break;
+                }
+            }
+            return chunk.array();
+        }
+    }
+
+    /**
+     * The close method is used to close a session and delete its temporary files.
+     * @param id ID of the session
+     */
+    public void close(long id) {
+        Session session = sessions.remove(id);
+        if (session != null) {
+            session.delete();
+        }
+    }
+
+    /**
+     * The closeAll method is used to close every session, when the barrel shuts down.
+     */
+    public void closeAll() {
+        for (Long id : sessions.keySet()) {
+            close(id);
+        }
+    }
+
+    /**
+     * The expire method is used to close the sessions not read within the idle timeout.
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, Session>> iterator = sessions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Session> entry = iterator.next();
+            if (now - entry.getValue().lastRead >= idleNanos) {
+                iterator.remove();
+                entry.getValue().delete();
+            }
+        }
+    }
+
+    /**
+     * The fetch method is used by a joining barrel to copy the state of a peer.
+     * The session is always closed, even if the copy fails, so the peer deletes its temporary files, and the
+     * index segments copied are deleted if the copy fails.
+     * @param peer barrel to copy the state from
+     * @param snapshotPath path the snapshot is written to
+     * @param indexPaths path each index segment is written to, by its position
+     * @return paths of the index segments copied, in the order to install them
+     * @throws IOException if the peer cannot be reached, or a part is truncated or corrupted
+     */
+    public static List<Path> fetch(IBarrel peer, Path snapshotPath, IntFunction<Path> indexPaths) throws IOException {
+        TransferInfo info = peer.openTransfer();
+        try {
+            fetchPart(peer, info.getSession(), SNAPSHOT, info.getSnapshotLength(), info.getSnapshotCrc(), snapshotPath);
+            List<Path> index = new ArrayList<>();
+            try {
+                for (int i = 0; i < info.getIndexLengths().length; i++) {
+                    index.add(indexPaths.apply(i));
+                    fetchPart(peer, info.getSession(), INDEX + i, info.getIndexLengths()[i], info.getIndexCrcs()[i], index.get(i));
+                }
+            } catch (IOException e) {
+                for (Path path : index) {
+                    path.toFile().delete();
+                }
+                throw e;
+            }
+            return index;
+        } finally {
+            try {
+                peer.closeTransfer(info.getSession());
+            } catch (RemoteException e) {
+            }
+        }
+    }
+
+    /**
+     * The fetchPart method is used to copy a part of a session to a file, chunk by chunk.
+     * @param peer barrel sending the state
+     * @param session ID of the session
+     * @param part part to copy
+     * @param length number of bytes of the part
+     * @param crc CRC32 of the part
+     * @param path path the part is written to
+     * @throws IOException if a chunk cannot be read or the part does not match its length and checksum
+     */
+    private static void fetchPart(IBarrel peer, long session, int part, long length, long crc, Path path) throws IOException {
+        CRC32 received = new CRC32();
+        long offset = 0;
+        try (FileOutputStream out = new FileOutputStream(path.toFile())) {
+            while (offset < length) {
+                byte[] chunk = peer.readTransfer(session, part, offset, (int) Math.min(CHUNK_SIZE, length - offset));
+                if (chunk.length == 0) {
+                    throw new IOException("Transfer part " + part + " truncated at " + offset + " of " + length + " bytes");
+                }
+                out.write(chunk);
+                received.update(chunk);
+                offset += chunk.length;
+            }
+            out.getFD().sync();
+        }
+        if (received.getValue() != crc) {
+            throw new IOException("Transfer part " + part + " does not match its checksum");
+        }
+    }
+
+    /**
+     * The checksum method is used to compute the CRC32 of a file.
+     * @param path path of the file
+     * @return CRC32 of the file
+     * @throws IOException if the file cannot be read
+     */
+    private static long checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * The Session class holds the parts of an open transfer.
+     */
+    private static final class Session {
+        /**
+         * The serialized snapshot.
+         */
+        private final byte[] snapshot;
+
+        /**
+         * The temporary segment files holding the index.
+         */
+        private final List<Path> index;
+
+        /**
+         * The time the session was last read, in nanoseconds.
+         */
+        private volatile long lastRead;
+
+        /**
+         * The Session constructor is used to create a session with its parts.
+         * @param snapshot serialized snapshot
+         * @param index temporary segment files holding the index
+         */
+        Session(byte[] snapshot, List<Path> index) {
+            this.snapshot = snapshot;
+            this.index = index;
+            this.lastRead = System.nanoTime();
+        }
+
+        /**
+         * The delete method is used to delete the temporary files of the session.
+         */
+        void delete() {
+            for (Path path : index) {
+                path.toFile().delete();
+            }
+        }
+    }
+}
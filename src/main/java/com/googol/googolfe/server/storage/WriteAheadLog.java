@@ -0,0 +1,312 @@
+package com.googol.googolfe.server.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * The WriteAheadLog class is an append-only log of the documents applied by a barrel.
+ * Each record is its length, the CRC32 of its payload and the payload, so a record torn by a crash
+ * is detected and dropped on replay.
+ * The log is split in numbered segment files: a checkpoint rolls the log to a new segment, and once
+ * the snapshot is on disk the segments before it are deleted.
+ * Appends only copy the record to a buffer; a commit thread writes the buffered records and forces
+ * them to disk together, so many documents share a single sync (group commit).
+ */
+public class WriteAheadLog {
+    /**
+     * The size of the header of a record: length and CRC32.
+     */
+    private static final int HEADER = 8;
+
+    /**
+     * The directory of the segment files.
+     */
+    private final Path directory;
+
+    /**
+     * The prefix of the segment file names.
+     */
+    private final String name;
+
+    /**
+     * The records appended since the last commit.
+     */
+    private ByteBuffer pending;
+
+    /**
+     * The number of the segment being written.
+     */
+    private long segment;
+
+    /**
+     * The channel of the segment being written.
+     */
+    private FileChannel channel;
+
+    /**
+     * The lock held while writing to the channel, so the commit thread and roll do not interleave.
+     */
+    private final Object ioLock;
+
+    /**
+     * The thread committing the buffered records.
+     */
+    private final Thread committer;
+
+    /**
+     * The boolean used to check if the log is open.
+     */
+    private volatile boolean open;
+
+    /**
+     * The WriteAheadLog constructor is used to open the log, appending to its newest segment.
+     * @param directory directory of the segment files
+     * @param name prefix of the segment file names
+     * @param syncInterval milliseconds between group commits
+     * @throws IOException if the segment cannot be opened
+     */
+    public WriteAheadLog(String directory, String name, long syncInterval) throws IOException {
+        this.directory = Paths.get(directory);
+        this.name = name;
+        this.ioLock = new Object();
+        this.pending = ByteBuffer.allocate(64 * 1024);
+        List<Long> segments = segments();
+        segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        channel = openSegment(segment);
+        // Drop a record torn by a crash, so the new records are not appended after it
+        channel.truncate(validLength(ByteBuffer.wrap(Files.readAllBytes(segmentPath(segment)))));
+        open = true;
+        committer = new Thread(() -> {
+            while (open) {
+                try {
+                    Thread.sleep(syncInterval);
+                    commit();
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Error committing write-ahead log: " + e.getMessage());
+                }
+            }
+        }, name + "-wal");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * The append method is used to add a record to the log.
+     * The record is durable after the next group commit.
+     * @param payload content of the record
+     */
+    public synchronized void append(byte[] payload) {
+        if (pending.remaining() < HEADER + payload.length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + HEADER + payload.length));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        pending.putInt(payload.length);
+        pending.putInt((int) crc.getValue());
+        pending.put(payload);
+    }
+
+    /**
+     * The commit method is used to write the buffered records and force them to disk.
+     * @throws IOException if there is an error writing
+     */
+    public void commit() throws IOException {
+        synchronized (ioLock) {
+            write(takePending());
+            channel.force(false);
+        }
+    }
+
+    /**
+     * The roll method is used to commit the current segment and start a new one.
+     * The records appended after the roll are only in the new segment.
+     * @return number of the new segment
+     * @throws IOException if there is an error writing or creating the segment
+     */
+    public long roll() throws IOException {
+        synchronized (ioLock) {
+            ByteBuffer batch;
+            long next;
+            synchronized (this) {
+                batch = takePending();
+                next = segment + 1;
+            }
+            write(batch);
+            channel.force(false);
+            channel.close();
+            channel = openSegment(next);
+            synchronized (this) {
+                segment = next;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * The replay method is used to read the records of the segments from a given one on, in order.
+     * A torn or corrupted record ends the replay of its segment.
+     * @param from number of the first segment to replay
+     * @param consumer action to run for each record
+     * @return number of records replayed
+     * @throws IOException if there is an error reading
+     */
+    public int replay(long from, Consumer<byte[]> consumer) throws IOException {
+        int count = 0;
+        for (long s : segments()) {
+            if (s < from) {
+                continue;
+            }
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segmentPath(s)));
+            byte[] payload;
+            while ((payload = readRecord(data)) != null) {
+                consumer.accept(payload);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The readRecord method is used to read the next record of a segment, checking its CRC32.
+     * @param data content of the segment, positioned at the record
+     * @return payload of the record, or null if there is no valid record left
+     */
+    private static byte[] readRecord(ByteBuffer data) {
+        if (data.remaining() < HEADER) {
+            return null;
+        }
+        int length = data.getInt();
+        int checksum = data.getInt();
+        if (length < 0 || length > data.remaining()) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        data.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    /**
+     * The validLength method is used to get the length of the valid records at the start of a segment.
+     * @param data content of the segment
+     * @return number of bytes of the valid records
+     */
+    private static long validLength(ByteBuffer data) {
+        long length = 0;
+        while (readRecord(data) != null) {
+            length = data.position();
+        }
+        return length;
+    }
+
+    /**
+     * The deleteBefore method is used to delete the segments covered by a snapshot.
+     * @param from number of the first segment to keep
+     */
+    public void deleteBefore(long from) {
+        for (long s : segments()) {
+            if (s < from) {
+                segmentPath(s).toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * The close method is used to commit the buffered records and stop the commit thread.
+     */
+    public void close() {
+        open = false;
+        committer.interrupt();
+        try {
+            synchronized (ioLock) {
+                write(takePending());
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing write-ahead log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The takePending method is used to get the buffered records and start a new buffer.
+     * @return buffered records, ready to be written
+     */
+    private synchronized ByteBuffer takePending() {
+        ByteBuffer batch = pending;
+        pending = ByteBuffer.allocate(batch.capacity());
+        batch.flip();
+        return batch;
+    }
+
+    /**
+     * The write method is used to write records to the current segment.
+     * @param batch records to write
+     * @throws IOException if there is an error writing
+     */
+    private void write(ByteBuffer batch) throws IOException {
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+    }
+
+    /**
+     * The segments method is used to get the numbers of the existing segments, in increasing order.
+     * @return segment numbers
+     */
+    private List<Long> segments() {
+        List<Long> result = new ArrayList<>();
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            String prefix = name + "-";
+            for (File file : files) {
+                String fileName = file.getName();
+                if (fileName.startsWith(prefix) && fileName.endsWith(".wal")) {
+                    try {
+                        result.add(Long.parseLong(fileName.substring(prefix.length(), fileName.length() - 4)));
+                    } catch (NumberFormatException e) {
+                        // Not a segment of this log
+                    }
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * The openSegment method is used to open a segment for appending.
+     * @param s number of the segment
+     * @return channel positioned at the end of the segment
+     * @throws IOException if the segment cannot be opened
+     */
+    private FileChannel openSegment(long s) throws IOException {
+        return FileChannel.open(segmentPath(s), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * The segmentPath method is used to get the path of a segment.
+     * @param s number of the segment
+     * @return path of the segment file
+     */
+    private Path segmentPath(long s) {
+        return directory.resolve(name + "-" + s + ".wal");
+    }
+}
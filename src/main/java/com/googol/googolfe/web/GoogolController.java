@@ -29,7 +29,7 @@ import java.util.logging.SimpleFormatter;
 
 import com.googol.googolfe.server.interfaces.IGatewayCli;
 import com.googol.googolfe.objects.HackerNewsItemRecord;
-import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
 import com.googol.googolfe.server.interfaces.IClient;
 import com.googol.googolfe.objects.BrlObj;
 import com.googol.googolfe.objects.HNRequestBody;
@@ -45,6 +45,11 @@ public class GoogolController extends UnicastRemoteObject implements IClient {
 
    private static final Logger logger = Logger.getLogger(GoogolController.class.getName());
 
+   /**
+    * The number of search results shown in each page.
+    */
+   private static final int RESULTS_PER_PAGE = 10;
+
    /**
    * The IP address of the gateway RMI server.
    */
@@ -141,13 +146,15 @@ public class GoogolController extends UnicastRemoteObject implements IClient {
    }
 
    /**
-    * Displays the search page with the search results.
+    * Displays a page of the search results.
+    * Only the results of the requested page are fetched from the gateway.
     * @param model the Spring model
     * @param query the search query
+    * @param page the number of the page to display, starting at 1
     * @return the name of the HTML template to render
     */
    @GetMapping("/search")
-   public String showSearchPage(Model model, @RequestParam() String query) {
+   public String showSearchPage(Model model, @RequestParam() String query, @RequestParam(defaultValue = "1") int page) {
       // If the gateway is not connected, try to connect to it
       if (gw == null) {
          gw = connectToGateway();
@@ -163,52 +170,31 @@ public class GoogolController extends UnicastRemoteObject implements IClient {
             return "error";
          }
       }
+      page = Math.max(page, 1);
       // Perform the search
-      String result = null;
       try {
-         result = gw.search(query);
-         if (result != null) {
-           if (result.equals("")) {
-             logger.warning("No results found.");
-             model.addAttribute("group", "No results found.");
-           } else {
-               // Parse the results
-               String[] parts;
-               String[] new_parts = new String[3];
-               String[] results = result.split("<>");
-               if (results.length != 0){
-                  try {
-                  Result[] res = new Result[results.length];
-                  for (int i = 0; i < results.length; i++) {
-                     parts = results[i].split("\n");
-                     if (parts.length == 2){
-                        new_parts[0] = parts[0];
-                        new_parts[1] = "";
-                        new_parts[2] = parts[1];
-                     }else{
-                        new_parts[0] = parts[0];
-                        new_parts[1] = parts[1];
-                        new_parts[2] = parts[2];
-                     }
-                     res[i] = new Result(new_parts[0], new_parts[1], new_parts[2]);
-                  }
-            
-                  model.addAttribute("group", res);
-               } catch (ArrayIndexOutOfBoundsException e) {
-                  logger.warning("Error parsing search results.");
-                  model.addAttribute("group", "No results found.");
-               }
-               }
-           }
-         } else {
+         SearchPage result = gw.search(query, (page - 1) * RESULTS_PER_PAGE, RESULTS_PER_PAGE);
+         if (result == null) {
+            logger.warning("No barrels available.");
+            model.addAttribute("group", "No barrels available.");
+         } else if (result.getResults().isEmpty()) {
             logger.warning("No results found.");
             model.addAttribute("group", "No results found.");
+         } else {
+            model.addAttribute("group", result.getResults());
+            model.addAttribute("totalHits", result.getTotalHits());
+            model.addAttribute("partial", result.isPartial());
+            // The barrels only rank a bounded window, so there are no pages after an incomplete one
+            boolean hasNext = result.getResults().size() == RESULTS_PER_PAGE
+                  && result.getOffset() + RESULTS_PER_PAGE < result.getTotalHits();
+            model.addAttribute("hasNext", hasNext);
          }
       } catch (RemoteException e) {
          logger.warning("Error occurred during search.");
          model.addAttribute("group", "Error occurred during search.");
       }
       model.addAttribute("query", query);
+      model.addAttribute("page", page);
       return "search";
    }
 
@@ -289,14 +275,10 @@ public class GoogolController extends UnicastRemoteObject implements IClient {
          ArrayList<BrlObj> barrels = gw.getActiveBarrels();
          if (barrels != null)
             model.addAttribute("barrels", barrels);
-         String stringTop10 = gw.getTop10Searches();
-         ArrayList<Top10Obj> top10 = new ArrayList<>();
-         String[] top10Array = stringTop10.split("\n");
-         for (String top : top10Array) {
-            String[] split = top.split(" - ");
-            top10.add(new Top10Obj(split[0], Integer.parseInt(split[1])));
-         }
-         model.addAttribute("searches", top10);
+         // The trending searches come grouped by time window, in the order of the windows
+         model.addAttribute("trending", gw.getTrendingSearches());
+         // Searches answered by the barrel call of a concurrent identical search
+         model.addAttribute("coalesced", gw.getCoalescedSearches());
       } catch (RemoteException e) {
          model.addAttribute("error", "Error occurred while getting barrels and top 10 searches.");
          return "error";
@@ -36,12 +36,18 @@ function updateBarrelsTable(data) {
 }
 
 function updateSearchesTable(data) {
-	// Clear existing table rows
-	var tableBody = document.getElementById("searches-table-body");
-	tableBody.innerHTML = "";
+	// Clear existing table rows, one table per time window
+	var tableBodies = document.querySelectorAll(".searches-table-body");
+	tableBodies.forEach(function (tableBody) {
+		tableBody.innerHTML = "";
+	});
 
-	// Update table
+	// Update the table of the window of each search
 	data.forEach(function (search) {
+		var tableBody = document.querySelector('.searches-table-body[data-window="' + search.window + '"]');
+		if (tableBody == null) {
+			return;
+		}
 		var row = tableBody.insertRow();
 		var queryCell = row.insertCell();
 		var countCell = row.insertCell();
@@ -1,56 +1,30 @@
 // Execute when the DOM content is loaded
 document.addEventListener("DOMContentLoaded", () => {
-	const results = document.querySelectorAll(".resultItem");
 	const prevButton = document.getElementById("prevPage");
 	const nextButton = document.getElementById("nextPage");
 	const hackerNewsButton = document.getElementById("hackerNews");
 	const adviceButton = document.getElementById("advice");
-	const currentPageDisplay = document.getElementById("currentPage");
-	const query = window.location.search.split("=")[1];
+	const params = new URLSearchParams(window.location.search);
+	const query = params.get("query");
 
-	// Initialize current page
-	let currentPage = 1;
-
-	// Check if there are results available
-	if (
-		groupData !== null &&
-		groupData !== "No results found." &&
-		groupData !== "No barrels available." &&
-		groupData !== "Error occurred during search."
-	) {
-		const resultsPerPage = 10;
-		const totalPages = Math.ceil(results.length / resultsPerPage);
-
-		// Function to display a page of results
-		function showPage(page) {
-			for (let i = 0; i < results.length; i++) {
-				results[i].style.display = "none";
-			}
-			const startIndex = (page - 1) * resultsPerPage;
-			const endIndex = startIndex + resultsPerPage;
-			for (let i = startIndex; i < endIndex && i < results.length; i++) {
-				results[i].style.display = "block";
-			}
-			currentPageDisplay.textContent = `Page ${page}`;
-		}
-
-		// Show the initial page
-		showPage(currentPage);
+	// Function to load a page of results from the server
+	function showPage(page) {
+		params.set("page", page);
+		window.location.search = params.toString();
+	}
 
+	// The pagination is only shown when there are results
+	if (prevButton !== null && nextButton !== null) {
 		// Event listener for previous page button
 		prevButton.addEventListener("click", () => {
 			if (currentPage > 1) {
-				currentPage--;
-				showPage(currentPage);
+				showPage(currentPage - 1);
 			}
 		});
 
 		// Event listener for next page button
 		nextButton.addEventListener("click", () => {
-			if (currentPage < totalPages) {
-				currentPage++;
-				showPage(currentPage);
-			}
+			showPage(currentPage + 1);
 		});
 	}
 
@@ -0,0 +1,158 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PageRankTest {
+
+    private static final double UNRANKED = Math.log1p(1 - PageRank.DAMPING);
+
+    @Test
+    void emptyGraphHasNoRanks() {
+        PageRank pageRank = new PageRank(1);
+        assertEquals(0, pageRank.compute(0, new int[0], new int[0], 0));
+        assertEquals(UNRANKED, pageRank.scores().get(0), 1e-6);
+        assertEquals(UNRANKED, pageRank.scores().max(), 1e-6);
+    }
+
+    @Test
+    void cycleRanksEveryPageTheSame() {
+        PageRank pageRank = new PageRank(1);
+        pageRank.compute(3, new int[] {0, 1, 2}, new int[] {1, 2, 0}, 3);
+        for (int doc = 0; doc < 3; doc++) {
+            // Every page has the average rank
+            assertEquals(Math.log(2), pageRank.scores().get(doc), 1e-6);
+        }
+        // The pages ingested after the computation are not ranked yet
+        assertEquals(UNRANKED, pageRank.scores().get(3), 1e-6);
+    }
+
+    @Test
+    void ranksConvergeToThePowerIteration() {
+        Random random = new Random(2);
+        int n = 300;
+        int edges = 2000;
+        int[] sources = new int[edges];
+        int[] targets = new int[edges];
+        for (int e = 0; e < edges; e++) {
+            // Skewed targets, so a few pages collect most links
+            sources[e] = random.nextInt(n);
+            targets[e] = (int) (n * Math.pow(random.nextDouble(), 3));
+        }
+        PageRank pageRank = new PageRank(1);
+        int iterations = pageRank.compute(n, sources, targets, edges);
+        assertTrue(iterations < PageRank.MAX_ITERATIONS, iterations + " iterations");
+        assertRanks(reference(n, sources, targets, edges), pageRank);
+    }
+
+    @Test
+    void danglingPagesSpreadTheirRank() {
+        // Page 2 and page 3 have no links, page 3 has no incoming links either
+        int[] sources = {0, 1, 0};
+        int[] targets = {1, 2, 2};
+        PageRank pageRank = new PageRank(1);
+        pageRank.compute(4, sources, targets, 3);
+        double[] expected = reference(4, sources, targets, 3);
+        assertRanks(expected, pageRank);
+        assertTrue(pageRank.scores().get(2) > pageRank.scores().get(1));
+        assertTrue(pageRank.scores().get(3) < pageRank.scores().get(0) + 1e-6);
+
+        // Without any links every page only gets random jumps and dangling rank, the average
+        PageRank unlinked = new PageRank(1);
+        unlinked.compute(4, new int[0], new int[0], 0);
+        for (int doc = 0; doc < 4; doc++) {
+            assertEquals(Math.log(2), unlinked.scores().get(doc), 1e-6);
+        }
+    }
+
+    @Test
+    void nextComputationStartsFromThePreviousRanks() {
+        Random random = new Random(4);
+        int n = 300;
+        int edges = 2000;
+        int added = 10;
+        int[] sources = new int[edges + added];
+        int[] targets = new int[edges + added];
+        for (int e = 0; e < edges + added; e++) {
+            sources[e] = random.nextInt(n);
+            targets[e] = (int) (n * Math.pow(random.nextDouble(), 3));
+        }
+        PageRank pageRank = new PageRank(1);
+        pageRank.compute(n, sources, targets, edges);
+        assertTrue(pageRank.compute(n, sources, targets, edges) <= 1);
+
+        // A few new links converge from the previous ranks faster than from scratch, to the same ranks
+        int warm = pageRank.compute(n, sources, targets, edges + added);
+        int cold = new PageRank(1).compute(n, sources, targets, edges + added);
+        assertTrue(warm < cold, warm + " iterations instead of " + cold);
+        assertRanks(reference(n, sources, targets, edges + added), pageRank);
+
+        // New pages start from the average rank
+        pageRank.compute(n + 5, sources, targets, edges + added);
+        assertRanks(reference(n + 5, sources, targets, edges + added), pageRank);
+    }
+
+    @Test
+    void scoresAreWeightedAndBounded() {
+        int[] sources = {1, 2, 3, 0};
+        int[] targets = {0, 0, 0, 1};
+        PageRank light = new PageRank(1);
+        PageRank heavy = new PageRank(3);
+        light.compute(4, sources, targets, 4);
+        heavy.compute(4, sources, targets, 4);
+        double max = 0;
+        for (int doc = 0; doc < 4; doc++) {
+            assertEquals(3 * light.scores().get(doc), heavy.scores().get(doc), 1e-5);
+            assertTrue(light.scores().get(doc) <= light.scores().max());
+            max = Math.max(max, light.scores().get(doc));
+        }
+        assertEquals(max, light.scores().max(), 1e-9);
+        assertEquals(light.scores().get(0), max, 1e-9);
+    }
+
+    /**
+     * Checks the ranks behind the published scores, which are the log of the rank relative to the average.
+     */
+    private static void assertRanks(double[] expected, PageRank pageRank) {
+        int n = expected.length;
+        double total = 0;
+        for (int doc = 0; doc < n; doc++) {
+            double rank = Math.expm1(pageRank.scores().get(doc)) / n;
+            assertEquals(expected[doc], rank, 1e-5, "rank of " + doc);
+            total += rank;
+        }
+        assertEquals(1, total, 1e-4, "sum of the ranks");
+    }
+
+    /**
+     * Runs the power iteration on the dense transition matrix until the ranks stop changing.
+     */
+    private static double[] reference(int n, int[] sources, int[] targets, int edges) {
+        int[] outDegree = new int[n];
+        for (int e = 0; e < edges; e++) {
+            outDegree[sources[e]]++;
+        }
+        double[] rank = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        for (int iteration = 0; iteration < 1000; iteration++) {
+            double dangling = 0;
+            for (int u = 0; u < n; u++) {
+                if (outDegree[u] == 0) {
+                    dangling += rank[u];
+                }
+            }
+            double[] next = new double[n];
+            Arrays.fill(next, (1 - PageRank.DAMPING) / n + PageRank.DAMPING * dangling / n);
+            for (int e = 0; e < edges; e++) {
+                next[targets[e]] += PageRank.DAMPING * rank[sources[e]] / outDegree[sources[e]];
+            }
+            rank = next;
+        }
+        return rank;
+    }
+}
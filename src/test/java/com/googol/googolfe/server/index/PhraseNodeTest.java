@@ -0,0 +1,103 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class PhraseNodeTest {
+
+    private final QueryParser parser = new QueryParser(Set.of("the", "of"));
+
+    @Test
+    void phraseMatchesConsecutiveTermsInOrder() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument(0, terms("remote method invocation in java"));
+        index.addDocument(1, terms("method remote invocation"));
+        index.addDocument(2, terms("remote procedure and method invocation"));
+        index.addDocument(3, terms("java remote method"));
+        assertArrayEquals(new int[] {0, 3}, evaluate(index, "\"remote method\""));
+        assertArrayEquals(new int[] {0}, evaluate(index, "\"remote method invocation\""));
+        assertArrayEquals(new int[] {1}, evaluate(index, "\"method remote\""));
+        assertArrayEquals(new int[0], evaluate(index, "\"invocation java\""));
+        assertArrayEquals(new int[0], evaluate(index, "\"remote missing\""));
+    }
+
+    @Test
+    void phraseWithRepeatedTerms() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument(0, terms("new york new york"));
+        index.addDocument(1, terms("new york and new jersey"));
+        index.addDocument(2, terms("york new york"));
+        assertArrayEquals(new int[] {0}, evaluate(index, "\"new york new york\""));
+        assertArrayEquals(new int[] {0, 2}, evaluate(index, "\"york new york\""));
+        assertArrayEquals(new int[] {0, 1, 2}, evaluate(index, "\"new york\""));
+
+        // The anchor is the shortest list, the others are only walked forward
+        assertTrue(PhraseNode.matches(new int[][] {{0, 2, 4, 6, 8, 10}, {11}}));
+        assertTrue(PhraseNode.matches(new int[][] {{5}, {1, 3, 6}, {2, 7}}));
+        assertFalse(PhraseNode.matches(new int[][] {{0, 2, 4}, {2, 4}, {0, 2, 4}}));
+        assertFalse(PhraseNode.matches(new int[][] {{0}, null}));
+    }
+
+    @Test
+    void gapsOfOtherShardsKeepTheirPositions() {
+        InvertedIndex index = new InvertedIndex();
+        // The middle term belongs to another shard, so the two terms are not consecutive
+        index.addDocument(0, new String[] {"remote", null, "invocation"});
+        // Empty terms take no position, so these two are consecutive
+        index.addDocument(1, new String[] {"remote", "", "invocation"});
+        assertArrayEquals(new int[] {1}, evaluate(index, "\"remote invocation\""));
+        assertArrayEquals(new int[] {0, 1}, evaluate(index, "remote NEAR/2 invocation"));
+        assertArrayEquals(new int[] {1}, evaluate(index, "remote NEAR/1 invocation"));
+        assertArrayEquals(new int[] {2}, index.positions("invocation", 0));
+        assertArrayEquals(new int[] {1}, index.positions("invocation", 1));
+    }
+
+    @Test
+    void nearMatchesTermsWithinTheDistanceInAnyOrder() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument(0, terms("java is a language for remote method invocation"));
+        index.addDocument(1, terms("invocation of remote code from java"));
+        index.addDocument(2, terms("java invocation"));
+        assertArrayEquals(new int[] {0, 1, 2}, evaluate(index, "java NEAR/7 invocation"));
+        assertArrayEquals(new int[] {1, 2}, evaluate(index, "java NEAR/5 invocation"));
+        assertArrayEquals(new int[] {2}, evaluate(index, "invocation NEAR/1 java"));
+        assertArrayEquals(new int[0], evaluate(index, "java NEAR/3 missing"));
+
+        assertTrue(NearNode.matches(new int[] {1, 20, 40}, new int[] {10, 37}, 3));
+        assertFalse(NearNode.matches(new int[] {1, 20, 40}, new int[] {10, 30}, 8));
+        assertTrue(NearNode.matches(new int[] {4}, new int[] {4}, 0));
+        assertFalse(NearNode.matches(null, new int[] {1}, 5));
+    }
+
+    @Test
+    void nearWithTheSameTermTwice() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument(0, terms("rome rome"));
+        index.addDocument(1, terms("rome"));
+        // Any occurrence is at distance 0 of itself
+        assertArrayEquals(new int[] {0, 1}, evaluate(index, "rome NEAR/0 rome"));
+    }
+
+    @Test
+    void phraseAndNearCollectTheirTerms() {
+        QueryNode phrase = parser.parse("\"remote method\" java NEAR/2 rmi");
+        List<String> terms = new ArrayList<>();
+        phrase.collectTerms(terms);
+        assertArrayEquals(new String[] {"remote", "method", "java", "rmi"}, terms.toArray(new String[0]));
+    }
+
+    private int[] evaluate(IndexReader index, String query) {
+        return parser.parse(query).evaluate(index).toArray();
+    }
+
+    private static String[] terms(String page) {
+        return page.split(" ");
+    }
+}
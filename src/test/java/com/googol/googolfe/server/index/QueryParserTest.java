@@ -0,0 +1,164 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class QueryParserTest {
+
+    private final QueryParser parser = new QueryParser(Set.of("the", "of", "a"));
+
+    @Test
+    void wordsAreJoinedWithAnImplicitAnd() {
+        assertEquals("(java rmi)", parse("java rmi"));
+        assertEquals("(java rmi)", parse("java AND rmi"));
+        assertEquals("java", parse("java"));
+    }
+
+    @Test
+    void orBindsLooserThanAnd() {
+        assertEquals("((java rmi) OR python)", parse("java rmi OR python"));
+        assertEquals("(java OR (rmi python))", parse("java OR rmi python"));
+        assertEquals("(java OR rmi OR python)", parse("java OR rmi OR python"));
+    }
+
+    @Test
+    void parenthesesGroupClauses() {
+        assertEquals("(java (rmi OR corba))", parse("java (rmi OR corba)"));
+        assertEquals("((java OR python) (web OR server))", parse("(java OR python) (web OR server)"));
+        assertEquals("java", parse("((java))"));
+    }
+
+    @Test
+    void minusExcludesAWordOrAGroup() {
+        assertEquals("(java -coffee)", parse("java -coffee"));
+        assertEquals("(java -(coffee OR island))", parse("java -(coffee OR island)"));
+        assertEquals("-coffee", parse("-coffee"));
+        assertInstanceOf(NotNode.class, parser.parse("-coffee"));
+        // A - inside a word is not an exclusion
+        assertEquals("(email server)", parse("e-mail server"));
+    }
+
+    @Test
+    void quotesMakeAPhrase() {
+        assertEquals("\"remote method invocation\"", parse("\"remote method invocation\""));
+        assertEquals("(java \"remote method\")", parse("java \"remote method\""));
+        // Stop words are dropped from phrases like the Downloader drops them from pages
+        assertEquals("\"history rome\"", parse("\"the history of rome\""));
+        assertEquals("rome", parse("\"of rome\""));
+    }
+
+    @Test
+    void nearJoinsTwoWords() {
+        assertEquals("java NEAR/3 rmi", parse("java NEAR/3 rmi"));
+        assertEquals("(server java NEAR/2 rmi)", parse("server java NEAR/2 rmi"));
+        // Only two words can be near each other, the other clauses are simply joined
+        assertEquals("((java OR python) rmi)", parse("(java OR python) NEAR/2 rmi"));
+        assertEquals("java", parse("java NEAR/2"));
+        // A distance that is too long is a plain word
+        assertEquals("(java near12345 rmi)", parse("java NEAR/12345 rmi"));
+    }
+
+    @Test
+    void malformedQueriesAreParsedLeniently() {
+        assertEquals("(java rmi)", parse("java (rmi"));
+        assertEquals("(java rmi)", parse("java) rmi"));
+        assertEquals("java", parse("OR java"));
+        assertEquals("java", parse("java OR"));
+        assertEquals("java", parse("java -"));
+        assertEquals("java", parse("java AND AND"));
+        assertEquals("\"remote method\"", parse("\"remote method"));
+        assertEquals("java", parse("java ( )"));
+    }
+
+    @Test
+    void queriesWithoutSearchableWordsAreNull() {
+        assertNull(parser.parse(""));
+        assertNull(parser.parse("   "));
+        assertNull(parser.parse("the of a"));
+        assertNull(parser.parse("-"));
+        assertNull(parser.parse("( ) \"\" OR AND"));
+        assertNull(parser.parse("!!! ?"));
+    }
+
+    @Test
+    void wordsAreNormalizedLikeTheDownloader() {
+        assertEquals("(acao coracao)", parse("A\u00e7\u00e3o CORA\u00c7\u00c3O"));
+        assertEquals("(java rmi)", parse("java, rmi!"));
+        assertEquals("(java rmi)", parse("  java \t rmi  "));
+        assertEquals("(java -cafe)", parse("java -Caf\u00e9"));
+    }
+
+    @Test
+    void excludedTermsAreNotCollected() {
+        List<String> terms = new ArrayList<>();
+        parser.parse("java -coffee (rmi OR \"remote call\") web NEAR/2 server").collectTerms(terms);
+        assertEquals(List.of("java", "rmi", "remote", "call", "web", "server"), terms);
+    }
+
+    @Test
+    void andKeepsTheDocsMatchingEveryClause() {
+        InvertedIndex index = index();
+        assertArrayEquals(new int[] {0, 1}, evaluate(index, "java server"));
+        assertArrayEquals(new int[] {1}, evaluate(index, "java web server"));
+        assertArrayEquals(new int[0], evaluate(index, "java missing"));
+        assertArrayEquals(new int[0], evaluate(index, "python rmi"));
+    }
+
+    @Test
+    void orKeepsTheDocsMatchingAnyClause() {
+        InvertedIndex index = index();
+        assertArrayEquals(new int[] {0, 2, 3}, evaluate(index, "python OR rmi"));
+        assertArrayEquals(new int[] {2}, evaluate(index, "python OR missing"));
+        assertArrayEquals(new int[0], evaluate(index, "missing OR absent"));
+        assertArrayEquals(new int[] {0, 1, 2}, evaluate(index, "(java OR python) (server OR web)"));
+    }
+
+    @Test
+    void notRemovesTheDocsOfItsClause() {
+        InvertedIndex index = index();
+        assertArrayEquals(new int[] {1}, evaluate(index, "java -rmi"));
+        assertArrayEquals(new int[] {0, 1}, evaluate(index, "java -missing"));
+        assertArrayEquals(new int[] {1, 2}, evaluate(index, "web -(rmi OR tutorial)"));
+        // An exclusion on its own, or only exclusions, read every doc of the index
+        assertArrayEquals(new int[] {2, 3}, evaluate(index, "-java"));
+        assertArrayEquals(new int[] {3}, evaluate(index, "-java -web"));
+    }
+
+    @Test
+    void estimatesBoundTheResults() {
+        InvertedIndex index = index();
+        for (String query : List.of("java server", "python OR rmi", "java -rmi", "-java", "missing OR java", "java missing")) {
+            QueryNode node = parser.parse(query);
+            assertTrue(node.estimate(index) >= node.evaluate(index).cardinality(), query);
+            assertTrue(node.estimate(index) <= index.documentCount(), query);
+        }
+        assertEquals(0, parser.parse("java missing").estimate(index));
+        assertEquals(4, parser.parse("java OR server OR web").estimate(index));
+    }
+
+    private String parse(String query) {
+        return parser.parse(query).toString();
+    }
+
+    private int[] evaluate(IndexReader index, String query) {
+        return parser.parse(query).evaluate(index).toArray();
+    }
+
+    private static InvertedIndex index() {
+        InvertedIndex index = new InvertedIndex();
+        index.addDocument(0, "java rmi server".split(" "));
+        index.addDocument(1, "java web server".split(" "));
+        index.addDocument(2, "python web".split(" "));
+        index.addDocument(3, "rmi tutorial".split(" "));
+        return index;
+    }
+}
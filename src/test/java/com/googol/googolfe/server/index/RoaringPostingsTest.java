@@ -0,0 +1,215 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class RoaringPostingsTest {
+
+    @Test
+    void arrayBecomesBitmapPastMaxSize() {
+        Container container = new ArrayContainer();
+        for (int i = 0; i < ArrayContainer.MAX_SIZE; i++) {
+            container = container.add((char) (2 * i));
+        }
+        assertInstanceOf(ArrayContainer.class, container);
+        container = container.add((char) 1);
+        assertInstanceOf(BitmapContainer.class, container);
+        assertEquals(ArrayContainer.MAX_SIZE + 1, container.cardinality());
+        assertTrue(container.contains((char) 1));
+        assertTrue(container.contains((char) 8190));
+        assertFalse(container.contains((char) 3));
+    }
+
+    @Test
+    void bitmapBecomesArrayWhenSparse() {
+        Container dense = containerOf(0, 10000, 1);
+        Container sparse = containerOf(0, 10000, 3);
+        assertInstanceOf(BitmapContainer.class, dense);
+        Container left = dense.andNot(sparse);
+        assertEquals(10000 - 3334, left.cardinality());
+        assertInstanceOf(BitmapContainer.class, left);
+        Container tail = dense.andNot(containerOf(0, 9000, 1));
+        assertInstanceOf(ArrayContainer.class, tail);
+        assertEquals(1000, tail.cardinality());
+        assertTrue(tail.contains((char) 9000));
+        Container few = dense.and(containerOf(0, 10000, 100));
+        assertInstanceOf(ArrayContainer.class, few);
+        assertEquals(100, few.cardinality());
+    }
+
+    @Test
+    void runOptimizeKeepsTheSmallestRepresentation() {
+        Container runs = containerOf(1000, 60000, 1).runOptimize();
+        assertInstanceOf(RunContainer.class, runs);
+        assertEquals(59000, runs.cardinality());
+        assertTrue(runs.contains((char) 1000));
+        assertTrue(runs.contains((char) 59999));
+        assertFalse(runs.contains((char) 60000));
+        Container scattered = containerOf(0, 65536, 7).runOptimize();
+        assertInstanceOf(BitmapContainer.class, scattered);
+        Container single = containerOf(5, 6, 1).runOptimize();
+        assertEquals(1, single.cardinality());
+        assertTrue(single.contains((char) 5));
+    }
+
+    @Test
+    void setOperationsMatchSortedSets() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            TreeSet<Integer> a = randomDocs(random);
+            TreeSet<Integer> b = randomDocs(random);
+            RoaringPostings left = postingsOf(a);
+            RoaringPostings right = postingsOf(b);
+            if (round % 2 == 0) {
+                left.runOptimize();
+            }
+
+            TreeSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            TreeSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            TreeSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+            assertArrayEquals(toArray(and), left.and(right).toArray(), "and in round " + round);
+            assertArrayEquals(toArray(or), left.or(right).toArray(), "or in round " + round);
+            assertArrayEquals(toArray(andNot), left.andNot(right).toArray(), "andNot in round " + round);
+
+            // The inputs are never modified
+            assertArrayEquals(toArray(a), left.toArray());
+            assertArrayEquals(toArray(b), right.toArray());
+        }
+    }
+
+    @Test
+    void operationsWithEmptySets() {
+        RoaringPostings empty = new RoaringPostings();
+        RoaringPostings docs = postingsOf(1, 70000, 140000);
+        assertTrue(docs.and(empty).isEmpty());
+        assertArrayEquals(docs.toArray(), docs.or(empty).toArray());
+        assertArrayEquals(docs.toArray(), docs.andNot(empty).toArray());
+        assertTrue(empty.andNot(docs).isEmpty());
+        assertTrue(docs.andNot(docs).isEmpty());
+    }
+
+    @Test
+    void serializeRoundTrip() throws IOException {
+        Random random = new Random(7);
+        for (int round = 0; round < 10; round++) {
+            TreeSet<Integer> docs = randomDocs(random);
+            RoaringPostings postings = postingsOf(docs);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            postings.serialize(new DataOutputStream(bytes));
+            RoaringPostings read = RoaringPostings.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertArrayEquals(toArray(docs), read.toArray(), "round " + round);
+            assertEquals(docs.size(), read.cardinality());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new RoaringPostings().serialize(new DataOutputStream(bytes));
+        assertTrue(RoaringPostings.deserialize(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))).isEmpty());
+    }
+
+    @Test
+    void serializeWritesTheMostCompactContainer() throws IOException {
+        RoaringPostings runs = new RoaringPostings();
+        for (int doc = 0; doc < 50000; doc++) {
+            runs.add(doc);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        runs.serialize(new DataOutputStream(bytes));
+        byte[] written = bytes.toByteArray();
+        // The number of containers, the key of the container and its type come first
+        assertEquals(Container.RUN, written[6]);
+        assertTrue(written.length < 64, "a single run is written in a few bytes");
+    }
+
+    @Test
+    void javaSerializationRoundTrip() throws IOException, ClassNotFoundException {
+        RoaringPostings postings = postingsOf(randomDocs(new Random(3)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(postings);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            RoaringPostings read = (RoaringPostings) in.readObject();
+            assertArrayEquals(postings.toArray(), read.toArray());
+        }
+    }
+
+    @Test
+    void cursorAdvancesToTheNextDoc() {
+        RoaringPostings postings = postingsOf(3, 9, 65536, 200000);
+        RoaringPostings.Cursor cursor = postings.cursor();
+        assertEquals(3, cursor.advance(0));
+        assertEquals(65536, cursor.advance(10));
+        assertEquals(200000, cursor.advance(65537));
+        assertEquals(-1, cursor.advance(200001));
+    }
+
+    private static Container containerOf(int from, int to, int step) {
+        Container container = new ArrayContainer();
+        for (int value = from; value < to; value += step) {
+            container = container.add((char) value);
+        }
+        return container;
+    }
+
+    /**
+     * Picks doc IDs spread over a few containers, mixing sparse blocks, dense blocks and long runs.
+     */
+    private static TreeSet<Integer> randomDocs(Random random) {
+        TreeSet<Integer> docs = new TreeSet<>();
+        for (int block = 0; block < 4; block++) {
+            int base = random.nextInt(6) << 16;
+            switch (random.nextInt(3)) {
+                case 0:
+                    for (int i = 0; i < 200; i++) {
+                        docs.add(base + random.nextInt(65536));
+                    }
+                    break;
+                case 1:
+                    for (int i = 0; i < 20000; i++) {
+                        docs.add(base + random.nextInt(65536));
+                    }
+                    break;
+                default:
+                    int start = random.nextInt(30000);
+                    int end = start + 5000 + random.nextInt(30000);
+                    for (int doc = start; doc < end; doc++) {
+                        docs.add(base + doc);
+                    }
+            }
+        }
+        return docs;
+    }
+
+    private static RoaringPostings postingsOf(TreeSet<Integer> docs) {
+        return postingsOf(toArray(docs));
+    }
+
+    private static RoaringPostings postingsOf(int... docs) {
+        RoaringPostings postings = new RoaringPostings();
+        for (int doc : docs) {
+            postings.add(doc);
+        }
+        return postings;
+    }
+
+    private static int[] toArray(TreeSet<Integer> docs) {
+        return docs.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,140 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesAreSplitAmongSegmentsUnderTheSize() throws IOException {
+        InvertedIndex source = new InvertedIndex();
+        Random random = new Random(1);
+        for (int doc = 0; doc < 400; doc++) {
+            source.addDocument(doc, page(random, 40));
+        }
+        long maxBytes = 16 * 1024;
+        List<Path> paths = SegmentWriter.write(i -> directory.resolve("seg-" + i + ".idx"), List.of(source),
+                List.of(source.docs()), maxBytes);
+        assertTrue(paths.size() > 1, "the pages are split in " + paths.size() + " segments");
+
+        RoaringPostings all = new RoaringPostings();
+        int last = -1;
+        List<DiskSegment> segments = new ArrayList<>();
+        for (Path path : paths) {
+            assertTrue(Files.size(path) <= maxBytes, path + " has " + Files.size(path) + " bytes");
+            DiskSegment segment = new DiskSegment(path);
+            segments.add(segment);
+            // The segments hold increasing ranges of doc IDs
+            assertTrue(segment.docs().first() > last);
+            last = segment.docs().last();
+            all = all.or(segment.docs());
+        }
+        assertArrayEquals(source.docs().toArray(), all.toArray());
+        for (String term : source.terms()) {
+            RoaringPostings postings = new RoaringPostings();
+            for (DiskSegment segment : segments) {
+                RoaringPostings p = segment.postings(term);
+                if (p != null) {
+                    postings = postings.or(p);
+                    for (int doc : p.toArray()) {
+                        assertArrayEquals(source.positions(term, doc), segment.positions(term, doc), term + " in " + doc);
+                    }
+                }
+            }
+            assertArrayEquals(source.postings(term).toArray(), postings.toArray(), term);
+        }
+    }
+
+    @Test
+    void pageLargerThanASegmentIsRejected() {
+        InvertedIndex source = new InvertedIndex();
+        String[] terms = new String[2000];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = "term" + i;
+        }
+        source.addDocument(0, terms);
+        assertThrows(IOException.class, () -> SegmentWriter.write(i -> directory.resolve("seg-" + i + ".idx"),
+                List.of(source), List.of(source.docs()), 1024));
+        assertEquals(0, directory.toFile().list().length);
+    }
+
+    @Test
+    void pagesIndexedAgainAreReadFromTheirNewestSegment() throws IOException {
+        SegmentedIndex index = new SegmentedIndex(directory.toString(), "test", 10);
+        for (int doc = 0; doc < 100; doc++) {
+            index.addDocument(doc, new String[] {"old", "page" + doc});
+        }
+        index.publish();
+        index.freeze();
+        index.flush();
+        for (int doc = 50; doc < 60; doc++) {
+            index.addDocument(doc, new String[] {"new", "new", "page" + doc});
+        }
+        index.publish();
+        for (int doc = 100; doc < 150; doc++) {
+            index.addDocument(doc, new String[] {"old", "page" + doc});
+        }
+        index.publish();
+        assertPages(index.view());
+        index.freeze();
+        index.flush();
+        assertPages(index.view());
+        index.close();
+
+        SegmentedIndex reopened = new SegmentedIndex(directory.toString(), "test", 10);
+        assertPages(reopened.view());
+        reopened.close();
+    }
+
+    @Test
+    void postingsReadAgainComeFromTheCache() throws IOException {
+        InvertedIndex source = new InvertedIndex();
+        source.addDocument(1, new String[] {"a", "b"});
+        source.addDocument(2, new String[] {"a"});
+        Path path = SegmentWriter.write(i -> directory.resolve("seg.idx"), List.of(source), List.of(source.docs()),
+                SegmentWriter.MAX_BYTES).get(0);
+        DiskSegment segment = new DiskSegment(path);
+        RoaringPostings postings = segment.postings("a");
+        assertArrayEquals(new int[] {1, 2}, postings.toArray());
+        assertSame(postings, segment.postings("a"));
+        assertNull(segment.postings("c"));
+    }
+
+    private static void assertPages(IndexView view) {
+        assertEquals(150, view.documentCount());
+        assertArrayEquals(new int[] {50, 51, 52, 53, 54, 55, 56, 57, 58, 59}, view.postings("new").toArray());
+        assertEquals(140, view.postings("old").cardinality());
+        assertEquals(2, view.frequency("new", 55));
+        assertEquals(0, view.frequency("old", 55));
+        assertEquals(3, view.documentLength(55));
+        assertArrayEquals(new int[] {2}, view.positions("page55", 55));
+        assertEquals(2, view.documentLength(10));
+        assertArrayEquals(new int[] {0}, view.positions("old", 149));
+        assertEquals(0, view.documentLength(150));
+    }
+
+    private static String[] page(Random random, int words) {
+        String[] terms = new String[words];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = "w" + random.nextInt(300);
+        }
+        return terms;
+    }
+}
@@ -0,0 +1,137 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+class TermPositionsTest {
+
+    @Test
+    void positionsRoundTrip() {
+        int[][] lists = {
+            {},
+            {0},
+            {0, 1, 2, 3},
+            {127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE},
+            {5, 1_000_000},
+        };
+        for (int[] positions : lists) {
+            byte[] encoded = PositionList.encode(positions, positions.length);
+            assertArrayEquals(positions, PositionList.decode(encoded, 0), Arrays.toString(positions));
+            assertEquals(positions.length, PositionList.frequency(encoded, 0));
+            assertEquals(encoded.length, PositionList.encodedLength(encoded, 0));
+        }
+        // Small gaps take a single byte each, after the count
+        assertEquals(5, PositionList.encode(new int[] {0, 1, 2, 3}, 4).length);
+    }
+
+    @Test
+    void onlyTheCountedPositionsAreEncoded() {
+        int[] positions = {3, 9, 27, 81};
+        assertArrayEquals(new int[] {3, 9}, PositionList.decode(PositionList.encode(positions, 2), 0));
+    }
+
+    @Test
+    void listsAreDecodedAtTheirOffset() {
+        byte[] first = PositionList.encode(new int[] {1, 300}, 2);
+        byte[] second = PositionList.encode(new int[] {7, 8, 70_000}, 3);
+        byte[] data = new byte[first.length + second.length];
+        System.arraycopy(first, 0, data, 0, first.length);
+        System.arraycopy(second, 0, data, first.length, second.length);
+        assertEquals(first.length, PositionList.encodedLength(data, 0));
+        assertArrayEquals(new int[] {7, 8, 70_000}, PositionList.decode(data, first.length));
+        assertEquals(3, PositionList.frequency(data, first.length));
+    }
+
+    @Test
+    void termPositionsAreFoundByDoc() {
+        TermPositions positions = new TermPositions();
+        positions.put(10, new int[] {0, 4}, 2);
+        // Doc IDs arriving out of order are inserted in place
+        positions.put(3, new int[] {2}, 1);
+        positions.put(7, new int[] {1, 5, 9}, 3);
+        assertArrayEquals(new int[] {2}, positions.get(3));
+        assertArrayEquals(new int[] {1, 5, 9}, positions.get(7));
+        assertArrayEquals(new int[] {0, 4}, positions.get(10));
+        assertNull(positions.get(4));
+        assertNull(positions.encoded(4));
+        assertEquals(3, positions.frequency(7));
+        assertEquals(0, positions.frequency(11));
+        assertEquals(3, positions.getMaxFrequency());
+        assertArrayEquals(PositionList.encode(new int[] {1, 5, 9}, 3), positions.encoded(7));
+    }
+
+    @Test
+    void reindexedPagesReplaceTheirPositions() throws Exception {
+        TermPositions positions = new TermPositions();
+        TreeMap<Integer, int[]> expected = new TreeMap<>();
+        Random random = new Random(5);
+        // Replacing lists many times makes the term compact its data
+        for (int i = 0; i < 2000; i++) {
+            int doc = random.nextInt(50);
+            int[] list = randomPositions(random);
+            positions.put(doc, list, list.length);
+            expected.put(doc, list);
+        }
+        assertSamePositions(expected, positions);
+        assertSamePositions(expected, roundTrip(positions));
+    }
+
+    @Test
+    void emptyTermPositionsRoundTrip() throws Exception {
+        TermPositions positions = roundTrip(new TermPositions());
+        assertNull(positions.get(0));
+        positions.put(1, new int[] {4}, 1);
+        assertArrayEquals(new int[] {4}, positions.get(1));
+    }
+
+    private static void assertSamePositions(TreeMap<Integer, int[]> expected, TermPositions positions) {
+        int maxFrequency = 0;
+        for (int doc = 0; doc < 50; doc++) {
+            int[] list = expected.get(doc);
+            if (list == null) {
+                assertNull(positions.get(doc));
+            } else {
+                assertArrayEquals(list, positions.get(doc), "doc " + doc);
+                assertEquals(list.length, positions.frequency(doc));
+            }
+        }
+        for (int[] list : expected.values()) {
+            maxFrequency = Math.max(maxFrequency, list.length);
+        }
+        // The highest frequency never decreases, even when the longest list is replaced
+        assertTrue(positions.getMaxFrequency() >= maxFrequency);
+    }
+
+    private static int[] randomPositions(Random random) {
+        int[] list = new int[1 + random.nextInt(20)];
+        int position = random.nextInt(5);
+        for (int i = 0; i < list.length; i++) {
+            list[i] = position;
+            position += 1 + random.nextInt(random.nextBoolean() ? 10 : 100_000);
+        }
+        return list;
+    }
+
+    private static TermPositions roundTrip(TermPositions positions) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(positions);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TermPositions) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.googol.googolfe.server.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+
+import org.junit.jupiter.api.Test;
+
+class TopKSearcherTest {
+
+    private static final List<String> QUERIES = List.of(
+            "t0", "t0 t1", "t3 t12", "t0 OR t5 OR t17", "t2 t3 OR t7", "t1 -t2", "(t0 OR t1) t4",
+            "t25 OR t0", "\"t0 t1\"", "t0 NEAR/3 t6", "-t0", "missing OR t8");
+
+    private static final int[] SIZES = {1, 3, 10, 50, 5000};
+
+    private final QueryParser parser = new QueryParser(Set.of());
+
+    @Test
+    void maxScoreFindsTheSameDocsAsExhaustiveScoring() {
+        for (long seed = 1; seed <= 3; seed++) {
+            Random random = new Random(seed);
+            InvertedIndex index = randomIndex(random, 1500);
+            double[] priors = randomPriors(random, 1500, 0.5);
+            compareAll(index, null, priors, 0.5);
+        }
+    }
+
+    @Test
+    void filterIsAppliedBeforeRanking() {
+        Random random = new Random(7);
+        InvertedIndex index = randomIndex(random, 1500);
+        double[] priors = randomPriors(random, 1500, 1);
+        compareAll(index, doc -> doc % 3 != 0, priors, 1);
+        TopDocs none = TopKSearcher.search(index, parser.parse("t0"), doc -> false, 10, doc -> 0, 0);
+        assertEquals(0, none.getTotalHits());
+        assertEquals(0, none.getDocs().length);
+    }
+
+    @Test
+    void priorBoundDominatingTheTermsStillRanksByTheWholeScore() {
+        Random random = new Random(11);
+        InvertedIndex index = randomIndex(random, 1500);
+        // The static score is far above any term score, so no term ever stops being essential
+        double[] priors = randomPriors(random, 1500, 1000);
+        compareAll(index, null, priors, 1000);
+    }
+
+    @Test
+    void tiesAreBrokenByTheLowerDocId() {
+        InvertedIndex index = new InvertedIndex();
+        for (int doc = 0; doc < 40; doc++) {
+            // Every page has the same terms, so every page has the same score
+            index.addDocument(doc, new String[] {"java", "rmi", doc % 2 == 0 ? "server" : "client"});
+        }
+        TopDocs top = TopKSearcher.search(index, parser.parse("java"), 5, doc -> 0, 0);
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, top.getDocs());
+        assertEquals(40, top.getTotalHits());
+        top = TopKSearcher.search(index, parser.parse("java rmi"), 3, doc -> doc >= 30 ? 1 : 0, 1);
+        assertArrayEquals(new int[] {30, 31, 32}, top.getDocs());
+        top = TopKSearcher.search(index, parser.parse("server OR client"), 4, doc -> 0, 0);
+        // Each term is in half the pages, so they weigh the same and every page still ties
+        assertArrayEquals(new int[] {0, 1, 2, 3}, top.getDocs());
+    }
+
+    @Test
+    void emptyResults() {
+        InvertedIndex index = randomIndex(new Random(3), 100);
+        assertEquals(0, TopKSearcher.search(index, parser.parse("missing"), 10, doc -> 0, 0).getDocs().length);
+        TopDocs none = TopKSearcher.search(index, parser.parse("t0"), 0, doc -> 0, 0);
+        assertEquals(0, none.getDocs().length);
+        assertEquals(index.postings("t0").cardinality(), none.getTotalHits());
+    }
+
+    private void compareAll(InvertedIndex index, IntPredicate filter, double[] priors, double priorBound) {
+        IntToDoubleFunction prior = doc -> priors[doc];
+        for (String query : QUERIES) {
+            QueryNode node = parser.parse(query);
+            for (int k : SIZES) {
+                TopDocs expected = exhaustive(index, node, filter, k, prior);
+                TopDocs actual = TopKSearcher.search(index, node, filter, k, prior, priorBound);
+                String message = query + " top " + k;
+                assertEquals(expected.getTotalHits(), actual.getTotalHits(), message);
+                assertArrayEquals(expected.getDocs(), actual.getDocs(), message);
+                double[] expectedScores = expected.getScores();
+                double[] actualScores = actual.getScores();
+                assertEquals(expectedScores.length, actualScores.length, message);
+                for (int i = 0; i < expectedScores.length; i++) {
+                    assertEquals(expectedScores[i], actualScores[i], 1e-9, message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores every doc matching the query, with the same formula as the searcher.
+     */
+    private static TopDocs exhaustive(IndexReader index, QueryNode query, IntPredicate filter, int k, IntToDoubleFunction prior) {
+        Bm25 bm25 = new Bm25(index);
+        List<String> terms = new ArrayList<>();
+        query.collectTerms(terms);
+        List<double[]> scored = new ArrayList<>();
+        for (int doc : query.evaluate(index).toArray()) {
+            if (filter != null && !filter.test(doc)) {
+                continue;
+            }
+            double score = prior.applyAsDouble(doc);
+            for (String term : new LinkedHashSet<>(terms)) {
+                RoaringPostings postings = index.postings(term);
+                if (postings != null && postings.contains(doc)) {
+                    score += bm25.score(bm25.idf(term, postings), index.frequency(term, doc), index.documentLength(doc));
+                }
+            }
+            scored.add(new double[] {doc, score});
+        }
+        int totalHits = scored.size();
+        scored.sort(Comparator.<double[]>comparingDouble(entry -> -entry[1]).thenComparingDouble(entry -> entry[0]));
+        int n = Math.min(k, scored.size());
+        int[] docs = new int[n];
+        double[] scores = new double[n];
+        for (int i = 0; i < n; i++) {
+            docs[i] = (int) scored.get(i)[0];
+            scores[i] = scored.get(i)[1];
+        }
+        return new TopDocs(docs, scores, totalHits);
+    }
+
+    /**
+     * Builds pages whose terms follow a skewed distribution, so some terms are in most pages and others in few.
+     */
+    private static InvertedIndex randomIndex(Random random, int pages) {
+        InvertedIndex index = new InvertedIndex();
+        for (int doc = 0; doc < pages; doc++) {
+            String[] terms = new String[3 + random.nextInt(40)];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = "t" + (int) Math.floor(30 * Math.pow(random.nextDouble(), 2.5));
+            }
+            index.addDocument(doc, terms);
+        }
+        return index;
+    }
+
+    private static double[] randomPriors(Random random, int pages, double bound) {
+        double[] priors = new double[pages];
+        for (int doc = 0; doc < pages; doc++) {
+            priors[doc] = random.nextDouble() * bound;
+        }
+        // Some pages reach the bound, like the pages with the highest PageRank
+        Arrays.fill(priors, 0, 3, bound);
+        return priors;
+    }
+}
@@ -0,0 +1,236 @@
+package com.googol.googolfe.server.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.googol.googolfe.objects.IngestStats;
+import com.googol.googolfe.server.net.FragmentAssembler;
+import com.googol.googolfe.server.net.PageMessage;
+
+class IngestPipelineTest {
+
+    private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<String> logged = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    void pagesAreAppliedInTheOrderReceivedAcrossDecoders() {
+        IngestPipeline pipeline = pipeline(4, 8, 16);
+        pipeline.start();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Some messages hold two pages, and some take longer to decode, so the decoders finish out of turn
+            String message = (i % 5 == 0 ? "pair-" : "page-") + i + (i % 13 == 0 ? "-slow" : "");
+            assertTrue(pipeline.submit(bytes(message)));
+            expected.addAll(pages(message));
+        }
+        pipeline.close();
+        assertEquals(expected, applied);
+        assertEquals(2000, logged.size());
+        IngestStats stats = pipeline.getStats();
+        assertEquals(2000, stats.getReceived());
+        assertEquals(expected.size(), stats.getApplied());
+        assertEquals(2000, stats.getPersisted());
+        assertEquals(0, stats.getMalformed());
+    }
+
+    @Test
+    void malformedMessagesAreDroppedKeepingTheTurn() {
+        IngestPipeline pipeline = pipeline(3, 8, 4);
+        pipeline.start();
+        List<String> expected = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String message = (i % 7 == 0 ? "bad-" : "page-") + i;
+            assertTrue(pipeline.submit(bytes(message)));
+            if (i % 7 != 0) {
+                expected.addAll(pages(message));
+                messages.add(message);
+            }
+        }
+        pipeline.close();
+        // The decoders skip their malformed messages, the others are still collected in turn
+        assertEquals(expected, applied);
+        assertEquals(messages, logged);
+        assertEquals(72, pipeline.getStats().getMalformed());
+    }
+
+    @Test
+    void heldPipelineOnlyLogsUntilTheCatchUp() {
+        IngestPipeline pipeline = pipeline(2, 8, 4);
+        pipeline.hold();
+        pipeline.start();
+        List<String> held = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(pipeline.submit(bytes("page-" + i)));
+            held.add("page-" + i);
+        }
+        waitFor(() -> pipeline.getStats().getPersisted() == 100);
+        assertTrue(applied.isEmpty());
+
+        List<String> replayed = new ArrayList<>();
+        pipeline.startApplying(() -> {
+            // The catch-up finds every message received while held in the log, and nothing applied yet
+            replayed.addAll(logged);
+            assertTrue(applied.isEmpty());
+        });
+        assertEquals(held, replayed);
+
+        List<String> live = new ArrayList<>();
+        for (int i = 100; i < 150; i++) {
+            assertTrue(pipeline.submit(bytes("page-" + i)));
+            live.add("page-" + i);
+        }
+        pipeline.close();
+        assertEquals(live, applied);
+        assertEquals(150, logged.size());
+        assertEquals(held, logged.subList(0, 100));
+    }
+
+    @Test
+    void fullQueuesMakeTheReceiverWait() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        IngestPipeline pipeline = new IngestPipeline("test", 2, 4, 1, new FragmentAssembler(1 << 20, 5000),
+                IngestPipelineTest::decode, batch -> {
+                    awaitQuietly(release);
+                    for (PageMessage page : batch) {
+                        applied.add(page.getUrl());
+                    }
+                }, batch -> log(batch));
+        pipeline.start();
+        int count = 200;
+        Thread receiver = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                pipeline.submit(bytes("page-" + i));
+            }
+        });
+        receiver.start();
+        // The applier is stuck, so the receiver stops once every buffer is full
+        waitFor(() -> pipeline.getStats().getStalls() > 0);
+        receiver.join(200);
+        assertTrue(receiver.isAlive());
+        IngestStats stats = pipeline.getStats();
+        assertTrue(stats.getDecodeQueue() <= 2 * 4, "decode queue " + stats.getDecodeQueue());
+        assertTrue(stats.getApplyQueue() <= 2 * 4, "apply queue " + stats.getApplyQueue());
+        assertTrue(stats.getReceived() < count);
+
+        release.countDown();
+        receiver.join(10_000);
+        assertFalse(receiver.isAlive());
+        pipeline.close();
+        assertEquals(count, applied.size());
+        assertEquals("page-0", applied.get(0));
+        assertEquals("page-" + (count - 1), applied.get(count - 1));
+    }
+
+    @Test
+    void closeDrainsEveryStage() {
+        IngestPipeline pipeline = new IngestPipeline("test", 3, 64, 8, new FragmentAssembler(1 << 20, 5000),
+                IngestPipelineTest::decode, this::apply, batch -> {
+                    // A slow log, so the messages are still in the stages when close is called
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    log(batch);
+                });
+        pipeline.start();
+        for (int i = 0; i < 300; i++) {
+            assertTrue(pipeline.submit(bytes("page-" + i)));
+        }
+        pipeline.close();
+        assertEquals(300, applied.size());
+        assertEquals(300, logged.size());
+        IngestStats stats = pipeline.getStats();
+        assertEquals(0, stats.getDecodeQueue());
+        assertEquals(0, stats.getApplyQueue());
+        assertEquals(0, stats.getPersistQueue());
+    }
+
+    @Test
+    void failedBatchIsStillLogged() {
+        IngestPipeline pipeline = new IngestPipeline("test", 1, 8, 1, new FragmentAssembler(1 << 20, 5000),
+                IngestPipelineTest::decode, batch -> {
+                    if (batch.get(0).getUrl().equals("page-3")) {
+                        throw new IllegalStateException("disk full");
+                    }
+                    apply(batch);
+                }, this::log);
+        pipeline.start();
+        for (int i = 0; i < 6; i++) {
+            assertTrue(pipeline.submit(bytes("page-" + i)));
+        }
+        pipeline.close();
+        assertEquals(List.of("page-0", "page-1", "page-2", "page-4", "page-5"), applied);
+        assertEquals(6, logged.size());
+    }
+
+    private IngestPipeline pipeline(int decoders, int capacity, int maxBatch) {
+        return new IngestPipeline("test", decoders, capacity, maxBatch, new FragmentAssembler(1 << 20, 5000),
+                IngestPipelineTest::decode, this::apply, this::log);
+    }
+
+    private void apply(List<PageMessage> batch) {
+        for (PageMessage page : batch) {
+            applied.add(page.getUrl());
+        }
+    }
+
+    private void log(List<byte[]> batch) {
+        for (byte[] payload : batch) {
+            logged.add(new String(payload, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Decodes the test messages: "bad-" messages are malformed, "pair-" messages hold two pages,
+     * and "-slow" messages take a while to decode.
+     */
+    private static List<PageMessage> decode(byte[] payload) {
+        String message = new String(payload, StandardCharsets.UTF_8);
+        if (message.startsWith("bad-")) {
+            throw new IllegalArgumentException("Malformed message " + message);
+        }
+        if (message.endsWith("-slow")) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        List<PageMessage> pages = new ArrayList<>();
+        for (String url : pages(message)) {
+            pages.add(new PageMessage(url, "", "", new String[0], new String[0]));
+        }
+        return pages;
+    }
+
+    private static List<String> pages(String message) {
+        return message.startsWith("pair-") ? List.of(message + "#1", message + "#2") : List.of(message);
+    }
+
+    private static byte[] bytes(String message) {
+        return message.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
@@ -0,0 +1,86 @@
+package com.googol.googolfe.server.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(1, new RingBuffer<>(1).capacity());
+        assertEquals(8, new RingBuffer<>(5).capacity());
+        assertEquals(8, new RingBuffer<>(8).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(0));
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>((1 << 30) + 1));
+    }
+
+    @Test
+    void fullBufferRejectsUntilAnElementIsTaken() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertEquals(4, buffer.size());
+        assertFalse(buffer.offer(4));
+        assertEquals(0, (int) buffer.poll());
+        assertTrue(buffer.offer(4));
+        assertFalse(buffer.offer(5));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, (int) buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    void elementsWrapAroundInOrder() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        int next = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(buffer.offer(round * 3 + i));
+            }
+            for (int i = 0; i < 3; i++) {
+                assertEquals(next++, (int) buffer.poll());
+            }
+        }
+    }
+
+    @Test
+    void producerAndConsumerThreadsKeepTheOrder() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(16);
+        int count = 200_000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread consumer = new Thread(() -> {
+            int expected = 0;
+            while (expected < count) {
+                Integer element = buffer.poll();
+                if (element == null) {
+                    Thread.onSpinWait();
+                } else if (element != expected++) {
+                    failure.set("got " + element + " instead of " + (expected - 1));
+                    return;
+                }
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < count; i++) {
+            while (!buffer.offer(i)) {
+                Thread.onSpinWait();
+            }
+        }
+        consumer.join(10_000);
+        assertFalse(consumer.isAlive());
+        assertNull(failure.get(), failure.get());
+        assertTrue(buffer.isEmpty());
+    }
+}
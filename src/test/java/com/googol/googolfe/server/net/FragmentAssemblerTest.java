@@ -0,0 +1,171 @@
+package com.googol.googolfe.server.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class FragmentAssemblerTest {
+
+    private static final int FRAGMENT_SIZE = 100;
+
+    @Test
+    void fragmentsSplitAndMarkTheMessage() {
+        byte[] message = message(1000, 1);
+        List<byte[]> fragments = PageCodec.fragment(message, 42, 300);
+        assertEquals(4, fragments.size());
+        int total = 0;
+        for (byte[] fragment : fragments) {
+            assertTrue(PageCodec.isFragment(fragment));
+            assertTrue(fragment.length <= 300);
+            total += fragment.length - PageCodec.FRAGMENT_HEADER;
+        }
+        assertEquals(message.length, total);
+        assertThrows(IllegalArgumentException.class,
+                () -> PageCodec.fragment(new byte[PageCodec.MAX_FRAGMENTS + 1], 1, PageCodec.FRAGMENT_HEADER + 1));
+    }
+
+    @Test
+    void messagesThatAreNotFragmentsPassThrough() {
+        FragmentAssembler assembler = new FragmentAssembler(1 << 20, 5000);
+        byte[] frame = PageCodec.encode(List.of(new PageMessage("http://a", "", "", new String[] {"x"}, new String[0])));
+        assertFalse(PageCodec.isFragment(frame));
+        assertSame(frame, assembler.add(frame));
+        assertEquals(0, assembler.getFragments());
+    }
+
+    @Test
+    void reorderedFragmentsAreJoined() {
+        FragmentAssembler assembler = new FragmentAssembler(1 << 20, 5000);
+        byte[] message = message(950, 2);
+        List<byte[]> fragments = new ArrayList<>(PageCodec.fragment(message, 7, FRAGMENT_SIZE));
+        Collections.shuffle(fragments, new Random(3));
+        for (int i = 0; i < fragments.size() - 1; i++) {
+            assertNull(assembler.add(fragments.get(i)));
+        }
+        assertArrayEquals(message, assembler.add(fragments.get(fragments.size() - 1)));
+        assertEquals(fragments.size(), assembler.getFragments());
+        assertEquals(0, assembler.getIncomplete());
+    }
+
+    @Test
+    void interleavedMessagesAreJoinedApart() {
+        FragmentAssembler assembler = new FragmentAssembler(1 << 20, 5000);
+        byte[] first = message(500, 4);
+        byte[] second = message(420, 5);
+        List<byte[]> a = PageCodec.fragment(first, 1, FRAGMENT_SIZE);
+        List<byte[]> b = PageCodec.fragment(second, 2, FRAGMENT_SIZE);
+        List<byte[]> joined = new ArrayList<>();
+        for (int i = 0; i < Math.max(a.size(), b.size()); i++) {
+            for (List<byte[]> fragments : List.of(b, a)) {
+                if (i < fragments.size()) {
+                    byte[] message = assembler.add(fragments.get(i));
+                    if (message != null) {
+                        joined.add(message);
+                    }
+                }
+            }
+        }
+        assertEquals(2, joined.size());
+        assertArrayEquals(second, joined.get(0));
+        assertArrayEquals(first, joined.get(1));
+    }
+
+    @Test
+    void duplicateFragmentsAreIgnored() {
+        FragmentAssembler assembler = new FragmentAssembler(1 << 20, 5000);
+        byte[] message = message(250, 6);
+        List<byte[]> fragments = PageCodec.fragment(message, 9, FRAGMENT_SIZE);
+        assertNull(assembler.add(fragments.get(0)));
+        assertNull(assembler.add(fragments.get(0)));
+        assertNull(assembler.add(fragments.get(1)));
+        assertArrayEquals(message, assembler.add(fragments.get(2)));
+        // A fragment arriving again after its message was joined starts a new message, which never completes
+        assertNull(assembler.add(fragments.get(2)));
+    }
+
+    @Test
+    void incompleteMessagesExpire() throws InterruptedException {
+        FragmentAssembler assembler = new FragmentAssembler(1 << 20, 20);
+        List<byte[]> stale = PageCodec.fragment(message(300, 7), 1, FRAGMENT_SIZE);
+        assertNull(assembler.add(stale.get(0)));
+        Thread.sleep(50);
+
+        // The next fragment received drops the stale message, whose late fragments then never complete it
+        byte[] fresh = message(150, 8);
+        List<byte[]> fragments = PageCodec.fragment(fresh, 2, FRAGMENT_SIZE);
+        assertNull(assembler.add(fragments.get(0)));
+        assertEquals(1, assembler.getIncomplete());
+        assertArrayEquals(fresh, assembler.add(fragments.get(1)));
+        for (int i = 1; i < stale.size(); i++) {
+            assertNull(assembler.add(stale.get(i)));
+        }
+    }
+
+    @Test
+    void oldestMessagesAreDroppedPastTheByteBound() {
+        int chunk = FRAGMENT_SIZE - PageCodec.FRAGMENT_HEADER;
+        FragmentAssembler assembler = new FragmentAssembler(2 * chunk, 5000);
+        List<byte[]> oldest = PageCodec.fragment(message(2 * chunk, 9), 1, FRAGMENT_SIZE);
+        List<byte[]> middle = PageCodec.fragment(message(2 * chunk, 10), 2, FRAGMENT_SIZE);
+        byte[] newest = message(2 * chunk, 11);
+        List<byte[]> last = PageCodec.fragment(newest, 3, FRAGMENT_SIZE);
+        assertNull(assembler.add(oldest.get(0)));
+        assertNull(assembler.add(middle.get(0)));
+        assertEquals(0, assembler.getIncomplete());
+        assertNull(assembler.add(last.get(0)));
+        assertEquals(1, assembler.getIncomplete());
+
+        // The oldest message was dropped, the two newest still complete
+        assertNull(assembler.add(oldest.get(1)));
+        assertArrayEquals(newest, assembler.add(last.get(1)));
+    }
+
+    @Test
+    void messageLargerThanTheBoundIsDropped() {
+        int chunk = FRAGMENT_SIZE - PageCodec.FRAGMENT_HEADER;
+        FragmentAssembler assembler = new FragmentAssembler(chunk, 5000);
+        List<byte[]> fragments = PageCodec.fragment(message(3 * chunk, 12), 1, FRAGMENT_SIZE);
+        assertNull(assembler.add(fragments.get(0)));
+        assertNull(assembler.add(fragments.get(1)));
+        assertEquals(1, assembler.getIncomplete());
+        assertNull(assembler.add(fragments.get(2)));
+    }
+
+    @Test
+    void malformedFragmentsAreDropped() {
+        FragmentAssembler assembler = new FragmentAssembler(1 << 20, 5000);
+        byte[] fragment = PageCodec.fragment(message(50, 13), 1, FRAGMENT_SIZE).get(0);
+        byte[] pastTheEnd = fragment.clone();
+        // Index 1 of a message of 1 fragment
+        pastTheEnd[11] = 1;
+        assertNull(assembler.add(pastTheEnd));
+        byte[] noFragments = fragment.clone();
+        noFragments[13] = 0;
+        assertNull(assembler.add(noFragments));
+
+        // A fragment claiming another number of fragments for the same message drops it
+        List<byte[]> fragments = PageCodec.fragment(message(250, 14), 2, FRAGMENT_SIZE);
+        assertNull(assembler.add(fragments.get(0)));
+        byte[] conflicting = fragments.get(1).clone();
+        conflicting[13] = 5;
+        assertNull(assembler.add(conflicting));
+        assertEquals(1, assembler.getIncomplete());
+    }
+
+    private static byte[] message(int length, long seed) {
+        byte[] message = new byte[length];
+        new Random(seed).nextBytes(message);
+        return message;
+    }
+}
@@ -0,0 +1,184 @@
+package com.googol.googolfe.server.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class HashRingTest {
+
+    private static final int PAGES = 10_000;
+
+    @Test
+    void emptyRingHasNoOwners() {
+        HashRing ring = new HashRing(List.of(), 3, 16);
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.owners(HashRing.hash("http://a.pt")).length);
+        assertFalse(ring.owns(1, "http://a.pt"));
+        assertEquals(0, HashRing.boundaries(ring).length);
+    }
+
+    @Test
+    void eachPageHasDistinctOwnersUpToTheReplication() {
+        HashRing ring = new HashRing(List.of(4, 1, 3, 2, 5), 3, 64);
+        assertEquals(List.of(1, 2, 3, 4, 5), ring.getMembers());
+        Map<Integer, Integer> pages = new HashMap<>();
+        for (int i = 0; i < PAGES; i++) {
+            String url = url(i);
+            int[] owners = ring.owners(HashRing.hash(url));
+            assertEquals(3, owners.length);
+            assertEquals(3, distinct(owners).size(), Arrays.toString(owners));
+            for (int member = 1; member <= 5; member++) {
+                assertEquals(distinct(owners).contains(member), ring.owns(member, url));
+            }
+            for (int owner : owners) {
+                pages.merge(owner, 1, Integer::sum);
+            }
+        }
+        // The virtual nodes even out the parts, each barrel holds about 3 in 5 pages
+        for (int member = 1; member <= 5; member++) {
+            double share = pages.get(member) / (double) PAGES;
+            assertTrue(share > 0.45 && share < 0.75, member + " holds " + share);
+        }
+
+        // The replication is limited to the number of barrels
+        HashRing small = new HashRing(List.of(7, 9), 3, 8);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Set.of(7, 9), distinct(small.owners(HashRing.hash(url(i)))));
+        }
+    }
+
+    @Test
+    void addingABarrelOnlyMovesPagesToIt() {
+        HashRing before = new HashRing(List.of(1, 2, 3, 4), 2, 64);
+        HashRing after = new HashRing(List.of(1, 2, 3, 4, 5), 2, 64);
+        int moved = 0;
+        for (int i = 0; i < PAGES; i++) {
+            long position = HashRing.hash(url(i));
+            Set<Integer> previous = distinct(before.owners(position));
+            Set<Integer> next = distinct(after.owners(position));
+            if (!previous.equals(next)) {
+                moved++;
+                // The new barrel takes the place of one owner, the other owners keep the page
+                assertTrue(next.contains(5));
+                next.remove(5);
+                assertTrue(previous.containsAll(next));
+            }
+        }
+        // The new barrel gets about 2 in 5 pages, no other page moves
+        double share = moved / (double) PAGES;
+        assertTrue(share > 0.25 && share < 0.55, share + " of the pages moved");
+    }
+
+    @Test
+    void removingABarrelOnlyMovesItsPages() {
+        HashRing before = new HashRing(List.of(1, 2, 3, 4, 5), 2, 64);
+        HashRing after = new HashRing(List.of(1, 2, 4, 5), 2, 64);
+        for (int i = 0; i < PAGES; i++) {
+            long position = HashRing.hash(url(i));
+            Set<Integer> previous = distinct(before.owners(position));
+            Set<Integer> next = distinct(after.owners(position));
+            if (previous.contains(3)) {
+                previous.remove(3);
+                assertTrue(next.containsAll(previous));
+            } else {
+                assertEquals(previous, next);
+            }
+        }
+    }
+
+    @Test
+    void arcsOfTheBoundariesHaveTheSameOwnersInEveryRing() {
+        HashRing before = new HashRing(List.of(1, 2, 3), 2, 16);
+        HashRing after = new HashRing(List.of(1, 3, 4), 2, 16);
+        long[] own = HashRing.boundaries(before);
+        assertEquals(3 * 16, own.length);
+        long[] boundaries = HashRing.boundaries(before, after);
+        for (int i = 1; i < boundaries.length; i++) {
+            assertTrue(boundaries[i - 1] < boundaries[i]);
+        }
+        // Every virtual node of both rings is a boundary, the nodes of 1 and 3 only once
+        assertEquals(3 * 16 + 16, boundaries.length);
+        for (long position : own) {
+            assertTrue(Arrays.binarySearch(boundaries, position) >= 0);
+        }
+        assertArrayEquals(boundaries, HashRing.boundaries(after, before));
+
+        for (int i = 0; i < PAGES; i++) {
+            long position = HashRing.hash(url(i));
+            // A page belongs to the arc ending at the first boundary at or after it, across the end of the ring
+            int end = Arrays.binarySearch(boundaries, position);
+            end = end >= 0 ? end : (-end - 1) % boundaries.length;
+            assertArrayEquals(before.owners(boundaries[end]), before.owners(position));
+            assertArrayEquals(after.owners(boundaries[end]), after.owners(position));
+        }
+    }
+
+    @Test
+    void rangesExcludeTheStartAndIncludeTheEnd() {
+        long[] ranges = {10, 20, 100, 200};
+        assertFalse(HashRing.inRanges(10, ranges));
+        assertTrue(HashRing.inRanges(11, ranges));
+        assertTrue(HashRing.inRanges(20, ranges));
+        assertFalse(HashRing.inRanges(21, ranges));
+        assertTrue(HashRing.inRanges(150, ranges));
+        assertFalse(HashRing.inRanges(-5, ranges));
+        assertFalse(HashRing.inRanges(5, new long[0]));
+    }
+
+    @Test
+    void rangesWrapAroundTheEndOfTheRing() {
+        long[] ranges = {1000, -1000};
+        assertTrue(HashRing.inRanges(Long.MAX_VALUE, ranges));
+        assertTrue(HashRing.inRanges(Long.MIN_VALUE, ranges));
+        assertTrue(HashRing.inRanges(-1000, ranges));
+        assertFalse(HashRing.inRanges(-999, ranges));
+        assertFalse(HashRing.inRanges(0, ranges));
+        assertFalse(HashRing.inRanges(1000, ranges));
+        assertTrue(HashRing.inRanges(1001, ranges));
+
+        // The arc of a single boundary is the whole ring
+        long[] whole = {42, 42};
+        for (long position : new long[] {Long.MIN_VALUE, 0, 41, 42, 43, Long.MAX_VALUE}) {
+            assertTrue(HashRing.inRanges(position, whole));
+        }
+    }
+
+    @Test
+    void arcsOfARingCoverEveryPageOnce() {
+        HashRing ring = new HashRing(List.of(1, 2, 3), 1, 8);
+        long[] boundaries = HashRing.boundaries(ring);
+        for (int i = 0; i < 1000; i++) {
+            long position = HashRing.hash(url(i));
+            int found = 0;
+            for (int b = 0; b < boundaries.length; b++) {
+                long[] arc = {boundaries[(b + boundaries.length - 1) % boundaries.length], boundaries[b]};
+                if (HashRing.inRanges(position, arc)) {
+                    found++;
+                }
+            }
+            assertEquals(1, found, url(i));
+        }
+    }
+
+    private static String url(int i) {
+        return "http://site" + (i % 97) + ".pt/page/" + i;
+    }
+
+    private static Set<Integer> distinct(int[] owners) {
+        Set<Integer> set = new HashSet<>();
+        for (int owner : owners) {
+            set.add(owner);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,169 @@
+package com.googol.googolfe.server.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PageCodecTest {
+
+    @Test
+    void frameRoundTrip() {
+        PageMessage first = new PageMessage("http://a", "Title A", "Citation of A",
+                new String[] {"one", "two", "one", "tr\u00eas", "two", "one"}, new String[] {"http://b", "http://c"});
+        PageMessage second = new PageMessage("http://b", "", "", new String[0], new String[0]);
+        List<PageMessage> decoded = PageCodec.decode(PageCodec.encode(List.of(first, second)));
+        assertEquals(2, decoded.size());
+        assertPage(first, decoded.get(0));
+        assertPage(second, decoded.get(1));
+    }
+
+    @Test
+    void termsOfOtherShardsAreGaps() {
+        PageMessage page = new PageMessage("http://a", "A", "a", new String[] {null, "kept", null, null, "kept", null},
+                new String[0]);
+        PageMessage decoded = PageCodec.decode(PageCodec.encode(List.of(page))).get(0);
+        assertArrayEquals(new String[] {null, "kept", null, null, "kept", null}, decoded.getKeywords());
+    }
+
+    @Test
+    void emptyTermsTakeNoPosition() {
+        PageMessage page = new PageMessage("http://a", "A", "a", new String[] {"x", "", "y", ""}, new String[0]);
+        PageMessage decoded = PageCodec.decode(PageCodec.encode(List.of(page))).get(0);
+        assertArrayEquals(new String[] {"x", "y"}, decoded.getKeywords());
+    }
+
+    @Test
+    void randomPagesRoundTrip() {
+        Random random = new Random(11);
+        for (int round = 0; round < 50; round++) {
+            List<PageMessage> pages = new ArrayList<>();
+            for (int p = random.nextInt(5); p >= 0; p--) {
+                String[] keywords = new String[random.nextInt(300)];
+                for (int i = 0; i < keywords.length; i++) {
+                    keywords[i] = random.nextInt(10) == 0 ? null : "t" + random.nextInt(40);
+                }
+                String[] links = new String[random.nextInt(5)];
+                for (int i = 0; i < links.length; i++) {
+                    links[i] = "http://l/" + random.nextInt(1000);
+                }
+                pages.add(new PageMessage("http://p/" + round + "/" + p, "T" + p, "C" + p, keywords, links));
+            }
+            List<PageMessage> decoded = PageCodec.decode(PageCodec.encode(pages));
+            assertEquals(pages.size(), decoded.size());
+            for (int i = 0; i < pages.size(); i++) {
+                assertPage(pages.get(i), decoded.get(i));
+            }
+        }
+    }
+
+    @Test
+    void legacyTextMessageIsDecoded() {
+        String text = "URL: http://a\nTitle: Page A\nCitation: About A, and more\nKeywords: [one, two, one]\nLinks: [http://b, http://c]";
+        List<PageMessage> decoded = PageCodec.decode(text.getBytes(StandardCharsets.UTF_8));
+        assertEquals(1, decoded.size());
+        PageMessage page = decoded.get(0);
+        assertEquals("http://a", page.getUrl());
+        assertEquals("Page A", page.getTitle());
+        assertEquals("About A, and more", page.getCitation());
+        assertArrayEquals(new String[] {"one", "two", "one"}, page.getKeywords());
+        assertArrayEquals(new String[] {"http://b", "http://c"}, page.getLinks());
+    }
+
+    @Test
+    void legacyTextMessageWithEmptyLists() {
+        String text = "URL: http://a\nTitle: \nCitation: \nKeywords: []\nLinks: []\n";
+        PageMessage page = PageCodec.decode(text.getBytes(StandardCharsets.UTF_8)).get(0);
+        assertEquals("", page.getTitle());
+        assertEquals(0, page.getKeywords().length);
+        assertEquals(0, page.getLinks().length);
+    }
+
+    @Test
+    void legacyTextMessageMissingFieldsIsRejected() {
+        byte[] text = "URL: http://a\nTitle: A".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> PageCodec.decode(text));
+    }
+
+    @Test
+    void truncatedFramesAreRejected() {
+        PageMessage page = new PageMessage("http://a", "Title", "Citation", new String[] {"one", "two", "three"},
+                new String[] {"http://b"});
+        byte[] frame = PageCodec.encode(List.of(page));
+        for (int length = 1; length < frame.length; length++) {
+            byte[] truncated = Arrays.copyOf(frame, length);
+            assertThrows(IllegalArgumentException.class, () -> PageCodec.decode(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void trailingBytesAndUnknownVersionsAreRejected() {
+        byte[] frame = PageCodec.encode(List.of(new PageMessage("http://a", "", "", new String[] {"x"}, new String[0])));
+        byte[] longer = Arrays.copyOf(frame, frame.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> PageCodec.decode(longer));
+        byte[] future = frame.clone();
+        future[1] = 9;
+        assertThrows(IllegalArgumentException.class, () -> PageCodec.decode(future));
+    }
+
+    @Test
+    void deflatedFrameRoundTrip() {
+        String[] keywords = new String[2000];
+        for (int i = 0; i < keywords.length; i++) {
+            keywords[i] = "term" + (i % 50);
+        }
+        List<PageMessage> pages = List.of(new PageMessage("http://a", "Title", "Citation", keywords, new String[0]));
+        byte[] frame = PageCodec.encode(pages);
+        byte[] deflated = PageCodec.deflate(frame);
+        assertTrue(deflated.length < frame.length);
+        assertEquals(PageCodec.DEFLATED, deflated[1]);
+        assertPage(pages.get(0), PageCodec.decode(deflated).get(0));
+    }
+
+    @Test
+    void incompressibleFrameIsKept() {
+        byte[] frame = PageCodec.encode(List.of(new PageMessage("http://a", "", "", new String[] {"x"}, new String[0])));
+        assertSame(frame, PageCodec.deflate(frame));
+    }
+
+    @Test
+    void corruptDeflatedFramesAreRejected() {
+        String[] keywords = new String[500];
+        Arrays.fill(keywords, "same");
+        byte[] deflated = PageCodec.deflate(PageCodec.encode(List.of(new PageMessage("http://a", "", "", keywords, new String[0]))));
+        byte[] truncated = Arrays.copyOf(deflated, deflated.length - 3);
+        assertThrows(IllegalArgumentException.class, () -> PageCodec.decode(truncated));
+        byte[] corrupt = deflated.clone();
+        corrupt[corrupt.length / 2] ^= 0x5A;
+        assertThrows(IllegalArgumentException.class, () -> PageCodec.decode(corrupt));
+    }
+
+    @Test
+    void frameSizeMatchesTheFrame() {
+        List<byte[]> pages = new ArrayList<>();
+        int size = 0;
+        for (int i = 0; i < 200; i++) {
+            byte[] page = PageCodec.encodePage(new PageMessage("http://p/" + i, "", "", new String[] {"x"}, new String[0]));
+            pages.add(page);
+            size += page.length;
+        }
+        assertEquals(PageCodec.frameSize(pages.size(), size), PageCodec.frame(pages).length);
+    }
+
+    private static void assertPage(PageMessage expected, PageMessage actual) {
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getCitation(), actual.getCitation());
+        assertArrayEquals(expected.getKeywords(), actual.getKeywords());
+        assertArrayEquals(expected.getLinks(), actual.getLinks());
+    }
+}
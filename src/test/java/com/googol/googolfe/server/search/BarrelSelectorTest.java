@@ -0,0 +1,201 @@
+package com.googol.googolfe.server.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.googol.googolfe.server.interfaces.IBarrel;
+
+class BarrelSelectorTest {
+
+    private final List<BarrelSelector> selectors = new ArrayList<>();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void close() {
+        release.countDown();
+        for (BarrelSelector selector : selectors) {
+            selector.close();
+        }
+    }
+
+    @Test
+    void noBarrelsIsAnError() {
+        BarrelSelector selector = selector(0.3, 1000);
+        assertThrows(RemoteException.class, () -> selector.call(IBarrel::getId));
+        IBarrel barrel = barrel(1);
+        selector.add(barrel);
+        selector.remove(barrel);
+        assertThrows(RemoteException.class, () -> selector.call(IBarrel::getId));
+    }
+
+    @Test
+    void fastBarrelGetsMostRequests() throws RemoteException {
+        BarrelSelector selector = selector(0.3, 1000);
+        for (int id = 1; id <= 3; id++) {
+            selector.add(barrel(id));
+        }
+        int[] calls = new int[4];
+        for (int i = 0; i < 150; i++) {
+            int id = selector.call(barrel -> {
+                // Barrels 2 and 3 take 10 milliseconds more
+                sleep(barrel.getId() == 1 ? 0 : 10);
+                return barrel.getId();
+            });
+            calls[id]++;
+        }
+        // The fast barrel is called whenever it is one of the two drawn, about 2 in 3 requests
+        assertTrue(calls[1] > 80, calls[1] + " requests to the fast barrel");
+        // The slow barrels are still called when both are drawn
+        assertTrue(calls[2] > 0 && calls[3] > 0, calls[2] + " and " + calls[3] + " requests to the slow barrels");
+    }
+
+    @Test
+    void barrelThatTurnsSlowLosesItsRequests() throws RemoteException {
+        BarrelSelector selector = selector(0.5, 1000);
+        selector.add(barrel(1));
+        selector.add(barrel(2));
+        AtomicLong slowMillis = new AtomicLong(1);
+        BarrelCall<Integer> request = barrel -> {
+            sleep(barrel.getId() == 1 ? slowMillis.get() : 1);
+            return barrel.getId();
+        };
+        for (int i = 0; i < 20; i++) {
+            selector.call(request);
+        }
+        slowMillis.set(40);
+        // With two barrels both are always drawn, so once the average of barrel 1 rises only barrel 2 is called
+        int[] calls = new int[3];
+        for (int i = 0; i < 30; i++) {
+            calls[selector.call(request)]++;
+        }
+        assertTrue(calls[1] <= 1, calls[1] + " requests to the slow barrel");
+    }
+
+    @Test
+    void failedCallIsRetriedOnAnotherBarrel() throws RemoteException {
+        BarrelSelector selector = selector(0.3, 1000);
+        for (int id = 1; id <= 3; id++) {
+            selector.add(barrel(id));
+        }
+        AtomicInteger attempts = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            int id = selector.call(barrel -> {
+                attempts.incrementAndGet();
+                if (barrel.getId() != 3) {
+                    throw new RemoteException("Barrel " + barrel.getId() + " is down");
+                }
+                return 3;
+            });
+            assertEquals(3, id);
+        }
+        assertTrue(attempts.get() <= 30);
+
+        // Once every barrel was tried, the last failure is reported
+        RemoteException failure = assertThrows(RemoteException.class, () -> selector.call(barrel -> {
+            throw new RemoteException("Barrel " + barrel.getId() + " is down");
+        }));
+        assertTrue(failure.getMessage().contains("is down"));
+        RemoteException wrapped = assertThrows(RemoteException.class, () -> selector.call(barrel -> {
+            throw new IllegalStateException("bug");
+        }));
+        assertTrue(wrapped.getMessage().contains("Barrel call failed"));
+    }
+
+    @Test
+    void slowCallIsHedgedAfterThe95thPercentile() throws RemoteException {
+        BarrelSelector selector = selector(0.3, 1);
+        selector.add(barrel(1));
+        selector.add(barrel(2));
+        // Before any latency is known the timeout is the only limit, so the recent latencies come first:
+        // the slowest 10 in 64 take 100 milliseconds, so the 95th percentile is 100 milliseconds
+        for (int i = 0; i < 64; i++) {
+            long millis = i % 6 == 0 && i < 60 ? 100 : 0;
+            selector.call(barrel -> {
+                sleep(millis);
+                return barrel.getId();
+            });
+        }
+
+        // The first call of the request hangs, the same request sent to the other barrel answers
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+        int id = selector.call(barrel -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(release);
+                return -1;
+            }
+            return barrel.getId();
+        });
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(2, attempts.get());
+        assertTrue(id == 1 || id == 2);
+        assertTrue(elapsed >= 90 && elapsed < 2000, "hedged after " + elapsed + " milliseconds");
+
+        // A request hanging on both barrels times out
+        BarrelSelector timed = new BarrelSelector(0.3, 10, 300);
+        selectors.add(timed);
+        timed.add(barrel(1));
+        timed.add(barrel(2));
+        assertThrows(RemoteException.class, () -> timed.call(barrel -> {
+            await(release);
+            return barrel.getId();
+        }));
+    }
+
+    private BarrelSelector selector(double alpha, long minHedgeMillis) {
+        BarrelSelector selector = new BarrelSelector(alpha, minHedgeMillis, 10_000);
+        selectors.add(selector);
+        return selector;
+    }
+
+    /**
+     * Builds a barrel that only knows its ID, compared by identity like the remote stubs.
+     */
+    private static IBarrel barrel(int id) {
+        return (IBarrel) Proxy.newProxyInstance(IBarrel.class.getClassLoader(), new Class<?>[] {IBarrel.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "Barrel" + id;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
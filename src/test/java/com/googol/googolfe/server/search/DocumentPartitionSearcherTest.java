@@ -0,0 +1,392 @@
+package com.googol.googolfe.server.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.googol.googolfe.objects.CollectionStats;
+import com.googol.googolfe.objects.IngestStats;
+import com.googol.googolfe.objects.PageBatch;
+import com.googol.googolfe.objects.Result;
+import com.googol.googolfe.objects.SearchPage;
+import com.googol.googolfe.objects.ShardMatches;
+import com.googol.googolfe.objects.TransferInfo;
+import com.googol.googolfe.server.interfaces.IBarrel;
+import com.googol.googolfe.server.net.HashRing;
+
+class DocumentPartitionSearcherTest {
+
+    private static final int PAGES = 600;
+
+    private static final int VIRTUAL_NODES = 16;
+
+    private final List<DocumentPartitionSearcher> searchers = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        for (DocumentPartitionSearcher searcher : searchers) {
+            searcher.close();
+        }
+    }
+
+    @Test
+    void searchMergesTheBestMatchesOfEveryArc() {
+        DocumentPartitionSearcher searcher = searcher(2);
+        Map<Integer, FakeBarrel> barrels = join(searcher, 2, 1, 2, 3, 4);
+        List<String> expected = ranking();
+
+        SearchPage page = searcher.search("java", 0, 10);
+        assertEquals(expected.subList(0, 10), urls(page));
+        assertEquals(expected.size(), page.getTotalHits());
+        assertFalse(page.isPartial());
+        // Each page is described by the barrel that returned it
+        assertEquals("Title of " + expected.get(0), page.getResults().get(0).getTitle());
+        assertEquals(expected.subList(10, 25), urls(searcher.search("java", 10, 15)));
+
+        for (FakeBarrel barrel : barrels.values()) {
+            // The statistics are the sums of every barrel divided by the number of copies
+            assertEquals(PAGES, barrel.stats.getDocumentCount());
+            assertEquals(matches(), barrel.stats.getDocumentFrequencies()[0]);
+            assertTrue(barrel.partitionCalls.get() <= 2);
+        }
+    }
+
+    @Test
+    void barrelsAreOnlyAskedOnceEveryOneCopiedItsArcs() {
+        DocumentPartitionSearcher searcher = searcher(2);
+        FakeBarrel first = new FakeBarrel(1);
+        FakeBarrel second = new FakeBarrel(2);
+        fill(first, new HashRing(List.of(1), 2, VIRTUAL_NODES));
+        searcher.add(first, 1);
+        searcher.add(second, 2);
+        // The second barrel has not copied its pages yet, so the first one answers for every arc
+        SearchPage page = searcher.search("java", 0, 10);
+        assertEquals(ranking().subList(0, 10), urls(page));
+        assertFalse(page.isPartial());
+        assertEquals(0, second.partitionCalls.get());
+
+        // Every page is held by both barrels, so either can be asked once the second one is ready
+        fill(second, new HashRing(List.of(1, 2), 2, VIRTUAL_NODES));
+        searcher.ready(2, List.of(1, 2));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(ranking().subList(0, 10), urls(searcher.search("java", 0, 10)));
+        }
+        assertTrue(second.partitionCalls.get() > 0);
+    }
+
+    @Test
+    void arcsOfAFailedBarrelGoToAnotherOwner() {
+        DocumentPartitionSearcher searcher = searcher(2);
+        Map<Integer, FakeBarrel> barrels = join(searcher, 2, 1, 2, 3, 4);
+        barrels.get(3).failing = true;
+        SearchPage page = searcher.search("java", 0, 30);
+        assertEquals(ranking().subList(0, 30), urls(page));
+        assertEquals(matches(), page.getTotalHits());
+        assertFalse(page.isPartial());
+    }
+
+    @Test
+    void arcsWithNoOwnerLeftMakeThePagePartial() {
+        DocumentPartitionSearcher searcher = searcher(1);
+        Map<Integer, FakeBarrel> barrels = join(searcher, 1, 1, 2, 3);
+        barrels.get(2).failing = true;
+        SearchPage page = searcher.search("java", 0, 20);
+        assertTrue(page.isPartial());
+        List<String> expected = new ArrayList<>(ranking());
+        expected.removeAll(barrels.get(2).pages.keySet());
+        assertEquals(expected.subList(0, 20), urls(page));
+
+        DocumentPartitionSearcher empty = searcher(1);
+        SearchPage none = empty.search("java", 0, 20);
+        assertTrue(none.isPartial());
+        assertEquals(0, none.getResults().size());
+    }
+
+    @Test
+    void joiningBarrelIsAskedOnceItCopiedItsArcs() {
+        DocumentPartitionSearcher searcher = searcher(2);
+        join(searcher, 2, 1, 2, 3, 4);
+        FakeBarrel joining = new FakeBarrel(5);
+        searcher.add(joining, 5);
+        List<String> expected = ranking();
+        for (int i = 0; i < 20; i++) {
+            SearchPage page = searcher.search("java", 0, 10);
+            assertEquals(expected.subList(0, 10), urls(page));
+            assertFalse(page.isPartial());
+        }
+        assertEquals(0, joining.partitionCalls.get());
+
+        // A report for another ring is ignored
+        fill(joining, new HashRing(List.of(1, 2, 3, 4, 5), 2, VIRTUAL_NODES));
+        searcher.ready(5, List.of(1, 2, 3, 4));
+        searcher.search("java", 0, 10);
+        assertEquals(0, joining.partitionCalls.get());
+
+        searcher.ready(5, List.of(1, 2, 3, 4, 5));
+        for (int i = 0; i < 20; i++) {
+            assertEquals(expected.subList(0, 10), urls(searcher.search("java", 0, 10)));
+        }
+        assertTrue(joining.partitionCalls.get() > 0);
+    }
+
+    @Test
+    void leavingBarrelIsReplacedByTheStableOwners() {
+        DocumentPartitionSearcher searcher = searcher(2);
+        Map<Integer, FakeBarrel> barrels = join(searcher, 2, 1, 2, 3, 4);
+        searcher.remove(barrels.get(3));
+        List<String> expected = ranking();
+        // Until the pages are copied, the owners of the ring with the barrel that left are asked
+        assertEquals(expected.subList(0, 40), urls(searcher.search("java", 0, 40)));
+        assertEquals(0, barrels.get(3).partitionCalls.get());
+
+        HashRing ring = new HashRing(List.of(1, 2, 4), 2, VIRTUAL_NODES);
+        for (int id : List.of(1, 2, 4)) {
+            fill(barrels.get(id), ring);
+            searcher.ready(id, ring.getMembers());
+        }
+        SearchPage page = searcher.search("java", 0, 40);
+        assertEquals(expected.subList(0, 40), urls(page));
+        assertFalse(page.isPartial());
+        assertEquals(3, searcher.members().size());
+    }
+
+    @Test
+    void linksOfEveryArcAreJoined() {
+        DocumentPartitionSearcher searcher = searcher(2);
+        join(searcher, 2, 1, 2, 3, 4);
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < PAGES; i++) {
+            if (i % 50 == 1) {
+                expected.add(url(i));
+            }
+        }
+        String[] links = searcher.findSubLinks(url(0)).split("\n");
+        assertEquals(expected.size(), links.length);
+        assertEquals(expected, new HashSet<>(Arrays.asList(links)));
+    }
+
+    private DocumentPartitionSearcher searcher(int replicas) {
+        DocumentPartitionSearcher searcher = new DocumentPartitionSearcher(replicas, VIRTUAL_NODES, 5000, 100);
+        searchers.add(searcher);
+        return searcher;
+    }
+
+    /**
+     * Adds barrels holding the pages they own in the ring of all of them, each reporting its pages copied.
+     */
+    private static Map<Integer, FakeBarrel> join(DocumentPartitionSearcher searcher, int replicas, Integer... ids) {
+        HashRing ring = new HashRing(Arrays.asList(ids), replicas, VIRTUAL_NODES);
+        Map<Integer, FakeBarrel> barrels = new HashMap<>();
+        for (int id : ids) {
+            FakeBarrel barrel = new FakeBarrel(id);
+            fill(barrel, ring);
+            barrels.put(id, barrel);
+            searcher.add(barrel, id);
+        }
+        for (int id : ids) {
+            searcher.ready(id, ring.getMembers());
+        }
+        return barrels;
+    }
+
+    private static void fill(FakeBarrel barrel, HashRing ring) {
+        for (int i = 0; i < PAGES; i++) {
+            if (ring.owns(barrel.id, url(i))) {
+                barrel.pages.put(url(i), i);
+            }
+        }
+    }
+
+    /**
+     * Ranks every page matching "java", as a single barrel holding every page would.
+     */
+    private static List<String> ranking() {
+        List<String> ranked = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            if (matches(i)) {
+                ranked.add(url(i));
+            }
+        }
+        ranked.sort(BY_SCORE);
+        return ranked;
+    }
+
+    private static int matches() {
+        int count = 0;
+        for (int i = 0; i < PAGES; i++) {
+            count += matches(i) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static boolean matches(int page) {
+        return page % 3 != 0;
+    }
+
+    private static double score(String url) {
+        return (HashRing.hash(url) >>> 40) / (double) (1 << 24);
+    }
+
+    private static final Comparator<String> BY_SCORE = Comparator.comparingDouble((String url) -> -score(url))
+            .thenComparing(Comparator.naturalOrder());
+
+    private static String url(int i) {
+        return "http://site" + (i % 17) + ".pt/" + i;
+    }
+
+    private static List<String> urls(SearchPage page) {
+        List<String> urls = new ArrayList<>();
+        for (Result result : page.getResults()) {
+            urls.add(result.getUrl());
+        }
+        return urls;
+    }
+
+    /**
+     * A barrel answering from the pages it holds, whose number are its terms: every page not a multiple
+     * of 3 matches "java", and every 50th page links to every page.
+     */
+    private static final class FakeBarrel implements IBarrel {
+        final int id;
+
+        final Map<String, Integer> pages = new ConcurrentHashMap<>();
+
+        final AtomicInteger partitionCalls = new AtomicInteger();
+
+        volatile boolean failing;
+
+        volatile CollectionStats stats;
+
+        FakeBarrel(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public CollectionStats collectionStats(String s) throws RemoteException {
+            int frequency = 0;
+            for (int page : pages.values()) {
+                frequency += matches(page) ? 1 : 0;
+            }
+            return new CollectionStats(pages.size(), 10L * pages.size(), new String[] {s}, new int[] {frequency});
+        }
+
+        @Override
+        public ShardMatches searchPartition(String s, long[] ranges, int limit, CollectionStats stats) throws RemoteException {
+            partitionCalls.incrementAndGet();
+            this.stats = stats;
+            if (failing) {
+                throw new RemoteException("Barrel " + id + " is down");
+            }
+            List<String> found = new ArrayList<>();
+            for (Map.Entry<String, Integer> page : pages.entrySet()) {
+                if (matches(page.getValue()) && HashRing.inRanges(HashRing.hash(page.getKey()), ranges)) {
+                    found.add(page.getKey());
+                }
+            }
+            found.sort(BY_SCORE);
+            int n = Math.min(limit, found.size());
+            String[] urls = new String[n];
+            double[] scores = new double[n];
+            for (int i = 0; i < n; i++) {
+                urls[i] = found.get(i);
+                scores[i] = score(urls[i]);
+            }
+            return new ShardMatches(urls, scores, new double[n], found.size());
+        }
+
+        @Override
+        public ArrayList<Result> describe(ArrayList<String> urls) throws RemoteException {
+            ArrayList<Result> results = new ArrayList<>();
+            for (String url : urls) {
+                results.add(new Result("Title of " + url, "", url));
+            }
+            return results;
+        }
+
+        @Override
+        public String findSubLinks(String s) throws RemoteException {
+            StringBuilder links = new StringBuilder();
+            for (Map.Entry<String, Integer> page : pages.entrySet()) {
+                if (page.getValue() % 50 == 1) {
+                    links.append(page.getKey()).append("\n");
+                }
+            }
+            return links.toString();
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public void send(String s) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String search(String s) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public SearchPage search(String s, int offset, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ShardMatches searchShard(ArrayList<String> terms, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setMembers(long version, HashMap<Integer, IBarrel> members) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PageBatch exportPages(long[] ranges, int fromDoc, int max) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public double getAverageTime() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public IngestStats getIngestStats() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TransferInfo openTransfer() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] readTransfer(long session, int part, long offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void closeTransfer(long session) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.googol.googolfe.server.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+class QueryCacheTest {
+
+    /**
+     * The weight of a query of two characters with a result of 100 characters.
+     */
+    private static final int WEIGHT = 2 * 2 + 100 + 64;
+
+    @Test
+    void resultsAreFoundUntilTheEpochChanges() {
+        QueryCache<String> cache = new QueryCache<>(1 << 20, 60_000, String::length);
+        assertNull(cache.get("java", 1));
+        cache.put("java", "results of java", 1);
+        assertEquals("results of java", cache.get("java", 1));
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+
+        // A barrel applied new pages, so the result is dropped even if asked again at its epoch
+        assertNull(cache.get("java", 2));
+        assertNull(cache.get("java", 1));
+        cache.put("java", "new results of java", 2);
+        assertEquals("new results of java", cache.get("java", 2));
+        cache.put("java", "newer results of java", 2);
+        assertEquals("newer results of java", cache.get("java", 2));
+    }
+
+    @Test
+    void resultsExpireAfterTheTtl() {
+        QueryCache<String> cache = new QueryCache<>(1 << 20, 50, String::length);
+        cache.put("java", "results", 1);
+        assertEquals("results", cache.get("java", 1));
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(80));
+        assertNull(cache.get("java", 1));
+    }
+
+    @Test
+    void resultsAreKeptUnderTheByteLimit() {
+        QueryCache<String> cache = new QueryCache<>(3 * WEIGHT, 60_000, String::length);
+        for (int i = 0; i < 5; i++) {
+            // The last queries are asked more often, so each one takes the place of the least recently used
+            ask(cache, "q" + i, i < 3 ? 1 : 2);
+            cache.put("q" + i, result(i), 1);
+        }
+        assertNull(cache.get("q0", 1));
+        assertNull(cache.get("q1", 1));
+        assertEquals(result(2), cache.get("q2", 1));
+        assertEquals(result(3), cache.get("q3", 1));
+        assertEquals(result(4), cache.get("q4", 1));
+
+        // A result heavier than the whole cache is never kept
+        cache.put("q5", "x".repeat(3 * WEIGHT), 1);
+        assertNull(cache.get("q5", 1));
+        assertEquals(result(2), cache.get("q2", 1));
+
+        QueryCache<String> none = new QueryCache<>(0, 60_000, String::length);
+        none.put("q0", "", 1);
+        assertNull(none.get("q0", 1));
+    }
+
+    @Test
+    void rareQueriesDoNotEvictPopularOnes() {
+        QueryCache<String> cache = new QueryCache<>(3 * WEIGHT, 60_000, String::length);
+        for (int i = 0; i < 3; i++) {
+            ask(cache, "p" + i, 5);
+            cache.put("p" + i, result(i), 1);
+        }
+        // A burst of queries asked once is rejected
+        for (int i = 0; i < 20; i++) {
+            cache.get("r" + i, 1);
+            cache.put("r" + i, result(i), 1);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertNull(cache.get("r" + i, 1));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(result(i), cache.get("p" + i, 1));
+        }
+
+        // A query that became more popular than the least recently used one takes its place
+        ask(cache, "n0", 10);
+        cache.put("n0", result(9), 1);
+        assertEquals(result(9), cache.get("n0", 1));
+        assertNull(cache.get("p0", 1));
+        assertEquals(result(1), cache.get("p1", 1));
+        assertEquals(result(2), cache.get("p2", 1));
+    }
+
+    @Test
+    void clearDropsEveryResult() {
+        QueryCache<String> cache = new QueryCache<>(3 * WEIGHT, 60_000, String::length);
+        for (int i = 0; i < 3; i++) {
+            cache.put("q" + i, result(i), 1);
+        }
+        cache.clear();
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.get("q" + i, 1));
+        }
+        // The whole byte limit is free again
+        for (int i = 3; i < 6; i++) {
+            cache.put("q" + i, result(i), 1);
+        }
+        for (int i = 3; i < 6; i++) {
+            assertEquals(result(i), cache.get("q" + i, 1));
+        }
+    }
+
+    private static void ask(QueryCache<String> cache, String query, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(query, 1);
+        }
+    }
+
+    private static String result(int i) {
+        return String.format("%-100d", i);
+    }
+}
@@ -0,0 +1,170 @@
+package com.googol.googolfe.server.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 8;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call<String> call = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "answer";
+        };
+
+        List<Future<String>> answers = new ArrayList<>();
+        answers.add(executor.submit(() -> flights.run("q", call)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            answers.add(executor.submit(() -> flights.run("q", call)));
+        }
+        waitForCoalesced(flights, CALLERS - 1);
+        release.countDown();
+
+        String first = answers.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<String> answer : answers) {
+            assertSame(first, answer.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(CALLERS - 1, flights.getCoalesced());
+    }
+
+    @Test
+    void differentKeysDoNotShareACall() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> a = executor.submit(() -> flights.run("a", () -> {
+            started.countDown();
+            await(release);
+            return "a";
+        }));
+        Future<String> b = executor.submit(() -> flights.run("b", () -> {
+            started.countDown();
+            await(release);
+            return "b";
+        }));
+        // Both calls are running at the same time
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals("a", a.get(5, TimeUnit.SECONDS));
+        assertEquals("b", b.get(5, TimeUnit.SECONDS));
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    @Test
+    void exceptionReachesEveryWaiter() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        RemoteException failure = new RemoteException("No barrels available");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call<String> call = () -> {
+            started.countDown();
+            await(release);
+            throw failure;
+        };
+
+        List<Future<String>> answers = new ArrayList<>();
+        answers.add(executor.submit(() -> flights.run("q", call)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            answers.add(executor.submit(() -> flights.run("q", call)));
+        }
+        waitForCoalesced(flights, CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> answer : answers) {
+            ExecutionException e = assertThrows(ExecutionException.class, () -> answer.get(5, TimeUnit.SECONDS));
+            assertSame(failure, e.getCause());
+        }
+    }
+
+    @Test
+    void runtimeExceptionReachesTheWaitersUnwrapped() throws Exception {
+        SingleFlight<String> flights = new SingleFlight<>();
+        IllegalStateException failure = new IllegalStateException("broken");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SingleFlight.Call<String> call = () -> {
+            started.countDown();
+            await(release);
+            throw failure;
+        };
+        Future<String> leader = executor.submit(() -> flights.run("q", call));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<String> waiter = executor.submit(() -> flights.run("q", call));
+        waitForCoalesced(flights, 1);
+        release.countDown();
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    void keyIsFreedAfterTheCallCompletes() throws RemoteException {
+        SingleFlight<Integer> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        SingleFlight.Call<Integer> call = calls::incrementAndGet;
+
+        // The answers are shared while a call is in flight, not kept after it
+        assertEquals(1, (int) flights.run("q", call));
+        assertEquals(2, (int) flights.run("q", call));
+
+        // A failed call frees its key too
+        assertThrows(RemoteException.class, () -> flights.run("q", () -> {
+            throw new RemoteException("down");
+        }));
+        assertEquals(3, (int) flights.run("q", call));
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    private static void await(CountDownLatch latch) throws RemoteException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) {
+                throw new RemoteException("Test call never released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted", e);
+        }
+    }
+
+    private static void waitForCoalesced(SingleFlight<?> flights, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (flights.getCoalesced() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, flights.getCoalesced());
+    }
+}
@@ -0,0 +1,133 @@
+package com.googol.googolfe.server.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SpaceSavingTest {
+
+    @Test
+    void countsAreExactWhileTheCountersLast() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        sketch.offer("java", 3);
+        sketch.offer("rmi", 1);
+        sketch.offer("java", 2);
+        sketch.offer("server", 4);
+        List<SpaceSaving.Counter> top = sketch.top(10);
+        assertEquals(3, top.size());
+        assertCounter(top.get(0), "java", 5, 0);
+        assertCounter(top.get(1), "server", 4, 0);
+        assertCounter(top.get(2), "rmi", 1, 0);
+    }
+
+    @Test
+    void topIsOrderedByCountThenItem() {
+        SpaceSaving sketch = new SpaceSaving(10);
+        for (String item : new String[] {"c", "b", "a", "d"}) {
+            sketch.offer(item, item.equals("d") ? 1 : 2);
+        }
+        List<SpaceSaving.Counter> top = sketch.top(3);
+        assertEquals(List.of("a", "b", "c"), List.of(top.get(0).getItem(), top.get(1).getItem(), top.get(2).getItem()));
+        assertEquals(0, sketch.top(-1).size());
+        assertEquals(4, sketch.top(100).size());
+    }
+
+    @Test
+    void frequentItemsAreKeptWithinTheErrorBounds() {
+        int capacity = 50;
+        for (long seed = 1; seed <= 3; seed++) {
+            Random random = new Random(seed);
+            SpaceSaving sketch = new SpaceSaving(capacity);
+            Map<String, Long> exact = new HashMap<>();
+            long total = 0;
+            for (int i = 0; i < 50_000; i++) {
+                // Skewed stream over many more items than counters
+                String item = "t" + (int) (2000 * Math.pow(random.nextDouble(), 4));
+                long weight = 1 + random.nextInt(3);
+                sketch.offer(item, weight);
+                exact.merge(item, weight, Long::sum);
+                total += weight;
+            }
+            List<SpaceSaving.Counter> top = sketch.top(capacity);
+            assertEquals(capacity, top.size());
+            Map<String, SpaceSaving.Counter> kept = new HashMap<>();
+            for (SpaceSaving.Counter counter : top) {
+                kept.put(counter.getItem(), counter);
+                long real = exact.get(counter.getItem());
+                // The estimate never undercounts, and overcounts by at most its error, itself at most total / capacity
+                assertTrue(counter.getCount() >= real, counter.getItem());
+                assertTrue(counter.getCount() - counter.getError() <= real, counter.getItem());
+                assertTrue(counter.getError() <= total / capacity, counter.getItem());
+            }
+            for (Map.Entry<String, Long> entry : exact.entrySet()) {
+                if (entry.getValue() > total / capacity) {
+                    assertNotNull(kept.get(entry.getKey()), entry.getKey() + " searched " + entry.getValue() + " times");
+                }
+            }
+        }
+    }
+
+    @Test
+    void serializedSketchKeepsCounting() throws Exception {
+        SpaceSaving sketch = new SpaceSaving(5);
+        Random random = new Random(9);
+        for (int i = 0; i < 500; i++) {
+            sketch.offer("t" + random.nextInt(12), 1);
+        }
+        SpaceSaving copy = roundTrip(sketch);
+        assertSameCounters(sketch.top(5), copy.top(5));
+
+        // The positions of the counters are rebuilt, so both sketches keep counting the same way
+        for (int i = 0; i < 500; i++) {
+            String item = "t" + random.nextInt(12);
+            sketch.offer(item, 1);
+            copy.offer(item, 1);
+        }
+        assertSameCounters(sketch.top(5), copy.top(5));
+    }
+
+    @Test
+    void capacityIsAtLeastOne() {
+        SpaceSaving sketch = new SpaceSaving(0);
+        sketch.offer("a", 2);
+        sketch.offer("b", 1);
+        List<SpaceSaving.Counter> top = sketch.top(5);
+        assertEquals(1, top.size());
+        assertCounter(top.get(0), "b", 3, 2);
+    }
+
+    private static void assertCounter(SpaceSaving.Counter counter, String item, long count, long error) {
+        assertEquals(item, counter.getItem());
+        assertEquals(count, counter.getCount());
+        assertEquals(error, counter.getError());
+    }
+
+    private static void assertSameCounters(List<SpaceSaving.Counter> expected, List<SpaceSaving.Counter> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertCounter(actual.get(i), expected.get(i).getItem(), expected.get(i).getCount(), expected.get(i).getError());
+        }
+    }
+
+    private static SpaceSaving roundTrip(SpaceSaving sketch) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sketch);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (SpaceSaving) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.googol.googolfe.server.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TrendingWindowTest {
+
+    @Test
+    void bucketsOfTheWindowAreMerged() {
+        TrendingWindow window = new TrendingWindow(3, 1000, 10);
+        window.record("java", 0);
+        window.record("rmi", 100);
+        window.record("java", 1500);
+        window.record("java", 2500);
+        window.record("rmi", 2600);
+        window.record("server", 2700);
+        List<SpaceSaving.Counter> top = window.top(10, 2900);
+        assertEquals(List.of("java", "rmi", "server"), items(top));
+        assertEquals(3, top.get(0).getCount());
+        assertEquals(2, top.get(1).getCount());
+        assertEquals(List.of("java", "rmi"), items(window.top(2, 2900)));
+    }
+
+    @Test
+    void bucketsExpireOnceTheyLeaveTheWindow() {
+        TrendingWindow window = new TrendingWindow(3, 1000, 10);
+        window.record("java", 0);
+        window.record("rmi", 1000);
+        window.record("server", 2000);
+        assertEquals(List.of("java", "rmi", "server"), items(window.top(10, 2999)));
+        // The first bucket left the window, even before its slot is reused
+        assertEquals(List.of("rmi", "server"), items(window.top(10, 3000)));
+        window.record("web", 3100);
+        assertEquals(List.of("rmi", "server", "web"), items(window.top(10, 3100)));
+        assertEquals(List.of("web"), items(window.top(10, 5000)));
+        assertEquals(List.of(), items(window.top(10, 6000)));
+    }
+
+    @Test
+    void slotsOfSkippedBucketsAreNotRead() {
+        TrendingWindow window = new TrendingWindow(3, 1000, 10);
+        window.record("java", 500);
+        // Same slot three buckets later, the old bucket is replaced
+        window.record("rmi", 3500);
+        assertEquals(List.of("rmi"), items(window.top(10, 3600)));
+        assertEquals(1, window.top(10, 3600).get(0).getCount());
+    }
+
+    @Test
+    void mergedClosedBucketsAreReusedUntilTheNextBucket() {
+        TrendingWindow window = new TrendingWindow(3, 1000, 10);
+        window.record("java", 500);
+        window.record("rmi", 1500);
+        assertEquals(List.of("java", "rmi"), items(window.top(10, 1600)));
+
+        // A late search in a closed bucket is not seen while the merge of the closed buckets is reused,
+        // while the searches of the current bucket always are
+        window.record("server", 900);
+        window.record("rmi", 1700);
+        List<SpaceSaving.Counter> top = window.top(10, 1800);
+        assertEquals(List.of("rmi", "java"), items(top));
+        assertEquals(2, top.get(0).getCount());
+
+        // The next bucket merges the closed buckets again
+        assertEquals(List.of("rmi", "java", "server"), items(window.top(10, 2000)));
+    }
+
+    @Test
+    void readingDoesNotChangeTheCounts() {
+        TrendingWindow window = new TrendingWindow(2, 1000, 10);
+        window.record("java", 100);
+        window.record("java", 1100);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, window.top(10, 1200).get(0).getCount());
+        }
+    }
+
+    @Test
+    void errorsOfTheBucketsAddUp() {
+        TrendingWindow window = new TrendingWindow(2, 1000, 1);
+        // Each bucket has one counter, so the second term of the first bucket inherits the count of the first term
+        window.record("java", 0);
+        window.record("rmi", 10);
+        window.record("rmi", 1000);
+        window.record("rmi", 1010);
+        List<SpaceSaving.Counter> top = window.top(10, 1100);
+        assertEquals(1, top.size());
+        assertEquals("rmi", top.get(0).getItem());
+        assertEquals(4, top.get(0).getCount());
+        assertEquals(1, top.get(0).getError());
+    }
+
+    private static List<String> items(List<SpaceSaving.Counter> counters) {
+        List<String> items = new ArrayList<>();
+        for (SpaceSaving.Counter counter : counters) {
+            items.add(counter.getItem());
+        }
+        return items;
+    }
+}
@@ -0,0 +1,188 @@
+package com.googol.googolfe.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.googol.googolfe.server.index.IndexView;
+import com.googol.googolfe.server.index.SegmentedIndex;
+import com.googol.googolfe.server.net.HashRing;
+
+class PageExportsTest {
+
+    private static final int PAGES = 400;
+
+    private static final IntFunction<String> URLS = doc -> "http://site" + (doc % 13) + ".pt/" + doc;
+
+    @TempDir
+    Path directory;
+
+    private SegmentedIndex index;
+
+    private final List<String[]> pages = new ArrayList<>();
+
+    @BeforeEach
+    void open() throws IOException {
+        index = new SegmentedIndex(directory.toString(), "Barrel0", 10);
+        Random random = new Random(9);
+        for (int doc = 0; doc < PAGES; doc++) {
+            String[] terms = new String[5 + random.nextInt(20)];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = "w" + random.nextInt(30);
+            }
+            pages.add(terms);
+            index.addDocument(doc, terms);
+            if (doc % 100 == 99) {
+                index.publish();
+            }
+        }
+        index.publish();
+    }
+
+    @AfterEach
+    void close() {
+        index.close();
+    }
+
+    @Test
+    void batchesHoldThePagesOfTheArcsInOrder() {
+        long[] ranges = ranges(new HashRing(List.of(1, 2, 3), 1, 8), 2);
+        List<Integer> expected = pagesIn(ranges);
+        assertTrue(expected.size() > 50 && expected.size() < PAGES);
+
+        PageExports exports = new PageExports(60_000, 32);
+        List<Integer> copied = copy(exports, index.view(), ranges, 7);
+        assertEquals(expected, copied);
+        // The copy is over, so a new one starts from the beginning
+        assertEquals(expected, copy(exports, index.view(), ranges, 50));
+    }
+
+    @Test
+    void batchesLargerThanAChunkAreComplete() {
+        long[] ranges = ranges(new HashRing(List.of(1, 2), 1, 8), 1);
+        PageExports exports = new PageExports(60_000, 4);
+        assertEquals(pagesIn(ranges), copy(exports, index.view(), ranges, 25));
+    }
+
+    @Test
+    void copyKeepsTheViewItStartedFrom() {
+        long[] ranges = {0, 0};
+        PageExports exports = new PageExports(60_000, 16);
+        IndexView view = index.view();
+        PageExports.Batch first = exports.next(view, URLS, ranges, 0, 10);
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, first.getDocs());
+
+        // Pages indexed during the copy are left for the next one
+        for (int doc = PAGES; doc < PAGES + 20; doc++) {
+            index.addDocument(doc, new String[] {"late"});
+        }
+        index.publish();
+        List<Integer> copied = new ArrayList<>();
+        int next = first.getNextDoc();
+        while (next >= 0) {
+            PageExports.Batch batch = exports.next(index.view(), URLS, ranges, next, 64);
+            for (int doc : batch.getDocs()) {
+                copied.add(doc);
+            }
+            next = batch.getNextDoc();
+        }
+        assertEquals(PAGES - 10, copied.size());
+        assertEquals(PAGES - 1, (int) copied.get(copied.size() - 1));
+        assertEquals(PAGES + 20, copy(exports, index.view(), ranges, 64).size());
+    }
+
+    @Test
+    void expiredCopyRestartsFromTheCurrentView() {
+        long[] ranges = {0, 0};
+        // Every copy expires before its next batch
+        PageExports exports = new PageExports(0, 16);
+        PageExports.Batch first = exports.next(index.view(), URLS, ranges, 0, 100);
+        assertEquals(100, first.getNextDoc());
+        for (int doc = PAGES; doc < PAGES + 5; doc++) {
+            index.addDocument(doc, new String[] {"late"});
+        }
+        index.publish();
+        // The copy restarts at the doc it reached, and now finds the new pages
+        List<Integer> rest = new ArrayList<>();
+        int next = first.getNextDoc();
+        while (next >= 0) {
+            PageExports.Batch batch = exports.next(index.view(), URLS, ranges, next, 100);
+            for (int doc : batch.getDocs()) {
+                rest.add(doc);
+            }
+            next = batch.getNextDoc();
+        }
+        assertEquals(PAGES + 5 - 100, rest.size());
+        assertEquals(100, (int) rest.get(0));
+    }
+
+    @Test
+    void emptyArcsHaveASingleEmptyBatch() {
+        PageExports exports = new PageExports(60_000, 16);
+        PageExports.Batch batch = exports.next(index.view(), URLS, new long[0], 0, 10);
+        assertEquals(0, batch.getDocs().length);
+        assertEquals(-1, batch.getNextDoc());
+        assertEquals(0, batch.getTerms(3).length);
+    }
+
+    /**
+     * Copies the pages of the arcs batch by batch, checking the terms of every page.
+     */
+    private List<Integer> copy(PageExports exports, IndexView view, long[] ranges, int max) {
+        List<Integer> copied = new ArrayList<>();
+        int next = 0;
+        do {
+            PageExports.Batch batch = exports.next(view, URLS, ranges, next, max);
+            assertTrue(batch.getDocs().length <= max);
+            for (int doc : batch.getDocs()) {
+                copied.add(doc);
+                if (doc < PAGES) {
+                    assertArrayEquals(pages.get(doc), batch.getTerms(doc), "terms of " + doc);
+                }
+            }
+            next = batch.getNextDoc();
+        } while (next >= 0);
+        return copied;
+    }
+
+    private static List<Integer> pagesIn(long[] ranges) {
+        List<Integer> docs = new ArrayList<>();
+        for (int doc = 0; doc < PAGES; doc++) {
+            if (HashRing.inRanges(HashRing.hash(URLS.apply(doc)), ranges)) {
+                docs.add(doc);
+            }
+        }
+        return docs;
+    }
+
+    /**
+     * Finds the arcs of a ring owned by a barrel.
+     */
+    private static long[] ranges(HashRing ring, int member) {
+        long[] boundaries = HashRing.boundaries(ring);
+        List<Long> ranges = new ArrayList<>();
+        for (int i = 0; i < boundaries.length; i++) {
+            if (ring.owners(boundaries[i])[0] == member) {
+                ranges.add(boundaries[(i + boundaries.length - 1) % boundaries.length]);
+                ranges.add(boundaries[i]);
+            }
+        }
+        long[] result = new long[ranges.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ranges.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,131 @@
+package com.googol.googolfe.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.googol.googolfe.server.index.IndexView;
+import com.googol.googolfe.server.index.SegmentedIndex;
+import com.googol.googolfe.server.interfaces.IBarrel;
+
+class StateTransferTest {
+
+    private static final int PAGES = 300;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexIsSentInSegmentsOfBoundedSize() throws IOException {
+        Path sender = Files.createDirectory(directory.resolve("sender"));
+        Path joiner = Files.createDirectory(directory.resolve("joiner"));
+        SegmentedIndex index = new SegmentedIndex(sender.toString(), "Barrel0", 10);
+        Random random = new Random(5);
+        for (int doc = 0; doc < PAGES; doc++) {
+            index.addDocument(doc, page(random));
+        }
+        index.publish();
+        IndexView view = index.view();
+
+        long segmentBytes = 8 * 1024;
+        StateTransfer transfers = new StateTransfer(sender.toString(), "Barrel0", 60_000, segmentBytes);
+        byte[] snapshot = "snapshot".getBytes(StandardCharsets.UTF_8);
+        Path snapshotCopy = joiner.resolve("snapshot.dat");
+        List<Path> copied = StateTransfer.fetch(peer(transfers, snapshot, view), snapshotCopy,
+                i -> joiner.resolve("copy-" + i + ".idx"));
+
+        assertTrue(copied.size() > 1, "the index is split in " + copied.size() + " segments");
+        for (Path path : copied) {
+            assertTrue(Files.size(path) <= segmentBytes, path + " has " + Files.size(path) + " bytes");
+        }
+        assertArrayEquals(snapshot, Files.readAllBytes(snapshotCopy));
+        // The session was closed, so its temporary files are gone
+        assertEquals(0, sender.toFile().listFiles((dir, name) -> name.contains("transfer-")).length);
+
+        SegmentedIndex.install(joiner.toString(), "Barrel1", copied);
+        SegmentedIndex installed = new SegmentedIndex(joiner.toString(), "Barrel1", 10);
+        IndexView copy = installed.view();
+        assertEquals(copied.size(), copy.segmentCount());
+        assertEquals(view.documentCount(), copy.documentCount());
+        assertEquals(view.totalLength(), copy.totalLength());
+        for (int word = 0; word < 50; word++) {
+            String term = "w" + word;
+            assertArrayEquals(view.postings(term).toArray(), copy.postings(term).toArray(), term);
+            for (int doc : view.postings(term).toArray()) {
+                assertArrayEquals(view.positions(term, doc), copy.positions(term, doc), term + " in " + doc);
+            }
+        }
+        installed.close();
+        index.close();
+    }
+
+    @Test
+    void corruptedSegmentIsRejected() throws IOException {
+        Path sender = Files.createDirectory(directory.resolve("sender"));
+        Path joiner = Files.createDirectory(directory.resolve("joiner"));
+        SegmentedIndex index = new SegmentedIndex(sender.toString(), "Barrel0", 10);
+        Random random = new Random(6);
+        for (int doc = 0; doc < PAGES; doc++) {
+            index.addDocument(doc, page(random));
+        }
+        index.publish();
+        StateTransfer transfers = new StateTransfer(sender.toString(), "Barrel0", 60_000, 8 * 1024);
+        IBarrel peer = peer(transfers, new byte[0], index.view());
+        IBarrel corrupting = (IBarrel) Proxy.newProxyInstance(IBarrel.class.getClassLoader(), new Class<?>[] {IBarrel.class},
+                (proxy, method, args) -> {
+                    Object result = method.invoke(peer, args);
+                    if (method.getName().equals("readTransfer") && (int) args[1] == StateTransfer.INDEX + 1) {
+                        ((byte[]) result)[0] ^= 1;
+                    }
+                    return result;
+                });
+        assertThrows(IOException.class, () -> StateTransfer.fetch(corrupting, joiner.resolve("snapshot.dat"),
+                i -> joiner.resolve("copy-" + i + ".idx")));
+        // The segments already copied are deleted with the corrupted one
+        assertFalse(new File(joiner.toFile(), "copy-0.idx").exists());
+        assertFalse(new File(joiner.toFile(), "copy-1.idx").exists());
+        index.close();
+    }
+
+    /**
+     * Builds a peer serving the transfers of a sender, the only calls a joining barrel makes.
+     */
+    private static IBarrel peer(StateTransfer transfers, byte[] snapshot, IndexView view) {
+        return (IBarrel) Proxy.newProxyInstance(IBarrel.class.getClassLoader(), new Class<?>[] {IBarrel.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "openTransfer":
+                            return transfers.open(snapshot, view);
+                        case "readTransfer":
+                            return transfers.read((long) args[0], (int) args[1], (long) args[2], (int) args[3]);
+                        case "closeTransfer":
+                            transfers.close((long) args[0]);
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static String[] page(Random random) {
+        String[] terms = new String[20 + random.nextInt(40)];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = "w" + random.nextInt(50);
+        }
+        return terms;
+    }
+}
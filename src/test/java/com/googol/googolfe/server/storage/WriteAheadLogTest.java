@@ -0,0 +1,234 @@
+package com.googol.googolfe.server.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.googol.googolfe.server.index.DocDictionary;
+
+class WriteAheadLogTest {
+
+    /**
+     * Long enough for the commit thread never to run during a test, so the tests commit explicitly.
+     */
+    private static final long SYNC_INTERVAL = 60_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysTheRecordsInOrder() throws IOException {
+        WriteAheadLog wal = open();
+        for (int i = 0; i < 100; i++) {
+            wal.append(bytes("record " + i));
+        }
+        wal.commit();
+        List<String> replayed = replay(wal, 0);
+        assertEquals(100, replayed.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("record " + i, replayed.get(i));
+        }
+        wal.close();
+    }
+
+    @Test
+    void closeCommitsTheBufferedRecords() throws IOException {
+        WriteAheadLog wal = open();
+        wal.append(bytes("a"));
+        wal.append(new byte[0]);
+        wal.close();
+        WriteAheadLog reopened = open();
+        assertEquals(List.of("a", ""), replay(reopened, 0));
+        reopened.close();
+    }
+
+    @Test
+    void tornTailIsDroppedAndOverwritten() throws IOException {
+        WriteAheadLog wal = open();
+        wal.append(bytes("kept 1"));
+        wal.append(bytes("kept 2"));
+        wal.close();
+
+        // A crash in the middle of a record leaves its header and part of its payload
+        Path segment = directory.resolve("test-0.wal");
+        byte[] torn = {0, 0, 0, 50, 1, 2, 3, 4, 'x', 'y'};
+        Files.write(segment, torn, StandardOpenOption.APPEND);
+
+        WriteAheadLog reopened = open();
+        assertEquals(List.of("kept 1", "kept 2"), replay(reopened, 0));
+        reopened.append(bytes("after crash"));
+        reopened.commit();
+        assertEquals(List.of("kept 1", "kept 2", "after crash"), replay(reopened, 0));
+        reopened.close();
+    }
+
+    @Test
+    void corruptedRecordEndsTheReplayOfItsSegment() throws IOException {
+        WriteAheadLog wal = open();
+        wal.append(bytes("first"));
+        wal.append(bytes("second"));
+        wal.close();
+        Path segment = directory.resolve("test-0.wal");
+        byte[] data = Files.readAllBytes(segment);
+        // Flip a byte of the payload of the second record, so its checksum no longer matches
+        data[data.length - 1] ^= 1;
+        Files.write(segment, data);
+        WriteAheadLog reopened = open();
+        assertEquals(List.of("first"), replay(reopened, 0));
+        reopened.close();
+    }
+
+    @Test
+    void rollStartsANewSegment() throws IOException {
+        WriteAheadLog wal = open();
+        wal.append(bytes("before"));
+        long next = wal.roll();
+        assertEquals(1, next);
+        wal.append(bytes("after"));
+        wal.commit();
+        assertTrue(Files.exists(directory.resolve("test-0.wal")));
+        assertTrue(Files.exists(directory.resolve("test-1.wal")));
+        assertEquals(List.of("before", "after"), replay(wal, 0));
+        assertEquals(List.of("after"), replay(wal, next));
+        wal.close();
+    }
+
+    @Test
+    void deleteBeforeKeepsTheLaterSegments() throws IOException {
+        WriteAheadLog wal = open();
+        wal.append(bytes("0"));
+        wal.roll();
+        wal.append(bytes("1"));
+        long kept = wal.roll();
+        wal.append(bytes("2"));
+        wal.commit();
+        wal.deleteBefore(kept);
+        assertFalse(Files.exists(directory.resolve("test-0.wal")));
+        assertFalse(Files.exists(directory.resolve("test-1.wal")));
+        assertEquals(List.of("2"), replay(wal, 0));
+        wal.close();
+
+        // A reopened log appends to its newest segment
+        WriteAheadLog reopened = open();
+        reopened.append(bytes("3"));
+        reopened.commit();
+        assertEquals(List.of("2", "3"), replay(reopened, kept));
+        reopened.close();
+    }
+
+    @Test
+    void snapshotPlusLogRecoversEveryRecord() throws IOException {
+        String snapshotPath = directory.resolve("snapshot.dat").toString();
+        WriteAheadLog wal = open();
+        DocDictionary docs = new DocDictionary();
+        for (String url : List.of("http://a", "http://b")) {
+            wal.append(bytes(url));
+            docs.getOrAdd(url);
+        }
+
+        // Checkpoint: the log is rolled, the snapshot written, then the segments it covers are deleted
+        long segment = wal.roll();
+        Snapshots.write(snapshotPath, Snapshots.serialize(snapshot(docs, segment)));
+        wal.deleteBefore(segment);
+        for (String url : List.of("http://c", "http://d")) {
+            wal.append(bytes(url));
+            docs.getOrAdd(url);
+        }
+        wal.close();
+
+        BarrelSnapshot recovered = Snapshots.read(snapshotPath, BarrelSnapshot.class);
+        assertNotNull(recovered);
+        DocDictionary restored = recovered.getDocs();
+        assertEquals(2, restored.size());
+        WriteAheadLog reopened = open();
+        int replayed = reopened.replay(recovered.getWalSegment(), payload -> restored.getOrAdd(new String(payload, StandardCharsets.UTF_8)));
+        assertEquals(2, replayed);
+        assertEquals(4, restored.size());
+        for (String url : List.of("http://a", "http://b", "http://c", "http://d")) {
+            assertEquals(docs.getId(url), restored.getId(url), url);
+        }
+        assertArrayEquals(new int[] {1, 5}, recovered.getPageLinks().get(0));
+        assertArrayEquals(new int[] {0}, recovered.getLinkedPage().get(1));
+        reopened.close();
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void linksSavedAsSetsAreReadAsArrays() throws IOException {
+        // The snapshots saved before the links were arrays hold sets of doc IDs in the same fields
+        HashMap<Integer, Set<Integer>> pageLinks = new HashMap<>();
+        pageLinks.put(0, new HashSet<>(List.of(9, 2, 5)));
+        pageLinks.put(3, new HashSet<>());
+        HashMap<Integer, Set<Integer>> linkedPage = new HashMap<>();
+        linkedPage.put(2, new HashSet<>(List.of(0)));
+        String snapshotPath = directory.resolve("snapshot.dat").toString();
+        Snapshots.write(snapshotPath, Snapshots.serialize(new BarrelSnapshot(new DocDictionary(), (HashMap) pageLinks,
+                (Map) linkedPage, new HashMap<>(), 7)));
+
+        BarrelSnapshot recovered = Snapshots.read(snapshotPath, BarrelSnapshot.class);
+        assertNotNull(recovered);
+        assertArrayEquals(new int[] {2, 5, 9}, recovered.getPageLinks().get(0));
+        assertArrayEquals(new int[0], recovered.getPageLinks().get(3));
+        assertArrayEquals(new int[] {0}, recovered.getLinkedPage().get(2));
+        assertEquals(7, recovered.getWalSegment());
+    }
+
+    @Test
+    void logIsKeptUntilTheSnapshotCoversIt() throws IOException {
+        String snapshotPath = directory.resolve("snapshot.dat").toString();
+        WriteAheadLog wal = open();
+        Snapshots.write(snapshotPath, Snapshots.serialize(snapshot(new DocDictionary(), 0)));
+        wal.append(bytes("http://a"));
+
+        // A crash after the roll but before the new snapshot is written keeps the old snapshot
+        wal.roll();
+        wal.append(bytes("http://b"));
+        wal.close();
+
+        BarrelSnapshot recovered = Snapshots.read(snapshotPath, BarrelSnapshot.class);
+        assertNotNull(recovered);
+        WriteAheadLog reopened = open();
+        assertEquals(List.of("http://a", "http://b"), replay(reopened, recovered.getWalSegment()));
+        reopened.close();
+    }
+
+    private WriteAheadLog open() throws IOException {
+        return new WriteAheadLog(directory.toString(), "test", SYNC_INTERVAL);
+    }
+
+    private static BarrelSnapshot snapshot(DocDictionary docs, long segment) {
+        HashMap<Integer, int[]> pageLinks = new HashMap<>();
+        pageLinks.put(0, new int[] {1, 5});
+        HashMap<Integer, int[]> linkedPage = new HashMap<>();
+        linkedPage.put(1, new int[] {0});
+        linkedPage.put(5, new int[] {0});
+        return new BarrelSnapshot(docs, pageLinks, linkedPage, new HashMap<>(), segment);
+    }
+
+    private static List<String> replay(WriteAheadLog wal, long from) throws IOException {
+        List<String> records = new ArrayList<>();
+        wal.replay(from, payload -> records.add(new String(payload, StandardCharsets.UTF_8)));
+        return records;
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}